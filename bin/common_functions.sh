@@ -19,6 +19,7 @@
 # $2: starting memory allocation
 # $3: maximum memory allocation
 # $4: configuration file
+# Any further parameters are passed on to Program D.
 function start_programd()
 {
   # Set up Program D variables
@@ -29,7 +30,7 @@ function start_programd()
 
   # Change to the Program D directory and launch the given jar file.
   cd $BASE
-  $JVM_COMMAND -Xms$2 -Xmx$3 -jar $1 -c $4
+  $JVM_COMMAND -Xms$2 -Xmx$3 -jar $1 -c $4 "${@:5}"
 }
 
 # Sets up some variables used to run Program D.
@@ -123,6 +123,21 @@ ENGINE = InnoDB
 DEFAULT CHARACTER SET = latin1;
 
 
+-- -----------------------------------------------------
+-- Table `id_block`
+-- The next free id of `node` and of `template`, from
+-- which new rows take their ids (see SlowDBNodemapper).
+-- -----------------------------------------------------
+DROP TABLE IF EXISTS `id_block` ;
+
+CREATE  TABLE IF NOT EXISTS `id_block` (
+  `name` VARCHAR(32) NOT NULL ,
+  `next_id` INT(11) NOT NULL ,
+  PRIMARY KEY (`name`) )
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = latin1;
+
+
 -- -----------------------------------------------------
 -- Table `edge`
 -- -----------------------------------------------------
@@ -176,6 +191,25 @@ ENGINE = InnoDB
 DEFAULT CHARACTER SET = latin1;
 
 
+-- -----------------------------------------------------
+-- Table `chatlog`
+-- -----------------------------------------------------
+DROP TABLE IF EXISTS `chatlog` ;
+
+CREATE  TABLE IF NOT EXISTS `chatlog` (
+  `id` INT(11) NOT NULL AUTO_INCREMENT ,
+  `timestamp` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ,
+  `userid` VARCHAR(128) NOT NULL ,
+  `botid` VARCHAR(128) NOT NULL ,
+  `input` MEDIUMTEXT NOT NULL ,
+  `response` MEDIUMTEXT NOT NULL ,
+  PRIMARY KEY (`id`) ,
+  INDEX `userid` (`userid` ASC) ,
+  INDEX `botid` (`botid` ASC) )
+ENGINE = InnoDB
+DEFAULT CHARACTER SET = utf8;
+
+
 -- -----------------------------------------------------
 -- Table `file_node`
 -- -----------------------------------------------------
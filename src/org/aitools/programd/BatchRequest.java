@@ -0,0 +1,59 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd;
+
+/**
+ * One input in a batch given to {@link Core#getResponses(java.util.List)}.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+
+public class BatchRequest {
+
+  private String _input;
+
+  private String _userid;
+
+  private String _botid;
+
+  /**
+   * Creates a new BatchRequest.
+   *
+   * @param input the &quot;non-internal&quot; (possibly multi-sentence, non-substituted) input
+   * @param userid the userid for whom the response will be generated
+   * @param botid the botid from which to get the response
+   */
+  public BatchRequest(String input, String userid, String botid) {
+    this._input = input;
+    this._userid = userid;
+    this._botid = botid;
+  }
+
+  /**
+   * @return the input
+   */
+  public String getInput() {
+    return this._input;
+  }
+
+  /**
+   * @return the userid
+   */
+  public String getUserID() {
+    return this._userid;
+  }
+
+  /**
+   * @return the botid
+   */
+  public String getBotID() {
+    return this._botid;
+  }
+}
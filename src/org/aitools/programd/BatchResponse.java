@@ -0,0 +1,85 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd;
+
+/**
+ * The outcome of one {@link BatchRequest}: the response, or why there is none.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+
+public class BatchResponse {
+
+  /** What happened to a request. */
+  public static enum Status {
+    /** The response was produced. */
+    OK,
+
+    /** The requested bot is not loaded. */
+    NO_SUCH_BOT,
+
+    /** The Core was not ready (or was shut down before the request was reached). */
+    NOT_READY,
+
+    /** An error occurred while producing the response. */
+    ERROR
+  }
+
+  private BatchRequest _request;
+
+  private Status _status;
+
+  private String _response;
+
+  private Throwable _error;
+
+  /**
+   * Creates a new BatchResponse.
+   *
+   * @param request the request
+   * @param status what happened to the request
+   * @param response the response (<code>null</code> unless the status is {@link Status#OK})
+   * @param error the error that occurred (<code>null</code> unless the status is {@link Status#ERROR})
+   */
+  public BatchResponse(BatchRequest request, Status status, String response, Throwable error) {
+    this._request = request;
+    this._status = status;
+    this._response = response;
+    this._error = error;
+  }
+
+  /**
+   * @return the request
+   */
+  public BatchRequest getRequest() {
+    return this._request;
+  }
+
+  /**
+   * @return what happened to the request
+   */
+  public Status getStatus() {
+    return this._status;
+  }
+
+  /**
+   * @return the response (<code>null</code> unless the status is {@link Status#OK})
+   */
+  public String getResponse() {
+    return this._response;
+  }
+
+  /**
+   * @return the error that occurred (<code>null</code> unless the status is {@link Status#ERROR})
+   */
+  public Throwable getError() {
+    return this._error;
+  }
+}
@@ -16,34 +16,54 @@ import java.net.URL;
 import java.net.UnknownHostException;
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.aitools.programd.CoreSettings.ChatLogDestination;
+import org.aitools.programd.graph.BackgroundLoader;
 import org.aitools.programd.graph.Graphmapper;
 import org.aitools.programd.graph.Match;
 import org.aitools.programd.interfaces.ConsoleStreamAppender;
+import org.aitools.programd.interfaces.management.CoreManagement;
 import org.aitools.programd.interpreter.Interpreter;
-import org.aitools.programd.logging.ChatLogEvent;
+import org.aitools.programd.logging.AppenderChatLogWriter;
+import org.aitools.programd.logging.ChatLogPipeline;
+import org.aitools.programd.logging.ChatLogRecord;
+import org.aitools.programd.logging.ChatLogWriter;
+import org.aitools.programd.logging.DatabaseChatLogWriter;
+import org.aitools.programd.logging.FileChatLogWriter;
 import org.aitools.programd.parser.BotsConfigurationFileParser;
 import org.aitools.programd.parser.TemplateParser;
 import org.aitools.programd.predicates.PredicateManager;
 import org.aitools.programd.processor.aiml.AIMLProcessorRegistry;
 import org.aitools.programd.util.AIMLWatcher;
+import org.aitools.programd.util.Deadline;
+import org.aitools.programd.util.GossipWriter;
 import org.aitools.programd.util.Heart;
 import org.aitools.programd.util.InputNormalizer;
 import org.aitools.programd.util.ManagedProcesses;
 import org.aitools.programd.util.NoMatchException;
 import org.aitools.programd.util.Pulse;
+import org.aitools.programd.util.ResponseExecutor;
+import org.aitools.programd.util.ResponseStatistics;
+import org.aitools.programd.util.SystemCommandExecutor;
 import org.aitools.util.Classes;
 import org.aitools.util.JDKLogHandler;
 import org.aitools.util.UnspecifiedParameterError;
 import org.aitools.util.db.DBConnectionManager;
 import org.aitools.util.resource.Filesystem;
 import org.aitools.util.resource.URLTools;
+import org.aitools.util.runtime.DaemonThreadFactory;
 import org.aitools.util.runtime.DeveloperError;
 import org.aitools.util.runtime.Errors;
 import org.aitools.util.runtime.UserError;
@@ -124,8 +144,26 @@ public class Core {
   /** An interpreter. */
   private Interpreter _interpreter;
 
+  /** The executor for <code>&lt;system/&gt;</code> commands (only initialized if OS access is allowed). */
+  private SystemCommandExecutor _systemCommandExecutor;
+
+  /** The writer for gossip (only initialized when gossip is first written). */
+  private GossipWriter _gossipWriter;
+
+  /** The pipeline through which responses are written to the chat log. */
+  private ChatLogPipeline _chatLogPipeline;
+
+  /** The loader for <code>&lt;learn/&gt;</code> (only initialized when something is first learned). */
+  private BackgroundLoader _backgroundLoader;
+
+  /** The executor on which asynchronous responses are produced (only initialized when first used). */
+  private ResponseExecutor _responseExecutor;
+
   /** The database connection manager (only initialized if database is used). */
-  private DBConnectionManager _dbConnectionManager;
+  private volatile DBConnectionManager _dbConnectionManager;
+
+  /** The JMX MBeans for the Core (registered once it has started). */
+  private volatile CoreManagement _management;
 
   /** The logger for the Core. */
   private Logger _logger = LogManager.getLogger("programd");
@@ -157,6 +195,9 @@ public class Core {
   /** A counter for tracking average response time. */
   protected float _avgResponseTime = 0;
 
+  /** Histograms of the time taken by each stage of a response, per bot. */
+  private ResponseStatistics _responseStatistics = new ResponseStatistics();
+
   /** The status of the Core. */
   private Status _status = Status.NOT_STARTED;
 
@@ -295,6 +336,19 @@ public class Core {
     throw new NullPointerException("The Core's AIMLWatcher object has not yet been initialized!");
   }
 
+  /**
+   * Returns the loader for <code>&lt;learn/&gt;</code>, creating it on first use.
+   * 
+   * @return the background loader
+   */
+  public synchronized BackgroundLoader getBackgroundLoader() {
+    if (this._backgroundLoader == null) {
+      this._backgroundLoader = new BackgroundLoader(this, this._settings.getLearnQueueCapacity(),
+          this._settings.getLearnWait(), this._logger);
+    }
+    return this._backgroundLoader;
+  }
+
   /**
    * @return the base URL
    */
@@ -326,18 +380,49 @@ public class Core {
    * @return the database connection
    */
   public Connection getDBConnection() {
-    
+    return this.getDBConnectionManager().getDBConnection();
+  }
+
+  /**
+   * Returns the database connection manager, creating it on first use.
+   * 
+   * @return the database connection manager
+   */
+  public DBConnectionManager getDBConnectionManager() {
+    // Not synchronized on the Core, which is held for the whole of each response.
     if (this._dbConnectionManager == null) {
-      this._dbConnectionManager =
-          new DBConnectionManager(this._settings.getDatabaseDriver(),
-                                  this._settings.getDatabaseURI(),
-                                  this._settings.getDatabaseUsername(),
-                                  this._settings.getDatabasePassword(),
-                                  this._settings.getDatabaseMinIdle(),
-                                  this._settings.getDatabaseMaxActive());
+      synchronized (DBConnectionManager.class) {
+        if (this._dbConnectionManager == null) {
+          this._dbConnectionManager =
+              new DBConnectionManager(this._settings.getDatabaseDriver(),
+                                      this._settings.getDatabaseURI(),
+                                      this._settings.getDatabaseUsername(),
+                                      this._settings.getDatabasePassword(),
+                                      this._settings.getDatabaseMinIdle(),
+                                      this._settings.getDatabaseMaxActive(),
+                                      this._settings.getDatabaseStatementCacheSize());
+          if (this._management != null) {
+            this._management.registerDatabasePool(this._dbConnectionManager);
+          }
+        }
+      }
+    }
+    return this._dbConnectionManager;
+  }
+
+  /**
+   * Returns the gossip writer, creating and starting it on first use.
+   *
+   * @return the gossip writer
+   */
+  public synchronized GossipWriter getGossipWriter() {
+    if (this._gossipWriter == null) {
+      this._gossipWriter = new GossipWriter(Filesystem.checkOrCreate(this._settings.getGossipURL().getPath(),
+          "gossip file"), this._settings.getGossipQueueCapacity(), this._settings.getGossipMaxFileSize(),
+          this._settings.getGossipSyncInterval(), this._logger);
+      this._processes.start(this._gossipWriter, "gossip writer");
     }
-    
-    return this._dbConnectionManager.getDBConnection();
+    return this._gossipWriter;
   }
 
   /**
@@ -375,11 +460,17 @@ public class Core {
    */
   @SuppressWarnings("boxing")
   public String getInternalResponse(String input, String userid, String botid, TemplateParser parser) {
+    // Don't start another match if the reply is already out of time.
+    if (parser.getDeadline().hasExpiredNow()) {
+      return "";
+    }
+
     // Get the requested bot.
     Bot bot = this._bots.get(botid);
 
     String _input = input;
     parser.addInput(_input);
+    this._responseStatistics.record(botid, ResponseStatistics.SRAI_DEPTH, parser.getInputs().size() - 1);
 
     // Ready the that and topic predicates for constructing the match path.
     List<String> thatSentences = bot.sentenceSplit(this._predicateManager.get("that", 1, userid, botid));
@@ -452,6 +543,16 @@ public class Core {
     return this._processes;
   }
 
+  /**
+   * @return the executor for <code>&lt;system/&gt;</code> commands
+   */
+  public SystemCommandExecutor getSystemCommandExecutor() {
+    if (this._systemCommandExecutor != null) {
+      return this._systemCommandExecutor;
+    }
+    throw new NullPointerException("The Core's SystemCommandExecutor object has not yet been initialized!");
+  }
+
   /**
    * Gets the match result from the Graphmaster.
    * 
@@ -472,18 +573,27 @@ public class Core {
 
     Match match = null;
 
+    long start = System.nanoTime();
     try {
-      match = this._graphmapper.match(InputNormalizer.patternFitIgnoreCase(input), that, topic, botid);
+      match = this._graphmapper.match(InputNormalizer.patternFitIgnoreCase(input), that, topic, botid, parser
+          .getDeadline());
     }
     catch (NoMatchException e) {
       this._logger.warn(e.getMessage());
+      this._responseStatistics.record(botid, ResponseStatistics.NO_MATCH, 1);
       return "";
     }
+    finally {
+      this._responseStatistics.recordTime(botid, ResponseStatistics.MATCH, start);
+    }
 
     if (match == null) {
       this._logger.warn(String.format("No match found for input \"%s\".", input));
+      this._responseStatistics.record(botid, ResponseStatistics.NO_MATCH, 1);
       return "";
     }
+    this._responseStatistics.record(botid, ResponseStatistics.MATCH_NODES, match.getNodesVisited());
+    this._responseStatistics.record(botid, ResponseStatistics.MATCH_BACKTRACKS, match.getBacktracks());
 
     if (this._matchLogger.isDebugEnabled()) {
       this._matchLogger.debug(String.format("[MATCH (%s)] %s (\"%s\")", userid, match.getPath(), match.getFileNames()));
@@ -498,6 +608,11 @@ public class Core {
       reply = parser.processResponse(template, match.getFileNames().get(0));
     }
     catch (Throwable e) {
+      if (parser.getDeadline().hasExpiredNow()) {
+        // Not an error in the template; the reply has run out of time (which getReplies() reports).
+        this._matchLogger.debug(String.format("Abandoned processing of response: \"%s\"", e.getMessage()));
+        return "";
+      }
       // Log the error message.
       this._logger.error(String.format("Error while processing response: \"%s\"", Errors.describe(e)), e);
 
@@ -538,8 +653,22 @@ public class Core {
    * @param botid
    * @return the list of replies to the input sentences
    */
-  @SuppressWarnings("boxing")
   protected List<String> getReplies(List<String> sentenceList, String userid, String botid) {
+    return this.getReplies(sentenceList, userid, botid, null);
+  }
+
+  /**
+   * Gets the list of replies to some input sentences, also appending each reply to the given output (if any) as soon as
+   * it is ready. Assumes that the sentences have already had all necessary pre-processing and substitutions performed.
+   * 
+   * @param sentenceList the input sentences
+   * @param userid the userid requesting the replies
+   * @param botid
+   * @param out where to write each reply as it is ready (may be null)
+   * @return the list of replies to the input sentences
+   */
+  @SuppressWarnings("boxing")
+  protected List<String> getReplies(List<String> sentenceList, String userid, String botid, Appendable out) {
     if (sentenceList == null) {
       return null;
     }
@@ -572,9 +701,30 @@ public class Core {
     // Mark the time just before matching starts.
     time = System.currentTimeMillis();
 
+    // The whole reply must be ready within the reply timeout.
+    Deadline deadline = new Deadline(this._settings.getReplyTimeout());
+
     // Get a reply for each sentence.
     for (String sentence : sentenceList) {
-      replies.add(this.getReply(sentence, that, topic, userid, botid));
+      if (deadline.hasExpiredNow()) {
+        break;
+      }
+      String reply = this.getReply(sentence, that, topic, userid, botid, deadline);
+      replies.add(reply);
+      if (out != null) {
+        try {
+          out.append(reply);
+        }
+        catch (IOException e) {
+          this._logger.warn(String.format("Could not write reply: %s", Errors.describe(e)));
+          out = null;
+        }
+      }
+    }
+
+    if (deadline.hasExpiredNow()) {
+      this._logger.warn(String.format("Reply to %s took longer than %d ms; abandoned it.", userid, this._settings
+          .getReplyTimeout()));
     }
 
     // Increment the (static) response count.
@@ -616,11 +766,28 @@ public class Core {
    * @return the reply to the input sentence
    */
   protected String getReply(String input, String that, String topic, String userid, String botid) {
+    return this.getReply(input, that, topic, userid, botid, new Deadline(this._settings.getReplyTimeout()));
+  }
+
+  /**
+   * Gets a reply to an input, as {@link #getReply(String, String, String, String, String)}, as part of a reply that
+   * must be ready by the given deadline.
+   * 
+   * @param input the input sentence
+   * @param that the input that value
+   * @param topic the input topic value
+   * @param userid the userid requesting the reply
+   * @param botid
+   * @param deadline the deadline for the whole reply
+   * @return the reply to the input sentence
+   */
+  protected String getReply(String input, String that, String topic, String userid, String botid, Deadline deadline) {
     // Push the input onto the <input/> stack.
     this._predicateManager.push("input", input, userid, botid);
 
     // Create a new TemplateParser.
     TemplateParser parser = new TemplateParser(input, that, topic, userid, botid, this);
+    parser.setDeadline(deadline);
 
     String reply = this.getMatchResult(input, that, topic, userid, botid, parser);
     if (reply == null) {
@@ -635,7 +802,8 @@ public class Core {
   }
 
   /**
-   * Returns the response to an input.
+   * Returns the response to an input. Responses are produced one at a time: the graph, the predicates and the template
+   * processors are shared by all users, and are guarded by the Core's lock, which is held for the whole response.
    * 
    * @param input the &quot;non-internal&quot; (possibly multi-sentence, non-substituted) input
    * @param userid the userid for whom the response will be generated
@@ -643,40 +811,273 @@ public class Core {
    * @return the response
    */
   public synchronized String getResponse(String input, String userid, String botid) {
+    return this.getResponse(input, userid, botid, null);
+  }
+
+  /**
+   * Returns the response to an input, also writing the reply to each sentence of the input to the given output as soon
+   * as it is ready (so that a caller can begin sending a long response before all of it has been produced).
+   * 
+   * @param input the &quot;non-internal&quot; (possibly multi-sentence, non-substituted) input
+   * @param userid the userid for whom the response will be generated
+   * @param botid the botid from which to get the response
+   * @param out where to write the response as it is produced (may be null)
+   * @return the response
+   */
+  public synchronized String getResponse(String input, String userid, String botid, Appendable out) {
     if (this._status == Status.READY) {
-      // Get the specified bot object.
-      Bot bot = this._bots.get(botid);
+      long start = System.nanoTime();
+      return this.respond(input, this.splitInput(input, botid), userid, botid, out, start);
+    }
+    // otherwise...
+    // throw new DeveloperError("Check that the Core is running before sending it messages.", new
+    // CoreNotReadyException());
+    return null;
+  }
 
-      // Split sentences (after performing substitutions).
-      List<String> sentenceList = bot.sentenceSplit(bot.applyInputSubstitutions(input));
+  /**
+   * Starts producing the response to an input on the response executor, and returns at once.
+   * 
+   * @param input the &quot;non-internal&quot; (possibly multi-sentence, non-substituted) input
+   * @param userid the userid for whom the response will be generated
+   * @param botid the botid from which to get the response
+   * @return the response, when it is ready (<code>null</code> if the Core was not ready)
+   * @see #getResponseAsync(String, String, String, ResponseCallback)
+   */
+  public Future<String> getResponseAsync(String input, String userid, String botid) {
+    return this.getResponseAsync(input, userid, botid, null);
+  }
+
+  /**
+   * Starts producing the response to an input on the response executor, and returns at once. The response is produced
+   * as by {@link #getResponse(String, String, String)}, under the Core's lock, so responses are still produced one at a
+   * time: this only takes the waiting off the caller's thread. If a callback is given, it is told when the response is
+   * ready, so that the caller need not wait on the result.
+   * 
+   * @param input the &quot;non-internal&quot; (possibly multi-sentence, non-substituted) input
+   * @param userid the userid for whom the response will be generated
+   * @param botid the botid from which to get the response
+   * @param callback to be told when the response is ready (may be null)
+   * @return the response, when it is ready (<code>null</code> if the Core was not ready)
+   */
+  public Future<String> getResponseAsync(final String input, final String userid, final String botid,
+      ResponseCallback callback) {
+    return this.getResponseExecutor().submit(botid, new Callable<String>() {
+      @Override
+      public String call() {
+        return Core.this.getResponse(input, userid, botid);
+      }
+    }, callback);
+  }
 
-      // Get the replies.
-      List<String> replies = this.getReplies(sentenceList, userid, botid);
+  /**
+   * Returns the executor on which asynchronous responses are produced, creating it on first use (with
+   * <code>async.threads</code> threads and a limit of <code>async.per-bot-limit</code> responses per bot). The limit
+   * caps each bot's share of the threads; it does not let more replies be produced at once, nor decide the order in
+   * which those waiting for the Core's lock get it.
+   * 
+   * @return the response executor
+   */
+  public synchronized ResponseExecutor getResponseExecutor() {
+    if (this._responseExecutor == null) {
+      int threads = this._settings.getAsyncThreads();
+      if (threads <= 0) {
+        threads = 2 * Runtime.getRuntime().availableProcessors();
+      }
+      this._responseExecutor = new ResponseExecutor(Executors.newFixedThreadPool(threads, new DaemonThreadFactory(
+          "response")), this._settings.getAsyncPerBotLimit());
+    }
+    return this._responseExecutor;
+  }
 
-      if (replies == null) {
+  /**
+   * Sets the executor on which asynchronous responses are produced (in place of the default fixed pool). The limit of
+   * <code>async.per-bot-limit</code> responses per bot still applies. The executor will be shut down with the Core.
+   * 
+   * @param executor the executor to use
+   */
+  public synchronized void setResponseExecutor(ExecutorService executor) {
+    if (this._responseExecutor != null) {
+      this._responseExecutor.shutdown();
+    }
+    this._responseExecutor = new ResponseExecutor(executor, this._settings.getAsyncPerBotLimit());
+  }
+
+  /**
+   * Returns the responses to a batch of inputs, working on the calling thread. The requests are grouped by user, and
+   * each user's requests are answered in the order given, one after another: so the user's predicates are usually
+   * still in the predicate cache for the next of them. The Core's lock is taken for each request in turn, not for a
+   * user's whole group, so that a large batch does not hold up other callers; the order of each user's requests is kept
+   * by answering them in sequence. The input substitutions and sentence splitting are done before taking the lock, and
+   * only once for an input that appears more than once in the batch.
+   * 
+   * @param requests the inputs
+   * @return the outcome of each request, in the same order as the requests
+   */
+  public List<BatchResponse> getResponses(List<BatchRequest> requests) {
+    // Group the requests by user, keeping their order.
+    Map<String, List<Integer>> users = new LinkedHashMap<String, List<Integer>>();
+    for (int index = 0; index < requests.size(); index++) {
+      String userid = requests.get(index).getUserID();
+      List<Integer> indices = users.get(userid);
+      if (indices == null) {
+        indices = new ArrayList<Integer>();
+        users.put(userid, indices);
+      }
+      indices.add(Integer.valueOf(index));
+    }
+
+    BatchResponse[] responses = new BatchResponse[requests.size()];
+    Map<String, List<String>> sentences = new HashMap<String, List<String>>();
+    for (List<Integer> indices : users.values()) {
+      List<List<String>> prepared = new ArrayList<List<String>>(indices.size());
+      long[] starts = new long[indices.size()];
+      for (int item = 0; item < indices.size(); item++) {
+        int index = indices.get(item).intValue();
+        starts[item] = System.nanoTime();
+        prepared.add(this.prepare(requests.get(index), sentences, responses, index));
+      }
+      for (int item = 0; item < indices.size(); item++) {
+        int index = indices.get(item).intValue();
+        if (responses[index] == null) {
+          synchronized (this) {
+            responses[index] = this.respond(requests.get(index), prepared.get(item), starts[item]);
+          }
+        }
+      }
+    }
+    return Arrays.asList(responses);
+  }
+
+  /**
+   * Applies the input substitutions and splits the input of one request in a batch, or records why it cannot be
+   * answered.
+   * 
+   * @param request the request
+   * @param sentences the inputs already prepared for the batch, by botid and input
+   * @param responses the outcomes of the batch, in which to record a request that cannot be answered
+   * @param index the index of the request in the batch
+   * @return the sentences of the input (<code>null</code> if the request cannot be answered)
+   */
+  private List<String> prepare(BatchRequest request, Map<String, List<String>> sentences, BatchResponse[] responses,
+      int index) {
+    String botid = request.getBotID();
+    if (botid == null || !this._bots.containsKey(botid)) {
+      responses[index] = new BatchResponse(request, BatchResponse.Status.NO_SUCH_BOT, null, null);
+      return null;
+    }
+    String key = botid + '\u0000' + request.getInput();
+    List<String> sentenceList = sentences.get(key);
+    if (sentenceList == null) {
+      try {
+        sentenceList = this.splitInput(request.getInput(), botid);
+      }
+      catch (RuntimeException e) {
+        responses[index] = this.failed(request, e);
         return null;
       }
+      sentences.put(key, sentenceList);
+    }
+    return sentenceList;
+  }
+
+  /**
+   * Returns the outcome of one request in a batch. The caller must hold the Core's lock.
+   * 
+   * @param request the request
+   * @param sentenceList the sentences of the input, after substitutions
+   * @param start the time (from {@link System#nanoTime()}) at which work on the response began
+   * @return the outcome of the request
+   */
+  private BatchResponse respond(BatchRequest request, List<String> sentenceList, long start) {
+    if (this._status != Status.READY) {
+      return new BatchResponse(request, BatchResponse.Status.NOT_READY, null, null);
+    }
+    try {
+      String response = this.respond(request.getInput(), sentenceList, request.getUserID(), request.getBotID(), null,
+          start);
+      return new BatchResponse(request, BatchResponse.Status.OK, response, null);
+    }
+    catch (RuntimeException e) {
+      return this.failed(request, e);
+    }
+  }
+
+  private BatchResponse failed(BatchRequest request, RuntimeException e) {
+    this._logger.error(String.format("Error responding to \"%s\" for %s in batch.", request.getInput(),
+        request.getUserID()), e);
+    return new BatchResponse(request, BatchResponse.Status.ERROR, null, e);
+  }
 
-      // Start by assuming an empty response.
-      StringBuilder responseBuffer = new StringBuilder("");
+  /**
+   * Applies a bot's input substitutions to an input and splits it into sentences. This depends on nothing but the bot's
+   * configuration, so it does not need to be done while holding the Core's lock.
+   * 
+   * @param input the &quot;non-internal&quot; (possibly multi-sentence, non-substituted) input
+   * @param botid the botid
+   * @return the sentences of the input
+   */
+  protected List<String> splitInput(String input, String botid) {
+    Bot bot = this._bots.get(botid);
+    long stageStart = System.nanoTime();
+    String substituted = bot.applyInputSubstitutions(input);
+    this._responseStatistics.recordTime(botid, ResponseStatistics.INPUT_SUBSTITUTION, stageStart);
+    stageStart = System.nanoTime();
+    List<String> sentenceList = bot.sentenceSplit(substituted);
+    this._responseStatistics.recordTime(botid, ResponseStatistics.SENTENCE_SPLIT, stageStart);
+    return sentenceList;
+  }
+
+  /**
+   * Produces, logs and returns the response to an input that has already been split into sentences. The caller must
+   * hold the Core's lock.
+   * 
+   * @param input the original input
+   * @param sentenceList the sentences of the input, after substitutions
+   * @param userid the userid for whom the response will be generated
+   * @param botid the botid from which to get the response
+   * @param out where to write the response as it is produced (may be null)
+   * @param start the time (from {@link System#nanoTime()}) at which work on the response began
+   * @return the response
+   */
+  private String respond(String input, List<String> sentenceList, String userid, String botid, Appendable out,
+      long start) {
+    // Get the replies.
+    List<String> replies = this.getReplies(sentenceList, userid, botid, out);
 
+    if (replies == null) {
+      return null;
+    }
+
+    String response;
+    if (replies.size() == 1) {
+      response = replies.get(0);
+    }
+    else {
       // Append each reply to the response.
+      StringBuilder responseBuffer = new StringBuilder();
       for (String reply : replies) {
         responseBuffer.append(reply);
       }
+      response = responseBuffer.toString();
+    }
 
-      String response = responseBuffer.toString();
+    // Log the response.
+    long stageStart = System.nanoTime();
+    this.logResponse(input, response, userid, botid);
+    this._responseStatistics.recordTime(botid, ResponseStatistics.CHAT_LOG, stageStart);
 
-      // Log the response.
-      this.logResponse(input, response, userid, botid);
+    this._responseStatistics.recordTime(botid, ResponseStatistics.RESPONSE, start);
 
-      // Return the response (may be just ""!)
-      return response;
-    }
-    // otherwise...
-    // throw new DeveloperError("Check that the Core is running before sending it messages.", new
-    // CoreNotReadyException());
-    return null;
+    // Return the response (may be just ""!)
+    return response;
+  }
+
+  /**
+   * @return the histograms of the time taken by each stage of a response, per bot
+   */
+  public ResponseStatistics getResponseStatistics() {
+    return this._responseStatistics;
   }
 
   /**
@@ -732,6 +1133,16 @@ public class Core {
     this._graphmapper.load(path, botid);
   }
 
+  /**
+   * Queues the given path to be loaded for the given botid in the background (as for <code>&lt;learn/&gt;</code>).
+   * 
+   * @param path
+   * @param botid
+   */
+  public void learn(URL path, String botid) {
+    this.getBackgroundLoader().learn(path, botid);
+  }
+
   /**
    * Loads bot(s) from the indicated config file path.
    * 
@@ -758,22 +1169,7 @@ public class Core {
    * @param botid the botid that produced the response
    */
   protected void logResponse(String input, String response, String userid, String botid) {
-    /*
-     * NOTA BENE: This is a very specific workaround for a problem with the log4j JDBCAppender. It appears that the
-     * appender fails to maintain the database connection after some period of time, and thus stops working. Here, we
-     * catch the exception thrown in this case, and force log4j to reinitialize the appender. This is horribly specific
-     * and should go away as soon as possible. - 2006-03-29, NB
-     */
-    try {
-      this._logger.callAppenders(new ChatLogEvent(botid, userid, input, response));
-    }
-    catch (Exception e) {
-      this._logger
-          .error(
-              "A known bug with log4j has been encountered.  Attempting to reset logging configuration. This may or may not work.",
-              e);
-      LogManager.resetConfiguration();
-    }
+    this._chatLogPipeline.log(new ChatLogRecord(botid, userid, input, response));
   }
 
   /**
@@ -856,7 +1252,8 @@ public class Core {
       this._logger.info("Initializing " + javascriptInterpreterClassname + ".");
 
       try {
-        this._interpreter = (Interpreter) Class.forName(javascriptInterpreterClassname).newInstance();
+        this._interpreter = Classes.getSubclassInstance(Interpreter.class, javascriptInterpreterClassname,
+            "JavaScript interpreter", this);
       }
       catch (Exception e) {
         this._logger.error("Error while creating new instance of JavaScript interpreter.", e);
@@ -867,13 +1264,39 @@ public class Core {
     }
   }
 
+  protected void setupSystemCommandExecutor() {
+    if (this._settings.allowOSAccess()) {
+      this._systemCommandExecutor = new SystemCommandExecutor(this._settings.getSystemInterpreterPoolSize(),
+          this._settings.getSystemInterpreterQueueCapacity(), this._settings.getSystemInterpreterTimeout(),
+          this._logger);
+    }
+  }
+
   /**
    * Performs all necessary shutdown tasks. Shuts down the Graphmaster and all ManagedProcesses.
    */
   public void shutdown() {
     this._logger.info("Program D is shutting down.");
     this._processes.shutdownAll();
+    if (this._systemCommandExecutor != null) {
+      this._logger.info(this._systemCommandExecutor.report());
+      this._systemCommandExecutor.shutdown();
+    }
+    if (this._backgroundLoader != null) {
+      this._logger.info(this._backgroundLoader.report());
+      this._backgroundLoader.shutdown();
+    }
+    if (this._responseExecutor != null) {
+      this._logger.info(this._responseExecutor.report());
+      this._responseExecutor.shutdown();
+    }
     this._predicateManager.saveAll();
+    if (this._dbConnectionManager != null) {
+      this._logger.info(this._dbConnectionManager.report());
+    }
+    if (this._management != null) {
+      this._management.unregisterAll();
+    }
     this._logger.info("Shutdown complete.");
     this._status = Status.SHUT_DOWN;
   }
@@ -910,6 +1333,7 @@ public class Core {
         "Graphmapper implementation", this);
     this._bots = new Bots();
     this._processes = new ManagedProcesses(this);
+    this.startChatLog();
 
     // Get an instance of the settings-specified PredicateManager.
     this._predicateManager = Classes.getSubclassInstance(PredicateManager.class,
@@ -956,6 +1380,9 @@ public class Core {
       // Setup a JavaScript interpreter if supposed to.
       this.setupInterpreter();
 
+      // Setup the executor for <system/> commands if supposed to.
+      this.setupSystemCommandExecutor();
+
       // Start the AIMLWatcher if configured to do so.
       this.startWatcher();
 
@@ -991,6 +1418,15 @@ public class Core {
       this.alert("unforeseen problem", e);
     }
 
+    // Register the MBeans for monitoring and tuning.
+    CoreManagement management = new CoreManagement(this);
+    synchronized (DBConnectionManager.class) {
+      if (this._dbConnectionManager != null) {
+        management.registerDatabasePool(this._dbConnectionManager);
+      }
+      this._management = management;
+    }
+
     // Set the status indicator.
     this._status = Status.READY;
 
@@ -1000,6 +1436,35 @@ public class Core {
     }
   }
 
+  /**
+   * Starts the pipeline that writes responses to the chat log.
+   */
+  protected void startChatLog() {
+    List<ChatLogWriter> writers = new ArrayList<ChatLogWriter>();
+    if (this._settings.getChatLogDestination() == ChatLogDestination.FILE) {
+      writers.add(new FileChatLogWriter(Filesystem.checkOrCreate(this._settings.getChatLogFile(), "chat log file"),
+          this._settings.getChatLogMaxFileSize(), this._logger));
+    }
+    else {
+      writers.add(new AppenderChatLogWriter(this._logger));
+    }
+    if (this._settings.chatLogDatabaseEnabled()) {
+      writers.add(new DatabaseChatLogWriter(this.getDBConnectionManager(), this._settings.getChatLogDatabaseBatchSize(),
+          this._logger));
+    }
+    this._chatLogPipeline = new ChatLogPipeline(writers, this._settings.getChatLogBufferSize(),
+        this._settings.getChatLogOverflowPolicy(), this._settings.getChatLogSampleRate(),
+        this._settings.getChatLogSyncInterval(), this._logger);
+    this._processes.start(this._chatLogPipeline, "chat log writer");
+  }
+
+  /**
+   * @return the pipeline through which responses are written to the chat log
+   */
+  public ChatLogPipeline getChatLogPipeline() {
+    return this._chatLogPipeline;
+  }
+
   protected void startHeart() {
     if (this._settings.heartEnabled()) {
       this._heart = new Heart(this._settings.getHeartPulseRate());
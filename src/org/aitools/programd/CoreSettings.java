@@ -65,6 +65,9 @@ abstract public class CoreSettings extends Settings
     /** The maximum number of database connections that can be allocated at a time. */
     private int databaseMaxActive;
         
+    /** The maximum number of prepared statements each pooled database connection keeps open for reuse (0 to disable statement pooling). */
+    private int databaseStatementCacheSize;
+        
     /** What to do when a category is loaded whose pattern:that:topic path is identical to one already loaded (for the same bot). */
     private MergePolicy mergePolicy;
     
@@ -93,12 +96,21 @@ abstract public class CoreSettings extends Settings
     /** The maximum allowable time (in milliseconds) to get a response. */
     private int responseTimeout;
         
+    /** The maximum time (in milliseconds) to produce a whole reply, including template processing (0 for no limit). */
+    private int replyTimeout;
+        
     /** The input to match if an infinite loop is found. */
     private String infiniteLoopInput;
         
     /** Whether to print a stack trace on uncaught exceptions. */
     private boolean printStackTraceOnUncaughtExceptions;
         
+    /** The number of threads on which asynchronous responses are produced (0 for twice the number of processors). */
+    private int asyncThreads;
+        
+    /** The most asynchronous responses that may be in progress for any one bot at once (0 for no limit). */
+    private int asyncPerBotLimit;
+        
     /** The Pulse implementation to use. */
     private String pulseImplementation;
         
@@ -117,6 +129,15 @@ abstract public class CoreSettings extends Settings
     /** The JavaScript interpreter. */
     private String javascriptInterpreterClassname;
         
+    /** The number of compiled scripts to keep in the interpreter's cache (0 disables caching). */
+    private int javascriptScriptCacheSize;
+        
+    /** The maximum number of name lookups a single script may perform (0 means no limit). */
+    private int javascriptInstructionLimit;
+        
+    /** The maximum time (in milliseconds) a single script may run (0 means no limit). */
+    private int javascriptTimeLimit;
+        
     /** Allow the use of JavaScript? */
     private boolean allowJavaScript;
         
@@ -126,9 +147,77 @@ abstract public class CoreSettings extends Settings
     /** The string to prepend to all <system/> calls (platform-specific). Windows requires something like "cmd /c "; Linux doesn't (just leave empty). */
     private String systemInterpreterPrefix;
         
+    /** The number of threads available for running <system/> calls. */
+    private int systemInterpreterPoolSize;
+        
+    /** The number of <system/> calls that may wait for a free thread before further calls are refused. */
+    private int systemInterpreterQueueCapacity;
+        
+    /** The maximum time (in milliseconds) a <system/> call may take before its process is killed (0 means no limit). */
+    private int systemInterpreterTimeout;
+        
     /** Allow access to the OS via the system element? */
     private boolean allowOSAccess;
         
+    /** The number of gossip entries that may wait to be written before further entries are dropped. */
+    private int gossipQueueCapacity;
+        
+    /** The size (in bytes) at which the gossip file is rotated (0 means never rotate). */
+    private int gossipMaxFileSize;
+        
+    /** How often (in milliseconds) to force written gossip to disk (0 means leave it to the operating system). */
+    private int gossipSyncInterval;
+        
+    /** Where to write the chat log. */
+    private ChatLogDestination chatLogDestination;
+    
+    /** The possible values for ChatLogDestination. */
+    public static enum ChatLogDestination
+    {
+        /** Pass each record to the log4j appenders configured for the chat log. */
+        APPENDERS,
+
+        /** Write the records to the chat log file. */
+        FILE
+    }
+
+    /** The file to which the chat log is written, if it is written to a file. */
+    private String chatLogFile;
+        
+    /** The number of chat log records that may wait to be written (rounded up to a power of two). */
+    private int chatLogBufferSize;
+        
+    /** What to do with a chat log record when the buffer is full. */
+    private ChatLogOverflowPolicy chatLogOverflowPolicy;
+    
+    /** The possible values for ChatLogOverflowPolicy. */
+    public static enum ChatLogOverflowPolicy
+    {
+        /** Drop the record. */
+        DROP,
+
+        /** Make the responding thread wait until there is room. */
+        BLOCK,
+
+        /** Keep only some records while the buffer is nearly full, and drop the record when it is full. */
+        SAMPLE
+    }
+
+    /** When the sample overflow policy is used and the buffer is nearly full, keep one record in this many. */
+    private int chatLogSampleRate;
+        
+    /** The size (in bytes) at which the chat log file is rotated (0 means never rotate). */
+    private int chatLogMaxFileSize;
+        
+    /** How often (in milliseconds) to force the written chat log to disk (0 means leave it to the operating system). */
+    private int chatLogSyncInterval;
+        
+    /** Also write the chat log to the chatlog table of the database (with batched prepared inserts)? */
+    private boolean chatLogDatabaseEnabled;
+        
+    /** The number of chat log records to insert into the database at once (records are also inserted whenever the log is synced). */
+    private int chatLogDatabaseBatchSize;
+        
     /** How frequently (in categories) to notify as categories are being loaded. */
     private int categoryLoadNotificationInterval;
         
@@ -138,6 +227,12 @@ abstract public class CoreSettings extends Settings
     /** After all bots have been loaded, exit immediately (useful for timing). */
     private boolean exitImmediatelyOnStartup;
         
+    /** The number of <learn/> requests that may wait to be loaded in the background. */
+    private int learnQueueCapacity;
+        
+    /** How long (in milliseconds) a <learn/> waits for its file to be loaded before the reply continues (0 means do not wait). */
+    private int learnWait;
+        
     /** The string to send when first connecting to the bot. If this value is empty, no value will be sent. */
     private String connectString;
         
@@ -160,6 +255,24 @@ abstract public class CoreSettings extends Settings
     /** The Nodemapper implementation to use. */
     private String nodemapperImplementation;
         
+    /** The number of nodes whose edges a caching database Graphmapper keeps in memory (besides the pinned top levels). */
+    private int graphmapperNodeCacheSize;
+        
+    /** The number of templates a caching database Graphmapper keeps in memory. */
+    private int graphmapperTemplateCacheSize;
+        
+    /** How many levels of the graph (below the root) a caching database Graphmapper always keeps in memory. */
+    private int graphmapperPinnedDepth;
+        
+    /** The length from which templates that have not been matched for a while are kept compressed by MemoryGraphmapper (0 means never). */
+    private int graphmapperTemplateCompressionMinLength;
+        
+    /** Whether MemoryGraphmapper keeps an index of categories whose paths have no wildcards, so that matching them skips the walk through the graph. */
+    private boolean graphmapperExactIndex;
+        
+    /** The directory in which a file-based Graphmapper (such as FileGraphmapper) keeps its graph. */
+    private URL graphmapperFileStore;
+        
     /** Reset the graph on startup? (Only applies to Graphmappers with persistent storage.) */
     private boolean resetGraph;
         
@@ -297,6 +410,14 @@ abstract public class CoreSettings extends Settings
         return this.databaseMaxActive;
     }
 
+    /**
+     * @return the value of databaseStatementCacheSize
+     */
+    public int getDatabaseStatementCacheSize()
+    {
+        return this.databaseStatementCacheSize;
+    }
+
     /**
      * @return the value of mergePolicy
      */
@@ -329,6 +450,14 @@ abstract public class CoreSettings extends Settings
         return this.responseTimeout;
     }
 
+    /**
+     * @return the value of replyTimeout
+     */
+    public int getReplyTimeout()
+    {
+        return this.replyTimeout;
+    }
+
     /**
      * @return the value of infiniteLoopInput
      */
@@ -345,6 +474,22 @@ abstract public class CoreSettings extends Settings
         return this.printStackTraceOnUncaughtExceptions;
     }
 
+    /**
+     * @return the value of asyncThreads
+     */
+    public int getAsyncThreads()
+    {
+        return this.asyncThreads;
+    }
+
+    /**
+     * @return the value of asyncPerBotLimit
+     */
+    public int getAsyncPerBotLimit()
+    {
+        return this.asyncPerBotLimit;
+    }
+
     /**
      * @return the value of pulseImplementation
      */
@@ -393,6 +538,30 @@ abstract public class CoreSettings extends Settings
         return this.javascriptInterpreterClassname;
     }
 
+    /**
+     * @return the value of javascriptScriptCacheSize
+     */
+    public int getJavascriptScriptCacheSize()
+    {
+        return this.javascriptScriptCacheSize;
+    }
+
+    /**
+     * @return the value of javascriptInstructionLimit
+     */
+    public int getJavascriptInstructionLimit()
+    {
+        return this.javascriptInstructionLimit;
+    }
+
+    /**
+     * @return the value of javascriptTimeLimit
+     */
+    public int getJavascriptTimeLimit()
+    {
+        return this.javascriptTimeLimit;
+    }
+
     /**
      * @return the value of allowJavaScript
      */
@@ -417,6 +586,30 @@ abstract public class CoreSettings extends Settings
         return this.systemInterpreterPrefix;
     }
 
+    /**
+     * @return the value of systemInterpreterPoolSize
+     */
+    public int getSystemInterpreterPoolSize()
+    {
+        return this.systemInterpreterPoolSize;
+    }
+
+    /**
+     * @return the value of systemInterpreterQueueCapacity
+     */
+    public int getSystemInterpreterQueueCapacity()
+    {
+        return this.systemInterpreterQueueCapacity;
+    }
+
+    /**
+     * @return the value of systemInterpreterTimeout
+     */
+    public int getSystemInterpreterTimeout()
+    {
+        return this.systemInterpreterTimeout;
+    }
+
     /**
      * @return the value of allowOSAccess
      */
@@ -425,6 +618,102 @@ abstract public class CoreSettings extends Settings
         return this.allowOSAccess;
     }
 
+    /**
+     * @return the value of gossipQueueCapacity
+     */
+    public int getGossipQueueCapacity()
+    {
+        return this.gossipQueueCapacity;
+    }
+
+    /**
+     * @return the value of gossipMaxFileSize
+     */
+    public int getGossipMaxFileSize()
+    {
+        return this.gossipMaxFileSize;
+    }
+
+    /**
+     * @return the value of gossipSyncInterval
+     */
+    public int getGossipSyncInterval()
+    {
+        return this.gossipSyncInterval;
+    }
+
+    /**
+     * @return the value of chatLogDestination
+     */
+    public ChatLogDestination getChatLogDestination()
+    {
+        return this.chatLogDestination;
+    }
+
+    /**
+     * @return the value of chatLogFile
+     */
+    public String getChatLogFile()
+    {
+        return this.chatLogFile;
+    }
+
+    /**
+     * @return the value of chatLogBufferSize
+     */
+    public int getChatLogBufferSize()
+    {
+        return this.chatLogBufferSize;
+    }
+
+    /**
+     * @return the value of chatLogOverflowPolicy
+     */
+    public ChatLogOverflowPolicy getChatLogOverflowPolicy()
+    {
+        return this.chatLogOverflowPolicy;
+    }
+
+    /**
+     * @return the value of chatLogSampleRate
+     */
+    public int getChatLogSampleRate()
+    {
+        return this.chatLogSampleRate;
+    }
+
+    /**
+     * @return the value of chatLogMaxFileSize
+     */
+    public int getChatLogMaxFileSize()
+    {
+        return this.chatLogMaxFileSize;
+    }
+
+    /**
+     * @return the value of chatLogSyncInterval
+     */
+    public int getChatLogSyncInterval()
+    {
+        return this.chatLogSyncInterval;
+    }
+
+    /**
+     * @return the value of chatLogDatabaseEnabled
+     */
+    public boolean chatLogDatabaseEnabled()
+    {
+        return this.chatLogDatabaseEnabled;
+    }
+
+    /**
+     * @return the value of chatLogDatabaseBatchSize
+     */
+    public int getChatLogDatabaseBatchSize()
+    {
+        return this.chatLogDatabaseBatchSize;
+    }
+
     /**
      * @return the value of categoryLoadNotificationInterval
      */
@@ -449,6 +738,22 @@ abstract public class CoreSettings extends Settings
         return this.exitImmediatelyOnStartup;
     }
 
+    /**
+     * @return the value of learnQueueCapacity
+     */
+    public int getLearnQueueCapacity()
+    {
+        return this.learnQueueCapacity;
+    }
+
+    /**
+     * @return the value of learnWait
+     */
+    public int getLearnWait()
+    {
+        return this.learnWait;
+    }
+
     /**
      * @return the value of connectString
      */
@@ -481,6 +786,54 @@ abstract public class CoreSettings extends Settings
         return this.nodemapperImplementation;
     }
 
+    /**
+     * @return the value of graphmapperNodeCacheSize
+     */
+    public int getGraphmapperNodeCacheSize()
+    {
+        return this.graphmapperNodeCacheSize;
+    }
+
+    /**
+     * @return the value of graphmapperTemplateCacheSize
+     */
+    public int getGraphmapperTemplateCacheSize()
+    {
+        return this.graphmapperTemplateCacheSize;
+    }
+
+    /**
+     * @return the value of graphmapperPinnedDepth
+     */
+    public int getGraphmapperPinnedDepth()
+    {
+        return this.graphmapperPinnedDepth;
+    }
+
+    /**
+     * @return the value of graphmapperTemplateCompressionMinLength
+     */
+    public int getGraphmapperTemplateCompressionMinLength()
+    {
+        return this.graphmapperTemplateCompressionMinLength;
+    }
+
+    /**
+     * @return the value of graphmapperExactIndex
+     */
+    public boolean graphmapperExactIndex()
+    {
+        return this.graphmapperExactIndex;
+    }
+
+    /**
+     * @return the value of graphmapperFileStore
+     */
+    public URL getGraphmapperFileStore()
+    {
+        return this.graphmapperFileStore;
+    }
+
     /**
      * @return the value of resetGraph
      */
@@ -633,6 +986,14 @@ abstract public class CoreSettings extends Settings
         this.databaseMaxActive = value;
     }
 
+    /**
+     * @param value the value for databaseStatementCacheSize
+     */
+    public void setDatabaseStatementCacheSize(int value)
+    {
+        this.databaseStatementCacheSize = value;
+    }
+
     /**
      * @param value the value for mergePolicy
      */
@@ -665,6 +1026,14 @@ abstract public class CoreSettings extends Settings
         this.responseTimeout = value;
     }
 
+    /**
+     * @param value the value for replyTimeout
+     */
+    public void setReplyTimeout(int value)
+    {
+        this.replyTimeout = value;
+    }
+
     /**
      * @param value the value for infiniteLoopInput
      */
@@ -681,6 +1050,22 @@ abstract public class CoreSettings extends Settings
         this.printStackTraceOnUncaughtExceptions = value;
     }
 
+    /**
+     * @param value the value for asyncThreads
+     */
+    public void setAsyncThreads(int value)
+    {
+        this.asyncThreads = value;
+    }
+
+    /**
+     * @param value the value for asyncPerBotLimit
+     */
+    public void setAsyncPerBotLimit(int value)
+    {
+        this.asyncPerBotLimit = value;
+    }
+
     /**
      * @param value the value for pulseImplementation
      */
@@ -729,6 +1114,30 @@ abstract public class CoreSettings extends Settings
         this.javascriptInterpreterClassname = value;
     }
 
+    /**
+     * @param value the value for javascriptScriptCacheSize
+     */
+    public void setJavascriptScriptCacheSize(int value)
+    {
+        this.javascriptScriptCacheSize = value;
+    }
+
+    /**
+     * @param value the value for javascriptInstructionLimit
+     */
+    public void setJavascriptInstructionLimit(int value)
+    {
+        this.javascriptInstructionLimit = value;
+    }
+
+    /**
+     * @param value the value for javascriptTimeLimit
+     */
+    public void setJavascriptTimeLimit(int value)
+    {
+        this.javascriptTimeLimit = value;
+    }
+
     /**
      * @param value the value for allowJavaScript
      */
@@ -753,6 +1162,30 @@ abstract public class CoreSettings extends Settings
         this.systemInterpreterPrefix = value;
     }
 
+    /**
+     * @param value the value for systemInterpreterPoolSize
+     */
+    public void setSystemInterpreterPoolSize(int value)
+    {
+        this.systemInterpreterPoolSize = value;
+    }
+
+    /**
+     * @param value the value for systemInterpreterQueueCapacity
+     */
+    public void setSystemInterpreterQueueCapacity(int value)
+    {
+        this.systemInterpreterQueueCapacity = value;
+    }
+
+    /**
+     * @param value the value for systemInterpreterTimeout
+     */
+    public void setSystemInterpreterTimeout(int value)
+    {
+        this.systemInterpreterTimeout = value;
+    }
+
     /**
      * @param value the value for allowOSAccess
      */
@@ -761,6 +1194,102 @@ abstract public class CoreSettings extends Settings
         this.allowOSAccess = value;
     }
 
+    /**
+     * @param value the value for gossipQueueCapacity
+     */
+    public void setGossipQueueCapacity(int value)
+    {
+        this.gossipQueueCapacity = value;
+    }
+
+    /**
+     * @param value the value for gossipMaxFileSize
+     */
+    public void setGossipMaxFileSize(int value)
+    {
+        this.gossipMaxFileSize = value;
+    }
+
+    /**
+     * @param value the value for gossipSyncInterval
+     */
+    public void setGossipSyncInterval(int value)
+    {
+        this.gossipSyncInterval = value;
+    }
+
+    /**
+     * @param value the value for chatLogDestination
+     */
+    public void setChatLogDestination(ChatLogDestination value)
+    {
+        this.chatLogDestination = value;
+    }
+
+    /**
+     * @param value the value for chatLogFile
+     */
+    public void setChatLogFile(String value)
+    {
+        this.chatLogFile = value;
+    }
+
+    /**
+     * @param value the value for chatLogBufferSize
+     */
+    public void setChatLogBufferSize(int value)
+    {
+        this.chatLogBufferSize = value;
+    }
+
+    /**
+     * @param value the value for chatLogOverflowPolicy
+     */
+    public void setChatLogOverflowPolicy(ChatLogOverflowPolicy value)
+    {
+        this.chatLogOverflowPolicy = value;
+    }
+
+    /**
+     * @param value the value for chatLogSampleRate
+     */
+    public void setChatLogSampleRate(int value)
+    {
+        this.chatLogSampleRate = value;
+    }
+
+    /**
+     * @param value the value for chatLogMaxFileSize
+     */
+    public void setChatLogMaxFileSize(int value)
+    {
+        this.chatLogMaxFileSize = value;
+    }
+
+    /**
+     * @param value the value for chatLogSyncInterval
+     */
+    public void setChatLogSyncInterval(int value)
+    {
+        this.chatLogSyncInterval = value;
+    }
+
+    /**
+     * @param value the value for chatLogDatabaseEnabled
+     */
+    public void setChatLogDatabaseEnabled(boolean value)
+    {
+        this.chatLogDatabaseEnabled = value;
+    }
+
+    /**
+     * @param value the value for chatLogDatabaseBatchSize
+     */
+    public void setChatLogDatabaseBatchSize(int value)
+    {
+        this.chatLogDatabaseBatchSize = value;
+    }
+
     /**
      * @param value the value for categoryLoadNotificationInterval
      */
@@ -785,6 +1314,22 @@ abstract public class CoreSettings extends Settings
         this.exitImmediatelyOnStartup = value;
     }
 
+    /**
+     * @param value the value for learnQueueCapacity
+     */
+    public void setLearnQueueCapacity(int value)
+    {
+        this.learnQueueCapacity = value;
+    }
+
+    /**
+     * @param value the value for learnWait
+     */
+    public void setLearnWait(int value)
+    {
+        this.learnWait = value;
+    }
+
     /**
      * @param value the value for connectString
      */
@@ -817,6 +1362,54 @@ abstract public class CoreSettings extends Settings
         this.nodemapperImplementation = value;
     }
 
+    /**
+     * @param value the value for graphmapperNodeCacheSize
+     */
+    public void setGraphmapperNodeCacheSize(int value)
+    {
+        this.graphmapperNodeCacheSize = value;
+    }
+
+    /**
+     * @param value the value for graphmapperTemplateCacheSize
+     */
+    public void setGraphmapperTemplateCacheSize(int value)
+    {
+        this.graphmapperTemplateCacheSize = value;
+    }
+
+    /**
+     * @param value the value for graphmapperPinnedDepth
+     */
+    public void setGraphmapperPinnedDepth(int value)
+    {
+        this.graphmapperPinnedDepth = value;
+    }
+
+    /**
+     * @param value the value for graphmapperTemplateCompressionMinLength
+     */
+    public void setGraphmapperTemplateCompressionMinLength(int value)
+    {
+        this.graphmapperTemplateCompressionMinLength = value;
+    }
+
+    /**
+     * @param value the value for graphmapperExactIndex
+     */
+    public void setGraphmapperExactIndex(boolean value)
+    {
+        this.graphmapperExactIndex = value;
+    }
+
+    /**
+     * @param value the value for graphmapperFileStore
+     */
+    public void setGraphmapperFileStore(URL value)
+    {
+        this.graphmapperFileStore = value;
+    }
+
     /**
      * @param value the value for resetGraph
      */
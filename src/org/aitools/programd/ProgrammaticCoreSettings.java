@@ -53,16 +53,23 @@ public class ProgrammaticCoreSettings extends CoreSettings
         setDatabasePassword("yourpassword");
         setDatabaseMinIdle(Integer.parseInt("30"));
         setDatabaseMaxActive(Integer.parseInt("70"));
+        setDatabaseStatementCacheSize(Integer.parseInt("64"));
         setMergePolicy(MergePolicy.COMBINE);
         setNoteEachMerge(Boolean.parseBoolean("true"));
         setAppendMergeSeparatorString(" ");
         setResponseTimeout(Integer.parseInt("1000"));
+        setReplyTimeout(Integer.parseInt("0"));
         setInfiniteLoopInput("INFINITE LOOP");
         setPrintStackTraceOnUncaughtExceptions(Boolean.parseBoolean("true"));
+        setAsyncThreads(Integer.parseInt("0"));
+        setAsyncPerBotLimit(Integer.parseInt("0"));
         setPulseImplementation("org.aitools.programd.util.IAmAlivePulse");
         setHeartPulseRate(Integer.parseInt("5"));
         setAIMLWatcherTimer(Integer.parseInt("2000"));
         setJavascriptInterpreterClassname("org.aitools.programd.interpreter.RhinoInterpreter");
+        setJavascriptScriptCacheSize(Integer.parseInt("100"));
+        setJavascriptInstructionLimit(Integer.parseInt("1000000"));
+        setJavascriptTimeLimit(Integer.parseInt("1000"));
         try
         {
             setSystemInterpreterDirectory(URLTools.createValidURL("..", false));
@@ -71,13 +78,35 @@ public class ProgrammaticCoreSettings extends CoreSettings
         {
             throw new UserError("Error in settings.", e);
         }
+        setSystemInterpreterPoolSize(Integer.parseInt("4"));
+        setSystemInterpreterQueueCapacity(Integer.parseInt("16"));
+        setSystemInterpreterTimeout(Integer.parseInt("10000"));
+        setGossipQueueCapacity(Integer.parseInt("1000"));
+        setGossipMaxFileSize(Integer.parseInt("10485760"));
+        setGossipSyncInterval(Integer.parseInt("1000"));
+        setChatLogDestination(ChatLogDestination.APPENDERS);
+        setChatLogFile("log/chat.xml");
+        setChatLogBufferSize(Integer.parseInt("8192"));
+        setChatLogOverflowPolicy(ChatLogOverflowPolicy.DROP);
+        setChatLogSampleRate(Integer.parseInt("10"));
+        setChatLogMaxFileSize(Integer.parseInt("10485760"));
+        setChatLogSyncInterval(Integer.parseInt("1000"));
+        setChatLogDatabaseEnabled(Boolean.parseBoolean("false"));
+        setChatLogDatabaseBatchSize(Integer.parseInt("100"));
         setCategoryLoadNotificationInterval(Integer.parseInt("1000"));
         setNoteEachLoadedFile(Boolean.parseBoolean("false"));
         setExitImmediatelyOnStartup(Boolean.parseBoolean("false"));
+        setLearnQueueCapacity(Integer.parseInt("64"));
+        setLearnWait(Integer.parseInt("0"));
         setConnectString("connect");
         setRandomStrategy(RandomStrategy.NON_REPEATING);
         setGraphmapperImplementation("org.aitools.programd.graph.MemoryGraphmapper");
-        setNodemapperImplementation("org.aitools.programd.graph.TwoOptimalMemoryNodemapper");
+        setNodemapperImplementation("org.aitools.programd.graph.AdaptiveMemoryNodemapper");
+        setGraphmapperNodeCacheSize(Integer.parseInt("10000"));
+        setGraphmapperTemplateCacheSize(Integer.parseInt("1000"));
+        setGraphmapperPinnedDepth(Integer.parseInt("2"));
+        setGraphmapperTemplateCompressionMinLength(Integer.parseInt("0"));
+        setGraphmapperExactIndex(Boolean.parseBoolean("true"));
         setResetGraph(Boolean.parseBoolean("true"));
         setUseShell(Boolean.parseBoolean("true"));
         setXmlCatalogPath("resources/catalog.xml");
@@ -0,0 +1,33 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd;
+
+/**
+ * Is told when a response requested with {@link Core#getResponseAsync(String, String, String, ResponseCallback)} is
+ * ready. The methods are called on the thread that produced the response, so they should return quickly.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public interface ResponseCallback {
+
+  /**
+   * Called with the response, once it is ready.
+   *
+   * @param response the response (<code>null</code> if the Core was not ready)
+   */
+  public void responded(String response);
+
+  /**
+   * Called instead of {@link #responded} if producing the response failed.
+   *
+   * @param error the error
+   */
+  public void failed(Throwable error);
+}
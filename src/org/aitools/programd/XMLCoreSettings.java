@@ -209,6 +209,9 @@ public class XMLCoreSettings extends CoreSettings
         // Initialize databaseMaxActive.
         setDatabaseMaxActive(getXPathNumberValue("/d:programd/d:database/d:max-active", document).intValue());
 
+        // Initialize databaseStatementCacheSize.
+        setDatabaseStatementCacheSize(getXPathNumberValue("/d:programd/d:database/d:statement-cache-size", document).intValue());
+
         // Initialize mergePolicy.
 
         String mergePolicyValue = getXPathStringValue("/d:programd/d:merge/d:policy", document);
@@ -238,12 +241,21 @@ public class XMLCoreSettings extends CoreSettings
         // Initialize responseTimeout.
         setResponseTimeout(getXPathNumberValue("/d:programd/d:exceptions/d:response-timeout", document).intValue());
 
+        // Initialize replyTimeout.
+        setReplyTimeout(getXPathNumberValue("/d:programd/d:exceptions/d:reply-timeout", document).intValue());
+
         // Initialize infiniteLoopInput.
         setInfiniteLoopInput(getXPathStringValue("/d:programd/d:exceptions/d:infinite-loop-input", document));
 
         // Initialize printStackTraceOnUncaughtExceptions.
         setPrintStackTraceOnUncaughtExceptions(Boolean.parseBoolean(getXPathStringValue("/d:programd/d:exceptions/d:on-uncaught-exceptions.print-stack-trace", document)));
 
+        // Initialize asyncThreads.
+        setAsyncThreads(getXPathNumberValue("/d:programd/d:responses/d:async.threads", document).intValue());
+
+        // Initialize asyncPerBotLimit.
+        setAsyncPerBotLimit(getXPathNumberValue("/d:programd/d:responses/d:async.per-bot-limit", document).intValue());
+
         // Initialize pulseImplementation.
         setPulseImplementation(getXPathStringValue("/d:programd/d:heart/d:pulse.implementation", document));
 
@@ -262,6 +274,15 @@ public class XMLCoreSettings extends CoreSettings
         // Initialize javascriptInterpreterClassname.
         setJavascriptInterpreterClassname(getXPathStringValue("/d:programd/d:interpreters/d:javascript/d:interpreter-classname", document));
 
+        // Initialize javascriptScriptCacheSize.
+        setJavascriptScriptCacheSize(getXPathNumberValue("/d:programd/d:interpreters/d:javascript/d:script-cache.size", document).intValue());
+
+        // Initialize javascriptInstructionLimit.
+        setJavascriptInstructionLimit(getXPathNumberValue("/d:programd/d:interpreters/d:javascript/d:instruction-limit", document).intValue());
+
+        // Initialize javascriptTimeLimit.
+        setJavascriptTimeLimit(getXPathNumberValue("/d:programd/d:interpreters/d:javascript/d:time-limit", document).intValue());
+
         // Initialize allowJavaScript.
         setAllowJavaScript(Boolean.parseBoolean(getXPathStringValue("/d:programd/d:interpreters/d:javascript/@allowed", document)));
 
@@ -278,9 +299,76 @@ public class XMLCoreSettings extends CoreSettings
         // Initialize systemInterpreterPrefix.
         setSystemInterpreterPrefix(getXPathStringValue("/d:programd/d:interpreters/d:system/d:prefix", document));
 
+        // Initialize systemInterpreterPoolSize.
+        setSystemInterpreterPoolSize(getXPathNumberValue("/d:programd/d:interpreters/d:system/d:pool.size", document).intValue());
+
+        // Initialize systemInterpreterQueueCapacity.
+        setSystemInterpreterQueueCapacity(getXPathNumberValue("/d:programd/d:interpreters/d:system/d:queue.capacity", document).intValue());
+
+        // Initialize systemInterpreterTimeout.
+        setSystemInterpreterTimeout(getXPathNumberValue("/d:programd/d:interpreters/d:system/d:timeout", document).intValue());
+
         // Initialize allowOSAccess.
         setAllowOSAccess(Boolean.parseBoolean(getXPathStringValue("/d:programd/d:interpreters/d:system/@allowed", document)));
 
+        // Initialize gossipQueueCapacity.
+        setGossipQueueCapacity(getXPathNumberValue("/d:programd/d:gossip/d:queue.capacity", document).intValue());
+
+        // Initialize gossipMaxFileSize.
+        setGossipMaxFileSize(getXPathNumberValue("/d:programd/d:gossip/d:max-file-size", document).intValue());
+
+        // Initialize gossipSyncInterval.
+        setGossipSyncInterval(getXPathNumberValue("/d:programd/d:gossip/d:sync-interval", document).intValue());
+
+        // Initialize chatLogDestination.
+
+        String chatLogDestinationValue = getXPathStringValue("/d:programd/d:chat-log/d:destination", document);
+        if (chatLogDestinationValue.equals("appenders"))
+        {
+            setChatLogDestination(ChatLogDestination.APPENDERS);
+        }
+        else if (chatLogDestinationValue.equals("file"))
+        {
+            setChatLogDestination(ChatLogDestination.FILE);
+        }
+
+        // Initialize chatLogFile.
+        setChatLogFile(getXPathStringValue("/d:programd/d:chat-log/d:file", document));
+
+        // Initialize chatLogBufferSize.
+        setChatLogBufferSize(getXPathNumberValue("/d:programd/d:chat-log/d:buffer.size", document).intValue());
+
+        // Initialize chatLogOverflowPolicy.
+
+        String chatLogOverflowPolicyValue = getXPathStringValue("/d:programd/d:chat-log/d:overflow-policy", document);
+        if (chatLogOverflowPolicyValue.equals("drop"))
+        {
+            setChatLogOverflowPolicy(ChatLogOverflowPolicy.DROP);
+        }
+        else if (chatLogOverflowPolicyValue.equals("block"))
+        {
+            setChatLogOverflowPolicy(ChatLogOverflowPolicy.BLOCK);
+        }
+        else if (chatLogOverflowPolicyValue.equals("sample"))
+        {
+            setChatLogOverflowPolicy(ChatLogOverflowPolicy.SAMPLE);
+        }
+
+        // Initialize chatLogSampleRate.
+        setChatLogSampleRate(getXPathNumberValue("/d:programd/d:chat-log/d:sample-rate", document).intValue());
+
+        // Initialize chatLogMaxFileSize.
+        setChatLogMaxFileSize(getXPathNumberValue("/d:programd/d:chat-log/d:max-file-size", document).intValue());
+
+        // Initialize chatLogSyncInterval.
+        setChatLogSyncInterval(getXPathNumberValue("/d:programd/d:chat-log/d:sync-interval", document).intValue());
+
+        // Initialize chatLogDatabaseEnabled.
+        setChatLogDatabaseEnabled(Boolean.parseBoolean(getXPathStringValue("/d:programd/d:chat-log/d:database.enabled", document)));
+
+        // Initialize chatLogDatabaseBatchSize.
+        setChatLogDatabaseBatchSize(getXPathNumberValue("/d:programd/d:chat-log/d:database.batch-size", document).intValue());
+
         // Initialize categoryLoadNotificationInterval.
         setCategoryLoadNotificationInterval(getXPathNumberValue("/d:programd/d:loading/d:category-load-notification-interval", document).intValue());
 
@@ -290,6 +378,12 @@ public class XMLCoreSettings extends CoreSettings
         // Initialize exitImmediatelyOnStartup.
         setExitImmediatelyOnStartup(Boolean.parseBoolean(getXPathStringValue("/d:programd/d:loading/d:exit-immediately-on-startup", document)));
 
+        // Initialize learnQueueCapacity.
+        setLearnQueueCapacity(getXPathNumberValue("/d:programd/d:loading/d:learn.queue.capacity", document).intValue());
+
+        // Initialize learnWait.
+        setLearnWait(getXPathNumberValue("/d:programd/d:loading/d:learn.wait", document).intValue());
+
         // Initialize connectString.
         setConnectString(getXPathStringValue("/d:programd/d:connect-string", document));
 
@@ -311,6 +405,35 @@ public class XMLCoreSettings extends CoreSettings
         // Initialize nodemapperImplementation.
         setNodemapperImplementation(getXPathStringValue("/d:programd/d:nodemapper.implementation", document));
 
+        // Initialize graphmapperNodeCacheSize.
+        setGraphmapperNodeCacheSize(getXPathNumberValue("/d:programd/d:graphmapper.node-cache.size", document).intValue());
+
+        // Initialize graphmapperTemplateCacheSize.
+        setGraphmapperTemplateCacheSize(getXPathNumberValue("/d:programd/d:graphmapper.template-cache.size", document).intValue());
+
+        // Initialize graphmapperPinnedDepth.
+        setGraphmapperPinnedDepth(getXPathNumberValue("/d:programd/d:graphmapper.pinned-depth", document).intValue());
+
+        // Initialize graphmapperTemplateCompressionMinLength.
+        setGraphmapperTemplateCompressionMinLength(getXPathNumberValue("/d:programd/d:graphmapper.template-compression.min-length", document).intValue());
+
+        // Initialize graphmapperExactIndex.
+        setGraphmapperExactIndex(Boolean.parseBoolean(getXPathStringValue("/d:programd/d:graphmapper.exact-index", document)));
+
+        // Initialize graphmapperFileStore.
+        try
+        {
+            String graphmapperFileStore = getXPathStringValue("/d:programd/d:graphmapper.file-store", document);
+            if (graphmapperFileStore.length() > 0)
+            {
+                setGraphmapperFileStore(URLTools.createValidURL(graphmapperFileStore, this._path, false));
+            }
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new UserError("Error in settings.", e);
+        }
+
         // Initialize resetGraph.
         setResetGraph(Boolean.parseBoolean(getXPathStringValue("/d:programd/d:reset-graph", document)));
 
@@ -0,0 +1,172 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.configurations;
+
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import org.aitools.programd.Core;
+import org.aitools.programd.interfaces.Console;
+import org.aitools.programd.server.http.ChatServer;
+import org.aitools.util.resource.URLTools;
+
+/**
+ * A <code>SimpleHttpServer</code> gives you a running {@link org.aitools.programd.Core Core} with a regular
+ * {@link org.aitools.programd.interfaces.Console Console} and an embedded {@link ChatServer} through which users can
+ * talk to the bots over HTTP, without deploying the web application into a servlet container.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class SimpleHttpServer {
+
+  /** The default port on which to listen. */
+  private static final int DEFAULT_PORT = 2001;
+
+  /** The time (in seconds) to wait for requests in progress when shutting down. */
+  private static final int STOP_DELAY = 2;
+
+  /**
+   * Starts up the SimpleHttpServer configuration. Required arguments are:
+   * <ul>
+   * <li><code>-c, --core-properties     the path to the core configuration (XML properties) file</code></li>
+   * </ul>
+   * Optional arguments are:
+   * <ul>
+   * <li><code>-p, --port                the port on which to listen (default 2001)</code></li>
+   * <li><code>-t, --threads             the number of worker threads (default twice the number of processors)</code></li>
+   * <li><code>-z, --gzip                compress replies for clients that accept it</code></li>
+   * </ul>
+   * 
+   * @param argv
+   */
+  public static void main(String[] argv) {
+    String corePropertiesPath = null;
+    int port = DEFAULT_PORT;
+    int threads = 2 * Runtime.getRuntime().availableProcessors();
+    boolean gzip = false;
+
+    int opt;
+    LongOpt[] longopts = new LongOpt[4];
+    longopts[0] = new LongOpt("core-properties", LongOpt.REQUIRED_ARGUMENT, null, 'c');
+    longopts[1] = new LongOpt("port", LongOpt.REQUIRED_ARGUMENT, null, 'p');
+    longopts[2] = new LongOpt("threads", LongOpt.REQUIRED_ARGUMENT, null, 't');
+    longopts[3] = new LongOpt("gzip", LongOpt.NO_ARGUMENT, null, 'z');
+
+    Getopt getopt = new Getopt("simple-http-server", argv, ":c:p:t:z", longopts);
+
+    try {
+      while ((opt = getopt.getopt()) != -1) {
+        switch (opt) {
+          case 'c':
+            corePropertiesPath = getopt.getOptarg();
+            break;
+          case 'p':
+            port = Integer.parseInt(getopt.getOptarg());
+            break;
+          case 't':
+            threads = Integer.parseInt(getopt.getOptarg());
+            break;
+          case 'z':
+            gzip = true;
+            break;
+        }
+      }
+    }
+    catch (NumberFormatException e) {
+      System.err.println("The port and number of threads must be numbers.");
+      usage();
+      System.exit(1);
+    }
+
+    if (corePropertiesPath == null) {
+      System.err.println("You must specify a core properties path.");
+      usage();
+      System.exit(1);
+    }
+
+    final SimpleHttpServer server;
+    try {
+      server = new SimpleHttpServer(corePropertiesPath, port, threads, gzip);
+    }
+    catch (FileNotFoundException e) {
+      System.err.println(String.format("Core properties file \"%s\" not found.", corePropertiesPath));
+      return;
+    }
+    catch (IOException e) {
+      System.err.println(String.format("Could not listen on port %d: %s", Integer.valueOf(port), e.getMessage()));
+      System.exit(1);
+      return;
+    }
+    // Add a shutdown hook so the server will stop and the Core will be properly shut down if the system exits.
+    Runtime.getRuntime().addShutdownHook(new Thread("HTTP Server Shutdown Thread") {
+      @Override
+      public void run() {
+        server.shutdown();
+      }
+    });
+    server.run();
+  }
+
+  protected static void usage() {
+    System.out.println("Usage: simple-http-server -c <CORE_CONFIG> [-p <PORT>] [-t <THREADS>] [-z]");
+    System.out.println("Start up Program D with an embedded HTTP server using the specified config file.");
+    System.out.println();
+    System.out.println("  -c, --core-properties     the path to the core configuration (XML properties) file");
+    System.out.println("  -p, --port                the port on which to listen (default 2001)");
+    System.out.println("  -t, --threads             the number of worker threads (default twice the number of "
+        + "processors)");
+    System.out.println("  -z, --gzip                compress replies for clients that accept it");
+    System.out.println();
+    System.out.println("Report bugs to <programd@aitools.org>");
+  }
+
+  /** The Core to which this server will be attached. */
+  private Core core;
+
+  /** The console. */
+  private Console console;
+
+  /** The HTTP server. */
+  private ChatServer server;
+
+  protected SimpleHttpServer(String corePropertiesPath, int port, int threads, boolean gzip)
+      throws FileNotFoundException, IOException {
+    URL baseURL = URLTools.createValidURL(System.getProperty("user.dir"));
+    this.console = new Console();
+    this.core = new Core(baseURL, URLTools.createValidURL(corePropertiesPath));
+    this.console.attachTo(this.core);
+    this.server = new ChatServer(this.core, new InetSocketAddress(port), threads, gzip);
+  }
+
+  /**
+   * Starts the HTTP server.
+   */
+  public void run() {
+    this.server.start();
+    this.core.getLogger().info(
+        String.format("Listening for chat requests at http://%s:%d/chat and /chat.json.", this.core.getHostname(),
+            Integer.valueOf(this.server.getAddress().getPort())));
+  }
+
+  /**
+   * Stops the HTTP server and shuts down the Core (if that has not been done already).
+   */
+  public void shutdown() {
+    this.server.stop(STOP_DELAY);
+    if (this.core.getStatus() != Core.Status.SHUT_DOWN) {
+      this.core.shutdown();
+    }
+  }
+}
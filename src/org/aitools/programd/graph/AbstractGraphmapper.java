@@ -16,6 +16,7 @@ import java.io.PrintWriter;
 import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.aitools.programd.Bot;
@@ -23,6 +24,8 @@ import org.aitools.programd.Core;
 import org.aitools.programd.CoreSettings;
 import org.aitools.programd.parser.AIMLReader;
 import org.aitools.programd.processor.aiml.RandomProcessor;
+import org.aitools.programd.util.Deadline;
+import org.aitools.programd.util.NoMatchException;
 import org.aitools.util.Text;
 import org.aitools.util.resource.Filesystem;
 import org.aitools.util.resource.URLTools;
@@ -89,6 +92,9 @@ abstract public class AbstractGraphmapper implements Graphmapper {
   /** The response timeout. */
   protected int _responseTimeout;
 
+  /** Whether the graph has been frozen against changes. */
+  private volatile boolean _frozen;
+
   // Constants
 
   /** A that marker. */
@@ -138,18 +144,27 @@ abstract public class AbstractGraphmapper implements Graphmapper {
    *      java.lang.String, org.aitools.programd.Bot, java.net.URL)
    */
   @Override
-  @SuppressWarnings("boxing")
   public void addCategory(String pattern, String that, String topic, String template, Bot bot, URL source) {
+    if (this.refuseIfFrozen("adding a category")) {
+      return;
+    }
     // Make sure the path components are right.
     String _pattern = pattern == null ? ASTERISK : pattern;
     String _that = that == null ? ASTERISK : that;
     String _topic = topic == null ? ASTERISK : topic;
 
-    // Report on loaded categories.
+    this.reportProgress();
+    this.add(_pattern, _that, _topic, template, bot, source);
+  }
+
+  /**
+   * Reports on the number of categories loaded so far, once every {@link #_categoryLoadNotifyInterval} categories.
+   */
+  @SuppressWarnings("boxing")
+  protected void reportProgress() {
     if (this._totalCategories % this._categoryLoadNotifyInterval == 0 && this._totalCategories > 0) {
       this._logger.info(String.format("%,d categories loaded so far.", this._totalCategories));
     }
-    this.add(_pattern, _that, _topic, template, bot, source);
   }
 
   /**
@@ -261,12 +276,12 @@ abstract public class AbstractGraphmapper implements Graphmapper {
         Element newListItem = new Element(RandomProcessor.LI, this._aimlNamespaceURI);
         newListItem.addContent(newContent);
         firstElement.addContent(newListItem);
+        return new XMLOutputter(this._xmlFormat).outputString(existingDoc);
       }
-      return new XMLOutputter(this._xmlFormat).outputString(existingDoc);
     }
     Element listItemForExisting = new Element(RandomProcessor.LI, this._aimlNamespaceURI);
-    existingRoot.removeContent();
-    listItemForExisting.addContent(existingContent);
+    // (The content list is live, so take what removeContent() hands back rather than the emptied list.)
+    listItemForExisting.addContent(existingRoot.removeContent());
 
     Element listItemForNew = new Element(RandomProcessor.LI, this._aimlNamespaceURI);
     listItemForNew.addContent(newContent);
@@ -336,21 +351,50 @@ abstract public class AbstractGraphmapper implements Graphmapper {
   protected void doLoad(URL path, String botid) {
 
     this.beforeLoad(path, botid);
-    AIMLReader handler = new AIMLReader(this, path, this._core.getBot(botid));
-    XMLReader reader = SAX.getReader(handler, this._logger, this._core.getSettings().getXmlCatalogPath());
-    try {
-      reader.parse(path.toExternalForm());
+    if (this.read(path, botid, this)) {
       this.associateBotIDWithFilename(botid, path);
     }
+    this.afterLoad(path, botid);
+  }
+
+  /**
+   * Adds the categories of a staged load to the graph, as {@link #doLoad(URL, String)} would have if it had read them
+   * itself.
+   * 
+   * @param staged the staged load
+   */
+  protected void doLoad(StagedLoad staged) {
+    URL path = staged.getPath();
+    String botid = staged.getBotID();
+    this.beforeLoad(path, botid);
+    staged.replay(this);
+    this.associateBotIDWithFilename(botid, path);
+    this.afterLoad(path, botid);
+  }
+
+  /**
+   * Reads the given file, delivering its categories to the given handler.
+   * 
+   * @param path the file to read
+   * @param botid the bot for which it is being read
+   * @param handler the handler to receive the categories
+   * @return whether the file was read without error
+   */
+  protected boolean read(URL path, String botid, CategoryHandler handler) {
+    AIMLReader reader = new AIMLReader(handler, path, this._core.getBot(botid));
+    XMLReader parser = SAX.getReader(reader, this._logger, this._core.getSettings().getXmlCatalogPath());
+    try {
+      parser.parse(path.toExternalForm());
+      return true;
+    }
     catch (IOException e) {
       this._logger.warn(String.format("Error reading \"%s\": %s", URLTools.unescape(path), Errors.describe(e)), e);
     }
     catch (SAXException e) {
       this._logger.warn(String.format("Error reading \"%s\": %s", URLTools.unescape(path), Errors.describe(e)));
     }
-    this.afterLoad(path, botid);
+    return false;
   }
-  
 
   /**
    * @see org.aitools.programd.graph.Graphmapper#beforeLoad(java.net.URL, java.lang.String)
@@ -393,6 +437,77 @@ abstract public class AbstractGraphmapper implements Graphmapper {
     return this._duplicateCategories;
   }
 
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#getNodeCount()
+   */
+  @Override
+  public int getNodeCount() {
+    return -1;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#getCacheHitRatio()
+   */
+  @Override
+  public double getCacheHitRatio() {
+    return 0;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#getCategoryHits(org.aitools.programd.Bot)
+   */
+  @Override
+  public List<CategoryHits> getCategoryHits(Bot bot) {
+    return Collections.emptyList();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#resetCategoryHits()
+   */
+  @Override
+  public void resetCategoryHits() {
+    // No hits counted here.
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#dropCaches()
+   */
+  @Override
+  public void dropCaches() {
+    // Nothing cached here.
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#isFrozen()
+   */
+  @Override
+  public boolean isFrozen() {
+    return this._frozen;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#setFrozen(boolean)
+   */
+  @Override
+  public void setFrozen(boolean frozen) {
+    this._frozen = frozen;
+    this._logger.info(frozen ? "The graph is frozen." : "The graph is no longer frozen.");
+  }
+
+  /**
+   * Refuses a change to the graph, with a warning, if it is frozen.
+   * 
+   * @param change a description of the change (such as &quot;unloading x.aiml&quot;)
+   * @return whether the change must not be made
+   */
+  protected boolean refuseIfFrozen(String change) {
+    if (this._frozen) {
+      this._logger.warn(String.format("The graph is frozen; not %s.", change));
+      return true;
+    }
+    return false;
+  }
+
   /**
    * Indicates whether the given filename is already loaded for any bot at all.
    * 
@@ -411,11 +526,13 @@ abstract public class AbstractGraphmapper implements Graphmapper {
   abstract protected boolean isAlreadyLoadedForBot(URL filename, String botid);
 
   /**
-   * @see org.aitools.programd.graph.Graphmapper#load(java.net.URL, java.lang.String)
+   * Expands a path that may contain wildcards into the list of files it names.
+   * 
+   * @param path the path, possibly containing wildcards
+   * @return the files named by the path
    */
-  @Override
-  public void load(URL path, String botid) {
-    // Handle paths with wildcards that need to be expanded.
+  protected List<URL> expand(URL path) {
+    List<URL> paths = new ArrayList<URL>();
     if (path.getProtocol().equals(Filesystem.FILE)) {
       String spec = path.getFile();
       if (spec.indexOf('*') != -1) {
@@ -429,13 +546,48 @@ abstract public class AbstractGraphmapper implements Graphmapper {
         }
         if (files != null) {
           for (File file : files) {
-            this.load(URLTools.contextualize(URLTools.getParent(path), file.getAbsolutePath()), botid);
+            paths.add(URLTools.contextualize(URLTools.getParent(path), file.getAbsolutePath()));
           }
         }
-        return;
+        return paths;
       }
     }
+    paths.add(path);
+    return paths;
+  }
+
+  /**
+   * Matches with no deadline but the response timeout.
+   * 
+   * @see org.aitools.programd.graph.Graphmapper#match(java.lang.String, java.lang.String, java.lang.String,
+   *      java.lang.String)
+   */
+  @Override
+  public Match match(String input, String that, String topic, String botid) throws NoMatchException {
+    return this.match(input, that, topic, botid, Deadline.NONE);
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#load(java.net.URL, java.lang.String)
+   */
+  @Override
+  public void load(URL path, String botid) {
+    if (this.refuseIfFrozen(String.format("loading \"%s\"", URLTools.unescape(path)))) {
+      return;
+    }
+    for (URL file : this.expand(path)) {
+      this.load(file, botid, null);
+    }
+  }
 
+  /**
+   * Loads a single file, either by reading it now or from the given staged load.
+   * 
+   * @param path the file to load
+   * @param botid the bot for which to load it
+   * @param staged the file's categories, already read (null to read the file now)
+   */
+  protected void load(URL path, String botid, StagedLoad staged) {
     Bot bot = this._core.getBot(botid);
 
     // Let the Graphmapper use a shortcut if possible.
@@ -445,7 +597,7 @@ abstract public class AbstractGraphmapper implements Graphmapper {
           this._logger.debug(String.format("Reloading \"%s\" for \"%s\" (is that what you wanted?).", path, botid));
         }
         this.unload(path, bot);
-        this.doLoad(path, botid);
+        this.doLoad(path, botid, staged);
       }
       else {
         if (this._logger.isDebugEnabled()) {
@@ -458,7 +610,7 @@ abstract public class AbstractGraphmapper implements Graphmapper {
       if (this._noteEachLoad) {
         this._logger.info(String.format("Loading %s....", URLTools.unescape(path)));
       }
-      this.doLoad(path, botid);
+      this.doLoad(path, botid, staged);
       // Add it to the AIMLWatcher, if active.
       if (this._useAIMLWatcher) {
         this._core.getAIMLWatcher().addWatchFile(path);
@@ -466,6 +618,47 @@ abstract public class AbstractGraphmapper implements Graphmapper {
     }
   }
 
+  private void doLoad(URL path, String botid, StagedLoad staged) {
+    if (staged == null) {
+      this.doLoad(path, botid);
+    }
+    else {
+      this.doLoad(staged);
+    }
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#stage(java.net.URL, java.lang.String)
+   */
+  @Override
+  public List<StagedLoad> stage(URL path, String botid) {
+    List<StagedLoad> result = new ArrayList<StagedLoad>();
+    for (URL file : this.expand(path)) {
+      StagedLoad staged = new StagedLoad(file, botid);
+      if (this.read(file, botid, staged)) {
+        staged.setComplete();
+      }
+      result.add(staged);
+    }
+    return result;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#publish(org.aitools.programd.graph.StagedLoad)
+   */
+  @Override
+  public void publish(StagedLoad staged) {
+    if (this.refuseIfFrozen(String.format("loading \"%s\"", URLTools.unescape(staged.getPath())))) {
+      return;
+    }
+    if (!staged.isComplete()) {
+      this._logger.warn(String.format("Not loading \"%s\", since it could not be read completely.",
+          URLTools.unescape(staged.getPath())));
+      return;
+    }
+    this.load(staged.getPath(), staged.getBotID(), staged);
+  }
+
   abstract protected void print(PrintWriter out);
 
   /**
@@ -10,6 +10,7 @@
 package org.aitools.programd.graph;
 
 import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * This is an abstract memory-based <code>Nodemapper</code> containing all the things that are common to the various
@@ -25,28 +26,133 @@ abstract public class AbstractNodemaster implements Nodemapper {
   protected LinkedHashMap<String, Object> hidden;
 
   /**
-   * The minimum number of words needed to reach a leaf node from here. Defaults to zero.
+   * The minimum number of words needed to reach a leaf node from here ({@link Integer#MAX_VALUE} until a path to a leaf
+   * node has been added below).
    */
-  protected int _height = 0;
+  protected int _height = Integer.MAX_VALUE;
+
+  /**
+   * The maximum number of words that can reach a leaf node from here ({@link Integer#MAX_VALUE} if there is a wildcard
+   * below, which could absorb any number).
+   */
+  protected int _maxHeight;
+
+  /**
+   * A Bloom filter (see {@link #getWordBits(String)}) of the words that every path from here to a leaf node matches
+   * literally. The botids that lead to the leaf nodes themselves are left out.
+   */
+  protected long _requiredWords = -1L;
 
   /** The parent of this Nodemaster. */
   protected Nodemapper _parent;
 
   /**
-   * Sets the <code>height</code> of this <code>AbstractNodemaster</code> to <code>height</code>, and calls
-   * <code>fillInHeight()</code> on its parent (if not null) with a height <code>height + 1</code>.
+   * The bots that have categories at or below this node, each as a bit (see {@link MemoryGraphmapper#getBotBit}).
+   */
+  protected long _bots;
+
+  /** The number of times the category at this (leaf) node has been matched. */
+  protected volatile long _hits;
+
+  /** Counts hits without a lock, and without an object per node. */
+  private static final AtomicLongFieldUpdater<AbstractNodemaster> HITS = AtomicLongFieldUpdater.newUpdater(
+      AbstractNodemaster.class, "_hits");
+
+  /**
+   * Takes into account, in the summaries this node keeps of the paths below it, a (new) path to a leaf node through the
+   * given child. Adding paths only ever lowers the minimum height, raises the maximum height, and leaves fewer required
+   * words, so this can be done without looking at the other children; removing paths leaves the summaries looser than
+   * they could be, but still true.
    * 
-   * @param height the height for this node
+   * @param key the key under which the child is mapped
+   * @param child the child
    */
-  protected void fillInHeight(int height) {
-    if (this._height > height) {
-      this._height = height;
+  public void include(String key, Nodemapper child) {
+    if (!(child instanceof AbstractNodemaster)) {
+      return;
+    }
+    AbstractNodemaster node = (AbstractNodemaster) child;
+    if (node._height == Integer.MAX_VALUE) {
+      // No path to a leaf node through it yet.
+      return;
     }
-    if (this._parent != null) {
-      ((AbstractNodemaster) this._parent).fillInHeight(height + 1);
+    boolean wildcard = key.equals(AbstractGraphmapper.ASTERISK) || key.equals(AbstractGraphmapper.UNDERSCORE);
+    this._height = Math.min(this._height, node._height + 1);
+    this._maxHeight = Math.max(this._maxHeight, wildcard || node._maxHeight == Integer.MAX_VALUE ? Integer.MAX_VALUE
+        : node._maxHeight + 1);
+    if (node._height == 0) {
+      // The key is a botid (and a leaf node may be shared by several bots).
+      this._requiredWords &= node._requiredWords;
+    }
+    else {
+      this._requiredWords &= (wildcard ? 0 : getWordBits(key)) | node._requiredWords;
     }
   }
 
+  /**
+   * @return the maximum number of words that can reach a leaf node from here ({@link Integer#MAX_VALUE} if there is a
+   *         wildcard below)
+   */
+  public int getMaxHeight() {
+    return this._maxHeight;
+  }
+
+  /**
+   * @return a Bloom filter of the words that every path from here to a leaf node matches literally
+   */
+  public long getRequiredWords() {
+    return this._requiredWords;
+  }
+
+  /**
+   * Gives the bits standing for a word in the Bloom filters of words kept by the nodes: two of 64, from the hash of the
+   * word in upper case. A set of words includes another if its filter has all the bits of the other's.
+   * 
+   * @param word
+   * @return the bits for the word
+   */
+  public static long getWordBits(String word) {
+    int hash = word.toUpperCase().hashCode();
+    return (1L << (hash & 63)) | (1L << ((hash >>> 6) & 63));
+  }
+
+  /**
+   * Rebuilds whatever this node uses to store its mappings, so that it takes no more room than its current mappings
+   * need (a {@link LinkedHashMap} never shrinks by itself). Called after mappings have been removed.
+   */
+  public void compact() {
+    if (this.hidden != null) {
+      this.hidden = new LinkedHashMap<String, Object>(this.hidden);
+    }
+  }
+
+  /**
+   * Adds the given bots to those of this node, and to those of as many of its ancestors as do not have them yet.
+   * 
+   * @param bots the bits of the bots to add
+   */
+  public void addBots(long bots) {
+    this._bots |= bots;
+    for (Nodemapper ancestor = this._parent; ancestor instanceof AbstractNodemaster
+        && (((AbstractNodemaster) ancestor)._bots & bots) != bots; ancestor = ancestor.getParent()) {
+      ((AbstractNodemaster) ancestor)._bots |= bots;
+    }
+  }
+
+  /**
+   * @return the bits of the bots that have categories at or below this node
+   */
+  public long getBots() {
+    return this._bots;
+  }
+
+  /**
+   * @param bots the bits of the bots that have categories at or below this node
+   */
+  public void setBots(long bots) {
+    this._bots = bots;
+  }
+
   /**
    * @see org.aitools.programd.graph.Nodemapper#getHeight()
    */
@@ -76,6 +182,29 @@ abstract public class AbstractNodemaster implements Nodemapper {
    */
   @Override
   public void setTop() {
-    this.fillInHeight(0);
+    this._height = 0;
+    this._maxHeight = 0;
+    this._requiredWords = 0;
+  }
+
+  /**
+   * Counts a match of the category at this (leaf) node.
+   */
+  public void countHit() {
+    HITS.incrementAndGet(this);
+  }
+
+  /**
+   * @return the number of times the category at this (leaf) node has been matched
+   */
+  public long getHits() {
+    return this._hits;
+  }
+
+  /**
+   * Forgets the matches counted for the category at this (leaf) node.
+   */
+  public void resetHits() {
+    this._hits = 0;
   }
 }
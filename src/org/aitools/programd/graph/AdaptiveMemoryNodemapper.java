@@ -0,0 +1,456 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A {@link Nodemapper} that picks its representation by its own size, rather than using one for every node:
+ * <ul>
+ * <li>up to two mappings are kept in fields (like {@link TwoOptimalMemoryNodemapper});</li>
+ * <li>up to {@link #SORTED_MAX} mappings are kept in an array of key/value pairs sorted by key, and found by binary
+ * search;</li>
+ * <li>more are kept in an open-addressing hash table of key/value pairs (with linear probing, at most half full);
+ * and</li>
+ * <li>from {@link #DENSE_MIN} mappings (the root, and common first words), the table is allowed to be three-quarters
+ * full, and keeps the hash of each key alongside, so that probing compares ints rather than visiting strings.</li>
+ * </ul>
+ * A node moves to a larger representation as it grows. Removing mappings does not change the representation;
+ * {@link #compact()} (which {@link MemoryGraphmapper} calls on the nodes an unload has touched) picks the best one again
+ * and trims the table to fit.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class AdaptiveMemoryNodemapper extends AbstractNodemaster {
+
+  private static final byte INLINE = 0;
+
+  private static final byte SORTED = 1;
+
+  private static final byte HASHED = 2;
+
+  private static final byte DENSE = 3;
+
+  /** The most mappings kept in fields. */
+  private static final int INLINE_MAX = 2;
+
+  /** The most mappings kept in a sorted array. */
+  protected static final int SORTED_MAX = 16;
+
+  /** The fewest mappings kept in a dense table. */
+  protected static final int DENSE_MIN = 1024;
+
+  protected byte mode = INLINE;
+
+  protected int size = 0;
+
+  protected String key_0;
+
+  protected String key_1;
+
+  /**
+   * The first value, or (when the mappings are in a table) the table itself, as an <code>Object[]</code> of
+   * alternating keys and values. (This is ugly, but saves a field in each of very many nodes.)
+   */
+  protected Object value_0;
+
+  /** The second value, or (in a dense table) the hashes of the keys, as an <code>int[]</code>. */
+  protected Object value_1;
+
+  private static int hash(String key) {
+    int hash = key.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  private static byte modeFor(int size) {
+    if (size <= INLINE_MAX) {
+      return INLINE;
+    }
+    if (size <= SORTED_MAX) {
+      return SORTED;
+    }
+    if (size < DENSE_MIN) {
+      return HASHED;
+    }
+    return DENSE;
+  }
+
+  /**
+   * @return the number of pairs a hash table in the given mode needs in order to hold the given number of mappings
+   */
+  private static int capacityFor(byte mode, int size) {
+    int capacity = SORTED_MAX * 2;
+    while (mode == HASHED ? capacity < size * 2 : capacity * 3 < size * 4) {
+      capacity *= 2;
+    }
+    return capacity;
+  }
+
+  /**
+   * Finds a key in the table (not used for mappings kept in fields).
+   *
+   * @param key an upper-case key
+   * @return the index of the key's pair in the table; or, if the key is not there, <code>-(index + 1)</code>, where
+   *         <code>index</code> is where it should go
+   */
+  private int indexOf(String key) {
+    Object[] table = (Object[]) this.value_0;
+    if (this.mode == SORTED) {
+      int low = 0;
+      int high = this.size - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        int comparison = ((String) table[middle * 2]).compareTo(key);
+        if (comparison < 0) {
+          low = middle + 1;
+        }
+        else if (comparison > 0) {
+          high = middle - 1;
+        }
+        else {
+          return middle;
+        }
+      }
+      return -(low + 1);
+    }
+    int[] hashes = this.mode == DENSE ? (int[]) this.value_1 : null;
+    int mask = table.length / 2 - 1;
+    int hash = hash(key);
+    for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+      Object stored = table[slot * 2];
+      if (stored == null) {
+        return -(slot + 1);
+      }
+      if ((hashes == null || hashes[slot] == hash) && key.equals(stored)) {
+        return slot;
+      }
+    }
+  }
+
+  /**
+   * Adds a mapping for a key that is not already here, where there is known to be room for it.
+   */
+  private void insert(String key, Object value) {
+    if (this.mode == INLINE) {
+      if (this.size == 0) {
+        this.key_0 = key;
+        this.value_0 = value;
+      }
+      else {
+        this.key_1 = key;
+        this.value_1 = value;
+      }
+    }
+    else {
+      Object[] table = (Object[]) this.value_0;
+      int index = -this.indexOf(key) - 1;
+      if (this.mode == SORTED) {
+        System.arraycopy(table, index * 2, table, index * 2 + 2, (this.size - index) * 2);
+      }
+      else if (this.mode == DENSE) {
+        ((int[]) this.value_1)[index] = hash(key);
+      }
+      table[index * 2] = key;
+      table[index * 2 + 1] = value;
+    }
+    this.size++;
+  }
+
+  /**
+   * Copies the keys and values, in order, into the given arrays (which must be large enough).
+   */
+  private void copyTo(String[] keys, Object[] values) {
+    if (this.mode == INLINE) {
+      if (this.size > 0) {
+        keys[0] = this.key_0;
+        values[0] = this.value_0;
+      }
+      if (this.size > 1) {
+        keys[1] = this.key_1;
+        values[1] = this.value_1;
+      }
+      return;
+    }
+    Object[] table = (Object[]) this.value_0;
+    int count = 0;
+    for (int index = 0; index < table.length && count < this.size; index += 2) {
+      if (table[index] != null) {
+        keys[count] = (String) table[index];
+        values[count] = table[index + 1];
+        count++;
+      }
+    }
+  }
+
+  /**
+   * Moves all the mappings into a new representation.
+   *
+   * @param newMode the new representation
+   * @param capacity the number of pairs for a table
+   */
+  private void reshape(byte newMode, int capacity) {
+    int count = this.size;
+    String[] keys = new String[count];
+    Object[] values = new Object[count];
+    this.copyTo(keys, values);
+    this.mode = newMode;
+    this.size = 0;
+    this.key_0 = null;
+    this.key_1 = null;
+    this.value_0 = newMode == INLINE ? null : new Object[capacity * 2];
+    this.value_1 = newMode == DENSE ? new int[capacity] : null;
+    for (int index = 0; index < count; index++) {
+      this.insert(keys[index], values[index]);
+    }
+  }
+
+  /**
+   * Makes sure there is room for one more mapping, moving to a larger representation if necessary.
+   */
+  private void grow() {
+    int needed = this.size + 1;
+    switch (this.mode) {
+      case INLINE:
+        if (needed > INLINE_MAX) {
+          this.reshape(SORTED, 4);
+        }
+        break;
+      case SORTED:
+        int pairs = ((Object[]) this.value_0).length / 2;
+        if (needed > pairs) {
+          if (needed <= SORTED_MAX) {
+            this.reshape(SORTED, Math.min(pairs * 2, SORTED_MAX));
+          }
+          else {
+            this.reshape(HASHED, capacityFor(HASHED, needed));
+          }
+        }
+        break;
+      case HASHED:
+        if (needed * 2 > ((Object[]) this.value_0).length / 2) {
+          byte newMode = modeFor(needed);
+          this.reshape(newMode, capacityFor(newMode, needed));
+        }
+        break;
+      case DENSE:
+        if (needed * 4 > ((Object[]) this.value_0).length / 2 * 3) {
+          this.reshape(DENSE, capacityFor(DENSE, needed));
+        }
+        break;
+    }
+  }
+
+  /**
+   * Picks the best representation for the current number of mappings, and trims any table to fit.
+   *
+   * @see org.aitools.programd.graph.AbstractNodemaster#compact()
+   */
+  @Override
+  public void compact() {
+    byte best = modeFor(this.size);
+    if (best == INLINE) {
+      if (this.mode != INLINE) {
+        this.reshape(INLINE, 0);
+      }
+      return;
+    }
+    int capacity = best == SORTED ? this.size : capacityFor(best, this.size);
+    if (this.mode != best || ((Object[]) this.value_0).length != capacity * 2) {
+      this.reshape(best, capacity);
+    }
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Nodemapper#containsKey(java.lang.String)
+   */
+  @Override
+  public boolean containsKey(String key) {
+    if (this.size == 0) {
+      return false;
+    }
+    String upper = key.toUpperCase();
+    if (this.mode == INLINE) {
+      return upper.equals(this.key_0) || upper.equals(this.key_1);
+    }
+    return this.indexOf(upper) >= 0;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Nodemapper#get(java.lang.String)
+   */
+  @Override
+  public Object get(String key) {
+    if (this.size == 0) {
+      return null;
+    }
+    String upper = key.toUpperCase();
+    if (this.mode == INLINE) {
+      if (upper.equals(this.key_0)) {
+        return this.value_0;
+      }
+      if (upper.equals(this.key_1)) {
+        return this.value_1;
+      }
+      // (otherwise...)
+      return null;
+    }
+    int index = this.indexOf(upper);
+    return index < 0 ? null : ((Object[]) this.value_0)[index * 2 + 1];
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Nodemapper#getAverageSize()
+   */
+  @Override
+  public double getAverageSize() {
+    String[] keys = new String[this.size];
+    Object[] values = new Object[this.size];
+    this.copyTo(keys, values);
+    double total = 0d;
+    for (Object object : values) {
+      if (object instanceof AbstractNodemaster) {
+        total += ((AbstractNodemaster) object).getAverageSize();
+      }
+    }
+    if (this._parent != null) {
+      return (this.size + total / this.size) / 2d;
+    }
+    // otherwise...
+    return total / this.size;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Nodemapper#keySet()
+   */
+  @Override
+  public Set<String> keySet() {
+    String[] keys = new String[this.size];
+    this.copyTo(keys, new Object[this.size]);
+    Set<String> result = new LinkedHashSet<String>(this.size * 2);
+    for (String key : keys) {
+      result.add(key);
+    }
+    return result;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Nodemapper#put(java.lang.String, java.lang.Object)
+   */
+  @Override
+  public Object put(String key, Object value) {
+    String upper = key.toUpperCase().intern();
+    Object stored = value instanceof String ? ((String) value).intern() : value;
+    if (this.mode == INLINE) {
+      if (this.size > 0 && upper.equals(this.key_0)) {
+        this.value_0 = stored;
+        return stored;
+      }
+      if (this.size > 1 && upper.equals(this.key_1)) {
+        this.value_1 = stored;
+        return stored;
+      }
+    }
+    else {
+      int index = this.indexOf(upper);
+      if (index >= 0) {
+        ((Object[]) this.value_0)[index * 2 + 1] = stored;
+        return stored;
+      }
+    }
+    this.grow();
+    this.insert(upper, stored);
+    return stored;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Nodemapper#remove(java.lang.Object)
+   */
+  @Override
+  public void remove(Object value) {
+    if (this.mode == INLINE) {
+      if (this.size > 0 && value.equals(this.value_0)) {
+        this.key_0 = this.key_1;
+        this.value_0 = this.value_1;
+      }
+      else if (this.size < 2 || !value.equals(this.value_1)) {
+        this.notFound(value);
+        return;
+      }
+      this.key_1 = null;
+      this.value_1 = null;
+      this.size--;
+      return;
+    }
+    Object[] table = (Object[]) this.value_0;
+    int found = -1;
+    for (int index = 0; index < table.length; index += 2) {
+      if (table[index] != null && value.equals(table[index + 1])) {
+        found = index / 2;
+        break;
+      }
+    }
+    if (found < 0) {
+      this.notFound(value);
+      return;
+    }
+    if (this.mode == SORTED) {
+      System.arraycopy(table, found * 2 + 2, table, found * 2, (this.size - found - 1) * 2);
+      table[this.size * 2 - 2] = null;
+      table[this.size * 2 - 1] = null;
+    }
+    else {
+      this.removeSlot(table, found);
+    }
+    this.size--;
+  }
+
+  /**
+   * Empties a slot of the hash table, moving back any later entries in its probe sequence that would otherwise no
+   * longer be found.
+   */
+  private void removeSlot(Object[] table, int slot) {
+    int[] hashes = this.mode == DENSE ? (int[]) this.value_1 : null;
+    int mask = table.length / 2 - 1;
+    int hole = slot;
+    table[hole * 2] = null;
+    table[hole * 2 + 1] = null;
+    for (int next = (hole + 1) & mask; table[next * 2] != null; next = (next + 1) & mask) {
+      int hash = hashes == null ? hash((String) table[next * 2]) : hashes[next];
+      int home = hash & mask;
+      // The entry may move into the hole if the hole lies between its home slot and where it is now.
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        table[hole * 2] = table[next * 2];
+        table[hole * 2 + 1] = table[next * 2 + 1];
+        if (hashes != null) {
+          hashes[hole] = hash;
+        }
+        table[next * 2] = null;
+        table[next * 2 + 1] = null;
+        hole = next;
+      }
+    }
+  }
+
+  private void notFound(Object value) {
+    Logger.getLogger("programd.graphmaster").error(
+        String.format("Key was not found for value when trying to remove \"%s\".", value));
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Nodemapper#size()
+   */
+  @Override
+  public int size() {
+    return this.size;
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.util.resource.Filesystem;
+import org.aitools.util.resource.URLTools;
+import org.aitools.util.runtime.DaemonThreadFactory;
+import org.apache.log4j.Logger;
+
+/**
+ * Loads the files named by <code>&lt;learn/&gt;</code> elements off the request thread. Each file is read into a
+ * {@link StagedLoad} by a background thread, and then published to the graph while holding the Core's lock (which is
+ * also held for the whole of every reply), so that no reply ever sees a half-loaded file. A learn of a file that is
+ * already waiting to be loaded for the same bot is folded into the pending one, and a learn of a local file that has
+ * already been loaded by this loader and has not changed since is skipped altogether.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class BackgroundLoader {
+
+  /**
+   * One pending learn.
+   */
+  private class LearnTask implements Runnable {
+
+    URL _path;
+
+    String _botid;
+
+    String _key;
+
+    /** When the file was last modified as of when we began reading it (0 if unknown). */
+    long _lastModified;
+
+    volatile List<StagedLoad> _staged;
+
+    CountDownLatch _read = new CountDownLatch(1);
+
+    AtomicBoolean _published = new AtomicBoolean(false);
+
+    LearnTask(URL path, String botid, String key) {
+      this._path = path;
+      this._botid = botid;
+      this._key = key;
+    }
+
+    /**
+     * Reads the file(s), then publishes them (unless a waiting request thread has already done so).
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      this._lastModified = lastModified(this._path);
+      try {
+        this._staged = BackgroundLoader.this._graphmapper.stage(this._path, this._botid);
+      }
+      finally {
+        this._read.countDown();
+      }
+      synchronized (BackgroundLoader.this._core) {
+        this.publish();
+      }
+    }
+
+    /**
+     * Publishes the staged load(s), if that has not already been done. Callers must hold the Core's lock.
+     */
+    void publish() {
+      if (!this._published.compareAndSet(false, true)) {
+        return;
+      }
+      synchronized (BackgroundLoader.this._pending) {
+        BackgroundLoader.this._pending.remove(this._key);
+      }
+      if (this._staged == null) {
+        return;
+      }
+      for (StagedLoad staged : this._staged) {
+        BackgroundLoader.this._graphmapper.publish(staged);
+      }
+      if (this._lastModified > 0) {
+        BackgroundLoader.this._loaded.put(this._key, Long.valueOf(this._lastModified));
+      }
+      BackgroundLoader.this._loadedCount.incrementAndGet();
+    }
+
+    /**
+     * Waits up to the given time for the file(s) to be read, and if they are, publishes them on the calling thread.
+     * 
+     * @param wait the most time (in milliseconds) to wait
+     */
+    void awaitAndPublish(long wait) {
+      try {
+        if (this._read.await(wait, TimeUnit.MILLISECONDS)) {
+          synchronized (BackgroundLoader.this._core) {
+            this.publish();
+          }
+        }
+        else if (BackgroundLoader.this._logger.isDebugEnabled()) {
+          BackgroundLoader.this._logger.debug(String.format("\"%s\" not loaded within %d ms; continuing.",
+              URLTools.unescape(this._path), Long.valueOf(wait)));
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** The Core whose graph is loaded (and whose lock is held while publishing). */
+  Core _core;
+
+  /** The graph into which files are loaded. */
+  Graphmapper _graphmapper;
+
+  /** The thread that reads files. */
+  private ThreadPoolExecutor _executor;
+
+  /** Learns that have been queued but not yet published, keyed by bot and path. */
+  Map<String, LearnTask> _pending = new HashMap<String, LearnTask>();
+
+  /** The modification times of local files, as of when they were last loaded by this loader, keyed by bot and path. */
+  Map<String, Long> _loaded = Collections.synchronizedMap(new HashMap<String, Long>());
+
+  /** How long (in milliseconds) a learn waits for its file to be loaded. */
+  private int _wait;
+
+  /** The logger. */
+  Logger _logger;
+
+  private AtomicLong _requested = new AtomicLong();
+
+  private AtomicLong _coalesced = new AtomicLong();
+
+  private AtomicLong _skipped = new AtomicLong();
+
+  AtomicLong _loadedCount = new AtomicLong();
+
+  /**
+   * Creates a new BackgroundLoader.
+   * 
+   * @param core the Core whose graph is to be loaded
+   * @param queueCapacity the number of files that may wait to be loaded
+   * @param wait how long (in milliseconds) a learn waits for its file to be loaded (0 for not at all)
+   * @param logger the logger to use
+   */
+  public BackgroundLoader(Core core, int queueCapacity, int wait, Logger logger) {
+    this._core = core;
+    this._graphmapper = core.getGraphmapper();
+    this._executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(
+        queueCapacity, 1)), new DaemonThreadFactory("learn"));
+    this._wait = wait;
+    this._logger = logger;
+  }
+
+  /**
+   * Queues the file(s) at the given path to be loaded for the given bot, and waits (up to the configured limit) for
+   * them to be loaded. If the queue is full, the file is loaded right away on the calling thread.
+   * 
+   * @param path the path to the file(s) to load
+   * @param botid the bot for which to load them
+   */
+  public void learn(URL path, String botid) {
+    this._requested.incrementAndGet();
+    String key = botid + ' ' + path.toExternalForm();
+    if (this.isUnchanged(key, path, botid)) {
+      this._skipped.incrementAndGet();
+      if (this._logger.isDebugEnabled()) {
+        this._logger.debug(String.format("\"%s\" is already loaded for \"%s\" and has not changed.",
+            URLTools.unescape(path), botid));
+      }
+      return;
+    }
+    LearnTask task;
+    boolean created = false;
+    synchronized (this._pending) {
+      task = this._pending.get(key);
+      if (task == null) {
+        task = new LearnTask(path, botid, key);
+        this._pending.put(key, task);
+        created = true;
+      }
+    }
+    if (created) {
+      try {
+        this._executor.execute(task);
+      }
+      catch (RejectedExecutionException e) {
+        this._logger.warn(String.format("Too many files waiting to be learned (%d); loading \"%s\" now.",
+            Integer.valueOf(this.getQueueDepth()), URLTools.unescape(path)));
+        task.run();
+        return;
+      }
+    }
+    else {
+      this._coalesced.incrementAndGet();
+    }
+    if (this._wait > 0) {
+      task.awaitAndPublish(this._wait);
+    }
+  }
+
+  /**
+   * Indicates whether the given path is a local file that this loader has already loaded for the given bot, which is
+   * still loaded, and which has not been modified since.
+   */
+  private boolean isUnchanged(String key, URL path, String botid) {
+    Long loaded = this._loaded.get(key);
+    if (loaded == null) {
+      return false;
+    }
+    Bot bot = this._core.getBot(botid);
+    if (!bot.getLoadedFilesMap().containsKey(path)) {
+      this._loaded.remove(key);
+      return false;
+    }
+    return loaded.longValue() == lastModified(path);
+  }
+
+  /**
+   * @return the last-modified time of the given path if it is a single local file, otherwise 0
+   */
+  static long lastModified(URL path) {
+    if (!path.getProtocol().equals(Filesystem.FILE) || path.getFile().indexOf('*') != -1) {
+      return 0;
+    }
+    return new File(URLTools.unescape(path.getPath())).lastModified();
+  }
+
+  /**
+   * @return the number of files waiting to be read
+   */
+  public int getQueueDepth() {
+    return this._executor.getQueue().size();
+  }
+
+  /**
+   * @return the number of learns folded into one already waiting
+   */
+  public long getCoalescedCount() {
+    return this._coalesced.get();
+  }
+
+  /**
+   * @return the number of learns skipped because the file had not changed
+   */
+  public long getSkippedCount() {
+    return this._skipped.get();
+  }
+
+  /**
+   * @return the number of learns published to the graph
+   */
+  public long getLoadedCount() {
+    return this._loadedCount.get();
+  }
+
+  /**
+   * @return a one-line summary of the loader's statistics
+   */
+  @SuppressWarnings("boxing")
+  public String report() {
+    return String.format("<learn> requests: %d total, %d loaded, %d folded into pending loads, %d skipped as unchanged, %d waiting.",
+        this._requested.get(), this._loadedCount.get(), this._coalesced.get(), this._skipped.get(), this.getQueueDepth());
+  }
+
+  /**
+   * Stops loading files (any still waiting are abandoned).
+   */
+  public void shutdown() {
+    this._executor.shutdownNow();
+  }
+}
@@ -0,0 +1,374 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.CoreSettings;
+import org.aitools.programd.util.Deadline;
+import org.aitools.programd.util.NoMatchException;
+import org.aitools.util.LRUCache;
+import org.aitools.util.runtime.DeveloperError;
+
+/**
+ * A database Graphmapper that keeps the hot part of the graph in memory. The whole graph lives in the database (and is
+ * loaded as by {@link SlowDBGraphmapper}), but matching reads it through three caches:
+ * <ul>
+ * <li>the top levels of the graph (to a configurable depth below the root), which are always kept;</li>
+ * <li>an LRU cache of other nodes, each holding <i>all</i> of a node's outgoing edges, fetched in one query the first
+ * time the node is visited (so a probe for a <code>_</code> or <code>*</code> child that is not there is answered from
+ * memory, too); and</li>
+ * <li>an LRU cache of templates (and their filenames), keyed by node id, including the fact that a node has none.</li>
+ * </ul>
+ * Any change to the graph empties the caches; the top levels are fetched again (one query per level) at the next
+ * match.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class CachedDBGraphmapper extends SlowDBGraphmapper {
+
+  /** How many node ids to put in one <code>IN</code> list when fetching the top levels. */
+  private static final int FETCH_CHUNK = 500;
+
+  /** A template with its filenames, as cached. */
+  private static class CachedTemplate {
+
+    String template;
+
+    List<String> filenames;
+
+    CachedTemplate(String template, List<String> filenames) {
+      this.template = template;
+      this.filenames = filenames;
+    }
+  }
+
+  /** Stands for "this node has no template". */
+  private static final CachedTemplate NO_TEMPLATE = new CachedTemplate(null, Collections.<String> emptyList());
+
+  /** The edges of the top levels of the graph, by node id. */
+  private Map<Integer, Map<String, Integer>> _pinned = new HashMap<Integer, Map<String, Integer>>();
+
+  /** The edges of recently visited nodes, by node id. */
+  private Map<Integer, Map<String, Integer>> _edges;
+
+  /** Recently used templates, by node id. */
+  private Map<Integer, CachedTemplate> _templates;
+
+  /** How many levels below the root to keep pinned. */
+  private int _pinnedDepth;
+
+  /** Whether the caches must be refilled before the next match. */
+  private volatile boolean _stale = true;
+
+  /** How many times the caches have been emptied (so that a fetch begun before a change is not cached after it). */
+  private long _generation = 0;
+
+  private AtomicLong _edgeHits = new AtomicLong();
+
+  private AtomicLong _edgeMisses = new AtomicLong();
+
+  private AtomicLong _templateHits = new AtomicLong();
+
+  private AtomicLong _templateMisses = new AtomicLong();
+
+  /**
+   * Creates a new CachedDBGraphmapper, reading settings from the given Core.
+   *
+   * @param core the Core from which to read settings
+   */
+  public CachedDBGraphmapper(Core core) {
+    super(core);
+    CoreSettings settings = core.getSettings();
+    this._edges = new LRUCache<Integer, Map<String, Integer>>(Math.max(settings.getGraphmapperNodeCacheSize(), 1));
+    this._templates = new LRUCache<Integer, CachedTemplate>(Math.max(settings.getGraphmapperTemplateCacheSize(), 1));
+    this._pinnedDepth = settings.getGraphmapperPinnedDepth();
+  }
+
+  /**
+   * Empties all the caches; the top levels will be fetched again before the next match.
+   */
+  public synchronized void invalidate() {
+    this._pinned.clear();
+    this._edges.clear();
+    this._templates.clear();
+    this._stale = true;
+    this._generation++;
+  }
+
+  /**
+   * Fetches the edges of the top levels of the graph, one query per level (per {@link #FETCH_CHUNK} nodes).
+   *
+   * @param connection
+   */
+  private synchronized void pin(Connection connection) {
+    if (!this._stale) {
+      return;
+    }
+    List<Integer> level = new ArrayList<Integer>();
+    level.add(Integer.valueOf(this.getRoot()));
+    for (int depth = 0; depth < this._pinnedDepth && !level.isEmpty(); depth++) {
+      List<Integer> next = new ArrayList<Integer>();
+      for (int start = 0; start < level.size(); start += FETCH_CHUNK) {
+        List<Integer> chunk = level.subList(start, Math.min(start + FETCH_CHUNK, level.size()));
+        Map<Integer, Map<String, Integer>> fetched = fetchEdges(connection, chunk);
+        for (Map<String, Integer> edges : fetched.values()) {
+          next.addAll(edges.values());
+        }
+        this._pinned.putAll(fetched);
+      }
+      level = next;
+    }
+    this._stale = false;
+  }
+
+  /**
+   * Fetches all the outgoing edges of the given nodes in one query. Every given node gets an entry (empty if it has no
+   * edges).
+   */
+  private static Map<Integer, Map<String, Integer>> fetchEdges(Connection connection, List<Integer> nodes) {
+    Map<Integer, Map<String, Integer>> result = new HashMap<Integer, Map<String, Integer>>();
+    StringBuilder sql = new StringBuilder("SELECT from_node_id, label, to_node_id FROM edge WHERE from_node_id IN (");
+    for (int index = 0; index < nodes.size(); index++) {
+      sql.append(index == 0 ? "?" : ", ?");
+      result.put(nodes.get(index), newEdgeMap());
+    }
+    sql.append(')');
+    try {
+      PreparedStatement statement = connection.prepareStatement(sql.toString());
+      try {
+        for (int index = 0; index < nodes.size(); index++) {
+          statement.setInt(index + 1, nodes.get(index).intValue());
+        }
+        ResultSet results = statement.executeQuery();
+        while (results.next()) {
+          Map<String, Integer> edges = result.get(Integer.valueOf(results.getInt(1)));
+          String label = results.getString(2);
+          if (!edges.containsKey(label)) {
+            edges.put(label, Integer.valueOf(results.getInt(3)));
+          }
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
+      }
+    }
+    catch (SQLException e) {
+      throw new DeveloperError(String.format("SQL error trying to get edges of %d nodes.", Integer.valueOf(nodes
+          .size())), e);
+    }
+    return result;
+  }
+
+  /**
+   * @return a map for edges that compares labels as the database does (without regard to case)
+   */
+  private static Map<String, Integer> newEdgeMap() {
+    return new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+  }
+
+  /**
+   * Returns all the outgoing edges of the given node, from the caches if possible. Edges fetched while the graph was
+   * being changed are used, but not cached.
+   */
+  private Map<String, Integer> getEdges(Connection connection, int node) {
+    Integer key = Integer.valueOf(node);
+    long generation;
+    synchronized (this) {
+      generation = this._generation;
+      Map<String, Integer> edges = this._pinned.get(key);
+      if (edges == null) {
+        edges = this._edges.get(key);
+      }
+      if (edges != null) {
+        this._edgeHits.incrementAndGet();
+        return edges;
+      }
+    }
+    this._edgeMisses.incrementAndGet();
+    Map<String, Integer> edges = fetchEdges(connection, Collections.singletonList(key)).get(key);
+    synchronized (this) {
+      if (this._generation == generation) {
+        this._edges.put(key, edges);
+      }
+    }
+    return edges;
+  }
+
+  /**
+   * Returns the template and filenames of the given node, from the cache if possible. As with edges, a template fetched
+   * while the graph was being changed is not cached.
+   */
+  private CachedTemplate getCachedTemplate(Connection connection, int node) {
+    Integer key = Integer.valueOf(node);
+    CachedTemplate cached;
+    long generation;
+    synchronized (this) {
+      generation = this._generation;
+      cached = this._templates.get(key);
+    }
+    if (cached != null) {
+      this._templateHits.incrementAndGet();
+      return cached;
+    }
+    this._templateMisses.incrementAndGet();
+    String template = super.getTemplate(connection, node);
+    cached = template == null ? NO_TEMPLATE : new CachedTemplate(template, super.getFilenames(connection, node));
+    synchronized (this) {
+      if (this._generation == generation) {
+        this._templates.put(key, cached);
+      }
+    }
+    return cached;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.SlowDBGraphmapper#getChild(java.sql.Connection, int, java.lang.String)
+   */
+  @Override
+  protected int getChild(Connection connection, int node, String key) {
+    Integer child = this.getEdges(connection, node).get(key);
+    return child == null ? NO_NODE : child.intValue();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.SlowDBGraphmapper#getFilenames(java.sql.Connection, int)
+   */
+  @Override
+  protected List<String> getFilenames(Connection connection, int node) {
+    return this.getCachedTemplate(connection, node).filenames;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.SlowDBGraphmapper#getTemplate(java.sql.Connection, int)
+   */
+  @Override
+  protected String getTemplate(Connection connection, int node) {
+    return this.getCachedTemplate(connection, node).template;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.SlowDBGraphmapper#match(java.lang.String, java.lang.String, java.lang.String,
+   *      java.lang.String, org.aitools.programd.util.Deadline)
+   */
+  @Override
+  public Match match(String input, String that, String topic, String botid, Deadline deadline)
+      throws NoMatchException {
+    if (this._stale) {
+      Connection connection = this._core.getDBConnection();
+      try {
+        this.pin(connection);
+      }
+      finally {
+        this.close(connection);
+      }
+    }
+    return super.match(input, that, topic, botid, deadline);
+  }
+
+  /**
+   * @see org.aitools.programd.graph.SlowDBGraphmapper#add(java.lang.String, java.lang.String, java.lang.String,
+   *      java.lang.String, org.aitools.programd.Bot, java.net.URL)
+   */
+  @Override
+  public void add(String pattern, String that, String topic, String template, Bot bot, URL source) {
+    super.add(pattern, that, topic, template, bot, source);
+    this.invalidate();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.SlowDBGraphmapper#addForBot(java.net.URL, java.lang.String)
+   */
+  @Override
+  public void addForBot(URL path, String botid) {
+    super.addForBot(path, botid);
+    this.invalidate();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.SlowDBGraphmapper#doLoad(org.aitools.programd.graph.StagedLoad)
+   */
+  @Override
+  protected void doLoad(StagedLoad staged) {
+    try {
+      super.doLoad(staged);
+    }
+    finally {
+      this.invalidate();
+    }
+  }
+
+  /**
+   * @see org.aitools.programd.graph.SlowDBGraphmapper#removeCategory(java.lang.String, java.lang.String,
+   *      java.lang.String, org.aitools.programd.Bot)
+   */
+  @Override
+  public void removeCategory(String pattern, String that, String topic, Bot bot) {
+    super.removeCategory(pattern, that, topic, bot);
+    this.invalidate();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.SlowDBGraphmapper#unload(java.net.URL, org.aitools.programd.Bot)
+   */
+  @Override
+  public void unload(URL path, Bot bot) {
+    super.unload(path, bot);
+    this.invalidate();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#getCacheHitRatio()
+   */
+  @Override
+  public double getCacheHitRatio() {
+    long hits = this._edgeHits.get() + this._templateHits.get();
+    return percent(hits, this._edgeMisses.get() + this._templateMisses.get()) / 100;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#dropCaches()
+   */
+  @Override
+  public void dropCaches() {
+    this.invalidate();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#getCategoryReport()
+   */
+  @Override
+  @SuppressWarnings("boxing")
+  public String getCategoryReport() {
+    return String.format("%s Graph cache: %,d nodes pinned, %,d cached (%.1f%% hits); %,d templates cached (%.1f%% hits).",
+        super.getCategoryReport(), this._pinned.size(), this._edges.size(), percent(this._edgeHits.get(),
+            this._edgeMisses.get()), this._templates.size(), percent(this._templateHits.get(), this._templateMisses
+            .get()));
+  }
+
+  private static double percent(long hits, long misses) {
+    long total = hits + misses;
+    return total == 0 ? 0 : 100.0 * hits / total;
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.net.URL;
+
+import org.aitools.programd.Bot;
+
+/**
+ * Anything that can receive categories as they are read by an {@link org.aitools.programd.parser.AIMLReader}: a
+ * {@link Graphmapper}, or a {@link StagedLoad} that holds them until they are published to one.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public interface CategoryHandler {
+
+  /**
+   * Adds a new category.
+   * 
+   * @param pattern the category's <code>pattern</code>
+   * @param that the category's <code>that</code>
+   * @param topic the category's <code>topic</code>
+   * @param template the category's <code>template</code>
+   * @param bot the bot for whom the category is being added
+   * @param source the path from which the category comes
+   */
+  public void addCategory(String pattern, String that, String topic, String template, Bot bot, URL source);
+}
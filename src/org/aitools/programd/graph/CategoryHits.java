@@ -0,0 +1,106 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.net.URL;
+import java.util.Comparator;
+
+/**
+ * The number of times a category has been matched, as reported by {@link Graphmapper#getCategoryHits}.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class CategoryHits {
+
+  /** Orders categories by hits, most first (and then by source and path). */
+  public static final Comparator<CategoryHits> MOST_HITS_FIRST = new Comparator<CategoryHits>() {
+
+    @Override
+    public int compare(CategoryHits one, CategoryHits other) {
+      if (one._hits != other._hits) {
+        return one._hits > other._hits ? -1 : 1;
+      }
+      int comparison = one._source.toString().compareTo(other._source.toString());
+      if (comparison != 0) {
+        return comparison;
+      }
+      return one.getPath().compareTo(other.getPath());
+    }
+  };
+
+  private URL _source;
+
+  private String _pattern;
+
+  private String _that;
+
+  private String _topic;
+
+  private long _hits;
+
+  /**
+   * Creates a new CategoryHits.
+   * 
+   * @param source the file from which the category was loaded
+   * @param pattern
+   * @param that
+   * @param topic
+   * @param hits the number of times the category has been matched
+   */
+  public CategoryHits(URL source, String pattern, String that, String topic, long hits) {
+    this._source = source;
+    this._pattern = pattern;
+    this._that = that;
+    this._topic = topic;
+    this._hits = hits;
+  }
+
+  /**
+   * @return the file from which the category was loaded
+   */
+  public URL getSource() {
+    return this._source;
+  }
+
+  /**
+   * @return the category's pattern
+   */
+  public String getPattern() {
+    return this._pattern;
+  }
+
+  /**
+   * @return the category's that
+   */
+  public String getThat() {
+    return this._that;
+  }
+
+  /**
+   * @return the category's topic
+   */
+  public String getTopic() {
+    return this._topic;
+  }
+
+  /**
+   * @return the category's path, as <code>pattern : that : topic</code>
+   */
+  public String getPath() {
+    return String.format("%s : %s : %s", this._pattern, this._that, this._topic);
+  }
+
+  /**
+   * @return the number of times the category has been matched
+   */
+  public long getHits() {
+    return this._hits;
+  }
+}
@@ -0,0 +1,501 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.CoreSettings;
+import org.aitools.util.runtime.DeveloperError;
+
+/**
+ * Loads the categories of one file into the database graph used by {@link SlowDBGraphmapper}, in a single transaction.
+ * The paths of all the file's categories are first built into a trie in memory. The trie is then laid over the graph
+ * already in the database, fetching all the outgoing edges of an existing node in one query (and only for nodes that
+ * the file actually passes through). The ids of the new nodes and templates are then reserved in one block per table
+ * (see {@link SlowDBNodemapper#reserveIDs}), inside the load's transaction, so that no other writer can take them
+ * before the load commits; the loader assigns them itself, and all rows are written with batched statements.
+ *
+ * Path-identical categories, and load progress, are handled just as {@link SlowDBGraphmapper#addCategory} would handle
+ * them. A template that a merge replaces is deleted, unless some other node (of another bot) still uses it.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class DBBulkLoader {
+
+  /** How many rows to queue in a batch before sending them. */
+  private static final int BATCH_SIZE = 1000;
+
+  /** A node in the in-memory trie. */
+  private static class TrieNode {
+
+    /** The children, by edge label, in the order they were added. */
+    Map<String, TrieNode> children = new LinkedHashMap<String, TrieNode>();
+
+    /** The id of the corresponding node in the database (-1 until known or assigned). */
+    int id = -1;
+
+    /** Whether the node was already in the database. */
+    boolean existing = false;
+
+    /** Whether this node is reached by the <code>&lt;bot&gt;</code> marker. */
+    boolean botMarker = false;
+
+    /** The template for the category ending here (null if none ends here). */
+    String template;
+
+    /** The pattern, that and topic of the category ending here, for messages. */
+    String pattern, that, topic;
+
+    TrieNode() {
+      // Nothing to do.
+    }
+  }
+
+  /** A prepared statement to which rows are added in batches. */
+  private static class Batch {
+
+    PreparedStatement statement;
+
+    int count = 0;
+
+    Batch(PreparedStatement statement) {
+      this.statement = statement;
+    }
+
+    void add() throws SQLException {
+      this.statement.addBatch();
+      this.count++;
+    }
+
+    void flush() throws SQLException {
+      if (this.count > 0) {
+        this.statement.executeBatch();
+        this.count = 0;
+      }
+    }
+
+    void close() {
+      try {
+        this.statement.close();
+      }
+      catch (SQLException e) {
+        // Nothing more to do.
+      }
+    }
+  }
+
+  /** The graphmapper for which we are loading. */
+  private SlowDBGraphmapper _graphmapper;
+
+  /** The connection on which the whole load is done. */
+  private Connection _connection;
+
+  /** The root of the in-memory trie. */
+  private TrieNode _trie = new TrieNode();
+
+  private int _fileID;
+
+  /** The next of the ids reserved for new nodes. */
+  private int _nextNodeID;
+
+  /** The next of the ids reserved for new templates. */
+  private int _nextTemplateID;
+
+  private Batch _nodes;
+
+  private Batch _templates;
+
+  private Batch _edges;
+
+  private Batch _nodeTemplates;
+
+  private Batch _nodeTemplateUpdates;
+
+  private Batch _templateRemovals;
+
+  private Batch _fileNodes;
+
+  private Batch _fileNodeRemovals;
+
+  private Batch _botidNodeFiles;
+
+  /** All batches, in the order in which they must be sent (so that foreign keys are satisfied). */
+  private List<Batch> _batches = new ArrayList<Batch>();
+
+  /**
+   * Creates a new DBBulkLoader.
+   *
+   * @param graphmapper the graphmapper for which to load
+   * @param connection the connection to use (not closed here)
+   * @param root the id of the root node
+   */
+  public DBBulkLoader(SlowDBGraphmapper graphmapper, Connection connection, int root) {
+    this._graphmapper = graphmapper;
+    this._connection = connection;
+    this._trie.id = root;
+    this._trie.existing = true;
+  }
+
+  /**
+   * Loads the given staged file in one transaction. If anything goes wrong, the transaction is rolled back and nothing
+   * from the file is left in the database.
+   *
+   * @param staged the categories read from the file
+   */
+  public void load(StagedLoad staged) {
+    final URL path = staged.getPath();
+    final String botid = staged.getBotID();
+
+    // Build the trie for the whole file first.
+    staged.replay(new CategoryHandler() {
+
+      @Override
+      public void addCategory(String pattern, String that, String topic, String template, Bot bot, URL source) {
+        DBBulkLoader.this.addToTrie(pattern == null ? AbstractGraphmapper.ASTERISK : pattern,
+            that == null ? AbstractGraphmapper.ASTERISK : that, topic == null ? AbstractGraphmapper.ASTERISK : topic,
+            template, botid, path);
+      }
+    });
+
+    boolean autoCommit = true;
+    try {
+      autoCommit = this._connection.getAutoCommit();
+      this._connection.setAutoCommit(false);
+      this.prepare();
+      this._fileID = this.getOrCreate("file", "path", path.toExternalForm());
+      this.resolve(this._trie);
+      this.reserve();
+      this.write(this._trie, path);
+      int botID = this.getOrCreate("bot", "label", botid);
+      PreparedStatement associate = this._connection
+          .prepareStatement("INSERT INTO bot_file (bot_id, file_id) VALUES (?, ?)");
+      associate.setInt(1, botID);
+      associate.setInt(2, this._fileID);
+      associate.execute();
+      associate.close();
+      this.flushAll();
+      this._connection.commit();
+    }
+    catch (SQLException e) {
+      try {
+        this._connection.rollback();
+      }
+      catch (SQLException ee) {
+        this._graphmapper._logger.error("DB error when rolling back load.", ee);
+      }
+      throw new DeveloperError(String.format("SQL error loading \"%s\" for bot \"%s\".", path, botid), e);
+    }
+    finally {
+      for (Batch batch : this._batches) {
+        batch.close();
+      }
+      try {
+        this._connection.setAutoCommit(autoCommit);
+      }
+      catch (SQLException e) {
+        this._graphmapper._logger.error("DB error when restoring autocommit.", e);
+      }
+    }
+  }
+
+  /**
+   * Adds the path of one category to the trie, merging with any path-identical category already in the file.
+   */
+  void addToTrie(String pattern, String that, String topic, String template, String botid, URL source) {
+    TrieNode node = this._trie;
+    for (String word : SlowDBGraphmapper.composePath(pattern, that, topic, botid)) {
+      TrieNode child = node.children.get(word);
+      if (child == null) {
+        child = new TrieNode();
+        child.botMarker = word.equals(AbstractGraphmapper.BOT);
+        node.children.put(word, child);
+      }
+      node = child;
+    }
+    if (node.template == null) {
+      node.template = template;
+      node.pattern = pattern;
+      node.that = that;
+      node.topic = topic;
+    }
+    else {
+      String merged = this._graphmapper.merge(node.template, template,
+          Collections.singletonList(source.toExternalForm()), source, pattern, that, topic);
+      if (merged != null) {
+        node.template = merged;
+      }
+    }
+  }
+
+  /**
+   * Prepares the statements, in the order in which their batches must be sent.
+   */
+  private void prepare() throws SQLException {
+    this._nodes = this.batch("INSERT INTO node (id) VALUES (?)");
+    this._templates = this.batch("INSERT INTO template (id, text) VALUES (?, ?)");
+    this._edges = this.batch("INSERT INTO edge (from_node_id, label, to_node_id) VALUES (?, ?, ?)");
+    this._nodeTemplates = this.batch("INSERT INTO node_template (node_id, template_id) VALUES (?, ?)");
+    this._nodeTemplateUpdates = this.batch("UPDATE node_template SET template_id = ? WHERE node_id = ?");
+    // Only once the node no longer refers to it can a replaced template go.
+    this._templateRemovals = this
+        .batch("DELETE FROM template WHERE id = ? AND NOT EXISTS (SELECT * FROM node_template WHERE template_id = ?)");
+    this._fileNodeRemovals = this.batch("DELETE FROM file_node WHERE node_id = ?");
+    this._fileNodes = this.batch("INSERT INTO file_node (file_id, node_id) VALUES (?, ?)");
+    this._botidNodeFiles = this.batch("INSERT INTO botidnode_file (botidnode_id, file_id) VALUES (?, ?)");
+  }
+
+  private Batch batch(String sql) throws SQLException {
+    Batch batch = new Batch(this._connection.prepareStatement(sql));
+    this._batches.add(batch);
+    return batch;
+  }
+
+  /**
+   * Executes the given insert and returns the id that the database generated for the new row.
+   */
+  private static int insert(PreparedStatement insert, String table) throws SQLException {
+    insert.execute();
+    ResultSet results = insert.getGeneratedKeys();
+    int id = -1;
+    if (results.next()) {
+      id = results.getInt(1);
+    }
+    results.close();
+    if (id == -1) {
+      throw new DeveloperError(String.format("No %s id generated!", table));
+    }
+    return id;
+  }
+
+  /**
+   * Finds the id of the entity identified by the given value of the given field, creating it if necessary.
+   */
+  private int getOrCreate(String table, String field, String value) throws SQLException {
+    PreparedStatement select = this._connection.prepareStatement(String.format("SELECT id FROM %s WHERE %s = ?",
+        table, field));
+    select.setString(1, value);
+    ResultSet results = select.executeQuery();
+    int id = -1;
+    if (results.next()) {
+      id = results.getInt(1);
+    }
+    results.close();
+    select.close();
+    if (id != -1) {
+      return id;
+    }
+    PreparedStatement insert = this._connection.prepareStatement(String.format("INSERT INTO %s (%s) VALUES (?)",
+        table, field), Statement.RETURN_GENERATED_KEYS);
+    insert.setString(1, value);
+    try {
+      return insert(insert, table);
+    }
+    finally {
+      insert.close();
+    }
+  }
+
+  /**
+   * Finds which of the trie's nodes already exist in the database, fetching all the edges of each existing node in one
+   * query.
+   */
+  private void resolve(TrieNode root) throws SQLException {
+    PreparedStatement edges = this._connection
+        .prepareStatement("SELECT label, to_node_id FROM edge WHERE from_node_id = ?");
+    try {
+      List<TrieNode> queue = new ArrayList<TrieNode>();
+      queue.add(root);
+      while (!queue.isEmpty()) {
+        TrieNode node = queue.remove(queue.size() - 1);
+        if (node.children.isEmpty()) {
+          continue;
+        }
+        // Labels compare without regard to case in the database, so do the same here.
+        Map<String, Integer> existing = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+        edges.setInt(1, node.id);
+        ResultSet results = edges.executeQuery();
+        while (results.next()) {
+          String label = results.getString(1);
+          if (!existing.containsKey(label)) {
+            existing.put(label, Integer.valueOf(results.getInt(2)));
+          }
+        }
+        results.close();
+        for (Map.Entry<String, TrieNode> entry : node.children.entrySet()) {
+          Integer id = existing.get(entry.getKey());
+          if (id != null) {
+            TrieNode child = entry.getValue();
+            child.id = id.intValue();
+            child.existing = true;
+            queue.add(child);
+          }
+        }
+      }
+    }
+    finally {
+      edges.close();
+    }
+  }
+
+  /**
+   * Reserves ids for the nodes that are not yet in the database, and for as many templates as the file has categories
+   * (a few may go unused, if a merge keeps what is stored).
+   */
+  private void reserve() throws SQLException {
+    int nodes = 0;
+    int templates = 0;
+    List<TrieNode> queue = new ArrayList<TrieNode>();
+    queue.add(this._trie);
+    while (!queue.isEmpty()) {
+      TrieNode node = queue.remove(queue.size() - 1);
+      if (!node.existing) {
+        nodes++;
+      }
+      if (node.template != null) {
+        templates++;
+      }
+      queue.addAll(node.children.values());
+    }
+    if (nodes > 0) {
+      this._nextNodeID = SlowDBNodemapper.reserveIDs(this._connection, "node", nodes);
+    }
+    if (templates > 0) {
+      this._nextTemplateID = SlowDBNodemapper.reserveIDs(this._connection, "template", templates);
+    }
+  }
+
+  /**
+   * Queues the rows for the given trie node's subtree.
+   */
+  private void write(TrieNode root, URL path) throws SQLException {
+    PreparedStatement getTemplate = this._connection
+        .prepareStatement("SELECT template.id, template.text FROM template INNER JOIN node_template ON node_template.template_id = template.id WHERE node_template.node_id = ?");
+    try {
+      List<TrieNode> queue = new ArrayList<TrieNode>();
+      queue.add(root);
+      while (!queue.isEmpty()) {
+        TrieNode node = queue.remove(queue.size() - 1);
+        for (Map.Entry<String, TrieNode> entry : node.children.entrySet()) {
+          TrieNode child = entry.getValue();
+          if (!child.existing) {
+            child.id = this._nextNodeID++;
+            this._nodes.statement.setInt(1, child.id);
+            this._nodes.add();
+            this._edges.statement.setInt(1, node.id);
+            this._edges.statement.setString(2, entry.getKey());
+            this._edges.statement.setInt(3, child.id);
+            this._edges.add();
+          }
+          if (child.botMarker) {
+            this._botidNodeFiles.statement.setInt(1, child.id);
+            this._botidNodeFiles.statement.setInt(2, this._fileID);
+            this._botidNodeFiles.add();
+          }
+          if (child.template != null) {
+            this.writeTemplate(child, path, getTemplate);
+          }
+          queue.add(child);
+          this.flushIfFull();
+        }
+      }
+    }
+    finally {
+      getTemplate.close();
+    }
+  }
+
+  /**
+   * Queues the rows that attach a category's template to its node, applying the merge policy if the node already has a
+   * template in the database.
+   */
+  private void writeTemplate(TrieNode node, URL path, PreparedStatement getTemplate) throws SQLException {
+    String stored = null;
+    int storedID = -1;
+    if (node.existing) {
+      getTemplate.setInt(1, node.id);
+      ResultSet results = getTemplate.executeQuery();
+      if (results.next()) {
+        storedID = results.getInt(1);
+        stored = results.getString(2);
+      }
+      results.close();
+    }
+    SlowDBGraphmapper graphmapper = this._graphmapper;
+    if (stored == null) {
+      graphmapper.reportProgress();
+      int templateID = this.addTemplate(node.template);
+      this._nodeTemplates.statement.setInt(1, node.id);
+      this._nodeTemplates.statement.setInt(2, templateID);
+      this._nodeTemplates.add();
+      this.addFileNode(node.id);
+      graphmapper._totalCategories++;
+      return;
+    }
+    String merged = graphmapper.merge(stored, node.template,
+        graphmapper._noteEachMerge ? SlowDBNodemapper.getFilenames(this._connection, node.id) : null, path,
+        node.pattern, node.that, node.topic);
+    if (merged == null) {
+      return;
+    }
+    int templateID = this.addTemplate(merged);
+    this._nodeTemplateUpdates.statement.setInt(1, templateID);
+    this._nodeTemplateUpdates.statement.setInt(2, node.id);
+    this._nodeTemplateUpdates.add();
+    this._templateRemovals.statement.setInt(1, storedID);
+    this._templateRemovals.statement.setInt(2, storedID);
+    this._templateRemovals.add();
+    if (this._graphmapper._mergePolicy == CoreSettings.MergePolicy.OVERWRITE) {
+      this._fileNodeRemovals.statement.setInt(1, node.id);
+      this._fileNodeRemovals.add();
+    }
+    this.addFileNode(node.id);
+  }
+
+  private int addTemplate(String text) throws SQLException {
+    int id = this._nextTemplateID++;
+    this._templates.statement.setInt(1, id);
+    this._templates.statement.setString(2, text);
+    this._templates.add();
+    return id;
+  }
+
+  private void addFileNode(int node) throws SQLException {
+    this._fileNodes.statement.setInt(1, this._fileID);
+    this._fileNodes.statement.setInt(2, node);
+    this._fileNodes.add();
+  }
+
+  private void flushIfFull() throws SQLException {
+    for (Batch batch : this._batches) {
+      if (batch.count >= BATCH_SIZE) {
+        this.flushAll();
+        return;
+      }
+    }
+  }
+
+  private void flushAll() throws SQLException {
+    for (Batch batch : this._batches) {
+      batch.flush();
+    }
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.aitools.util.Text;
+
+/**
+ * An index, for a {@link MemoryGraphmapper}, of the categories whose pattern has no wildcards and whose that and topic
+ * each either have no wildcards or are just <code>*</code>. An input that reaches one of these can be matched with a few
+ * hash lookups instead of a walk through the graph.
+ * <p>
+ * The index may only answer when the walk would have reached the same category. So an entry is used only if, along its
+ * path, no node has a <code>_</code> branch (which the walk would try first), and the <code>*</code> nodes have no
+ * <code>*</code> branches. This is checked against the graph when the entry is first used, and again after any change
+ * to the shape of the graph. Where the path goes through a <code>*</code>, each input is also checked: the node before
+ * the <code>*</code> must have no branch for the first word of the segment, and the <code>*</code> node no branch for
+ * any word of it (so that the walk could not try a literal word first, and the <code>*</code> absorbs the whole
+ * segment). The candidate paths for an
+ * input are tried in the order the walk would try them: a literal that before <code>*</code>, and then a literal topic
+ * before <code>*</code>.
+ * </p>
+ * <p>
+ * Categories added for a bot with {@link AbstractGraphmapper#addForBot(java.net.URL, String)} are not indexed for that
+ * bot; they are found by the walk.
+ * </p>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ExactPathIndex {
+
+  /** An indexed category. */
+  private static class Entry {
+
+    Nodemapper leaf;
+
+    /** The shape of the graph when {@link #usable} was last checked. */
+    int stamp = -1;
+
+    boolean usable;
+
+    /** Where the path goes through a <code>*</code>: the node before it, and the <code>*</code> node (by segment). */
+    Nodemapper[] starParents = new Nodemapper[2];
+
+    Nodemapper[] stars = new Nodemapper[2];
+
+    Entry(Nodemapper leaf) {
+      this.leaf = leaf;
+    }
+  }
+
+  /** The entries, by path (words in upper case, separated by single spaces). */
+  private Map<String, Entry> _entries = new HashMap<String, Entry>();
+
+  /** Changes whenever the shape of the graph changes. */
+  private int _stamp;
+
+  private long _hits;
+
+  private long _misses;
+
+  /**
+   * Adds a category to the index, if its path is one that can be indexed.
+   *
+   * @param pattern
+   * @param that
+   * @param topic
+   * @param botid
+   * @param leaf the node holding the category's template
+   */
+  public void add(String pattern, String that, String topic, String botid, Nodemapper leaf) {
+    List<String> patternWords = Text.wordSplit(pattern);
+    List<String> thatWords = Text.wordSplit(that);
+    List<String> topicWords = Text.wordSplit(topic);
+    if (!isLiteral(patternWords) || !isLiteralOrStar(thatWords) || !isLiteralOrStar(topicWords)) {
+      return;
+    }
+    String key = key(patternWords, thatWords, false, topicWords, false, botid);
+    if (!this._entries.containsKey(key)) {
+      this._entries.put(key, new Entry(leaf));
+    }
+  }
+
+  /**
+   * Notes that the shape of the graph has changed, so that entries are checked again before they are used.
+   */
+  public void changed() {
+    this._stamp++;
+  }
+
+  /**
+   * Drops the entries for the given (removed) nodes.
+   *
+   * @param leaves
+   */
+  public void remove(Collection<Nodemapper> leaves) {
+    if (leaves.isEmpty()) {
+      return;
+    }
+    Set<Nodemapper> removed = new HashSet<Nodemapper>(leaves);
+    for (Iterator<Entry> entries = this._entries.values().iterator(); entries.hasNext();) {
+      if (removed.contains(entries.next().leaf)) {
+        entries.remove();
+      }
+    }
+    this.changed();
+  }
+
+  /**
+   * Looks up the given input path, filling in the path components (and any wildcard contents) of the match if it is
+   * found.
+   *
+   * @param inputPath the input path, as made by {@link AbstractGraphmapper#composeInputPath}
+   * @param root the root of the graph
+   * @param match the match to fill in
+   * @return the node holding the matched category's template, or <code>null</code> if the index cannot say
+   */
+  public Nodemapper match(List<String> inputPath, Nodemapper root, Match match) {
+    if (this._entries.isEmpty()) {
+      return null;
+    }
+    int thatMarker = inputPath.indexOf(AbstractGraphmapper.THAT);
+    int topicMarker = inputPath.indexOf(AbstractGraphmapper.TOPIC);
+    int botMarker = inputPath.indexOf(AbstractGraphmapper.BOT);
+    if (thatMarker < 0 || topicMarker < thatMarker || botMarker < topicMarker || botMarker != inputPath.size() - 2
+        || inputPath.lastIndexOf(AbstractGraphmapper.THAT) != thatMarker
+        || inputPath.lastIndexOf(AbstractGraphmapper.TOPIC) != topicMarker) {
+      return null;
+    }
+    List<String> patternWords = inputPath.subList(0, thatMarker);
+    List<String> thatWords = inputPath.subList(thatMarker + 1, topicMarker);
+    List<String> topicWords = inputPath.subList(topicMarker + 1, botMarker);
+    String botid = inputPath.get(botMarker + 1);
+    if (!isLiteral(patternWords)) {
+      return null;
+    }
+    // The order in which the walk would try them.
+    for (int candidate = 0; candidate < 4; candidate++) {
+      boolean thatStar = candidate >= 2;
+      boolean topicStar = candidate % 2 == 1;
+      if ((!thatStar && !isLiteral(thatWords)) || (!topicStar && !isLiteral(topicWords))) {
+        continue;
+      }
+      String key = key(patternWords, thatWords, thatStar, topicWords, topicStar, botid);
+      Entry entry = this._entries.get(key);
+      if (entry != null && this.isUsable(key, entry, root)
+          && (!thatStar || absorbs(entry, 0, thatWords)) && (!topicStar || absorbs(entry, 1, topicWords))) {
+        this._hits++;
+        match.setPathComponent(Match.State.IN_INPUT, join(patternWords).toUpperCase());
+        match.setPathComponent(Match.State.IN_THAT, thatStar ? AbstractGraphmapper.ASTERISK : join(thatWords)
+            .toUpperCase());
+        match.setPathComponent(Match.State.IN_TOPIC, topicStar ? AbstractGraphmapper.ASTERISK : join(topicWords)
+            .toUpperCase());
+        // (An empty that or topic comes as a literal *, which the walk matches as a word rather than a wildcard.)
+        if (topicStar && isLiteral(topicWords)) {
+          match.pushWildcardContent(Match.State.IN_TOPIC, join(topicWords));
+        }
+        if (thatStar && isLiteral(thatWords)) {
+          match.pushWildcardContent(Match.State.IN_THAT, join(thatWords));
+        }
+        match.setBotID(botid);
+        return entry.leaf;
+      }
+      if (entry != null) {
+        // The walk may find something else first.
+        break;
+      }
+    }
+    this._misses++;
+    return null;
+  }
+
+  /**
+   * @return the share (from 0 to 1) of eligible inputs that the index has answered
+   */
+  public double getHitRatio() {
+    long total = this._hits + this._misses;
+    return total == 0 ? 0d : (double) this._hits / total;
+  }
+
+  /**
+   * @return a description of the index
+   */
+  @SuppressWarnings("boxing")
+  public String report() {
+    return String.format("Exact path index: %,d categories, %.1f%% of eligible inputs answered.",
+        this._entries.size(), 100d * this.getHitRatio());
+  }
+
+  /**
+   * Checks (if the graph has changed since it was last checked) that the walk would reach the entry's node.
+   */
+  private boolean isUsable(String key, Entry entry, Nodemapper root) {
+    if (entry.stamp == this._stamp) {
+      return entry.usable;
+    }
+    entry.usable = check(key.split(" "), entry, root);
+    entry.stamp = this._stamp;
+    return entry.usable;
+  }
+
+  private static boolean check(String[] words, Entry entry, Nodemapper root) {
+    Nodemapper node = root;
+    int segment = -1;
+    for (String word : words) {
+      if (node.containsKey(AbstractGraphmapper.UNDERSCORE)) {
+        return false;
+      }
+      if (word.equals(AbstractGraphmapper.THAT)) {
+        segment = 0;
+      }
+      else if (word.equals(AbstractGraphmapper.TOPIC)) {
+        segment = 1;
+      }
+      Object next = node.get(word);
+      if (!(next instanceof Nodemapper)) {
+        return false;
+      }
+      if (word.equals(AbstractGraphmapper.ASTERISK)) {
+        if (((Nodemapper) next).containsKey(AbstractGraphmapper.ASTERISK)) {
+          return false;
+        }
+        entry.starParents[segment] = node;
+        entry.stars[segment] = (Nodemapper) next;
+      }
+      node = (Nodemapper) next;
+    }
+    return node == entry.leaf && node.get(AbstractGraphmapper.TEMPLATE) != null;
+  }
+
+  /**
+   * Checks that the walk would let the <code>*</code> in the given segment of the entry's path absorb all the given
+   * words.
+   */
+  private static boolean absorbs(Entry entry, int segment, List<String> words) {
+    // An empty that or topic comes as a literal *, which leads to the * node as a word.
+    if (!words.get(0).equals(AbstractGraphmapper.ASTERISK)
+        && entry.starParents[segment].containsKey(words.get(0))) {
+      return false;
+    }
+    Nodemapper star = entry.stars[segment];
+    for (String word : words) {
+      if (star.containsKey(word)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isLiteral(List<String> words) {
+    if (words.isEmpty()) {
+      return false;
+    }
+    for (String word : words) {
+      if (word.equals(AbstractGraphmapper.ASTERISK) || word.equals(AbstractGraphmapper.UNDERSCORE)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isLiteralOrStar(List<String> words) {
+    return isLiteral(words) || (words.size() == 1 && words.get(0).equals(AbstractGraphmapper.ASTERISK));
+  }
+
+  private static String join(List<String> words) {
+    StringBuilder result = new StringBuilder();
+    for (String word : words) {
+      if (result.length() > 0) {
+        result.append(' ');
+      }
+      result.append(word);
+    }
+    return result.toString();
+  }
+
+  private static String key(List<String> pattern, List<String> that, boolean thatStar, List<String> topic,
+      boolean topicStar, String botid) {
+    StringBuilder key = new StringBuilder();
+    for (String word : pattern) {
+      key.append(word.toUpperCase()).append(' ');
+    }
+    key.append(AbstractGraphmapper.THAT);
+    if (thatStar) {
+      key.append(' ').append(AbstractGraphmapper.ASTERISK);
+    }
+    else {
+      for (String word : that) {
+        key.append(' ').append(word.toUpperCase());
+      }
+    }
+    key.append(' ').append(AbstractGraphmapper.TOPIC);
+    if (topicStar) {
+      key.append(' ').append(AbstractGraphmapper.ASTERISK);
+    }
+    else {
+      for (String word : topic) {
+        key.append(' ').append(word.toUpperCase());
+      }
+    }
+    key.append(' ').append(AbstractGraphmapper.BOT).append(' ').append(botid.toUpperCase());
+    return key.toString();
+  }
+}
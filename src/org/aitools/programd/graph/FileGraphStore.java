@@ -0,0 +1,1184 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.aitools.util.runtime.DeveloperError;
+import org.aitools.util.runtime.UserError;
+import org.apache.log4j.Logger;
+
+/**
+ * The on-disk storage behind {@link FileGraphmapper}. A store is a directory holding:
+ * <dl>
+ * <dt><code>nodes</code></dt>
+ * <dd>a header page followed by fixed-size node records (parent, edge block, height, template), memory-mapped in
+ * segments;</dd>
+ * <dt><code>edges</code></dt>
+ * <dd>blocks of (label, child) pairs, one block per node, sorted by label so that a child can be found by binary
+ * search, also memory-mapped in segments;</dd>
+ * <dt><code>labels</code></dt>
+ * <dd>the words used as edge labels, each stored once in upper case, as the Nodemappers keep their keys (and held in
+ * memory, so that an input word that is not in the graph at all can be rejected without touching the disk);</dd>
+ * <dt><code>heap</code></dt>
+ * <dd>templates (with their source filenames) and other variable-length records, appended and read by offset;</dd>
+ * <dt><code>catalog</code></dt>
+ * <dd>an opaque record kept for the Graphmapper (which files are loaded, and for which bots); and</dd>
+ * <dt><code>wal</code></dt>
+ * <dd>the write-ahead log.</dd>
+ * </dl>
+ * <p>
+ * All changes are made in transactions. Data that is appended (new nodes, edge blocks, labels and heap records) is
+ * written in place, since nothing committed refers to it yet. Changes to <i>committed</i> node records are held in
+ * memory until commit, and edge blocks that were committed are copied before they are changed. At commit, the appended
+ * data is forced to disk, then the changed node records, the new header values and the catalog are written to the log
+ * and forced, and only then are the node records and header changed in place. After a crash, the records in the log are
+ * applied again when the store is opened. The log is emptied at each checkpoint, after the mapped files have been
+ * forced.
+ * </p>
+ * <p>
+ * An edge block that has been copied is reused for another node once the transaction that copied it is committed,
+ * but only for as long as the store stays open; the files are never compacted.
+ * </p>
+ * <p>
+ * A store is not thread-safe; callers must not read while a transaction is being made.
+ * </p>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class FileGraphStore {
+
+  /** Identifies a store file. */
+  private static final int MAGIC = 0x50444746;
+
+  /** The version of the store format. */
+  private static final int VERSION = 1;
+
+  /** The size of the header page at the start of the nodes file. */
+  private static final int HEADER_SIZE = 4096;
+
+  /** The number of ints in a node record. */
+  private static final int NODE_INTS = 8;
+
+  /** The size of a node record, in bytes. */
+  private static final int NODE_SIZE = NODE_INTS * 4;
+
+  /** The size of each mapped segment of the nodes and edges files. */
+  private static final int SEGMENT_SIZE = 1 << 26;
+
+  /** The smallest edge block to allocate, in edges. */
+  private static final int MIN_EDGE_CAPACITY = 2;
+
+  /** The size of the log beyond which a commit also makes a checkpoint. */
+  private static final long CHECKPOINT_SIZE = 1 << 24;
+
+  /** Indicates the absence of a node. */
+  public static final int NO_NODE = -1;
+
+  /** Indicates the absence of a label. */
+  public static final int NO_LABEL = -1;
+
+  /** Indicates the absence of a heap record. */
+  public static final long NO_RECORD = -1;
+
+  /** The root node. */
+  public static final int ROOT = 0;
+
+  // Fields of a node record.
+  private static final int PARENT = 0;
+
+  private static final int EDGES = 1;
+
+  private static final int EDGE_COUNT = 2;
+
+  private static final int EDGE_CAPACITY = 3;
+
+  private static final int TEMPLATE_HIGH = 4;
+
+  private static final int TEMPLATE_LOW = 5;
+
+  private static final int HEIGHT = 6;
+
+  private static final int FLAGS = 7;
+
+  /** A flag marking a node that has been removed. */
+  private static final int REMOVED = 1;
+
+  // Offsets of header fields.
+  private static final int H_MAGIC = 0;
+
+  private static final int H_VERSION = 4;
+
+  private static final int H_NODE_COUNT = 8;
+
+  private static final int H_EDGE_TOP = 12;
+
+  private static final int H_LABEL_COUNT = 16;
+
+  private static final int H_LABEL_TOP = 24;
+
+  private static final int H_HEAP_TOP = 32;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** The allocation state of the store: where each file ends. */
+  private static class Tops {
+
+    int nodeCount;
+
+    int edgeTop;
+
+    int labelCount;
+
+    long labelTop;
+
+    long heapTop;
+
+    Tops copy() {
+      Tops copy = new Tops();
+      copy.nodeCount = this.nodeCount;
+      copy.edgeTop = this.edgeTop;
+      copy.labelCount = this.labelCount;
+      copy.labelTop = this.labelTop;
+      copy.heapTop = this.heapTop;
+      return copy;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(this.nodeCount);
+      out.writeInt(this.edgeTop);
+      out.writeInt(this.labelCount);
+      out.writeLong(this.labelTop);
+      out.writeLong(this.heapTop);
+    }
+
+    static Tops read(DataInputStream in) throws IOException {
+      Tops tops = new Tops();
+      tops.nodeCount = in.readInt();
+      tops.edgeTop = in.readInt();
+      tops.labelCount = in.readInt();
+      tops.labelTop = in.readLong();
+      tops.heapTop = in.readLong();
+      return tops;
+    }
+  }
+
+  /** The directory holding the store. */
+  private File _directory;
+
+  private FileChannel _nodes;
+
+  private FileChannel _edges;
+
+  private FileChannel _labelFile;
+
+  private FileChannel _heap;
+
+  private RandomAccessFile _wal;
+
+  private List<MappedByteBuffer> _nodeSegments = new ArrayList<MappedByteBuffer>();
+
+  private List<MappedByteBuffer> _edgeSegments = new ArrayList<MappedByteBuffer>();
+
+  /** Segments written since they were last forced (by identity: buffers compare by content). */
+  private Set<MappedByteBuffer> _dirtySegments = Collections.newSetFromMap(new IdentityHashMap<MappedByteBuffer, Boolean>());
+
+  /** The labels, by id. */
+  private List<String> _labels = new ArrayList<String>();
+
+  /** The label ids, by label. */
+  private Map<String, Integer> _labelIDs = new HashMap<String, Integer>();
+
+  /** The state as of the last commit. */
+  private Tops _committed;
+
+  /** The state including the current transaction. */
+  private Tops _current;
+
+  /** The catalog as of the last commit. */
+  private byte[] _catalog = new byte[0];
+
+  /** Committed node records changed in the current transaction. */
+  private Map<Integer, int[]> _changed = new HashMap<Integer, int[]>();
+
+  /** Whether a transaction is in progress. */
+  private boolean _inTransaction;
+
+  /** Whether the store has been closed. */
+  private boolean _closed;
+
+  /**
+   * Edge blocks no longer used by the committed graph, by capacity. (These are not recorded in the store, so space
+   * freed before the store is closed is not reused after it is opened again.)
+   */
+  private Map<Integer, List<Integer>> _freeBlocks = new HashMap<Integer, List<Integer>>();
+
+  /** Committed edge blocks replaced in the current transaction, by capacity (free once it commits). */
+  private Map<Integer, List<Integer>> _releasedBlocks = new HashMap<Integer, List<Integer>>();
+
+  /** The capacities of free edge blocks taken in the current transaction, by block (free again if it is rolled back). */
+  private Map<Integer, Integer> _takenBlocks = new HashMap<Integer, Integer>();
+
+  /** The logger. */
+  private Logger _logger;
+
+  /**
+   * Opens the store in the given directory, creating it if it does not exist, and recovering any committed changes
+   * recorded in its log.
+   *
+   * @param directory the directory holding the store
+   * @param erase whether to discard whatever is in the store
+   * @param logger the logger to use
+   */
+  public FileGraphStore(File directory, boolean erase, Logger logger) {
+    this._directory = directory;
+    this._logger = logger;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new UserError(String.format("Cannot create graph store directory \"%s\".", directory),
+          new IOException());
+    }
+    try {
+      if (erase) {
+        for (String name : new String[] { "nodes", "edges", "labels", "heap", "catalog", "wal" }) {
+          File file = new File(directory, name);
+          if (file.exists() && !file.delete()) {
+            throw new UserError(String.format("Cannot erase graph store file \"%s\".", file), new IOException());
+          }
+        }
+      }
+      boolean created = !new File(directory, "nodes").exists();
+      this._nodes = new RandomAccessFile(new File(directory, "nodes"), "rw").getChannel();
+      this._edges = new RandomAccessFile(new File(directory, "edges"), "rw").getChannel();
+      this._labelFile = new RandomAccessFile(new File(directory, "labels"), "rw").getChannel();
+      this._heap = new RandomAccessFile(new File(directory, "heap"), "rw").getChannel();
+      this._wal = new RandomAccessFile(new File(directory, "wal"), "rw");
+      if (created) {
+        this.create();
+      }
+      else {
+        this.open();
+      }
+    }
+    catch (IOException e) {
+      this.closeFiles();
+      throw new UserError(String.format("Cannot open graph store in \"%s\".", directory), e);
+    }
+    catch (RuntimeException e) {
+      this.closeFiles();
+      throw e;
+    }
+  }
+
+  private void create() throws IOException {
+    MappedByteBuffer header = this.nodeSegment(0);
+    header.putInt(H_MAGIC, MAGIC);
+    header.putInt(H_VERSION, VERSION);
+    this._dirtySegments.add(header);
+    this._committed = new Tops();
+    this._current = this._committed.copy();
+    this._wal.setLength(0);
+    this.begin();
+    this.newNode(NO_NODE);
+    this.commit(this._catalog);
+    this.checkpoint();
+  }
+
+  private void open() throws IOException {
+    // (Mapping a segment lengthens its file, so take the sizes first.)
+    long nodeBytes = this._nodes.size();
+    long edgeBytes = this._edges.size();
+    MappedByteBuffer header = this.nodeSegment(0);
+    if (header.getInt(H_MAGIC) != MAGIC) {
+      throw new UserError(String.format("\"%s\" does not hold a graph store.", this._directory), new IOException());
+    }
+    if (header.getInt(H_VERSION) != VERSION) {
+      throw new UserError(String.format("The graph store in \"%s\" is version %d; version %d is needed.",
+          this._directory, Integer.valueOf(header.getInt(H_VERSION)), Integer.valueOf(VERSION)), new IOException());
+    }
+    this._committed = this.readHeader();
+    File catalog = new File(this._directory, "catalog");
+    if (catalog.exists()) {
+      this._catalog = readFully(catalog);
+    }
+    int recovered = this.recover();
+    Tops tops = this._committed;
+    if (nodeBytes < nodePosition(tops.nodeCount) || edgeBytes < (long) tops.edgeTop * 4
+        || this._labelFile.size() < tops.labelTop || this._heap.size() < tops.heapTop) {
+      throw new UserError(String.format(
+          "The graph store in \"%s\" is damaged: its files are shorter than its header says.", this._directory),
+          new IOException());
+    }
+    this._current = this._committed.copy();
+    this.readLabels();
+    if (recovered > 0) {
+      this._logger.info(String.format("Recovered %d transaction(s) from the graph store log.",
+          Integer.valueOf(recovered)));
+      this.checkpoint();
+    }
+  }
+
+  private Tops readHeader() throws IOException {
+    MappedByteBuffer header = this.nodeSegment(0);
+    Tops tops = new Tops();
+    tops.nodeCount = header.getInt(H_NODE_COUNT);
+    tops.edgeTop = header.getInt(H_EDGE_TOP);
+    tops.labelCount = header.getInt(H_LABEL_COUNT);
+    tops.labelTop = header.getLong(H_LABEL_TOP);
+    tops.heapTop = header.getLong(H_HEAP_TOP);
+    return tops;
+  }
+
+  private void writeHeader(Tops tops) throws IOException {
+    MappedByteBuffer header = this.nodeSegment(0);
+    header.putInt(H_NODE_COUNT, tops.nodeCount);
+    header.putInt(H_EDGE_TOP, tops.edgeTop);
+    header.putInt(H_LABEL_COUNT, tops.labelCount);
+    header.putLong(H_LABEL_TOP, tops.labelTop);
+    header.putLong(H_HEAP_TOP, tops.heapTop);
+    this._dirtySegments.add(header);
+  }
+
+  private void readLabels() throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(
+        this._directory, "labels"))));
+    try {
+      for (int index = 0; index < this._committed.labelCount; index++) {
+        String label = in.readUTF();
+        this._labelIDs.put(label, Integer.valueOf(this._labels.size()));
+        this._labels.add(label);
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Applies the complete records in the log, in order, and stops at the first incomplete one.
+   *
+   * @return the number of records applied
+   */
+  private int recover() throws IOException {
+    int count = 0;
+    long position = 0;
+    long length = this._wal.length();
+    while (position + 12 <= length) {
+      this._wal.seek(position);
+      int size = this._wal.readInt();
+      long checksum = this._wal.readLong();
+      if (size < 0 || position + 12 + size > length) {
+        break;
+      }
+      byte[] payload = new byte[size];
+      this._wal.readFully(payload);
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      if (crc.getValue() != checksum) {
+        break;
+      }
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+      int changed = in.readInt();
+      for (int index = 0; index < changed; index++) {
+        int node = in.readInt();
+        int[] record = new int[NODE_INTS];
+        for (int field = 0; field < NODE_INTS; field++) {
+          record[field] = in.readInt();
+        }
+        this.writeRecord(node, record);
+      }
+      this._committed = Tops.read(in);
+      this.writeHeader(this._committed);
+      this._catalog = new byte[in.readInt()];
+      in.readFully(this._catalog);
+      position += 12 + size;
+      count++;
+    }
+    if (position < length) {
+      this._logger.warn("Discarding an incomplete transaction at the end of the graph store log.");
+      // Commits append to the log, and recovery stops at the first bad record, so the bad tail must go.
+      this._wal.setLength(position);
+      this._wal.getFD().sync();
+    }
+    return count;
+  }
+
+  // Mapping.
+
+  private MappedByteBuffer nodeSegment(int index) throws IOException {
+    return segment(this._nodes, this._nodeSegments, index);
+  }
+
+  private MappedByteBuffer edgeSegment(int index) throws IOException {
+    return segment(this._edges, this._edgeSegments, index);
+  }
+
+  private static MappedByteBuffer segment(FileChannel channel, List<MappedByteBuffer> segments, int index)
+      throws IOException {
+    while (segments.size() <= index) {
+      segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+    }
+    return segments.get(index);
+  }
+
+  private static long nodePosition(int node) {
+    return HEADER_SIZE + (long) node * NODE_SIZE;
+  }
+
+  private int readNode(int node, int field) {
+    if (!this._changed.isEmpty()) {
+      int[] record = this._changed.get(Integer.valueOf(node));
+      if (record != null) {
+        return record[field];
+      }
+    }
+    long position = nodePosition(node);
+    try {
+      return this.nodeSegment((int) (position / SEGMENT_SIZE)).getInt((int) (position % SEGMENT_SIZE) + field * 4);
+    }
+    catch (IOException e) {
+      throw new DeveloperError(String.format("Cannot read node %d from graph store.", Integer.valueOf(node)), e);
+    }
+  }
+
+  private int[] readRecord(int node) {
+    int[] record = new int[NODE_INTS];
+    for (int field = 0; field < NODE_INTS; field++) {
+      record[field] = this.readNode(node, field);
+    }
+    return record;
+  }
+
+  private void writeRecord(int node, int[] record) throws IOException {
+    long position = nodePosition(node);
+    MappedByteBuffer segment = this.nodeSegment((int) (position / SEGMENT_SIZE));
+    int offset = (int) (position % SEGMENT_SIZE);
+    for (int field = 0; field < NODE_INTS; field++) {
+      segment.putInt(offset + field * 4, record[field]);
+    }
+    this._dirtySegments.add(segment);
+  }
+
+  /**
+   * Changes a field of a node record. Committed records are changed in memory until commit; others are changed in
+   * place.
+   */
+  private void writeNode(int node, int field, int value) {
+    this.checkTransaction();
+    if (node < this._committed.nodeCount) {
+      Integer key = Integer.valueOf(node);
+      int[] record = this._changed.get(key);
+      if (record == null) {
+        record = this.readRecord(node);
+        this._changed.put(key, record);
+      }
+      record[field] = value;
+      return;
+    }
+    long position = nodePosition(node);
+    try {
+      MappedByteBuffer segment = this.nodeSegment((int) (position / SEGMENT_SIZE));
+      segment.putInt((int) (position % SEGMENT_SIZE) + field * 4, value);
+      this._dirtySegments.add(segment);
+    }
+    catch (IOException e) {
+      throw new DeveloperError(String.format("Cannot write node %d to graph store.", Integer.valueOf(node)), e);
+    }
+  }
+
+  private int readEdge(int slot) {
+    long position = (long) slot * 4;
+    try {
+      return this.edgeSegment((int) (position / SEGMENT_SIZE)).getInt((int) (position % SEGMENT_SIZE));
+    }
+    catch (IOException e) {
+      throw new DeveloperError("Cannot read edge from graph store.", e);
+    }
+  }
+
+  private void writeEdge(int slot, int value) {
+    long position = (long) slot * 4;
+    try {
+      MappedByteBuffer segment = this.edgeSegment((int) (position / SEGMENT_SIZE));
+      segment.putInt((int) (position % SEGMENT_SIZE), value);
+      this._dirtySegments.add(segment);
+    }
+    catch (IOException e) {
+      throw new DeveloperError("Cannot write edge to graph store.", e);
+    }
+  }
+
+  // Transactions.
+
+  private void checkTransaction() {
+    if (!this._inTransaction) {
+      throw new DeveloperError("Graph store changed outside a transaction.", new IllegalStateException());
+    }
+  }
+
+  /**
+   * @return whether a transaction is in progress
+   */
+  public boolean inTransaction() {
+    return this._inTransaction;
+  }
+
+  /**
+   * Begins a transaction.
+   */
+  public void begin() {
+    if (this._inTransaction) {
+      throw new DeveloperError("Graph store transactions cannot be nested.", new IllegalStateException());
+    }
+    this._inTransaction = true;
+  }
+
+  /**
+   * Commits the current transaction, making it durable.
+   *
+   * @param catalog the catalog to store with this transaction
+   */
+  public void commit(byte[] catalog) {
+    this.checkTransaction();
+    try {
+      // Appended data first, so that nothing committed can refer to data that is not on disk.
+      this.forceSegments();
+      this._labelFile.force(false);
+      this._heap.force(false);
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(this._changed.size());
+      for (Map.Entry<Integer, int[]> entry : this._changed.entrySet()) {
+        out.writeInt(entry.getKey().intValue());
+        for (int value : entry.getValue()) {
+          out.writeInt(value);
+        }
+      }
+      this._current.write(out);
+      out.writeInt(catalog.length);
+      out.write(catalog);
+      out.close();
+      byte[] payload = bytes.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      this._wal.seek(this._wal.length());
+      this._wal.writeInt(payload.length);
+      this._wal.writeLong(crc.getValue());
+      this._wal.write(payload);
+      this._wal.getFD().sync();
+
+      // Now the changes may be made in place.
+      for (Map.Entry<Integer, int[]> entry : this._changed.entrySet()) {
+        this.writeRecord(entry.getKey().intValue(), entry.getValue());
+      }
+      this.writeHeader(this._current);
+    }
+    catch (IOException e) {
+      this.rollback();
+      throw new DeveloperError("Cannot commit changes to graph store.", e);
+    }
+    this._changed.clear();
+    for (Map.Entry<Integer, List<Integer>> entry : this._releasedBlocks.entrySet()) {
+      for (Integer block : entry.getValue()) {
+        this.free(block.intValue(), entry.getKey().intValue());
+      }
+    }
+    this._releasedBlocks.clear();
+    this._takenBlocks.clear();
+    this._committed = this._current.copy();
+    this._catalog = catalog;
+    this._inTransaction = false;
+    if (this.getLogSize() > CHECKPOINT_SIZE) {
+      this.checkpoint();
+    }
+  }
+
+  /**
+   * Abandons the current transaction. Anything it appended is left as unused space, to be overwritten.
+   */
+  public void rollback() {
+    this._changed.clear();
+    this._releasedBlocks.clear();
+    for (Map.Entry<Integer, Integer> entry : this._takenBlocks.entrySet()) {
+      this.free(entry.getKey().intValue(), entry.getValue().intValue());
+    }
+    this._takenBlocks.clear();
+    while (this._labels.size() > this._committed.labelCount) {
+      this._labelIDs.remove(this._labels.remove(this._labels.size() - 1));
+    }
+    this._current = this._committed.copy();
+    this._inTransaction = false;
+  }
+
+  /**
+   * Forces everything to disk, saves the catalog and empties the log.
+   */
+  public void checkpoint() {
+    if (this._inTransaction) {
+      throw new DeveloperError("Cannot checkpoint during a transaction.", new IllegalStateException());
+    }
+    try {
+      this.forceSegments();
+      File temporary = new File(this._directory, "catalog.new");
+      FileOutputStream out = new FileOutputStream(temporary);
+      try {
+        out.write(this._catalog);
+        out.getFD().sync();
+      }
+      finally {
+        out.close();
+      }
+      File catalog = new File(this._directory, "catalog");
+      if (catalog.exists() && !catalog.delete() || !temporary.renameTo(catalog)) {
+        throw new IOException(String.format("Cannot replace \"%s\".", catalog));
+      }
+      this._wal.setLength(0);
+      this._wal.getFD().sync();
+    }
+    catch (IOException e) {
+      throw new DeveloperError("Cannot checkpoint graph store.", e);
+    }
+  }
+
+  private void forceSegments() {
+    for (MappedByteBuffer segment : this._dirtySegments) {
+      segment.force();
+    }
+    this._dirtySegments.clear();
+  }
+
+  /**
+   * @return the size of the log, in bytes
+   */
+  public long getLogSize() {
+    try {
+      return this._wal.length();
+    }
+    catch (IOException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Checkpoints the store and closes its files. Closing a closed store does nothing.
+   */
+  public void close() {
+    if (this._closed) {
+      return;
+    }
+    this._closed = true;
+    if (this._inTransaction) {
+      this.rollback();
+    }
+    this.checkpoint();
+    this.closeFiles();
+  }
+
+  private void closeFiles() {
+    for (Closeable file : new Closeable[] { this._nodes, this._edges, this._labelFile, this._heap, this._wal }) {
+      if (file != null) {
+        try {
+          file.close();
+        }
+        catch (IOException e) {
+          this._logger.warn("Error closing graph store.", e);
+        }
+      }
+    }
+  }
+
+  // Nodes.
+
+  /**
+   * Creates a new node (with no edges, no template, and an unknown height).
+   *
+   * @param parent the parent of the new node
+   * @return the new node
+   */
+  public int newNode(int parent) {
+    this.checkTransaction();
+    int node = this._current.nodeCount++;
+    int[] record = new int[NODE_INTS];
+    record[PARENT] = parent;
+    record[EDGES] = -1;
+    record[TEMPLATE_HIGH] = (int) (NO_RECORD >>> 32);
+    record[TEMPLATE_LOW] = (int) NO_RECORD;
+    record[HEIGHT] = Integer.MAX_VALUE;
+    try {
+      this.writeRecord(node, record);
+    }
+    catch (IOException e) {
+      throw new DeveloperError("Cannot create node in graph store.", e);
+    }
+    return node;
+  }
+
+  /**
+   * @return the number of nodes ever created (including removed ones)
+   */
+  public int getNodeCount() {
+    return this._current.nodeCount;
+  }
+
+  /**
+   * @param node
+   * @return the parent of the node
+   */
+  public int getParent(int node) {
+    return this.readNode(node, PARENT);
+  }
+
+  /**
+   * @param node
+   * @return the minimum number of words needed to reach a template from the node
+   */
+  public int getHeight(int node) {
+    return this.readNode(node, HEIGHT);
+  }
+
+  /**
+   * @param node
+   * @param height
+   */
+  public void setHeight(int node, int height) {
+    this.writeNode(node, HEIGHT, height);
+  }
+
+  /**
+   * @param node
+   * @return the heap offset of the node's template record (or {@link #NO_RECORD})
+   */
+  public long getTemplate(int node) {
+    return ((long) this.readNode(node, TEMPLATE_HIGH) << 32) | (this.readNode(node, TEMPLATE_LOW) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * @param node
+   * @param record the heap offset of the node's template record (or {@link #NO_RECORD})
+   */
+  public void setTemplate(int node, long record) {
+    this.writeNode(node, TEMPLATE_HIGH, (int) (record >>> 32));
+    this.writeNode(node, TEMPLATE_LOW, (int) record);
+  }
+
+  /**
+   * Marks a node as removed (its space is not reused).
+   *
+   * @param node
+   */
+  public void remove(int node) {
+    this.writeNode(node, FLAGS, this.readNode(node, FLAGS) | REMOVED);
+  }
+
+  // Edges.
+
+  /**
+   * @param node
+   * @return the number of edges from the node
+   */
+  public int getEdgeCount(int node) {
+    return this.readNode(node, EDGE_COUNT);
+  }
+
+  /**
+   * @param node
+   * @param index
+   * @return the label of the <code>index</code>th edge from the node (in label order)
+   */
+  public int getEdgeLabel(int node, int index) {
+    return this.readEdge(this.readNode(node, EDGES) + index * 2);
+  }
+
+  /**
+   * @param node
+   * @param index
+   * @return the node to which the <code>index</code>th edge from the node (in label order) leads
+   */
+  public int getEdgeChild(int node, int index) {
+    return this.readEdge(this.readNode(node, EDGES) + index * 2 + 1);
+  }
+
+  /**
+   * Finds the index of the edge with the given label, or (if there is none) <code>-(insertion point) - 1</code>.
+   */
+  private int find(int block, int count, int label) {
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int found = this.readEdge(block + middle * 2);
+      if (found < label) {
+        low = middle + 1;
+      }
+      else if (found > label) {
+        high = middle - 1;
+      }
+      else {
+        return middle;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * @param node
+   * @param label
+   * @return the node to which the edge from the given node with the given label leads (or {@link #NO_NODE})
+   */
+  public int getChild(int node, int label) {
+    if (label == NO_LABEL) {
+      return NO_NODE;
+    }
+    int count = this.readNode(node, EDGE_COUNT);
+    if (count == 0) {
+      return NO_NODE;
+    }
+    int block = this.readNode(node, EDGES);
+    int index = this.find(block, count, label);
+    return index < 0 ? NO_NODE : this.readEdge(block + index * 2 + 1);
+  }
+
+  /**
+   * Makes sure the node's edge block may be changed in place and has room for the given number of edges, moving it if
+   * necessary. A block that the committed graph uses is never changed in place.
+   */
+  private int prepareBlock(int node, int needed) {
+    int block = this.readNode(node, EDGES);
+    int count = this.readNode(node, EDGE_COUNT);
+    int capacity = this.readNode(node, EDGE_CAPACITY);
+    Integer key = Integer.valueOf(block);
+    boolean owned = block >= this._committed.edgeTop || this._takenBlocks.containsKey(key);
+    if (owned && needed <= capacity) {
+      return block;
+    }
+    int newCapacity = Math.max(MIN_EDGE_CAPACITY, capacity);
+    while (newCapacity < needed) {
+      newCapacity *= 2;
+    }
+    int newBlock = this.allocateEdges(newCapacity);
+    for (int slot = 0; slot < count * 2; slot++) {
+      this.writeEdge(newBlock + slot, this.readEdge(block + slot));
+    }
+    this.writeNode(node, EDGES, newBlock);
+    this.writeNode(node, EDGE_CAPACITY, newCapacity);
+    if (capacity > 0) {
+      if (this._takenBlocks.remove(key) != null) {
+        // Nothing committed refers to it, so it may be reused at once.
+        this.free(block, capacity);
+      }
+      else {
+        // Free once the transaction is committed (blocks appended in this transaction simply vanish on rollback).
+        List<Integer> released = this._releasedBlocks.get(Integer.valueOf(capacity));
+        if (released == null) {
+          released = new ArrayList<Integer>();
+          this._releasedBlocks.put(Integer.valueOf(capacity), released);
+        }
+        released.add(key);
+      }
+    }
+    return newBlock;
+  }
+
+  private void free(int block, int capacity) {
+    List<Integer> free = this._freeBlocks.get(Integer.valueOf(capacity));
+    if (free == null) {
+      free = new ArrayList<Integer>();
+      this._freeBlocks.put(Integer.valueOf(capacity), free);
+    }
+    free.add(Integer.valueOf(block));
+  }
+
+  private int allocateEdges(int capacity) {
+    List<Integer> free = this._freeBlocks.get(Integer.valueOf(capacity));
+    if (free != null && !free.isEmpty()) {
+      Integer block = free.remove(free.size() - 1);
+      this._takenBlocks.put(block, Integer.valueOf(capacity));
+      return block.intValue();
+    }
+    int slotsPerSegment = SEGMENT_SIZE / 4;
+    int size = capacity * 2;
+    if (size > slotsPerSegment) {
+      throw new DeveloperError(String.format("Too many edges (%d) from one node.", Integer.valueOf(capacity)),
+          new IllegalArgumentException());
+    }
+    int top = this._current.edgeTop;
+    if (top % slotsPerSegment + size > slotsPerSegment) {
+      top = (top / slotsPerSegment + 1) * slotsPerSegment;
+    }
+    this._current.edgeTop = top + size;
+    return top;
+  }
+
+  /**
+   * Adds an edge with the given label from one node to another, replacing any edge with the same label.
+   *
+   * @param node
+   * @param label
+   * @param child
+   */
+  public void putEdge(int node, int label, int child) {
+    this.checkTransaction();
+    int count = this.readNode(node, EDGE_COUNT);
+    int block = this.readNode(node, EDGES);
+    int index = count == 0 ? -1 : this.find(block, count, label);
+    if (index >= 0) {
+      block = this.prepareBlock(node, count);
+      this.writeEdge(block + index * 2 + 1, child);
+      return;
+    }
+    int insertion = -index - 1;
+    block = this.prepareBlock(node, count + 1);
+    for (int slot = count * 2 - 1; slot >= insertion * 2; slot--) {
+      this.writeEdge(block + slot + 2, this.readEdge(block + slot));
+    }
+    this.writeEdge(block + insertion * 2, label);
+    this.writeEdge(block + insertion * 2 + 1, child);
+    this.writeNode(node, EDGE_COUNT, count + 1);
+  }
+
+  /**
+   * Removes the edge with the given label from the node, if there is one.
+   *
+   * @param node
+   * @param label
+   * @return the node to which the removed edge led (or {@link #NO_NODE})
+   */
+  public int removeEdge(int node, int label) {
+    this.checkTransaction();
+    int count = this.readNode(node, EDGE_COUNT);
+    if (count == 0 || label == NO_LABEL) {
+      return NO_NODE;
+    }
+    int index = this.find(this.readNode(node, EDGES), count, label);
+    if (index < 0) {
+      return NO_NODE;
+    }
+    int block = this.prepareBlock(node, count);
+    int child = this.readEdge(block + index * 2 + 1);
+    for (int slot = index * 2; slot < (count - 1) * 2; slot++) {
+      this.writeEdge(block + slot, this.readEdge(block + slot + 2));
+    }
+    this.writeNode(node, EDGE_COUNT, count - 1);
+    return child;
+  }
+
+  // Labels.
+
+  /**
+   * @param word
+   * @return the id of the label for the word, in any case (or {@link #NO_LABEL} if there is none)
+   */
+  public int getLabel(String word) {
+    Integer id = this._labelIDs.get(word.toUpperCase());
+    return id == null ? NO_LABEL : id.intValue();
+  }
+
+  /**
+   * @param word
+   * @return the id of the label for the word, in any case, creating it (in upper case) if necessary
+   */
+  public int createLabel(String word) {
+    String upper = word.toUpperCase();
+    Integer id = this._labelIDs.get(upper);
+    if (id != null) {
+      return id.intValue();
+    }
+    this.checkTransaction();
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeUTF(upper);
+      out.close();
+      ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+      long position = this._current.labelTop;
+      while (buffer.hasRemaining()) {
+        position += this._labelFile.write(buffer, position);
+      }
+      this._current.labelTop = position;
+    }
+    catch (IOException e) {
+      throw new DeveloperError(String.format("Cannot store label \"%s\" in graph store.", word), e);
+    }
+    int label = this._labels.size();
+    this._labels.add(upper);
+    this._labelIDs.put(upper, Integer.valueOf(label));
+    this._current.labelCount++;
+    return label;
+  }
+
+  /**
+   * @param label
+   * @return the word for the label
+   */
+  public String getWord(int label) {
+    return this._labels.get(label);
+  }
+
+  // Heap.
+
+  /**
+   * Appends a record of strings to the heap.
+   *
+   * @param strings
+   * @return the offset of the record
+   */
+  public long putStrings(String... strings) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeInt(strings.length);
+      for (String string : strings) {
+        byte[] encoded = string.getBytes(UTF8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+      }
+      out.close();
+    }
+    catch (IOException e) {
+      throw new DeveloperError("Cannot encode graph store record.", e);
+    }
+    return this.append(bytes.toByteArray());
+  }
+
+  /**
+   * @param record the offset of a record written by {@link #putStrings}
+   * @return the strings in the record
+   */
+  public String[] getStrings(long record) {
+    ByteBuffer count = this.read(record, 4);
+    String[] strings = new String[count.getInt()];
+    long position = record + 4;
+    for (int index = 0; index < strings.length; index++) {
+      int length = this.read(position, 4).getInt();
+      ByteBuffer encoded = this.read(position + 4, length);
+      strings[index] = UTF8.decode(encoded).toString();
+      position += 4 + length;
+    }
+    return strings;
+  }
+
+  /**
+   * Appends a record of ints to the heap.
+   *
+   * @param values
+   * @return the offset of the record
+   */
+  public long putInts(int[] values) {
+    ByteBuffer buffer = ByteBuffer.allocate(4 + values.length * 4);
+    buffer.putInt(values.length);
+    for (int value : values) {
+      buffer.putInt(value);
+    }
+    return this.append(buffer.array());
+  }
+
+  /**
+   * @param record the offset of a record written by {@link #putInts}
+   * @return the ints in the record
+   */
+  public int[] getInts(long record) {
+    int count = this.read(record, 4).getInt();
+    ByteBuffer buffer = this.read(record + 4, count * 4);
+    int[] values = new int[count];
+    for (int index = 0; index < count; index++) {
+      values[index] = buffer.getInt();
+    }
+    return values;
+  }
+
+  private long append(byte[] bytes) {
+    this.checkTransaction();
+    long record = this._current.heapTop;
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    long position = record;
+    try {
+      while (buffer.hasRemaining()) {
+        position += this._heap.write(buffer, position);
+      }
+    }
+    catch (IOException e) {
+      throw new DeveloperError("Cannot write to graph store heap.", e);
+    }
+    this._current.heapTop = position;
+    return record;
+  }
+
+  private ByteBuffer read(long position, int length) {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    try {
+      long at = position;
+      while (buffer.hasRemaining()) {
+        int read = this._heap.read(buffer, at);
+        if (read < 0) {
+          throw new IOException("Unexpected end of graph store heap.");
+        }
+        at += read;
+      }
+    }
+    catch (IOException e) {
+      throw new DeveloperError("Cannot read from graph store heap.", e);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  // Catalog.
+
+  /**
+   * @return the catalog as of the last commit
+   */
+  public byte[] getCatalog() {
+    return this._catalog;
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      byte[] bytes = new byte[(int) file.length()];
+      in.readFully(bytes);
+      return bytes;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @return a one-line summary of the store's size
+   */
+  @SuppressWarnings("boxing")
+  public String report() {
+    return String.format("Graph store \"%s\": %,d nodes, %,d edge slots, %,d labels, %,d heap bytes, %,d log bytes.",
+        this._directory, this._committed.nodeCount, this._committed.edgeTop, this._committed.labelCount,
+        this._committed.heapTop, this.getLogSize());
+  }
+}
@@ -0,0 +1,834 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.CoreSettings;
+import org.aitools.programd.util.ManagedProcess;
+import org.aitools.programd.util.ManagedProcesses;
+import org.aitools.programd.util.Deadline;
+import org.aitools.programd.util.NoMatchException;
+import org.aitools.util.Text;
+import org.aitools.util.resource.Filesystem;
+import org.aitools.util.resource.URLTools;
+import org.aitools.util.runtime.DeveloperError;
+import org.aitools.util.runtime.UserError;
+
+/**
+ * A {@link Graphmapper} that keeps the graph in a local {@link FileGraphStore}, so that the graph persists between runs
+ * and may be larger than the heap, without needing a database server. Matching reads nodes and edges from memory-mapped
+ * files; templates are read from the store's heap as they are matched.
+ * <p>
+ * Each file is loaded in one transaction (as are unloading a file, adding a file for another bot, and removing a
+ * category), which is made durable through the store's write-ahead log; matching waits while a transaction is being
+ * made. The graph is kept between runs only if <code>reset-graph</code> is <code>false</code>; in that case a file
+ * that is already in the graph for a bot, and has not been modified since it was loaded, is not read again.
+ * </p>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class FileGraphmapper extends AbstractGraphmapper {
+
+  /** How often (in milliseconds) to checkpoint the store, if anything has changed. */
+  private static final long CHECKPOINT_INTERVAL = 60000;
+
+  /** What the graph knows about a loaded file. */
+  private static class CatalogEntry {
+
+    /** The bots for which the file is loaded. */
+    Set<String> botids = new LinkedHashSet<String>();
+
+    /** When the file was last modified, as of loading it (0 if unknown). */
+    long lastModified;
+
+    /** The heap record listing the file's &lt;bot&gt; nodes. */
+    long nodes = FileGraphStore.NO_RECORD;
+  }
+
+  /** Checkpoints the store periodically, and closes it at shutdown. */
+  private class Checkpointer implements ManagedProcess {
+
+    private volatile boolean _running = true;
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      while (this._running) {
+        synchronized (this) {
+          try {
+            this.wait(CHECKPOINT_INTERVAL);
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (this._running) {
+          FileGraphmapper.this.checkpoint();
+        }
+      }
+    }
+
+    /**
+     * @see org.aitools.programd.util.ManagedProcess#shutdown()
+     */
+    @Override
+    public void shutdown() {
+      this._running = false;
+      synchronized (this) {
+        this.notifyAll();
+      }
+      FileGraphmapper.this.close();
+    }
+  }
+
+  /** The store. */
+  private FileGraphStore _store;
+
+  /** Guards the store: matching reads, changes write. */
+  private ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+
+  /** The loaded files. */
+  private Map<URL, CatalogEntry> _catalog = new HashMap<URL, CatalogEntry>();
+
+  /** The &lt;bot&gt; nodes reached by the file being loaded. */
+  private Map<URL, Set<Integer>> _botidNodes = new HashMap<URL, Set<Integer>>();
+
+  /** The checkpointer (started with the first change). */
+  private Checkpointer _checkpointer;
+
+  /**
+   * Creates a new FileGraphmapper, opening the store named in the settings of the given Core.
+   *
+   * @param core the Core from which to read settings
+   */
+  public FileGraphmapper(Core core) {
+    super(core);
+    CoreSettings settings = core.getSettings();
+    URL location = settings.getGraphmapperFileStore();
+    if (location == null) {
+      throw new UserError("graphmapper.file-store must be set in order to use FileGraphmapper.",
+          new NullPointerException());
+    }
+    File directory = new File(URLTools.unescape(location.getPath()));
+    this._store = new FileGraphStore(directory, settings.resetGraph(), this._logger);
+    this.readCatalog(this._store.getCatalog());
+    this._logger.info(this._store.report());
+  }
+
+  // Catalog.
+
+  private void readCatalog(byte[] bytes) {
+    this._catalog.clear();
+    if (bytes.length == 0) {
+      return;
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    try {
+      this._totalCategories = in.readInt();
+      this._duplicateCategories = in.readInt();
+      int count = in.readInt();
+      for (int index = 0; index < count; index++) {
+        URL path = new URL(in.readUTF());
+        CatalogEntry entry = new CatalogEntry();
+        entry.lastModified = in.readLong();
+        entry.nodes = in.readLong();
+        int bots = in.readInt();
+        for (int bot = 0; bot < bots; bot++) {
+          entry.botids.add(in.readUTF());
+        }
+        this._catalog.put(path, entry);
+      }
+    }
+    catch (MalformedURLException e) {
+      throw new DeveloperError("Invalid URL in graph store catalog.", e);
+    }
+    catch (IOException e) {
+      throw new DeveloperError("Cannot read graph store catalog.", e);
+    }
+  }
+
+  private byte[] writeCatalog() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeInt(this._totalCategories);
+      out.writeInt(this._duplicateCategories);
+      out.writeInt(this._catalog.size());
+      for (Map.Entry<URL, CatalogEntry> item : this._catalog.entrySet()) {
+        CatalogEntry entry = item.getValue();
+        out.writeUTF(item.getKey().toExternalForm());
+        out.writeLong(entry.lastModified);
+        out.writeLong(entry.nodes);
+        out.writeInt(entry.botids.size());
+        for (String botid : entry.botids) {
+          out.writeUTF(botid);
+        }
+      }
+      out.close();
+    }
+    catch (IOException e) {
+      throw new DeveloperError("Cannot write graph store catalog.", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @return the &lt;bot&gt; nodes recorded for the given catalog entry
+   */
+  private int[] getBotIDNodes(CatalogEntry entry) {
+    return entry.nodes == FileGraphStore.NO_RECORD ? new int[0] : this._store.getInts(entry.nodes);
+  }
+
+  private static long getLastModified(URL path) {
+    if (path.getProtocol().equals(Filesystem.FILE)) {
+      return new File(URLTools.unescape(path.getPath())).lastModified();
+    }
+    return 0;
+  }
+
+  // Transactions.
+
+  private void begin() {
+    this._lock.writeLock().lock();
+    this._store.begin();
+  }
+
+  private void commit() {
+    try {
+      this._store.commit(this.writeCatalog());
+    }
+    finally {
+      this._lock.writeLock().unlock();
+    }
+    if (this._checkpointer == null) {
+      ManagedProcesses processes = this._core.getManagedProcesses();
+      if (processes != null) {
+        this._checkpointer = new Checkpointer();
+        processes.start(this._checkpointer, "graph store checkpointer");
+      }
+    }
+  }
+
+  /**
+   * Abandons the current transaction, and restores the catalog to match the store.
+   */
+  private void rollback() {
+    try {
+      this._store.rollback();
+      this._botidNodes.clear();
+      this.readCatalog(this._store.getCatalog());
+    }
+    finally {
+      this._lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Forces the store to disk and empties its log, if anything has changed.
+   */
+  public void checkpoint() {
+    this._lock.writeLock().lock();
+    try {
+      if (this._store.getLogSize() > 0) {
+        this._store.checkpoint();
+      }
+    }
+    finally {
+      this._lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Checkpoints and closes the store.
+   */
+  public void close() {
+    this._lock.writeLock().lock();
+    try {
+      this._store.close();
+    }
+    finally {
+      this._lock.writeLock().unlock();
+    }
+  }
+
+  // Adding.
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#add(java.lang.String, java.lang.String, java.lang.String,
+   *      java.lang.String, org.aitools.programd.Bot, java.net.URL)
+   */
+  @Override
+  protected void add(String pattern, String that, String topic, String template, Bot bot, URL source) {
+    boolean own = !this._lock.isWriteLockedByCurrentThread();
+    if (own) {
+      this.begin();
+    }
+    try {
+      this.addPath(pattern, that, topic, template, bot.getID(), source);
+    }
+    catch (RuntimeException e) {
+      if (own) {
+        this.rollback();
+      }
+      throw e;
+    }
+    if (own) {
+      this.associateBotIDWithFilename(bot.getID(), source);
+      this.commit();
+    }
+  }
+
+  private void addPath(String pattern, String that, String topic, String template, String botid, URL source) {
+    List<String> path = Text.wordSplit(pattern);
+    path.add(THAT);
+    path.addAll(Text.wordSplit(that));
+    path.add(TOPIC);
+    path.addAll(Text.wordSplit(topic));
+    path.add(BOT);
+    path.add(botid);
+
+    int node = FileGraphStore.ROOT;
+    for (String word : path) {
+      int label = this._store.createLabel(word);
+      int child = this._store.getChild(node, label);
+      if (child == FileGraphStore.NO_NODE) {
+        child = this._store.newNode(node);
+        this._store.putEdge(node, label, child);
+      }
+      // Associate <BOTID> nodes with their sources.
+      if (word.equals(BOT)) {
+        Set<Integer> nodes = this._botidNodes.get(source);
+        if (nodes == null) {
+          nodes = new LinkedHashSet<Integer>();
+          this._botidNodes.put(source, nodes);
+        }
+        nodes.add(Integer.valueOf(child));
+      }
+      node = child;
+    }
+    this.fillInHeight(node);
+
+    long stored = this._store.getTemplate(node);
+    if (stored == FileGraphStore.NO_RECORD) {
+      this._store.setTemplate(node, this._store.putStrings(template, source.toExternalForm()));
+      this._totalCategories++;
+      return;
+    }
+    this._duplicateCategories++;
+    String[] existing = this._store.getStrings(stored);
+    String storedTemplate = existing[0];
+    String filenames = existing[1];
+    switch (this._mergePolicy) {
+      case SKIP:
+        if (this._noteEachMerge) {
+          this._logger.warn(String.format(
+              "Skipping path-identical category from \"%s\" which duplicates path of category from \"%s\": %s:%s:%s",
+              source, filenames, pattern, that, topic));
+        }
+        break;
+
+      case OVERWRITE:
+        if (this._noteEachMerge) {
+          this._logger.warn(String.format(
+              "Overwriting path-identical category from \"%s\" with new category from \"%s\".  Path: %s:%s:%s",
+              filenames, source, pattern, that, topic));
+        }
+        this._store.setTemplate(node, this._store.putStrings(template, source.toExternalForm()));
+        break;
+
+      case APPEND:
+        if (this._noteEachMerge) {
+          this._logger.warn(String.format(
+              "Appending template of category from \"%s\" to template of path-identical category from \"%s\": %s:%s:%s",
+              source, filenames, pattern, that, topic));
+        }
+        this._store.setTemplate(node, this._store.putStrings(this.appendTemplate(storedTemplate, template), String
+            .format("%s, %s", filenames, source)));
+        break;
+
+      case COMBINE:
+        if (this._noteEachMerge) {
+          this._logger.warn(String.format(
+              "Combining template of category from \"%s\" with template of path-identical category from \"%s\": %s:%s:%s",
+              source, filenames, pattern, that, topic));
+        }
+        this._store.setTemplate(node, this._store.putStrings(this.combineTemplates(storedTemplate, template), String
+            .format("%s, %s", filenames, source)));
+        break;
+    }
+  }
+
+  /**
+   * Records that a template can be reached from the given node with no more words, and that its ancestors are
+   * correspondingly close to one.
+   */
+  private void fillInHeight(int node) {
+    int current = node;
+    int height = 0;
+    while (current != FileGraphStore.NO_NODE && this._store.getHeight(current) > height) {
+      this._store.setHeight(current, height);
+      current = this._store.getParent(current);
+      height++;
+    }
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#addForBot(java.net.URL, java.lang.String)
+   */
+  @Override
+  protected void addForBot(URL path, String botid) {
+    CatalogEntry entry = this._catalog.get(path);
+    if (entry == null) {
+      throw new IllegalArgumentException("Must not call addForBot() using a URL that has not already been loaded.");
+    }
+    if (entry.botids.contains(botid)) {
+      throw new IllegalArgumentException(
+          "Must not call addForBot() using a URL and botid that have already been associated.");
+    }
+    if (this._logger.isDebugEnabled()) {
+      this._logger.debug(String.format("Adding botid \"%s\" to all paths associated with \"%s\".", botid, path));
+    }
+    this.begin();
+    try {
+      int label = this._store.createLabel(botid);
+      for (int node : this.getBotIDNodes(entry)) {
+        if (this._store.getEdgeCount(node) > 0 && this._store.getChild(node, label) == FileGraphStore.NO_NODE) {
+          // Hook up with the existing template.
+          this._store.putEdge(node, label, this._store.getEdgeChild(node, 0));
+          this._totalCategories++;
+        }
+      }
+      entry.botids.add(botid);
+    }
+    catch (RuntimeException e) {
+      this.rollback();
+      throw e;
+    }
+    this.commit();
+    this.register(path, botid);
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#associateBotIDWithFilename(java.lang.String, java.net.URL)
+   */
+  @Override
+  protected void associateBotIDWithFilename(String botid, URL filename) {
+    CatalogEntry entry = this._catalog.get(filename);
+    if (entry == null) {
+      entry = new CatalogEntry();
+      this._catalog.put(filename, entry);
+    }
+    entry.botids.add(botid);
+    entry.lastModified = getLastModified(filename);
+    Set<Integer> added = this._botidNodes.remove(filename);
+    if (added != null) {
+      Set<Integer> nodes = new LinkedHashSet<Integer>();
+      for (int node : this.getBotIDNodes(entry)) {
+        nodes.add(Integer.valueOf(node));
+      }
+      if (nodes.addAll(added)) {
+        int[] values = new int[nodes.size()];
+        int index = 0;
+        for (Integer node : nodes) {
+          values[index++] = node.intValue();
+        }
+        entry.nodes = this._store.putInts(values);
+      }
+    }
+    this.register(filename, botid);
+  }
+
+  /**
+   * Lists the file among the bot's loaded files (with no nodemappers, since this Graphmapper does not have any).
+   */
+  private void register(URL path, String botid) {
+    Map<URL, Set<Nodemapper>> loaded = this._core.getBot(botid).getLoadedFilesMap();
+    if (!loaded.containsKey(path)) {
+      loaded.put(path, new LinkedHashSet<Nodemapper>());
+    }
+  }
+
+  /**
+   * Reads the whole file into memory before loading it, so that matching does not wait while it is parsed. A file that
+   * cannot be read completely is not loaded at all.
+   *
+   * @see org.aitools.programd.graph.AbstractGraphmapper#doLoad(java.net.URL, java.lang.String)
+   */
+  @Override
+  protected void doLoad(URL path, String botid) {
+    StagedLoad staged = new StagedLoad(path, botid);
+    if (this.read(path, botid, staged)) {
+      this.doLoad(staged);
+    }
+  }
+
+  /**
+   * Loads the staged file in one transaction.
+   *
+   * @see org.aitools.programd.graph.AbstractGraphmapper#doLoad(org.aitools.programd.graph.StagedLoad)
+   */
+  @Override
+  protected void doLoad(StagedLoad staged) {
+    this.beforeLoad(staged.getPath(), staged.getBotID());
+    this.begin();
+    try {
+      staged.replay(this);
+      this.associateBotIDWithFilename(staged.getBotID(), staged.getPath());
+    }
+    catch (RuntimeException e) {
+      this.rollback();
+      throw e;
+    }
+    this.commit();
+    this.afterLoad(staged.getPath(), staged.getBotID());
+  }
+
+  /**
+   * Skips a file that is already in the graph for the bot and has not been modified since it was loaded (as when the
+   * graph has been kept from a previous run).
+   *
+   * @see org.aitools.programd.graph.AbstractGraphmapper#load(java.net.URL, java.lang.String,
+   *      org.aitools.programd.graph.StagedLoad)
+   */
+  @Override
+  protected void load(URL path, String botid, StagedLoad staged) {
+    CatalogEntry entry = this._catalog.get(path);
+    if (staged == null && entry != null && entry.botids.contains(botid) && entry.lastModified != 0
+        && entry.lastModified == getLastModified(path)) {
+      if (this._logger.isDebugEnabled()) {
+        this._logger.debug(String.format("\"%s\" is already in the graph for \"%s\".", path, botid));
+      }
+      this.register(path, botid);
+      if (this._useAIMLWatcher) {
+        this._core.getAIMLWatcher().addWatchFile(path);
+      }
+      return;
+    }
+    super.load(path, botid, staged);
+  }
+
+  @Override
+  protected boolean isAlreadyLoaded(URL filename) {
+    return this._catalog.containsKey(filename);
+  }
+
+  @Override
+  protected boolean isAlreadyLoadedForBot(URL filename, String botid) {
+    CatalogEntry entry = this._catalog.get(filename);
+    return entry != null && entry.botids.contains(botid);
+  }
+
+  // Matching.
+
+  /**
+   * Searches for a match in the graph to a given path. This follows {@link MemoryGraphmapper}, with the labels of the
+   * input words looked up once: <code>labels[labels.length - input.size()]</code> is the label of the first word of
+   * <code>input</code>.
+   */
+  @SuppressWarnings("boxing")
+  private int match(int node, int parent, List<String> input, int[] labels, String wildcardContent,
+      StringBuilder path, Match match, Match.State matchState, Deadline deadline) throws NoMatchException {
+    if (node == FileGraphStore.NO_NODE) {
+      return FileGraphStore.NO_NODE;
+    }
+    match.countNode();
+    // Give up if the deadline has passed.
+    if (deadline.hasExpired()) {
+      throw new NoMatchException("Match time expired.");
+    }
+
+    // Halt matching if this node is higher than the length of the input.
+    int height = this._store.getHeight(node);
+    if (input.size() < height) {
+      if (this._matchLogger.isDebugEnabled()) {
+        this._matchLogger.debug(String.format("Halting match because input size %d < node height %d.%ninput: %s",
+            input.size(), height, input.toString()));
+      }
+      return FileGraphStore.NO_NODE;
+    }
+
+    // If no more tokens in the input, see if this is a template.
+    if (input.size() == 0) {
+      long record = this._store.getTemplate(node);
+      if (record != FileGraphStore.NO_RECORD) {
+        String[] stored = this._store.getStrings(record);
+        match.setBotID(path.toString());
+        match.setTemplate(stored[0]);
+        match.setFilenames(Arrays.asList(stored[1].split(",")));
+        return node;
+      }
+      return FileGraphStore.NO_NODE;
+    }
+
+    String head = input.get(0).trim();
+    int headLabel = labels[labels.length - input.size()];
+    List<String> tail = input.subList(1, input.size());
+    Match.State _matchState = matchState;
+
+    // _ comes first in the AIML "alphabet".
+    int result = this.match(UNDERSCORE, this._store.getLabel(UNDERSCORE), _matchState, node, tail, labels, true,
+        wildcardContent, head, path, match, _matchState, deadline);
+    if (result != FileGraphStore.NO_NODE) {
+      return result;
+    }
+
+    // Then the head itself.
+    if (this._store.getChild(node, headLabel) != FileGraphStore.NO_NODE) {
+      boolean isMarker = false;
+      if (head.startsWith("<")) {
+        match.setPathComponent(_matchState, path.toString().toUpperCase());
+        if (head.equals(THAT)) {
+          isMarker = true;
+          _matchState = Match.State.IN_THAT;
+        }
+        else if (head.equals(TOPIC)) {
+          isMarker = true;
+          _matchState = Match.State.IN_TOPIC;
+        }
+        else if (head.equals(BOT)) {
+          isMarker = true;
+          _matchState = Match.State.IN_BOTID;
+        }
+      }
+      result = this.match(head, headLabel, isMarker ? _matchState.preceding() : null, node, tail, labels, !isMarker,
+          wildcardContent, isMarker ? "" : wildcardContent, path, match, _matchState, deadline);
+      if (result != FileGraphStore.NO_NODE) {
+        return result;
+      }
+    }
+
+    // * comes last in the AIML "alphabet".
+    result = this.match(ASTERISK, this._store.getLabel(ASTERISK), _matchState, node, tail, labels, true,
+        wildcardContent, head, path, match, _matchState, deadline);
+    if (result != FileGraphStore.NO_NODE) {
+      return result;
+    }
+
+    // If this node was reached by a wildcard, the wildcard may absorb the head too.
+    if (node == this._store.getChild(parent, this._store.getLabel(ASTERISK))
+        || node == this._store.getChild(parent, this._store.getLabel(UNDERSCORE))) {
+      result = this.match(node, parent, tail, labels, String.format("%s %s", wildcardContent, head), path, match,
+          _matchState, deadline);
+      if (result != FileGraphStore.NO_NODE) {
+        return result;
+      }
+    }
+    return FileGraphStore.NO_NODE;
+  }
+
+  private int match(String key, int label, Match.State wildcardDestination, int node, List<String> tail,
+      int[] labels, boolean appendToPath, String currentWildcard, String newWildcard, StringBuilder path, Match match,
+      Match.State matchState, Deadline deadline) throws NoMatchException {
+    int child = this._store.getChild(node, label);
+    if (child == FileGraphStore.NO_NODE) {
+      return FileGraphStore.NO_NODE;
+    }
+    StringBuilder newPath = new StringBuilder();
+    if (path.length() > 0) {
+      newPath.append(path);
+      newPath.append(' ');
+    }
+    newPath.append(key);
+
+    int result = this.match(child, node, tail, labels, newWildcard, appendToPath ? newPath : new StringBuilder(),
+        match, matchState, deadline);
+    if (result == FileGraphStore.NO_NODE) {
+      match.countBacktrack();
+    }
+    if (result != FileGraphStore.NO_NODE && wildcardDestination != null
+        && wildcardDestination.compareTo(Match.State.IN_BOTID) < 0 && currentWildcard.length() > 0) {
+      match.pushWildcardContent(wildcardDestination, currentWildcard);
+    }
+    return result;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#match(java.lang.String, java.lang.String, java.lang.String,
+   *      java.lang.String, org.aitools.programd.util.Deadline)
+   */
+  @Override
+  public Match match(String input, String that, String topic, String botid, Deadline deadline)
+      throws NoMatchException {
+    List<String> inputPath = AbstractGraphmapper.composeInputPath(input, that, topic, botid);
+    Match match = new Match();
+    this._lock.readLock().lock();
+    try {
+      int[] labels = new int[inputPath.size()];
+      for (int index = 0; index < labels.length; index++) {
+        labels[index] = this._store.getLabel(inputPath.get(index).trim());
+      }
+      int result = this.match(FileGraphStore.ROOT, FileGraphStore.ROOT, inputPath, labels, "", new StringBuilder(),
+          match, Match.State.IN_INPUT, deadline.within(this._responseTimeout));
+      if (result != FileGraphStore.NO_NODE) {
+        return match;
+      }
+    }
+    finally {
+      this._lock.readLock().unlock();
+    }
+    throw new NoMatchException(String.format("%s:%s:%s:%s", input, that, topic, botid));
+  }
+
+  // Removing.
+
+  /**
+   * Removes the node from its parent, and then the parent too if that leaves it with nothing, and so on.
+   */
+  private void prune(int node) {
+    int current = node;
+    while (current != FileGraphStore.ROOT && this._store.getEdgeCount(current) == 0
+        && this._store.getTemplate(current) == FileGraphStore.NO_RECORD) {
+      int parent = this._store.getParent(current);
+      for (int index = this._store.getEdgeCount(parent) - 1; index >= 0; index--) {
+        if (this._store.getEdgeChild(parent, index) == current) {
+          this._store.removeEdge(parent, this._store.getEdgeLabel(parent, index));
+          break;
+        }
+      }
+      this._store.remove(current);
+      current = parent;
+    }
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#removeCategory(java.lang.String, java.lang.String, java.lang.String,
+   *      org.aitools.programd.Bot)
+   */
+  @Override
+  public void removeCategory(String pattern, String that, String topic, Bot bot) {
+    if (this.refuseIfFrozen(String.format("removing the category \"%s\"", pattern))) {
+      return;
+    }
+    List<String> path = Text.wordSplit(pattern);
+    path.add(THAT);
+    path.addAll(Text.wordSplit(that));
+    path.add(TOPIC);
+    path.addAll(Text.wordSplit(topic));
+    path.add(BOT);
+    this.begin();
+    try {
+      int node = FileGraphStore.ROOT;
+      for (String word : path) {
+        node = this._store.getChild(node, this._store.getLabel(word));
+        if (node == FileGraphStore.NO_NODE) {
+          break;
+        }
+      }
+      if (node == FileGraphStore.NO_NODE
+          || this._store.removeEdge(node, this._store.getLabel(bot.getID())) == FileGraphStore.NO_NODE) {
+        this._logger.error(String.format("Could not find category to remove (%s:%s:%s)", pattern, that, topic));
+      }
+      else {
+        this._totalCategories--;
+        this.prune(node);
+      }
+    }
+    catch (RuntimeException e) {
+      this.rollback();
+      throw e;
+    }
+    this.commit();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.Graphmapper#unload(java.net.URL, org.aitools.programd.Bot)
+   */
+  @Override
+  public void unload(URL path, Bot bot) {
+    if (this.refuseIfFrozen(String.format("unloading \"%s\"", URLTools.unescape(path)))) {
+      return;
+    }
+    CatalogEntry entry = this._catalog.get(path);
+    if (entry == null || !entry.botids.contains(bot.getID())) {
+      return;
+    }
+    this.begin();
+    try {
+      int label = this._store.getLabel(bot.getID());
+      for (int node : this.getBotIDNodes(entry)) {
+        if (this._store.removeEdge(node, label) != FileGraphStore.NO_NODE) {
+          this._totalCategories--;
+          this.prune(node);
+        }
+      }
+      entry.botids.remove(bot.getID());
+      if (entry.botids.isEmpty()) {
+        this._catalog.remove(path);
+      }
+    }
+    catch (RuntimeException e) {
+      this.rollback();
+      throw e;
+    }
+    this.commit();
+  }
+
+  // Reporting.
+
+  private void print(int node, PrintWriter out) {
+    long record = this._store.getTemplate(node);
+    if (record != FileGraphStore.NO_RECORD) {
+      out.println(org.jdom.Text.normalizeString(this._store.getStrings(record)[0]));
+    }
+    for (int index = 0; index < this._store.getEdgeCount(node); index++) {
+      out.print(this._store.getWord(this._store.getEdgeLabel(node, index)));
+      out.print(' ');
+      this.print(this._store.getEdgeChild(node, index), out);
+    }
+  }
+
+  @Override
+  protected void print(PrintWriter out) {
+    this._lock.readLock().lock();
+    try {
+      this.print(FileGraphStore.ROOT, out);
+    }
+    finally {
+      this._lock.readLock().unlock();
+    }
+    out.close();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#getNodeCount()
+   */
+  @Override
+  public int getNodeCount() {
+    return this._store.getNodeCount();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#getCategoryReport()
+   */
+  @Override
+  public String getCategoryReport() {
+    return String.format("%s %s", super.getCategoryReport(), this._store.report());
+  }
+}
@@ -10,8 +10,10 @@
 package org.aitools.programd.graph;
 
 import java.net.URL;
+import java.util.List;
 
 import org.aitools.programd.Bot;
+import org.aitools.programd.util.Deadline;
 import org.aitools.programd.util.NoMatchException;
 
 /**
@@ -22,19 +24,7 @@ import org.aitools.programd.util.NoMatchException;
  * 
  * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
  */
-public interface Graphmapper {
-
-  /**
-   * Adds a new category to the <code>Graphmapper</code>.
-   * 
-   * @param pattern the category's <code>pattern</code>
-   * @param that the category's <code>that</code>
-   * @param topic the category's <code>topic</code>
-   * @param template the category's <code>template</code>
-   * @param bot the bot for whom the category is being added
-   * @param source the path from which the category comes
-   */
-  public void addCategory(String pattern, String that, String topic, String template, Bot bot, URL source);
+public interface Graphmapper extends CategoryHandler {
 
   /**
    * Returns the number of categories presently loaded.
@@ -50,6 +40,29 @@ public interface Graphmapper {
    */
   public String getCategoryReport();
 
+  /**
+   * Returns the share of lookups during matching that were answered from this <code>Graphmapper</code>'s cache or
+   * index, rather than by reading or walking the graph.
+   * 
+   * @return the hit ratio, from 0 to 1 (0 if there is no cache or index)
+   */
+  public double getCacheHitRatio();
+
+  /**
+   * Returns how many times each category that the given bot has loaded has been matched, since it was loaded or the
+   * counts were last reset. (A category that the bot shares from a file first loaded for another bot is counted
+   * there.)
+   * 
+   * @param bot
+   * @return the hits for each category (empty if this <code>Graphmapper</code> does not count them)
+   */
+  public List<CategoryHits> getCategoryHits(Bot bot);
+
+  /**
+   * Empties any caches this <code>Graphmapper</code> keeps, so that they are filled again from the graph.
+   */
+  public void dropCaches();
+
   /**
    * Returns the number of path-identical categories encountered.
    * 
@@ -57,6 +70,20 @@ public interface Graphmapper {
    */
   public int getDuplicateCategoryCount();
 
+  /**
+   * Returns the number of nodes in the graph.
+   * 
+   * @return the number of nodes in the graph (-1 if this <code>Graphmapper</code> does not keep count)
+   */
+  public int getNodeCount();
+
+  /**
+   * Tells whether the graph has been frozen against changes.
+   * 
+   * @return whether the graph is frozen
+   */
+  public boolean isFrozen();
+
   /**
    * Loads the <code>Graphmapper</code> with the AIML file to be found at <code>path</code>.
    * 
@@ -64,6 +91,25 @@ public interface Graphmapper {
    * @param botid
    */
   public void load(URL path, String botid);
+
+  /**
+   * Reads the AIML file(s) to be found at <code>path</code> without adding anything to the graph. The result can later
+   * be given to {@link #publish}. This may be called from any thread.
+   * 
+   * @param path path to the file(s) to read
+   * @param botid
+   * @return one staged load for each file read
+   */
+  public List<StagedLoad> stage(URL path, String botid);
+
+  /**
+   * Adds to the graph the categories from a file read by {@link #stage}, just as {@link #load} would have (replacing
+   * the file's categories if it was already loaded for the bot). A file that could not be read completely is not
+   * published at all. Callers must ensure that no match is in progress while this runs.
+   * 
+   * @param staged the staged load to publish
+   */
+  public void publish(StagedLoad staged);
   
   /**
    * A "hook" to do any necessary work before a file is loaded.
@@ -93,6 +139,22 @@ public interface Graphmapper {
    */
   public Match match(String input, String that, String topic, String botid) throws NoMatchException;
 
+  /**
+   * Searches for a match in the <code>Graphmapper</code> to a given path, as part of producing a reply that must be
+   * ready by the given deadline. The search gives up when the response timeout or the deadline passes, whichever comes
+   * first.
+   * 
+   * @param input &lt;input/&gt; path component
+   * @param that &lt;that/&gt; path component
+   * @param topic &lt;topic/&gt; path component
+   * @param botid &lt;botid/&gt; path component
+   * @param deadline the deadline for the reply
+   * @return the resulting <code>Match</code> object
+   * @throws NoMatchException if no match was found (in time)
+   */
+  public Match match(String input, String that, String topic, String botid, Deadline deadline)
+      throws NoMatchException;
+
   /**
    * Prints the entire contents of the graph to the given filename.
    * 
@@ -110,6 +172,19 @@ public interface Graphmapper {
    */
   public void removeCategory(String pattern, String that, String topic, Bot bot);
 
+  /**
+   * Forgets the hits counted for all categories.
+   */
+  public void resetCategoryHits();
+
+  /**
+   * Freezes the graph against changes, or thaws it. While it is frozen, loads, unloads and removals are refused (with a
+   * warning), so that measurements taken meanwhile are not disturbed.
+   * 
+   * @param frozen whether the graph should be frozen
+   */
+  public void setFrozen(boolean frozen);
+
   /**
    * Removes all categories associated with a given filename, and removes the file from the list of loaded files.
    * 
@@ -81,6 +81,33 @@ public class Match {
   /** The <code>filenames</code> from which the matched path came. */
   private List<String> _filenames;
 
+  /** The number of graph nodes visited while matching. */
+  private int _nodesVisited;
+
+  /** The number of branches abandoned while matching. */
+  private int _backtracks;
+
+  /**
+   * Counts a branch abandoned while matching.
+   */
+  public void countBacktrack() {
+    this._backtracks++;
+  }
+
+  /**
+   * Counts a graph node visited while matching.
+   */
+  public void countNode() {
+    this._nodesVisited++;
+  }
+
+  /**
+   * @return the number of branches abandoned while matching
+   */
+  public int getBacktracks() {
+    return this._backtracks;
+  }
+
   /**
    * Gets the filenames from which the &lt;template/&gt; originally came.
    * 
@@ -99,6 +126,13 @@ public class Match {
     return this._inputStars;
   }
 
+  /**
+   * @return the number of graph nodes visited while matching
+   */
+  public int getNodesVisited() {
+    return this._nodesVisited;
+  }
+
   /**
    * Returns the match path.
    * 
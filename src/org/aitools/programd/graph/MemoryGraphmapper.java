@@ -12,9 +12,11 @@ package org.aitools.programd.graph;
 import java.io.PrintWriter;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -22,9 +24,11 @@ import java.util.Set;
 
 import org.aitools.programd.Bot;
 import org.aitools.programd.Core;
+import org.aitools.programd.util.Deadline;
 import org.aitools.programd.util.NoMatchException;
 import org.aitools.util.ObjectFactory;
 import org.aitools.util.Text;
+import org.aitools.util.resource.URLTools;
 import org.aitools.util.runtime.DeveloperError;
 
 /**
@@ -49,6 +53,18 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
   /** A count of Nodemappers. */
   protected int nodemapperCount = 1;
 
+  /** The templates (and their source files) held by the leaf nodes. */
+  protected TemplatePool _templates;
+
+  /** The index of categories without wildcards (or null if it is not used). */
+  protected ExactPathIndex _exactPaths;
+
+  /**
+   * The bit standing for each bot (by upper-case botid) in the sets of bots kept by the nodes. The bots are numbered
+   * as they are first seen; beyond 64, bots share bits, so that a node may seem to lead to a bot that it does not.
+   */
+  protected Map<String, Long> _botBits = new HashMap<String, Long>();
+
   /**
    * Creates a new <code>Graphmaster</code>, reading settings from the given Core.
    * 
@@ -58,6 +74,10 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
     super(core);
     this.NodemapperFactory = new ObjectFactory<Nodemapper>(this._core.getSettings().getNodemapperImplementation());
     this.root = this.NodemapperFactory.getNewInstance();
+    this._templates = new TemplatePool(this._core.getSettings().getGraphmapperTemplateCompressionMinLength());
+    if (this._core.getSettings().graphmapperExactIndex()) {
+      this._exactPaths = new ExactPathIndex();
+    }
   }
 
   /**
@@ -87,6 +107,9 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
       // Otherwise create a new nodemapper with this word.
       nodemapper = this.NodemapperFactory.getNewInstance();
       this.nodemapperCount++;
+      if (this._exactPaths != null) {
+        this._exactPaths.changed();
+      }
 
       parent.put(word, nodemapper);
       nodemapper.setParent(parent);
@@ -103,8 +126,12 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
       }
       nodemappers.add(nodemapper);
     }
-    // Return the result of adding the new nodemapper to the parent.
-    return this.add(pathIterator, nodemapper, source);
+    // Add the rest of the path, and then take it into account in what the parent knows of the paths below it.
+    Nodemapper leaf = this.add(pathIterator, nodemapper, source);
+    if (parent instanceof AbstractNodemaster) {
+      ((AbstractNodemaster) parent).include(word, nodemapper);
+    }
+    return leaf;
   }
 
   /**
@@ -114,11 +141,14 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
   @Override
   public void add(String pattern, String that, String topic, String template, Bot bot, URL source) {
     Nodemapper nodemapper = this.add(pattern, that, topic, bot.getID(), source);
-    String storedTemplate = (String) nodemapper.get(TEMPLATE);
-    if (storedTemplate == null) {
-      nodemapper.put(FILENAME, source.toExternalForm());
+    addBots(nodemapper, this.getBotBit(bot.getID()));
+    TemplatePool.Reference stored = (TemplatePool.Reference) nodemapper.get(TEMPLATE);
+    if (stored == null) {
       bot.addToPathMap(source, nodemapper);
-      nodemapper.put(TEMPLATE, template);
+      nodemapper.put(TEMPLATE, this._templates.add(template, source));
+      if (this._exactPaths != null) {
+        this._exactPaths.add(pattern, that, topic, bot.getID(), nodemapper);
+      }
       this._totalCategories++;
     }
     else {
@@ -128,7 +158,7 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
           if (this._noteEachMerge) {
             this._logger.warn(String.format(
                 "Skipping path-identical category from \"%s\" which duplicates path of category from \"%s\": %s:%s:%s",
-                source, nodemapper.get(FILENAME), pattern, that, topic));
+                source, this._templates.getFilenames(stored), pattern, that, topic));
           }
           break;
 
@@ -136,10 +166,9 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
           if (this._noteEachMerge) {
             this._logger.warn(String.format(
                 "Overwriting path-identical category from \"%s\" with new category from \"%s\".  Path: %s:%s:%s",
-                nodemapper.get(FILENAME), source, pattern, that, topic));
+                this._templates.getFilenames(stored), source, pattern, that, topic));
           }
-          nodemapper.put(FILENAME, source);
-          nodemapper.put(TEMPLATE, template);
+          nodemapper.put(TEMPLATE, this._templates.replace(stored, template, source, false));
           break;
 
         case APPEND:
@@ -148,10 +177,10 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
                 .warn(String
                     .format(
                         "Appending template of category from \"%s\" to template of path-identical category from \"%s\": %s:%s:%s",
-                        source, nodemapper.get(FILENAME), pattern, that, topic));
+                        source, this._templates.getFilenames(stored), pattern, that, topic));
           }
-          nodemapper.put(FILENAME, String.format("%s, %s", nodemapper.get(FILENAME), source));
-          nodemapper.put(TEMPLATE, this.appendTemplate(storedTemplate, template));
+          nodemapper.put(TEMPLATE, this._templates.replace(stored, this.appendTemplate(this._templates
+              .getTemplate(stored), template), source, true));
           break;
 
         case COMBINE:
@@ -160,11 +189,10 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
                 .warn(String
                     .format(
                         "Combining template of category from \"%s\" with template of path-identical category from \"%s\": %s:%s:%s",
-                        source, nodemapper.get(FILENAME), pattern, that, topic));
+                        source, this._templates.getFilenames(stored), pattern, that, topic));
           }
-          nodemapper.put(FILENAME, String.format("%s, %s", nodemapper.get(FILENAME), source));
-          String combined = this.combineTemplates(storedTemplate, template);
-          nodemapper.put(TEMPLATE, combined);
+          String combined = this.combineTemplates(this._templates.getTemplate(stored), template);
+          nodemapper.put(TEMPLATE, this._templates.replace(stored, combined, source, true));
           break;
       }
     }
@@ -206,15 +234,102 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
     if (this._logger.isDebugEnabled()) {
       this._logger.debug(String.format("Adding botid \"%s\" to all paths associated with \"%s\".", botid, path));
     }
+    long bit = this.getBotBit(botid);
     for (Nodemapper nodemapper : this.botidNodes.get(path)) {
       // Hook up with the existing template.
       Object t = nodemapper.get(nodemapper.keySet().iterator().next());
       nodemapper.put(botid, t);
+      addBots((Nodemapper) t, bit);
+      addBots(nodemapper, bit);
       this._totalCategories++;
     }
     this._urlCatalog.get(path).add(botid);
   }
 
+  /**
+   * Adds the given bots to those of the given node and its ancestors.
+   * 
+   * @param nodemapper
+   * @param bots the bits of the bots
+   */
+  private static void addBots(Nodemapper nodemapper, long bots) {
+    if (nodemapper instanceof AbstractNodemaster) {
+      ((AbstractNodemaster) nodemapper).addBots(bots);
+    }
+  }
+
+  /**
+   * Gets the bit that stands for the given bot in the sets of bots kept by the nodes, numbering the bot if it has not
+   * been seen before.
+   * 
+   * @param botid
+   * @return the bit for the bot
+   */
+  protected long getBotBit(String botid) {
+    String key = botid.toUpperCase();
+    Long bit = this._botBits.get(key);
+    if (bit == null) {
+      bit = Long.valueOf(1L << (this._botBits.size() % 64));
+      this._botBits.put(key, bit);
+    }
+    return bit.longValue();
+  }
+
+  /**
+   * Recomputes the sets of bots of the ancestors of the given (removed) nodemappers, each once, children before
+   * parents.
+   * 
+   * @param removed the nodemappers that have been removed
+   */
+  protected void recomputeBots(Collection<Nodemapper> removed) {
+    Set<Nodemapper> affected = new HashSet<Nodemapper>();
+    for (Nodemapper nodemapper : removed) {
+      for (Nodemapper parent = nodemapper.getParent(); parent != null && affected.add(parent); parent = parent
+          .getParent()) {
+        // (Just collecting them.)
+      }
+    }
+    if (affected.contains(this.root)) {
+      this.recomputeBots(this.root, affected);
+    }
+  }
+
+  /**
+   * Recomputes the set of bots of the given node, first recomputing those of its children that are affected.
+   * 
+   * @param nodemapper
+   * @param affected the nodes whose sets of bots may have changed
+   * @return the set of bots of the node
+   */
+  private long recomputeBots(Nodemapper nodemapper, Set<Nodemapper> affected) {
+    long bots = 0;
+    Set<String> keys = nodemapper.keySet();
+    if (keys != null) {
+      for (String key : keys) {
+        Object value = nodemapper.get(key);
+        if (!(value instanceof Nodemapper)) {
+          continue;
+        }
+        Nodemapper child = (Nodemapper) value;
+        if (child.get(TEMPLATE) != null) {
+          // The key of a leaf is the botid.
+          Long bit = this._botBits.get(key.toUpperCase());
+          bots |= bit == null ? 0 : bit.longValue();
+        }
+        else if (affected.contains(child)) {
+          bots |= this.recomputeBots(child, affected);
+        }
+        else if (child instanceof AbstractNodemaster) {
+          bots |= ((AbstractNodemaster) child).getBots();
+        }
+      }
+    }
+    if (nodemapper instanceof AbstractNodemaster) {
+      ((AbstractNodemaster) nodemapper).setBots(bots);
+    }
+    return bots;
+  }
+
   @Override
   protected void associateBotIDWithFilename(String botid, URL filename) {
     Set<String> botids;
@@ -242,7 +357,7 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
    * Searches for a match in the <code>Graphmaster</code> to a given path. This is a low-level prototype, used for
    * internal recursion.
    * 
-   * @see #match(String, String, String, String)
+   * @see #match(String, String, String, String, Deadline)
    * @param nodemapper the nodemapper where we start matching
    * @param parent the parent of the nodemapper where we start matching
    * @param input the input path (possibly a sublist of the original)
@@ -250,18 +365,23 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
    * @param path the path matched so far
    * @param match an object containing information about the match
    * @param matchState state variable tracking which part of the path we're in
-   * @param expiration when this response process expires
+   * @param deadline when to give up
+   * @param bots the bit of the bot for which to match (branches without it are skipped)
+   * @param words the words of each suffix of the original input path, as Bloom filters (see
+   *          {@link #getSuffixWords(List)})
    * @return the leaf nodemapper at which the match ends
    * @throws NoMatchException if match time expires
    */
   @SuppressWarnings("boxing")
   protected Nodemapper match(Nodemapper nodemapper, Nodemapper parent, List<String> input, String wildcardContent,
-      StringBuilder path, Match match, Match.State matchState, long expiration) throws NoMatchException {
+      StringBuilder path, Match match, Match.State matchState, Deadline deadline, long bots, long[] words)
+      throws NoMatchException {
     if (nodemapper == null) {
       return null;
     }
-    // Return null if expiration has been reached.
-    if (System.currentTimeMillis() >= expiration) {
+    match.countNode();
+    // Give up if the deadline has passed.
+    if (deadline.hasExpired()) {
       throw new NoMatchException("Match time expired.");
     }
 
@@ -277,14 +397,29 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
       return null;
     }
 
+    /*
+     * Halt matching if the input is too long for any path below this nodemapper (unless it is a wildcard, which may
+     * absorb more of it), or lacks words that every path below it needs.
+     */
+    boolean isWildcard = nodemapper.equals(parent.get(ASTERISK)) || nodemapper.equals(parent.get(UNDERSCORE));
+    if (nodemapper instanceof AbstractNodemaster) {
+      AbstractNodemaster node = (AbstractNodemaster) nodemapper;
+      long required = node.getRequiredWords();
+      if ((!isWildcard && input.size() > node.getMaxHeight())
+          || (words[input.size()] & required) != required) {
+        return null;
+      }
+    }
+
     // If no more tokens in the input, see if this is a template.
     if (input.size() == 0) {
       // If so, the path
       // component is the botid.
-      if (nodemapper.containsKey(TEMPLATE)) {
+      TemplatePool.Reference stored = (TemplatePool.Reference) nodemapper.get(TEMPLATE);
+      if (stored != null) {
         match.setBotID(path.toString());
-        match.setTemplate((String) nodemapper.get(TEMPLATE));
-        match.setFilenames(Arrays.asList(((String) nodemapper.get(FILENAME)).split(",")));
+        match.setTemplate(this._templates.getTemplate(stored));
+        match.setFilenames(this._templates.getFilenames(stored));
         return nodemapper;
       }
       // (otherwise...)
@@ -311,7 +446,9 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
         path, // current path
         match, // match object
         _matchState, // current match state
-        expiration // expiration timestamp
+        deadline, // deadline
+        bots, // bot to match for
+        words // words of the input
         );
     if (nextNodemapper != null) {
       return nextNodemapper;
@@ -352,7 +489,9 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
           path, // current path
           match, // match object
           _matchState, // current match state
-          expiration // expiration timestamp
+          deadline, // deadline
+          bots, // bot to match for
+          words // words of the input
           );
       if (nextNodemapper != null) {
         return nextNodemapper;
@@ -373,7 +512,9 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
         path, // current path
         match, // match object
         _matchState, // current match state
-        expiration // expiration timestamp
+        deadline, // deadline
+        bots, // bot to match for
+        words // words of the input
         );
     if (nextNodemapper != null) {
       return nextNodemapper;
@@ -384,7 +525,7 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
      * a wildcard, then the match continues to be valid and can proceed with the tail, the current path, and the star
      * content plus the head as the new star.
      */
-    if (nodemapper.equals(parent.get(ASTERISK)) || nodemapper.equals(parent.get(UNDERSCORE))) {
+    if (isWildcard) {
       nextNodemapper = this.match(nodemapper, // current nodemapper
           parent, // current path
           tail, // current tail
@@ -392,7 +533,9 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
           path, // current path
           match, // match object
           _matchState, // current match state
-          expiration // expiration timestamp
+          deadline, // deadline
+          bots, // bot to match for
+          words // words of the input
           );
       if (nextNodemapper != null) {
         return nextNodemapper;
@@ -420,13 +563,21 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
    * @param path
    * @param match
    * @param matchState
-   * @param expiration
+   * @param deadline
+   * @param bots
+   * @param words
    * @return the resulting leaf nodemapper
    * @throws NoMatchException
    */
   protected Nodemapper match(String key, Match.State wildcardDestination, Nodemapper nodemapper, List<String> tail,
       boolean appendToPath, String currentWildcard, String newWildcard, StringBuilder path, Match match,
-      Match.State matchState, long expiration) throws NoMatchException {
+      Match.State matchState, Deadline deadline, long bots, long[] words) throws NoMatchException {
+    // Skip a branch that has no categories for the bot.
+    Object next = nodemapper.get(key);
+    if (next instanceof AbstractNodemaster && (((AbstractNodemaster) next).getBots() & bots) == 0) {
+      return null;
+    }
+
     // Construct a new path from the current path plus the key.
     StringBuilder newPath = new StringBuilder();
     if (path.length() > 0) {
@@ -436,17 +587,22 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
     newPath.append(key);
 
     // Try to get a match with the tail and this new path (may throw exception)
-    Nodemapper result = this.match((Nodemapper) nodemapper.get(key), // newly matched nodemapper
+    Nodemapper result = this.match((Nodemapper) next, // newly matched nodemapper
         nodemapper, // current nodemapper as parent
         tail, // current tail
         newWildcard, // current wildcardContent
         appendToPath ? newPath : new StringBuilder(), // either the new path, or a blank one
         match, // match object
         matchState, // current match state
-        expiration // expiration timestamp
+        deadline, // deadline
+        bots, // bot to match for
+        words // words of the input
         );
-    // capture and push the wildcard content appropriate to the current match state.
-    if (wildcardDestination != null && wildcardDestination.compareTo(Match.State.IN_BOTID) < 0
+    if (result == null && next != null) {
+      match.countBacktrack();
+    }
+    // capture and push the wildcard content appropriate to the current match state (only if this branch matched).
+    if (result != null && wildcardDestination != null && wildcardDestination.compareTo(Match.State.IN_BOTID) < 0
         && currentWildcard.length() > 0) {
       match.pushWildcardContent(wildcardDestination, currentWildcard);
     }
@@ -460,21 +616,140 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
    * @param botid
    * @return the match
    * @see org.aitools.programd.graph.Graphmapper#match(java.lang.String, java.lang.String, java.lang.String,
-   *      java.lang.String)
+   *      java.lang.String, org.aitools.programd.util.Deadline)
    * @throws NoMatchException
    */
   @Override
-  public Match match(String input, String that, String topic, String botid) throws NoMatchException {
+  public Match match(String input, String that, String topic, String botid, Deadline deadline)
+      throws NoMatchException {
+    List<String> inputPath = AbstractGraphmapper.composeInputPath(input, that, topic, botid);
+    if (this._exactPaths != null) {
+      Match match = new Match();
+      Nodemapper leaf = this._exactPaths.match(inputPath, this.root, match);
+      if (leaf != null) {
+        countHit(leaf);
+        TemplatePool.Reference stored = (TemplatePool.Reference) leaf.get(TEMPLATE);
+        match.setTemplate(this._templates.getTemplate(stored));
+        match.setFilenames(this._templates.getFilenames(stored));
+        return match;
+      }
+    }
     // Get the match, starting at the root, with an empty star and path, starting in "in input" mode.
     Match match = new Match();
-    Nodemapper result = this.match(this.root, this.root, AbstractGraphmapper.composeInputPath(input, that, topic, botid), "",
-        new StringBuilder(), match, Match.State.IN_INPUT, System.currentTimeMillis() + this._responseTimeout);
+    Long bit = this._botBits.get(botid.toUpperCase());
+    Nodemapper result = this.match(this.root, this.root, inputPath, "", new StringBuilder(), match,
+        Match.State.IN_INPUT, deadline.within(this._responseTimeout), bit == null ? 0 : bit.longValue(),
+        getSuffixWords(inputPath));
     if (result != null) {
+      countHit(result);
       return match;
     }
     throw new NoMatchException(String.format("%s:%s:%s:%s", input, that, topic, botid));
   }
 
+  /**
+   * Counts a match of the category at the given leaf node.
+   * 
+   * @param leaf
+   */
+  private static void countHit(Nodemapper leaf) {
+    if (leaf instanceof AbstractNodemaster) {
+      ((AbstractNodemaster) leaf).countHit();
+    }
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#getCategoryHits(org.aitools.programd.Bot)
+   */
+  @Override
+  public List<CategoryHits> getCategoryHits(Bot bot) {
+    List<CategoryHits> result = new ArrayList<CategoryHits>();
+    for (Map.Entry<URL, Set<Nodemapper>> file : bot.getLoadedFilesMap().entrySet()) {
+      for (Nodemapper leaf : file.getValue()) {
+        if (leaf instanceof AbstractNodemaster) {
+          result.add(describe(file.getKey(), leaf, ((AbstractNodemaster) leaf).getHits()));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#resetCategoryHits()
+   */
+  @Override
+  public void resetCategoryHits() {
+    for (Bot bot : this._core.getBots().values()) {
+      for (Set<Nodemapper> leaves : bot.getLoadedFilesMap().values()) {
+        for (Nodemapper leaf : leaves) {
+          if (leaf instanceof AbstractNodemaster) {
+            ((AbstractNodemaster) leaf).resetHits();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Describes the category at a leaf node, finding its path by climbing to the root. (The path is in upper case, as
+   * stored in the graph.)
+   * 
+   * @param source the file from which the category was loaded
+   * @param leaf
+   * @param hits
+   * @return the description
+   */
+  private static CategoryHits describe(URL source, Nodemapper leaf, long hits) {
+    LinkedList<String> words = new LinkedList<String>();
+    Nodemapper child = leaf;
+    for (Nodemapper parent = leaf.getParent(); parent != null; parent = parent.getParent()) {
+      for (String key : parent.keySet()) {
+        if (parent.get(key) == child) {
+          words.addFirst(key);
+          break;
+        }
+      }
+      child = parent;
+    }
+    StringBuilder[] components = { new StringBuilder(), new StringBuilder(), new StringBuilder() };
+    int component = 0;
+    for (String word : words) {
+      if (word.equalsIgnoreCase(THAT)) {
+        component = 1;
+      }
+      else if (word.equalsIgnoreCase(TOPIC)) {
+        component = 2;
+      }
+      else if (word.equalsIgnoreCase(BOT)) {
+        break;
+      }
+      else {
+        if (components[component].length() > 0) {
+          components[component].append(' ');
+        }
+        components[component].append(word);
+      }
+    }
+    return new CategoryHits(source, components[0].toString(), components[1].toString(), components[2].toString(),
+        hits);
+  }
+
+  /**
+   * Makes, for each suffix of the given input path, a Bloom filter of its words (as kept by the nodes of the graph for
+   * the words they require).
+   * 
+   * @param inputPath
+   * @return the filters, by the length of the suffix
+   */
+  protected static long[] getSuffixWords(List<String> inputPath) {
+    int size = inputPath.size();
+    long[] words = new long[size + 1];
+    for (int length = 1; length <= size; length++) {
+      words[length] = words[length - 1] | AbstractNodemaster.getWordBits(inputPath.get(size - length));
+    }
+    return words;
+  }
+
   private void print(Nodemapper nodemapper, PrintWriter out) {
     ArrayList<String> keyList = new ArrayList<String>(nodemapper.keySet());
     int keyCount = keyList.size();
@@ -487,7 +762,7 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
         this.print((Nodemapper) value, out);
       }
       else {
-        out.print(org.jdom.Text.normalizeString((String) value));
+        out.print(org.jdom.Text.normalizeString(this._templates.getTemplate((TemplatePool.Reference) value)));
         if (index == keyCount - 1) {
           out.println();
         }
@@ -511,45 +786,132 @@ public class MemoryGraphmapper extends AbstractGraphmapper {
     Nodemapper parent = nodemapper.getParent();
     if (parent != null) {
       parent.remove(nodemapper);
+      this.release(nodemapper, parent);
       if (parent.size() == 0 && parent != this.root) {
         this.remove(parent);
       }
     }
   }
 
+  /**
+   * Gives up the template of a leaf node that has been removed from its parent, unless the parent still leads to it
+   * (for another bot).
+   * 
+   * @param nodemapper the removed nodemapper
+   * @param parent its parent
+   */
+  private void release(Nodemapper nodemapper, Nodemapper parent) {
+    Object stored = nodemapper.get(TEMPLATE);
+    if (!(stored instanceof TemplatePool.Reference)) {
+      return;
+    }
+    Set<String> keys = parent.keySet();
+    if (keys != null) {
+      for (String key : keys) {
+        if (parent.get(key) == nodemapper) {
+          return;
+        }
+      }
+    }
+    this._templates.release((TemplatePool.Reference) stored);
+  }
+
+  /**
+   * Compacts the ancestors of the given (removed) nodemappers, each once, so that each again uses the best
+   * representation for what is left in it.
+   * 
+   * @param removed the nodemappers that have been removed
+   */
+  protected void compact(Collection<Nodemapper> removed) {
+    Set<Nodemapper> compacted = new HashSet<Nodemapper>();
+    for (Nodemapper nodemapper : removed) {
+      for (Nodemapper parent = nodemapper.getParent(); parent != null && compacted.add(parent); parent = parent
+          .getParent()) {
+        if (parent instanceof AbstractNodemaster) {
+          ((AbstractNodemaster) parent).compact();
+        }
+      }
+    }
+  }
+
   /**
    * @see org.aitools.programd.graph.Graphmapper#removeCategory(java.lang.String, java.lang.String, java.lang.String,
    *      org.aitools.programd.Bot)
    */
   @Override
   public void removeCategory(String pattern, String that, String topic, Bot bot) {
+    if (this.refuseIfFrozen(String.format("removing the category \"%s\"", pattern))) {
+      return;
+    }
     Nodemapper nodemapper = null;
     try {
-      nodemapper = this.match(this.root, this.root, AbstractGraphmapper.composeInputPath(pattern, that, topic, bot.getID()), "",
-          new StringBuilder(), new Match(), Match.State.IN_INPUT, System.currentTimeMillis() + this._responseTimeout);
+      List<String> path = AbstractGraphmapper.composeInputPath(pattern, that, topic, bot.getID());
+      nodemapper = this.match(this.root, this.root, path, "", new StringBuilder(), new Match(), Match.State.IN_INPUT,
+          new Deadline(this._responseTimeout), this.getBotBit(bot.getID()), getSuffixWords(path));
     }
     catch (NoMatchException e) {
       throw new DeveloperError("Could not remove category.", e);
     }
     if (nodemapper != null) {
       this.remove(nodemapper);
+      this.compact(Collections.singleton(nodemapper));
+      this.recomputeBots(Collections.singleton(nodemapper));
+      if (this._exactPaths != null) {
+        this._exactPaths.remove(Collections.singleton(nodemapper));
+      }
     }
     else {
       this._logger.error(String.format("Could not find category to remove (%s:%s:%s)", pattern, that, topic, bot));
     }
   }
 
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#getNodeCount()
+   */
+  @Override
+  public int getNodeCount() {
+    return this.nodemapperCount;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#getCacheHitRatio()
+   */
+  @Override
+  public double getCacheHitRatio() {
+    return this._exactPaths == null ? 0 : this._exactPaths.getHitRatio();
+  }
+
+  /**
+   * @see org.aitools.programd.graph.AbstractGraphmapper#getCategoryReport()
+   */
+  @Override
+  public String getCategoryReport() {
+    String report = String.format("%s Templates: %s", super.getCategoryReport(), this._templates.report());
+    if (this._exactPaths != null) {
+      report = String.format("%s %s", report, this._exactPaths.report());
+    }
+    return report;
+  }
+
   /**
    * @see org.aitools.programd.graph.Graphmapper#unload(java.net.URL, org.aitools.programd.Bot)
    */
   @Override
   public void unload(URL path, Bot bot) {
+    if (this.refuseIfFrozen(String.format("unloading \"%s\"", URLTools.unescape(path)))) {
+      return;
+    }
     Set<Nodemapper> nodemappers = bot.getLoadedFilesMap().get(path);
     
     for (Nodemapper nodemapper : nodemappers) {
       this.remove(nodemapper);
       this._totalCategories--;
     }
+    this.compact(nodemappers);
+    this.recomputeBots(nodemappers);
+    if (this._exactPaths != null) {
+      this._exactPaths.remove(nodemappers);
+    }
     nodemappers.clear();
     Set<String> botids = this._urlCatalog.get(path);
     // It can end up being null if there was an error in loading
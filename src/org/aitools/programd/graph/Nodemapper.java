@@ -91,8 +91,8 @@ public interface Nodemapper {
   public void setParent(Nodemapper parent);
 
   /**
-   * Sets the height of this <code>Nodemapper</code> to &quot;top&quot;, i.e. <code>0</code> (zero), causing each
-   * ancestor <code>n</code> to have a minimum height of <code>n</code>, unless the ancestor is the root node.
+   * Sets the height of this <code>Nodemapper</code> to &quot;top&quot;, i.e. <code>0</code> (zero), marking it as a leaf
+   * node. (The heights of its ancestors are filled in as the path to it is added.)
    */
   public void setTop();
 
@@ -19,8 +19,11 @@ import java.util.Set;
 
 import org.aitools.programd.Bot;
 import org.aitools.programd.Core;
+import org.aitools.programd.CoreSettings;
+import org.aitools.programd.util.Deadline;
 import org.aitools.programd.util.NoMatchException;
 import org.aitools.util.Text;
+import org.aitools.util.resource.URLTools;
 import org.aitools.util.runtime.DeveloperError;
 
 /**
@@ -28,8 +31,9 @@ import org.aitools.util.runtime.DeveloperError;
  * duplication of code from {@link MemoryGraphmapper} that cannot be avoided, without accepting an additional
  * performance penalty of lots of boxing and unboxing, because <code>int</code> is a primitive type in Java (as opposed
  * to {@link Integer}.</p>
- * <p>This implementation is slow, especially in loading, because it performs numerous separate queries.
- * It is not suitable for real-world use, but is serving as the basis for more database-optimized versions.</p>
+ * <p>This implementation is slow in matching, because it performs numerous separate queries.
+ * It is not suitable for real-world use, but is serving as the basis for more database-optimized versions.
+ * Whole files are loaded in bulk, one transaction per file, by a {@link DBBulkLoader}.</p>
  * 
  * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
  * 
@@ -39,7 +43,8 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
   /** The id of the root node. */
   private int _root;
   
-  private static int NO_NODE = -1;
+  /** The id used for "no node". */
+  protected static final int NO_NODE = -1;
 
   /**
    * Creates a new SlowDBGraphmapper, reading settings from the given Core.
@@ -52,8 +57,8 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
     if (this._core.getSettings().resetGraph()) {
       SlowDBNodemapper.eraseAll(connection);
     }
-    SlowDBNodemapper.initializePreparedStatements(connection);
     this._root = SlowDBNodemapper.getRoot(connection);
+    this.close(connection);
   }
 
   /**
@@ -108,6 +113,19 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
    * @return node which is the result of adding the path.
    */
   protected int add(Connection connection, String pattern, String that, String topic, String botid, URL source) {
+    return this.add(connection, composePath(pattern, that, topic, botid).listIterator(), this._root, source);
+  }
+
+  /**
+   * Composes the path under which a category is stored.
+   * 
+   * @param pattern &lt;pattern/&gt; path component
+   * @param that &lt;that/&gt; path component
+   * @param topic &lt;topic/&gt; path component
+   * @param botid
+   * @return the path, as a list of words
+   */
+  protected static List<String> composePath(String pattern, String that, String topic, String botid) {
     List<String> path = Text.wordSplit(pattern);
     path.add(THAT);
     path.addAll(Text.wordSplit(that));
@@ -115,7 +133,7 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
     path.addAll(Text.wordSplit(topic));
     path.add(BOT);
     path.add(botid);
-    return this.add(connection, path.listIterator(), this._root, source);
+    return path;
   }
 
   /**
@@ -133,54 +151,78 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
       this._totalCategories++;
     }
     else {
-      this._duplicateCategories++;
-      switch (this._mergePolicy) {
-        case SKIP:
-          if (this._noteEachMerge) {
-            this._logger.warn(String.format(
-                "Skipping path-identical category from \"%s\" which duplicates path of category from \"%s\": %s:%s:%s",
-                source, SlowDBNodemapper.getFilenames(connection, node).get(0), pattern, that, topic));
-          }
-          break;
-
-        case OVERWRITE:
-          if (this._noteEachMerge) {
-            this._logger.warn(String.format(
-                "Overwriting path-identical category from \"%s\" with new category from \"%s\".  Path: %s:%s:%s",
-                SlowDBNodemapper.getFilenames(connection, node).get(0), source, pattern, that, topic));
-          }
+      String merged = this.merge(storedTemplate, template,
+          this._noteEachMerge ? SlowDBNodemapper.getFilenames(connection, node) : null, source, pattern, that, topic);
+      if (merged != null) {
+        if (this._mergePolicy == CoreSettings.MergePolicy.OVERWRITE) {
           SlowDBNodemapper.setFilename(connection, node, source);
-          SlowDBNodemapper.setTemplate(connection, node, template);
-          break;
-
-        case APPEND:
-          if (this._noteEachMerge) {
-            this._logger
-                .warn(String
-                    .format(
-                        "Appending template of category from \"%s\" to template of path-identical category from \"%s\": %s:%s:%s",
-                        source, SlowDBNodemapper.getFilenames(connection, node), pattern, that, topic));
-          }
-          SlowDBNodemapper.addFilename(connection, node, source);
-          SlowDBNodemapper.setTemplate(connection, node, this.appendTemplate(storedTemplate, template));
-          break;
-
-        case COMBINE:
-          if (this._noteEachMerge) {
-            this._logger
-                .warn(String
-                    .format(
-                        "Combining template of category from \"%s\" with template of path-identical category from \"%s\": %s:%s:%s",
-                        source, SlowDBNodemapper.getFilenames(connection, node), pattern, that, topic));
-          }
+        }
+        else {
           SlowDBNodemapper.addFilename(connection, node, source);
-          SlowDBNodemapper.setTemplate(connection, node, this.combineTemplates(storedTemplate, template));
-          break;
+        }
+        SlowDBNodemapper.setTemplate(connection, node, merged);
       }
     }
     this.close(connection);
   }
 
+  /**
+   * Applies the merge policy to a category whose path is identical to that of a category already stored, and returns
+   * the template that should now be stored at the path (or null if the stored one is to be kept as it is). This is
+   * shared by single adds and by the {@link DBBulkLoader}, so that both treat duplicates alike.
+   * 
+   * @param storedTemplate the template already stored at the path
+   * @param template the template of the new category
+   * @param storedSources the files from which the stored template came (only needed if each merge is noted)
+   * @param source the file from which the new category came
+   * @param pattern the pattern of the new category
+   * @param that the that of the new category
+   * @param topic the topic of the new category
+   * @return the template to store, or null to keep the stored one
+   */
+  protected String merge(String storedTemplate, String template, List<String> storedSources, URL source,
+      String pattern, String that, String topic) {
+    this._duplicateCategories++;
+    switch (this._mergePolicy) {
+      case SKIP:
+        if (this._noteEachMerge) {
+          this._logger.warn(String.format(
+              "Skipping path-identical category from \"%s\" which duplicates path of category from \"%s\": %s:%s:%s",
+              source, storedSources.get(0), pattern, that, topic));
+        }
+        return null;
+
+      case OVERWRITE:
+        if (this._noteEachMerge) {
+          this._logger.warn(String.format(
+              "Overwriting path-identical category from \"%s\" with new category from \"%s\".  Path: %s:%s:%s",
+              storedSources.get(0), source, pattern, that, topic));
+        }
+        return template;
+
+      case APPEND:
+        if (this._noteEachMerge) {
+          this._logger
+              .warn(String
+                  .format(
+                      "Appending template of category from \"%s\" to template of path-identical category from \"%s\": %s:%s:%s",
+                      source, storedSources, pattern, that, topic));
+        }
+        return this.appendTemplate(storedTemplate, template);
+
+      case COMBINE:
+        if (this._noteEachMerge) {
+          this._logger
+              .warn(String
+                  .format(
+                      "Combining template of category from \"%s\" with template of path-identical category from \"%s\": %s:%s:%s",
+                      source, storedSources, pattern, that, topic));
+        }
+        return this.combineTemplates(storedTemplate, template);
+    }
+    return null;
+  }
+
   /**
    * @see org.aitools.programd.graph.AbstractGraphmapper#addForBot(java.net.URL, java.lang.String)
    */
@@ -199,15 +241,55 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
     if (this._logger.isDebugEnabled()) {
       this._logger.debug(String.format("Adding botid \"%s\" to all paths associated with \"%s\".", botid, path));
     }
+    List<String> botids = SlowDBNodemapper.getBotsForFilename(connection, path);
     for (int node : SlowDBNodemapper.getBotIDNodesForFile(connection, path)) {
-      int botidnode = SlowDBNodemapper.put(connection, SlowDBNodemapper.getParent(connection, node), botid);
-      SlowDBNodemapper.associateTemplateWithNode(connection, botidnode, SlowDBNodemapper.getTemplateID(connection, node));
-      this._totalCategories++;
+      // Hook up with the template of a bot that already has the file.
+      for (String other : botids) {
+        if (SlowDBNodemapper.containsKey(connection, node, other)) {
+          int template = SlowDBNodemapper.getTemplateID(connection, SlowDBNodemapper.get(connection, node, other));
+          SlowDBNodemapper.associateTemplateWithNode(connection, SlowDBNodemapper.put(connection, node, botid),
+              template);
+          this._totalCategories++;
+          break;
+        }
+      }
     }
     SlowDBNodemapper.associateBotWithFile(connection, botid, path);
     this.close(connection);
   }
 
+  /**
+   * Reads the whole file into memory, then loads it with a {@link DBBulkLoader}. A file that cannot be read
+   * completely is not loaded at all.
+   * 
+   * @see org.aitools.programd.graph.AbstractGraphmapper#doLoad(java.net.URL, java.lang.String)
+   */
+  @Override
+  protected void doLoad(URL path, String botid) {
+    StagedLoad staged = new StagedLoad(path, botid);
+    if (this.read(path, botid, staged)) {
+      this.doLoad(staged);
+    }
+  }
+
+  /**
+   * Loads the staged file in one transaction, with a {@link DBBulkLoader}.
+   * 
+   * @see org.aitools.programd.graph.AbstractGraphmapper#doLoad(org.aitools.programd.graph.StagedLoad)
+   */
+  @Override
+  protected void doLoad(StagedLoad staged) {
+    this.beforeLoad(staged.getPath(), staged.getBotID());
+    Connection connection = this._core.getDBConnection();
+    try {
+      new DBBulkLoader(this, connection, this._root).load(staged);
+    }
+    finally {
+      this.close(connection);
+    }
+    this.afterLoad(staged.getPath(), staged.getBotID());
+  }
+
   @Override
   protected void associateBotIDWithFilename(String botid, URL path) {
     Connection connection = this._core.getDBConnection();
@@ -224,6 +306,48 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
     }
   }
 
+  /**
+   * Returns the node to which the given node points via the given key (or {@link #NO_NODE} if there is none). This is
+   * the only way in which matching reads edges, so subclasses may override it to cache them.
+   * 
+   * @param connection
+   * @param node
+   * @param key
+   * @return the child node, or {@link #NO_NODE}
+   */
+  protected int getChild(Connection connection, int node, String key) {
+    return SlowDBNodemapper.get(connection, node, key);
+  }
+
+  /**
+   * Returns the filenames associated with the given node, for matching.
+   * 
+   * @param connection
+   * @param node
+   * @return the filenames associated with the node
+   */
+  protected List<String> getFilenames(Connection connection, int node) {
+    return SlowDBNodemapper.getFilenames(connection, node);
+  }
+
+  /**
+   * Returns the template attached to the given node (or null), for matching.
+   * 
+   * @param connection
+   * @param node
+   * @return the template attached to the node
+   */
+  protected String getTemplate(Connection connection, int node) {
+    return SlowDBNodemapper.getTemplate(connection, node);
+  }
+
+  /**
+   * @return the id of the root node
+   */
+  protected int getRoot() {
+    return this._root;
+  }
+
   @Override
   protected boolean isAlreadyLoaded(URL filename) {
     Connection connection = this._core.getDBConnection();
@@ -252,26 +376,26 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
    * @param path the path matched so far
    * @param match an object containing information about the match
    * @param matchState state variable tracking which part of the path we're in
-   * @param expiration when this response process expires
+   * @param deadline when to give up
    * @return the leaf node at which the match ends
    * @throws NoMatchException
-   * @see #match(String, String, String, String)
+   * @see #match(String, String, String, String, Deadline)
    */
   protected int match(Connection connection, int node, int parent, List<String> input, String wildcardContent,
-      StringBuilder path, Match match, Match.State matchState, long expiration) throws NoMatchException {
-    // Return null if expiration has been reached.
-    if (System.currentTimeMillis() >= expiration) {
+      StringBuilder path, Match match, Match.State matchState, Deadline deadline) throws NoMatchException {
+    // Give up if the deadline has passed.
+    if (deadline.hasExpired()) {
       throw new NoMatchException("Match time expired.");
     }
 
     // If no more tokens in the input, see if this is a template.
     if (input.size() == 0) {
       // If so, the path component is the botid.
-      String template = SlowDBNodemapper.getTemplate(connection, node);
+      String template = this.getTemplate(connection, node);
       if (template != null) {
         match.setBotID(path.toString());
         match.setTemplate(template);
-        match.setFilenames(SlowDBNodemapper.getFilenames(connection, node));
+        match.setFilenames(this.getFilenames(connection, node));
         return node;
       }
       // (otherwise...)
@@ -300,7 +424,7 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
           path, // current path
           match, // match object
           _matchState, // current match state
-          expiration // expiration timestamp
+          deadline // deadline
           );
     }
     catch (NoMatchException e) {
@@ -311,7 +435,7 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
      * The node may have contained a _, but this led to no match. Or it didn't contain a _ at all. So let's see if it
      * contains the head.
      */
-    if (SlowDBNodemapper.containsKey(connection, node, head)) {
+    if (this.getChild(connection, node, head) != NO_NODE) {
       /*
        * Check now whether this head is a marker for the <that>, <topic> or <botid> segments of the path. If it is, set
        * the match state variable accordingly.
@@ -343,7 +467,7 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
             path, // current path
             match, // match object
             _matchState, // current match state
-            expiration // expiration timestamp
+            deadline // deadline
             );
       }
       catch (NoMatchException e) {
@@ -367,7 +491,7 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
           path, // current path
           match, // match object
           _matchState, // current match state
-          expiration // expiration timestamp
+          deadline // deadline
           );
     }
     catch (NoMatchException e) {
@@ -380,8 +504,8 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
      * content plus the head as the new star.
      */
     if (parent != NO_NODE &&
-        (node == SlowDBNodemapper.get(connection, parent, ASTERISK)
-        || node == SlowDBNodemapper.get(connection, parent, UNDERSCORE))) {
+        (node == this.getChild(connection, parent, ASTERISK)
+        || node == this.getChild(connection, parent, UNDERSCORE))) {
       return this.match(connection, // db access object
           node, // current node
           parent, // current path
@@ -390,7 +514,7 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
           path, // current path
           match, // match object
           _matchState, // current match state
-          expiration // expiration timestamp
+          deadline // deadline
           );
     }
 
@@ -415,15 +539,16 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
    * @param path
    * @param match
    * @param matchState
-   * @param expiration
+   * @param deadline
    * @return the resulting leaf nodemapper
    * @throws NoMatchException
    */
   protected int match(Connection connection, String key, Match.State wildcardDestination, int node, List<String> tail,
       boolean appendToPath, String currentWildcard, String newWildcard, StringBuilder path, Match match,
-      Match.State matchState, long expiration) throws NoMatchException {
+      Match.State matchState, Deadline deadline) throws NoMatchException {
     // Does the nodemapper contain the key?
-    if (SlowDBNodemapper.containsKey(connection, node, key)) {
+    int child = this.getChild(connection, node, key);
+    if (child != NO_NODE) {
       // If so, construct a new path from the current path plus the key.
       StringBuilder newPath = new StringBuilder();
       if (path.length() > 0) {
@@ -434,14 +559,14 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
 
       // Try to get a match with the tail and this new path (may throw exception)
       int result = this.match(connection, // db access object
-          SlowDBNodemapper.get(connection, node, key), // newly matched nodemapper
+          child, // newly matched nodemapper
           node, // current nodemapper as parent
           tail, // current tail
           newWildcard, // current wildcardContent
           appendToPath ? newPath : new StringBuilder(), // either the new path, or a blank one
           match, // match object
           matchState, // current match state
-          expiration // expiration timestamp
+          deadline // deadline
           );
       // capture and push the wildcard content appropriate to the current match state.
       if (wildcardDestination != null && currentWildcard.length() > 0) {
@@ -454,15 +579,16 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
 
   /**
    * @see org.aitools.programd.graph.Graphmapper#match(java.lang.String, java.lang.String, java.lang.String,
-   *      java.lang.String)
+   *      java.lang.String, org.aitools.programd.util.Deadline)
    */
   @Override
-  public Match match(String input, String that, String topic, String botid) throws NoMatchException {
+  public Match match(String input, String that, String topic, String botid, Deadline deadline)
+      throws NoMatchException {
     Connection connection = this._core.getDBConnection();
     // Get the match, starting at the root, with an empty star and path, starting in "in input" mode.
     Match match = new Match();
     this.match(connection, this._root, NO_NODE, AbstractGraphmapper.composeInputPath(input, that, topic, botid), "", new StringBuilder(), match,
-        Match.State.IN_INPUT, System.currentTimeMillis() + this._responseTimeout);
+        Match.State.IN_INPUT, deadline.within(this._responseTimeout));
     this.close(connection);
     return match;
   }
@@ -504,11 +630,14 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
    */
   @Override
   public void removeCategory(String pattern, String that, String topic, Bot bot) {
+    if (this.refuseIfFrozen(String.format("removing the category \"%s\"", pattern))) {
+      return;
+    }
     Connection connection = this._core.getDBConnection();
     try {
       this.remove(connection, this.match(connection, this._root, 0, AbstractGraphmapper.composeInputPath(pattern, that, topic, bot.getID()),
-          "", new StringBuilder(), new Match(), Match.State.IN_INPUT, System.currentTimeMillis()
-              + this._responseTimeout));
+          "", new StringBuilder(), new Match(), Match.State.IN_INPUT,
+          new Deadline(this._responseTimeout)));
     }
     catch (NoMatchException e) {
       this._logger.error(String.format("Could not find category to remove (%s:%s:%s)", pattern, that, topic, bot));
@@ -576,7 +705,15 @@ public class SlowDBGraphmapper extends AbstractGraphmapper {
    */
   @Override
   public void unload(URL path, Bot bot) {
+    if (this.refuseIfFrozen(String.format("unloading \"%s\"", URLTools.unescape(path)))) {
+      return;
+    }
     Connection connection = this._core.getDBConnection();
-    this.unload(connection, path, bot);
+    try {
+      this.unload(connection, path, bot);
+    }
+    finally {
+      this.close(connection);
+    }
   }
 }
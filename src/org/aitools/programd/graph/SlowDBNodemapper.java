@@ -33,7 +33,9 @@ import org.aitools.util.runtime.UserError;
  * a {@link Connection} argument, and an <code>int</code> node identifier, in addition to the usual arguments required
  * by a <code>Nodemapper</code>.
  * 
- * This will work best if the underlying DBMS is able to support PreparedStatement pooling.
+ * Each method prepares its statements on the connection it is given and closes them when done. With the pooled
+ * connections from {@link org.aitools.util.db.DBConnectionManager}, preparing a statement returns the one already cached
+ * for that connection (if any), and closing it returns it to that connection's cache.
  * 
  * Some methods having to do with size and height are not implemented, on the theory that they are not particularly
  * needed for a database-based implementation (which has other means of optimization open to it). There are also some
@@ -43,65 +45,33 @@ import org.aitools.util.runtime.UserError;
  */
 public class SlowDBNodemapper {
   
-  private static PreparedStatement ADD_FILENAME;
-  private static PreparedStatement ASSOCIATE_BOT_WITH_FILE;
-  private static PreparedStatement CONTAINS_KEY;
-  private static PreparedStatement FILE_PRESENT;
-  private static PreparedStatement FILE_PRESENT_FOR_BOT;
-  private static PreparedStatement GET_NODE;
-  private static PreparedStatement GET_BOTID_NODES_FOR_FILE;
-  private static PreparedStatement GET_BOTS_FOR_FILE;
-  private static PreparedStatement GET_FILENAMES;
-  private static PreparedStatement GET_FILENAMES_FOR_BOT;
-  private static PreparedStatement GET_LAST_LOADED;
-  private static PreparedStatement GET_PARENT;
-  private static PreparedStatement GET_TEMPLATE;
-  private static PreparedStatement GET_TEMPLATE_ID;
-  private static PreparedStatement PUT;
-  private static PreparedStatement CREATE_NODE;
-  private static PreparedStatement REMOVE;
-  private static PreparedStatement REMOVE_BOTID_FROM_FILENAME;
-  private static PreparedStatement REMOVE_FILENAME;
-  private static PreparedStatement SET_TEMPLATE;
-  private static PreparedStatement ASSOCIATE_TEMPLATE_WITH_NODE;
-  private static PreparedStatement SIZE;
-  private static PreparedStatement STORE_BOTID_NODE_FILE;
-  
-  /**
-   * Initialize prepared statements.
-   * 
-   * @param connection
-   */
-  public static void initializePreparedStatements(Connection connection) {
-    try {
-      ADD_FILENAME = connection.prepareStatement("INSERT INTO file_node (file_id, node_id) VALUES (?, ?)");
-      ASSOCIATE_BOT_WITH_FILE = connection.prepareStatement("INSERT INTO bot_file (bot_id, file_id) VALUES (?, ?)");
-      CONTAINS_KEY = connection.prepareStatement("SELECT 1 FROM edge WHERE from_node_id = ? AND label = ?");
-      FILE_PRESENT = connection.prepareStatement("SELECT 1 FROM file WHERE path = ?");
-      FILE_PRESENT_FOR_BOT = connection.prepareStatement("SELECT 1 FROM file INNER JOIN bot_file ON file.id = bot_file.file_id INNER JOIN bot ON bot.id = bot_file.bot_id WHERE file.path = ? AND bot.label = ?");
-      GET_NODE = connection.prepareStatement("SELECT to_node_id FROM edge WHERE from_node_id = ? AND label = ?");
-      GET_BOTID_NODES_FOR_FILE = connection.prepareStatement("SELECT botidnode_id from botidnode_file INNER JOIN file ON botidnode_file.file_id = file.id WHERE file.path = ?");
-      GET_BOTS_FOR_FILE = connection.prepareStatement("SELECT bot.label FROM bot_file INNER JOIN file ON bot_file.file_id = file.id INNER JOIN bot ON bot.id = bot_file.bot_id WHERE file.path = ?");
-      GET_FILENAMES = connection.prepareStatement("SELECT file.path from file_node INNER JOIN file ON file_node.file_id = file.id WHERE file_node.node_id = ?");
-      GET_FILENAMES_FOR_BOT = connection.prepareStatement("SELECT file.path FROM bot_file INNER JOIN file ON bot_file.file_id = file.id INNER JOIN bot ON bot_file.bot_id = bot.id WHERE bot.id = (SELECT id FROM bot WHERE label = ?)");
-      GET_LAST_LOADED = connection.prepareStatement("SELECT last_loaded FROM file WHERE path = ?");
-      GET_PARENT = connection.prepareStatement("SELECT from_node_id FROM edge WHERE to_node_id = ?");
-      GET_TEMPLATE = connection.prepareStatement("SELECT text from template INNER JOIN node_template ON node_template.template_id = template.id WHERE node_template.node_id = ?");
-      GET_TEMPLATE_ID = connection.prepareStatement("SELECT template_id FROM node_template WHERE node_id = ?");
-      PUT = connection.prepareStatement("INSERT INTO edge (from_node_id, label, to_node_id) VALUES (?, ?, ?)");
-      CREATE_NODE = connection.prepareStatement("INSERT INTO node () VALUES ()", Statement.RETURN_GENERATED_KEYS);
-      REMOVE = connection.prepareStatement("DELETE FROM edge WHERE from_node_id = ? AND to_node_id = ?");
-      REMOVE_BOTID_FROM_FILENAME = connection.prepareStatement("DELETE FROM botidnode_file WHERE botidnode_id = ? AND file_id = ?");
-      REMOVE_FILENAME = connection.prepareStatement("DELETE FROM file_node WHERE node_id = ?");
-      SET_TEMPLATE = connection.prepareStatement("INSERT INTO template (text) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
-      ASSOCIATE_TEMPLATE_WITH_NODE = connection.prepareStatement("INSERT INTO node_template (node_id, template_id) VALUES (?, ?)");
-      SIZE = connection.prepareStatement("SELECT COUNT(from_node_id) FROM edge WHERE from_node_id = ?");
-      STORE_BOTID_NODE_FILE = connection.prepareStatement("INSERT INTO botidnode_file (botidnode_id, file_id) VALUES (?, ?)");
-    }
-    catch (SQLException e) {
-      throw new DeveloperError("SQL error when initializing prepared statements.", e);
-    }
-  }
+  private static final String ADD_FILENAME = "INSERT INTO file_node (file_id, node_id) VALUES (?, ?)";
+  private static final String ASSOCIATE_BOT_WITH_FILE = "INSERT INTO bot_file (bot_id, file_id) VALUES (?, ?)";
+  private static final String CONTAINS_KEY = "SELECT 1 FROM edge WHERE from_node_id = ? AND label = ?";
+  private static final String FILE_PRESENT = "SELECT 1 FROM file WHERE path = ?";
+  private static final String FILE_PRESENT_FOR_BOT = "SELECT 1 FROM file INNER JOIN bot_file ON file.id = bot_file.file_id INNER JOIN bot ON bot.id = bot_file.bot_id WHERE file.path = ? AND bot.label = ?";
+  private static final String GET_NODE = "SELECT to_node_id FROM edge WHERE from_node_id = ? AND label = ?";
+  private static final String GET_BOTID_NODES_FOR_FILE = "SELECT botidnode_id from botidnode_file INNER JOIN file ON botidnode_file.file_id = file.id WHERE file.path = ?";
+  private static final String GET_BOTS_FOR_FILE = "SELECT bot.label FROM bot_file INNER JOIN file ON bot_file.file_id = file.id INNER JOIN bot ON bot.id = bot_file.bot_id WHERE file.path = ?";
+  private static final String GET_FILENAMES = "SELECT file.path from file_node INNER JOIN file ON file_node.file_id = file.id WHERE file_node.node_id = ?";
+  private static final String GET_FILENAMES_FOR_BOT = "SELECT file.path FROM bot_file INNER JOIN file ON bot_file.file_id = file.id INNER JOIN bot ON bot_file.bot_id = bot.id WHERE bot.id = (SELECT id FROM bot WHERE label = ?)";
+  private static final String GET_LAST_LOADED = "SELECT last_loaded FROM file WHERE path = ?";
+  private static final String GET_PARENT = "SELECT from_node_id FROM edge WHERE to_node_id = ?";
+  private static final String GET_TEMPLATE = "SELECT text from template INNER JOIN node_template ON node_template.template_id = template.id WHERE node_template.node_id = ?";
+  private static final String GET_TEMPLATE_ID = "SELECT template_id FROM node_template WHERE node_id = ?";
+  private static final String PUT = "INSERT INTO edge (from_node_id, label, to_node_id) VALUES (?, ?, ?)";
+  private static final String CREATE_NODE = "INSERT INTO node (id) VALUES (?)";
+  private static final String REMOVE = "DELETE FROM edge WHERE from_node_id = ? AND to_node_id = ?";
+  private static final String REMOVE_BOTID_FROM_FILENAME = "DELETE FROM bot_file WHERE bot_id = ? AND file_id = ?";
+  private static final String REMOVE_FILENAME = "DELETE FROM file_node WHERE node_id = ?";
+  private static final String SET_TEMPLATE = "INSERT INTO template (id, text) VALUES (?, ?)";
+  private static final String ASSOCIATE_TEMPLATE_WITH_NODE = "INSERT INTO node_template (node_id, template_id) VALUES (?, ?)";
+  private static final String SIZE = "SELECT COUNT(from_node_id) FROM edge WHERE from_node_id = ?";
+  private static final String GET_NEXT_ID = "SELECT next_id FROM id_block WHERE name = ? FOR UPDATE";
+  private static final String GET_MAX_ID = "SELECT MAX(id) FROM %s";
+  private static final String SET_NEXT_ID = "UPDATE id_block SET next_id = ? WHERE name = ?";
+  private static final String START_NEXT_ID = "INSERT INTO id_block (name, next_id) VALUES (?, ?)";
+  private static final String STORE_BOTID_NODE_FILE = "INSERT INTO botidnode_file (botidnode_id, file_id) VALUES (?, ?)";
 
   /**
    * Adds the given filename to the list of filenames associated with the given node.
@@ -116,9 +86,15 @@ public class SlowDBNodemapper {
     int file_id = Entity.getOrCreate(connection, "file", "path", filename.toExternalForm());
 
     try {
-      ADD_FILENAME.setInt(1, file_id);
-      ADD_FILENAME.setInt(2, node);
-      ADD_FILENAME.execute();
+      PreparedStatement statement = connection.prepareStatement(ADD_FILENAME);
+      try {
+        statement.setInt(1, file_id);
+        statement.setInt(2, node);
+        statement.execute();
+      }
+      finally {
+        statement.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to associate filename \"%s\" with node %d.", filename.toExternalForm(), node), e);
@@ -138,9 +114,15 @@ public class SlowDBNodemapper {
     int fileID = Entity.getOrCreate(connection, "file", "path", filename.toExternalForm());
     
     try {
-      ASSOCIATE_BOT_WITH_FILE.setInt(1, botID);
-      ASSOCIATE_BOT_WITH_FILE.setInt(2, fileID);
-      ASSOCIATE_BOT_WITH_FILE.execute();
+      PreparedStatement statement = connection.prepareStatement(ASSOCIATE_BOT_WITH_FILE);
+      try {
+        statement.setInt(1, botID);
+        statement.setInt(2, fileID);
+        statement.execute();
+      }
+      finally {
+        statement.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to associate bot \"%s\" with file \"%s\".", bot, filename.toExternalForm()), e);
@@ -160,11 +142,17 @@ public class SlowDBNodemapper {
   public static boolean containsKey(Connection connection, int node, String key) {
     boolean result;
     try {
-      CONTAINS_KEY.setInt(1, node);
-      CONTAINS_KEY.setString(2, key);
-      ResultSet results = CONTAINS_KEY.executeQuery();
-      result = results.next();
-      results.close();
+      PreparedStatement statement = connection.prepareStatement(CONTAINS_KEY);
+      try {
+        statement.setInt(1, node);
+        statement.setString(2, key);
+        ResultSet results = statement.executeQuery();
+        result = results.next();
+        results.close();
+      }
+      finally {
+        statement.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to check whether node %d maps to key \"%s\".", node, key), e);
@@ -182,10 +170,16 @@ public class SlowDBNodemapper {
   public static boolean fileIsAlreadyPresent(Connection connection, URL file) {
     boolean result;
     try {
-      FILE_PRESENT.setString(1, file.toExternalForm());
-      ResultSet results = FILE_PRESENT.executeQuery();
-      result = results.next();
-      results.close();
+      PreparedStatement statement = connection.prepareStatement(FILE_PRESENT);
+      try {
+        statement.setString(1, file.toExternalForm());
+        ResultSet results = statement.executeQuery();
+        result = results.next();
+        results.close();
+      }
+      finally {
+        statement.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to check whether file \"%s\" is already present.", file.toExternalForm()), e);
@@ -204,11 +198,17 @@ public class SlowDBNodemapper {
   public static boolean fileIsAlreadyPresentForBot(Connection connection, URL file, String bot) {
     boolean result;
     try {
-      FILE_PRESENT_FOR_BOT.setString(1, file.toExternalForm());
-      FILE_PRESENT_FOR_BOT.setString(2, bot);
-      ResultSet results = FILE_PRESENT_FOR_BOT.executeQuery();
-      result = results.next();
-      results.close();
+      PreparedStatement statement = connection.prepareStatement(FILE_PRESENT_FOR_BOT);
+      try {
+        statement.setString(1, file.toExternalForm());
+        statement.setString(2, bot);
+        ResultSet results = statement.executeQuery();
+        result = results.next();
+        results.close();
+      }
+      finally {
+        statement.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to check whether file \"%s\" is already present for bot \"%s\".", file.toExternalForm(), bot), e);
@@ -229,13 +229,19 @@ public class SlowDBNodemapper {
   public static int get(Connection connection, int node, String key) {
     int toNode = -1;
     try {
-      GET_NODE.setInt(1, node);
-      GET_NODE.setString(2, key);
-      ResultSet results = GET_NODE.executeQuery();
-      if (results.next()) {
-        toNode = results.getInt(1);
+      PreparedStatement statement = connection.prepareStatement(GET_NODE);
+      try {
+        statement.setInt(1, node);
+        statement.setString(2, key);
+        ResultSet results = statement.executeQuery();
+        if (results.next()) {
+          toNode = results.getInt(1);
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to get node %d mapped via key \"%s\".", node, key), e);
@@ -254,12 +260,18 @@ public class SlowDBNodemapper {
   public static Set<Integer> getBotIDNodesForFile(Connection connection, URL file) {
     Set<Integer> result = new HashSet<Integer>();
     try {
-      GET_BOTID_NODES_FOR_FILE.setString(1, file.toExternalForm());
-      ResultSet results = GET_BOTID_NODES_FOR_FILE.executeQuery();
-      while (results.next()) {
-        result.add(results.getInt(1));
+      PreparedStatement statement = connection.prepareStatement(GET_BOTID_NODES_FOR_FILE);
+      try {
+        statement.setString(1, file.toExternalForm());
+        ResultSet results = statement.executeQuery();
+        while (results.next()) {
+          result.add(results.getInt(1));
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to get botid nodes for file \"%s\".", file.toExternalForm()), e);
@@ -277,12 +289,18 @@ public class SlowDBNodemapper {
   public static List<String> getBotsForFilename(Connection connection, URL filename) {
     List<String> result = new ArrayList<String>();
     try {
-      GET_BOTS_FOR_FILE.setString(1, filename.toExternalForm());
-      ResultSet results = GET_BOTS_FOR_FILE.executeQuery();
-      while (results.next()) {
-        result.add(results.getString(1));
+      PreparedStatement statement = connection.prepareStatement(GET_BOTS_FOR_FILE);
+      try {
+        statement.setString(1, filename.toExternalForm());
+        ResultSet results = statement.executeQuery();
+        while (results.next()) {
+          result.add(results.getString(1));
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to get bots for filename \"%s\".", filename.toExternalForm()), e);
@@ -301,12 +319,18 @@ public class SlowDBNodemapper {
   public static List<String> getFilenames(Connection connection, int node) {
     List<String> result = new ArrayList<String>();
     try {
-      GET_FILENAMES.setInt(1, node);
-      ResultSet results = GET_FILENAMES.executeQuery();
-      while (results.next()) {
-        result.add(results.getString(1));
+      PreparedStatement statement = connection.prepareStatement(GET_FILENAMES);
+      try {
+        statement.setInt(1, node);
+        ResultSet results = statement.executeQuery();
+        while (results.next()) {
+          result.add(results.getString(1));
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to get filenames associated with node %d.", node), e);
@@ -324,18 +348,24 @@ public class SlowDBNodemapper {
   public static List<URL> getFilenamesForBot(Connection connection, String bot) {
     List<URL> result = new ArrayList<URL>();
     try {
-      GET_FILENAMES_FOR_BOT.setString(1, bot);
-      ResultSet results = GET_FILENAMES_FOR_BOT.executeQuery();
-      while (results.next()) {
-        String filename = results.getString(1);
-        try {
-          result.add(URLTools.createValidURL(filename));
-        }
-        catch (FileNotFoundException e) {
-          throw new UserError(String.format("Invalid filename \"%s\" attached to bot \"%s\"!", filename, bot), e);
+      PreparedStatement statement = connection.prepareStatement(GET_FILENAMES_FOR_BOT);
+      try {
+        statement.setString(1, bot);
+        ResultSet results = statement.executeQuery();
+        while (results.next()) {
+          String filename = results.getString(1);
+          try {
+            result.add(URLTools.createValidURL(filename));
+          }
+          catch (FileNotFoundException e) {
+            throw new UserError(String.format("Invalid filename \"%s\" attached to bot \"%s\"!", filename, bot), e);
+          }
         }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to get filenames associated with bot \"%s\".", bot), e);
@@ -353,12 +383,18 @@ public class SlowDBNodemapper {
   public static long getLastLoaded(Connection connection, URL file) {
     long result = -1;
     try {
-      GET_LAST_LOADED.setString(1, file.toExternalForm());
-      ResultSet results = GET_LAST_LOADED.executeQuery();
-      if (results.next()) {
-        result = results.getTimestamp(1).getTime();
+      PreparedStatement statement = connection.prepareStatement(GET_LAST_LOADED);
+      try {
+        statement.setString(1, file.toExternalForm());
+        ResultSet results = statement.executeQuery();
+        if (results.next()) {
+          result = results.getTimestamp(1).getTime();
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to get last-loaded time for file \"%s\".", file.toExternalForm()), e);
@@ -378,12 +414,18 @@ public class SlowDBNodemapper {
   public static int getParent(Connection connection, int node) {
     int result = -1;
     try {
-      GET_PARENT.setInt(1, node);
-      ResultSet results = GET_PARENT.executeQuery();
-      if (results.next()) {
-        result = results.getInt(1);
+      PreparedStatement statement = connection.prepareStatement(GET_PARENT);
+      try {
+        statement.setInt(1, node);
+        ResultSet results = statement.executeQuery();
+        if (results.next()) {
+          result = results.getInt(1);
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to get parent of node %d.", node), e);
@@ -402,12 +444,18 @@ public class SlowDBNodemapper {
   public static String getTemplate(Connection connection, int node) {
     String template = null;
     try {
-      GET_TEMPLATE.setInt(1, node);
-      ResultSet results = GET_TEMPLATE.executeQuery();
-      if (results.next()) {
-        template = results.getString(1);
+      PreparedStatement statement = connection.prepareStatement(GET_TEMPLATE);
+      try {
+        statement.setInt(1, node);
+        ResultSet results = statement.executeQuery();
+        if (results.next()) {
+          template = results.getString(1);
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to get template attached to node %d.", node), e);
@@ -426,12 +474,18 @@ public class SlowDBNodemapper {
   public static int getTemplateID(Connection connection, int node) {
     int id = -1;
     try {
-      GET_TEMPLATE_ID.setInt(1, node);
-      ResultSet results = GET_TEMPLATE_ID.executeQuery();
-      if (results.next()) {
-        id = results.getInt(1);
+      PreparedStatement statement = connection.prepareStatement(GET_TEMPLATE_ID);
+      try {
+        statement.setInt(1, node);
+        ResultSet results = statement.executeQuery();
+        if (results.next()) {
+          id = results.getInt(1);
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to get id of template attached to node %d.", node), e);
@@ -450,38 +504,138 @@ public class SlowDBNodemapper {
    */
   @SuppressWarnings("boxing")
   public static int put(Connection connection, int from_node, String key) {
-    int to_node = -1;
+    // See if this edge exists already.
+    if (get(connection, from_node, key) != -1) {
+      throw new IllegalArgumentException("Trying to recreate edge that already exists.");
+    }
+    int to_node = createNode(connection);
+    try {
+      PreparedStatement statement = connection.prepareStatement(PUT);
+      try {
+        statement.setInt(1, from_node);
+        statement.setString(2, key);
+        statement.setInt(3, to_node);
+        statement.execute();
+      }
+      finally {
+        statement.close();
+      }
+    }
+    catch (SQLException e) {
+      throw new DeveloperError(String.format("SQL error trying to create edge mapping from node %d to node %d via key \"%s\".", from_node, to_node, key), e);
+    }
+    return to_node;
+  }
+
+  /**
+   * Creates a new node and returns its id.
+   * 
+   * @param connection
+   * @return the id of the new node
+   */
+  private static int createNode(Connection connection) {
+    int id = -1;
     try {
-      // See if this edge exists already.
-      GET_NODE.setInt(1, from_node);
-      GET_NODE.setString(2, key);
-      ResultSet edgeCheck = GET_NODE.executeQuery();
-      boolean exists = edgeCheck.next();
-      edgeCheck.close();
-      if (!exists) {
-        CREATE_NODE.execute();
-        ResultSet results = CREATE_NODE.getGeneratedKeys();
+      id = reserveIDs(connection, "node", 1);
+      PreparedStatement statement = connection.prepareStatement(CREATE_NODE);
+      try {
+        statement.setInt(1, id);
+        statement.execute();
+      }
+      finally {
+        statement.close();
+      }
+    }
+    catch (SQLException e) {
+      throw new DeveloperError("SQL error trying to create node.", e);
+    }
+    return id;
+  }
+
+  /**
+   * Reserves a block of ids for new rows of the given table (<code>node</code> or <code>template</code>) and returns
+   * the first of them. The next free id of each table is kept in a row of <code>id_block</code>, which stays locked
+   * until the caller's transaction ends; so a load that reserves its ids inside its own transaction can assign them
+   * itself, without another writer taking any of them in the meantime. On a connection in autocommit mode, the
+   * reservation is made in a transaction of its own.
+   * 
+   * @param connection
+   * @param table the table for which to reserve ids
+   * @param count how many ids to reserve
+   * @return the first id reserved
+   * @throws SQLException if the ids could not be reserved
+   */
+  public static int reserveIDs(Connection connection, String table, int count) throws SQLException {
+    boolean autoCommit = connection.getAutoCommit();
+    if (autoCommit) {
+      connection.setAutoCommit(false);
+    }
+    try {
+      int next = -1;
+      PreparedStatement select = connection.prepareStatement(GET_NEXT_ID);
+      try {
+        select.setString(1, table);
+        ResultSet results = select.executeQuery();
         if (results.next()) {
-          to_node = results.getInt(1);
+          next = results.getInt(1);
+        }
+        results.close();
+      }
+      finally {
+        select.close();
+      }
+      // Never hand out an id already taken by a row written some other way.
+      int first = Math.max(next, getMaxID(connection, table) + 1);
+      PreparedStatement update = connection.prepareStatement(next == -1 ? START_NEXT_ID : SET_NEXT_ID);
+      try {
+        if (next == -1) {
+          update.setString(1, table);
+          update.setInt(2, first + count);
         }
         else {
-          throw new DeveloperError(String.format("No node id generated!"), new NullPointerException());
+          update.setInt(1, first + count);
+          update.setString(2, table);
         }
-        results.close();
-
-        PUT.setInt(1, from_node);
-        PUT.setString(2, key);
-        PUT.setInt(3, to_node);
-        PUT.execute();
+        update.execute();
+      }
+      finally {
+        update.close();
       }
-      else {
-        throw new IllegalArgumentException("Trying to recreate edge that already exists.");
+      if (autoCommit) {
+        connection.commit();
       }
+      return first;
     }
     catch (SQLException e) {
-      throw new DeveloperError(String.format("SQL error trying to create edge mapping from node %d to node %d via key \"%s\".", from_node, to_node, key), e);
+      if (autoCommit) {
+        connection.rollback();
+      }
+      throw e;
+    }
+    finally {
+      if (autoCommit) {
+        connection.setAutoCommit(true);
+      }
+    }
+  }
+
+  /**
+   * @return the highest id in the given table (0 if it is empty)
+   */
+  private static int getMaxID(Connection connection, String table) throws SQLException {
+    PreparedStatement select = connection.prepareStatement(String.format(GET_MAX_ID, table));
+    try {
+      ResultSet results = select.executeQuery();
+      int max = 0;
+      if (results.next()) {
+        max = results.getInt(1);
+      }
+      results.close();
+      return max;
+    }
+    finally {
+      select.close();
     }
-    return to_node;
   }
 
   /**
@@ -498,9 +652,15 @@ public class SlowDBNodemapper {
   @SuppressWarnings("boxing")
   public static void remove(Connection connection, int from_node, int to_node) {
     try {
-      REMOVE.setInt(1, from_node);
-      REMOVE.setInt(2, to_node);
-      REMOVE.execute();
+      PreparedStatement statement = connection.prepareStatement(REMOVE);
+      try {
+        statement.setInt(1, from_node);
+        statement.setInt(2, to_node);
+        statement.execute();
+      }
+      finally {
+        statement.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to remove edge from node %d to node %d.", from_node, to_node), e);
@@ -520,8 +680,15 @@ public class SlowDBNodemapper {
     int fileID = Entity.getOrCreate(connection, "file", "path", filename.toExternalForm());
     
     try {
-      REMOVE_BOTID_FROM_FILENAME.setInt(1, botID);
-      REMOVE_BOTID_FROM_FILENAME.setInt(2, fileID);
+      PreparedStatement statement = connection.prepareStatement(REMOVE_BOTID_FROM_FILENAME);
+      try {
+        statement.setInt(1, botID);
+        statement.setInt(2, fileID);
+        statement.execute();
+      }
+      finally {
+        statement.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to remove association between botid for \"%s\" and filename \"%s\".", bot, filename.toExternalForm()), e);
@@ -538,13 +705,19 @@ public class SlowDBNodemapper {
   @SuppressWarnings("boxing")
   public static void setFilename(Connection connection, int node, URL filename) {
     try {
-      REMOVE_FILENAME.setInt(1, node);
-      REMOVE_FILENAME.close();
-      addFilename(connection, node, filename);
+      PreparedStatement statement = connection.prepareStatement(REMOVE_FILENAME);
+      try {
+        statement.setInt(1, node);
+        statement.execute();
+      }
+      finally {
+        statement.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to remove filenames associated with node %d.", node), e);
     }
+    addFilename(connection, node, filename);
   }
 
   /**
@@ -558,16 +731,16 @@ public class SlowDBNodemapper {
   public static void setTemplate(Connection connection, int node, String template) {
     int templateID = -1;
     try {
-      SET_TEMPLATE.setString(1, template);
-      SET_TEMPLATE.execute();
-      ResultSet results = SET_TEMPLATE.getGeneratedKeys();
-      if (results.next()) {
-        templateID = results.getInt(1);
+      templateID = reserveIDs(connection, "template", 1);
+      PreparedStatement statement = connection.prepareStatement(SET_TEMPLATE);
+      try {
+        statement.setInt(1, templateID);
+        statement.setString(2, template);
+        statement.execute();
       }
-      else {
-        throw new DeveloperError(String.format("No template id generated!"), new NullPointerException());
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to attach template to node %d.", node), e);
@@ -586,9 +759,15 @@ public class SlowDBNodemapper {
   public static void associateTemplateWithNode(Connection connection, int node, int templateID) {
     
     try {
-      ASSOCIATE_TEMPLATE_WITH_NODE.setInt(1, node);
-      ASSOCIATE_TEMPLATE_WITH_NODE.setInt(2, templateID);
-      ASSOCIATE_TEMPLATE_WITH_NODE.execute();
+      PreparedStatement statement = connection.prepareStatement(ASSOCIATE_TEMPLATE_WITH_NODE);
+      try {
+        statement.setInt(1, node);
+        statement.setInt(2, templateID);
+        statement.execute();
+      }
+      finally {
+        statement.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to attach template id %d to node %d.", templateID, node), e);
@@ -606,12 +785,18 @@ public class SlowDBNodemapper {
   public static int size(Connection connection, int node) {
     int count = -1;
     try {
-      SIZE.setInt(1, node);
-      ResultSet results = SIZE.executeQuery();
-      if (results.next()) {
-        count = results.getInt(1);
+      PreparedStatement statement = connection.prepareStatement(SIZE);
+      try {
+        statement.setInt(1, node);
+        ResultSet results = statement.executeQuery();
+        if (results.next()) {
+          count = results.getInt(1);
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to get edge count from node %d.", node), e);
@@ -630,9 +815,15 @@ public class SlowDBNodemapper {
   public static void storeBotIDNodeFile(Connection connection, int node, URL file) {
     int fileId = Entity.getOrCreate(connection, "file", "path", file.toExternalForm());
     try {
-      STORE_BOTID_NODE_FILE.setInt(1, node);
-      STORE_BOTID_NODE_FILE.setInt(2, fileId);
-      STORE_BOTID_NODE_FILE.execute();
+      PreparedStatement statement = connection.prepareStatement(STORE_BOTID_NODE_FILE);
+      try {
+        statement.setInt(1, node);
+        statement.setInt(2, fileId);
+        statement.execute();
+      }
+      finally {
+        statement.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError(String.format("SQL error trying to associate file \"%s\" with node %d.", file.toExternalForm(), node), e);
@@ -647,38 +838,35 @@ public class SlowDBNodemapper {
    */
   public static int getRoot(Connection connection) {
     
+    // The root node (will? should?) be the lowest-numbered node.
+    int id = -1;
     try {
-      // The root node (will? should?) be the lowest-numbered node.
-      int id = -1;
       Statement select = connection.createStatement();
-      ResultSet results = select.executeQuery("SELECT MIN(id) from node");
-      if (results.next()) {
-        id = results.getInt(1);
-        
-        // Weird, but this is necessary.  Otherwise a null will get converted silently to 0.
-        if (results.wasNull()) {
-          id = -1;
-        }
-      }
-      results.close();
-      
-      // If no node was found, create the root.
-      if (id == -1) {
-        CREATE_NODE.execute();
-        results = CREATE_NODE.getGeneratedKeys();
+      try {
+        ResultSet results = select.executeQuery("SELECT MIN(id) from node");
         if (results.next()) {
           id = results.getInt(1);
-        }
-        else {
-          throw new DeveloperError("No node id generated when trying to create root node!");
+          
+          // Weird, but this is necessary.  Otherwise a null will get converted silently to 0.
+          if (results.wasNull()) {
+            id = -1;
+          }
         }
         results.close();
       }
-      return id;
+      finally {
+        select.close();
+      }
     }
     catch (SQLException e) {
       throw new DeveloperError("SQL error when trying to retrieve/create root node.", e);
     }
+    
+    // If no node was found, create the root.
+    if (id == -1) {
+      id = createNode(connection);
+    }
+    return id;
   }
   
   /**
@@ -698,7 +886,9 @@ public class SlowDBNodemapper {
       statement.execute("TRUNCATE bot_file");
       statement.execute("TRUNCATE file_node");
       statement.execute("TRUNCATE node");
+      statement.execute("TRUNCATE id_block");
       statement.execute("TRUNCATE file");
+      statement.close();
     }
     catch (SQLException e) {
       throw new DeveloperError("SQL error when trying to reset the graph.", e);
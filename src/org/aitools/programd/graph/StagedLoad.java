@@ -0,0 +1,127 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aitools.programd.Bot;
+
+/**
+ * The categories read from one file, held apart from the graph. A file can be read (the slow part) into a
+ * <code>StagedLoad</code> on any thread, and then {@link Graphmapper#publish published} to the graph all at once, so
+ * that a reply is never matched against a half-loaded file.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class StagedLoad implements CategoryHandler {
+
+  /** One category, as delivered by the reader. */
+  private static class Category {
+
+    String pattern;
+
+    String that;
+
+    String topic;
+
+    String template;
+
+    Bot bot;
+
+    Category(String pattern, String that, String topic, String template, Bot bot) {
+      this.pattern = pattern;
+      this.that = that;
+      this.topic = topic;
+      this.template = template;
+      this.bot = bot;
+    }
+  }
+
+  /** The file that was read. */
+  private URL _path;
+
+  /** The bot for which it was read. */
+  private String _botid;
+
+  /** The categories read, in order. */
+  private List<Category> _categories = new ArrayList<Category>();
+
+  /** Whether the whole file was read without error. */
+  private boolean _complete = false;
+
+  /**
+   * Creates a new, empty StagedLoad.
+   * 
+   * @param path the file to be read
+   * @param botid the bot for which it is being read
+   */
+  public StagedLoad(URL path, String botid) {
+    this._path = path;
+    this._botid = botid;
+  }
+
+  /**
+   * @see org.aitools.programd.graph.CategoryHandler#addCategory(java.lang.String, java.lang.String, java.lang.String,
+   *      java.lang.String, org.aitools.programd.Bot, java.net.URL)
+   */
+  @Override
+  public void addCategory(String pattern, String that, String topic, String template, Bot bot, URL source) {
+    this._categories.add(new Category(pattern, that, topic, template, bot));
+  }
+
+  /**
+   * Delivers the staged categories, in the order they were read, to the given handler.
+   * 
+   * @param handler the handler (usually a Graphmapper) to receive the categories
+   */
+  public void replay(CategoryHandler handler) {
+    for (Category category : this._categories) {
+      handler.addCategory(category.pattern, category.that, category.topic, category.template, category.bot,
+          this._path);
+    }
+  }
+
+  /**
+   * @return the file that was read
+   */
+  public URL getPath() {
+    return this._path;
+  }
+
+  /**
+   * @return the bot for which the file was read
+   */
+  public String getBotID() {
+    return this._botid;
+  }
+
+  /**
+   * @return the number of categories staged
+   */
+  public int size() {
+    return this._categories.size();
+  }
+
+  /**
+   * @return whether the whole file was read without error
+   */
+  public boolean isComplete() {
+    return this._complete;
+  }
+
+  /**
+   * Marks the file as having been read completely.
+   */
+  public void setComplete() {
+    this._complete = true;
+  }
+}
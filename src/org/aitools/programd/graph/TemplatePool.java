@@ -0,0 +1,378 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.aitools.util.runtime.DeveloperError;
+
+/**
+ * Holds the templates of a {@link MemoryGraphmapper}, and the names of the files they came from, so that each is stored
+ * once however many categories use it. A leaf node holds a {@link Reference}: the number of its template, and the
+ * number of its list of source files.
+ * <ul>
+ * <li>Templates are found by the hash of their content, and counted, so that a template is dropped when the last
+ * category using it is removed (and its number is reused).</li>
+ * <li>Each distinct list of source files is kept (once) as an unmodifiable list, so matching does not build one.</li>
+ * <li>Optionally, templates from a given length are kept compressed while they are not being matched. They start out
+ * compressed, are expanded when first matched, and are compressed again if they have not been matched by the time
+ * {@link #SWEEP_INTERVAL} more templates have been fetched.</li>
+ * </ul>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class TemplatePool {
+
+  /** What a leaf node holds. */
+  public static class Reference {
+
+    final int template;
+
+    final int sources;
+
+    Reference(int template, int sources) {
+      this.template = template;
+      this.sources = sources;
+    }
+  }
+
+  /** How many templates to fetch between sweeps for templates to compress. */
+  private static final int SWEEP_INTERVAL = 100000;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** The templates, by number: each a String, or (compressed) a byte array. */
+  private volatile Object[] _templates = new Object[1024];
+
+  /** The hashes of the templates, by number. */
+  private int[] _hashes = new int[1024];
+
+  /** The number of categories using each template (0 for a free number). */
+  private int[] _counts = new int[1024];
+
+  /** Whether each template has been fetched since the last sweep. */
+  private volatile boolean[] _fetched = new boolean[1024];
+
+  /** The next number never used. */
+  private int _top;
+
+  /** Numbers that have been used and freed. */
+  private List<Integer> _free = new ArrayList<Integer>();
+
+  /** The numbers of templates with each hash (usually only one). */
+  private Map<Integer, int[]> _byHash = new HashMap<Integer, int[]>();
+
+  /** The number of distinct templates kept. */
+  private int _templateCount;
+
+  /** The source file names, by number. */
+  private List<String> _files = new ArrayList<String>();
+
+  /** The numbers of the source files. */
+  private Map<String, Integer> _fileIDs = new HashMap<String, Integer>();
+
+  /** The lists of source file names, by number. */
+  private volatile List<List<String>> _sources = new ArrayList<List<String>>();
+
+  /** The file numbers in each list of source files. */
+  private List<int[]> _sourceFiles = new ArrayList<int[]>();
+
+  /** The numbers of the lists of source files, by their file numbers. */
+  private Map<String, Integer> _sourceIDs = new HashMap<String, Integer>();
+
+  /** The length from which to compress templates (0 for never). */
+  private int _minCompressedLength;
+
+  /** How many templates have been fetched since the last sweep. */
+  private AtomicInteger _fetches = new AtomicInteger();
+
+  private Deflater _deflater;
+
+  private Inflater _inflater;
+
+  /**
+   * Creates a new TemplatePool.
+   *
+   * @param minCompressedLength the length from which to keep templates compressed while they are not being matched (0
+   *          for never)
+   */
+  public TemplatePool(int minCompressedLength) {
+    this._minCompressedLength = minCompressedLength;
+    if (minCompressedLength > 0) {
+      this._deflater = new Deflater(Deflater.BEST_SPEED);
+      this._inflater = new Inflater();
+    }
+  }
+
+  /**
+   * Adds a template from the given source.
+   *
+   * @param template the template
+   * @param source its source
+   * @return the reference to store in the leaf node
+   */
+  public synchronized Reference add(String template, URL source) {
+    return new Reference(this.addTemplate(template), this.getSourcesID(new int[] { this.getFileID(source) }));
+  }
+
+  /**
+   * Replaces the template of a category (when a path-identical one is merged with it).
+   *
+   * @param old the reference the leaf node holds now
+   * @param template the new template
+   * @param source the source of the new template
+   * @param addSource whether to add the new source to the old ones (rather than replacing them)
+   * @return the reference to store in the leaf node instead
+   */
+  public synchronized Reference replace(Reference old, String template, URL source, boolean addSource) {
+    int templateID = this.addTemplate(template);
+    this.release(old);
+    int file = this.getFileID(source);
+    int[] files;
+    if (addSource) {
+      int[] oldFiles = this._sourceFiles.get(old.sources);
+      files = Arrays.copyOf(oldFiles, oldFiles.length + 1);
+      files[oldFiles.length] = file;
+    }
+    else {
+      files = new int[] { file };
+    }
+    return new Reference(templateID, this.getSourcesID(files));
+  }
+
+  /**
+   * Notes that a leaf node holding the given reference has been removed from the graph.
+   *
+   * @param reference the reference that the node held
+   */
+  public synchronized void release(Reference reference) {
+    int id = reference.template;
+    if (--this._counts[id] > 0) {
+      return;
+    }
+    Integer hash = Integer.valueOf(this._hashes[id]);
+    int[] ids = this._byHash.get(hash);
+    if (ids.length == 1) {
+      this._byHash.remove(hash);
+    }
+    else {
+      int[] rest = new int[ids.length - 1];
+      int index = 0;
+      for (int other : ids) {
+        if (other != id) {
+          rest[index++] = other;
+        }
+      }
+      this._byHash.put(hash, rest);
+    }
+    this._templates[id] = null;
+    this._free.add(Integer.valueOf(id));
+    this._templateCount--;
+  }
+
+  /**
+   * @param reference
+   * @return the template to which the reference refers
+   */
+  public String getTemplate(Reference reference) {
+    int id = reference.template;
+    this._fetched[id] = true;
+    if (this._minCompressedLength > 0 && this._fetches.incrementAndGet() >= SWEEP_INTERVAL) {
+      this.sweep();
+    }
+    Object template = this._templates[id];
+    if (template instanceof String) {
+      return (String) template;
+    }
+    synchronized (this) {
+      template = this._templates[id];
+      if (template instanceof String) {
+        return (String) template;
+      }
+      String expanded = this.expand((byte[]) template);
+      this._templates[id] = expanded;
+      return expanded;
+    }
+  }
+
+  /**
+   * @param reference
+   * @return the names of the files from which the template to which the reference refers came
+   */
+  public List<String> getFilenames(Reference reference) {
+    return this._sources.get(reference.sources);
+  }
+
+  /**
+   * @return a description of what the pool holds
+   */
+  @SuppressWarnings("boxing")
+  public synchronized String report() {
+    int compressed = 0;
+    for (int id = 0; id < this._top; id++) {
+      if (this._templates[id] instanceof byte[]) {
+        compressed++;
+      }
+    }
+    return String.format("%,d distinct templates (%,d compressed), %,d source files, %,d distinct source lists.",
+        this._templateCount, compressed, this._files.size(), this._sources.size());
+  }
+
+  private int addTemplate(String template) {
+    int hash = template.hashCode();
+    int[] ids = this._byHash.get(Integer.valueOf(hash));
+    if (ids != null) {
+      for (int id : ids) {
+        if (template.equals(this.peek(id))) {
+          this._counts[id]++;
+          return id;
+        }
+      }
+    }
+    int id;
+    if (this._free.isEmpty()) {
+      id = this._top++;
+      if (id == this._hashes.length) {
+        int length = id * 2;
+        this._templates = Arrays.copyOf(this._templates, length);
+        this._hashes = Arrays.copyOf(this._hashes, length);
+        this._counts = Arrays.copyOf(this._counts, length);
+        this._fetched = Arrays.copyOf(this._fetched, length);
+      }
+    }
+    else {
+      id = this._free.remove(this._free.size() - 1).intValue();
+    }
+    this._templates[id] = this.shouldCompress(template) ? this.compress(template) : template;
+    this._hashes[id] = hash;
+    this._counts[id] = 1;
+    this._fetched[id] = false;
+    if (ids == null) {
+      this._byHash.put(Integer.valueOf(hash), new int[] { id });
+    }
+    else {
+      int[] more = Arrays.copyOf(ids, ids.length + 1);
+      more[ids.length] = id;
+      this._byHash.put(Integer.valueOf(hash), more);
+    }
+    this._templateCount++;
+    return id;
+  }
+
+  /**
+   * @return the template with the given number, expanding (but not keeping expanded) a compressed one
+   */
+  private String peek(int id) {
+    Object template = this._templates[id];
+    return template instanceof String ? (String) template : this.expand((byte[]) template);
+  }
+
+  private int getFileID(URL source) {
+    String name = source.toExternalForm();
+    Integer id = this._fileIDs.get(name);
+    if (id == null) {
+      id = Integer.valueOf(this._files.size());
+      this._files.add(name);
+      this._fileIDs.put(name, id);
+    }
+    return id.intValue();
+  }
+
+  private int getSourcesID(int[] files) {
+    String key = Arrays.toString(files);
+    Integer id = this._sourceIDs.get(key);
+    if (id == null) {
+      List<String> names = new ArrayList<String>(files.length);
+      for (int file : files) {
+        names.add(this._files.get(file));
+      }
+      // Copy the list of lists, so that a reader never sees one being grown.
+      List<List<String>> sources = new ArrayList<List<String>>(this._sources.size() + 1);
+      sources.addAll(this._sources);
+      id = Integer.valueOf(sources.size());
+      sources.add(Collections.unmodifiableList(names));
+      this._sources = sources;
+      this._sourceFiles.add(files);
+      this._sourceIDs.put(key, id);
+    }
+    return id.intValue();
+  }
+
+  /**
+   * Compresses the templates that have not been fetched since the last sweep.
+   */
+  private synchronized void sweep() {
+    if (this._fetches.get() < SWEEP_INTERVAL) {
+      // Another thread just did it.
+      return;
+    }
+    this._fetches.set(0);
+    for (int id = 0; id < this._top; id++) {
+      Object template = this._templates[id];
+      if (template instanceof String && !this._fetched[id] && this.shouldCompress((String) template)) {
+        this._templates[id] = this.compress((String) template);
+      }
+      this._fetched[id] = false;
+    }
+  }
+
+  private boolean shouldCompress(String template) {
+    return this._minCompressedLength > 0 && template.length() >= this._minCompressedLength;
+  }
+
+  /**
+   * @return the template compressed, or the template itself if compressing it would not save anything
+   */
+  private Object compress(String template) {
+    byte[] input = template.getBytes(UTF8);
+    this._deflater.reset();
+    this._deflater.setInput(input);
+    this._deflater.finish();
+    ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2);
+    byte[] buffer = new byte[1024];
+    while (!this._deflater.finished()) {
+      output.write(buffer, 0, this._deflater.deflate(buffer));
+    }
+    // A String takes two bytes per character.
+    return output.size() < template.length() * 2 ? output.toByteArray() : template;
+  }
+
+  private synchronized String expand(byte[] compressed) {
+    this._inflater.reset();
+    this._inflater.setInput(compressed);
+    ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 4);
+    byte[] buffer = new byte[1024];
+    try {
+      while (!this._inflater.finished()) {
+        int length = this._inflater.inflate(buffer);
+        if (length == 0 && this._inflater.needsInput()) {
+          throw new DataFormatException("Truncated template.");
+        }
+        output.write(buffer, 0, length);
+      }
+    }
+    catch (DataFormatException e) {
+      throw new DeveloperError("Cannot expand compressed template.", e);
+    }
+    return new String(output.toByteArray(), UTF8);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.management;
+
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.aitools.programd.Core;
+import org.aitools.util.db.DBConnectionManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Registers the MBeans for a Core with the platform MBean server, so that it can be watched and tuned from standard JVM
+ * tools (such as jconsole). The MBeans are named <code>org.aitools.programd:type=<i>type</i>,core=<i>n</i></code>,
+ * where <i>n</i> counts the Cores started in this JVM. A failure to register an MBean is logged, and does not stop the
+ * Core.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class CoreManagement {
+
+  /** The domain of the MBeans' names. */
+  public static final String DOMAIN = "org.aitools.programd";
+
+  /** The number of Cores that have registered MBeans in this JVM. */
+  private static AtomicInteger cores = new AtomicInteger();
+
+  private MBeanServer _server = ManagementFactory.getPlatformMBeanServer();
+
+  /** The number of this Core. */
+  private int _number = cores.incrementAndGet();
+
+  private List<ObjectName> _registered = new ArrayList<ObjectName>();
+
+  private Logger _logger;
+
+  /**
+   * Registers the MBeans for the Core's responses, graph and predicates. The Core must be started far enough that it
+   * has its Graphmapper and PredicateManager.
+   * 
+   * @param core
+   */
+  public CoreManagement(Core core) {
+    this._logger = core.getLogger();
+    this.register(new CoreMonitor(core), "Core");
+    this.register(new GraphmapperMonitor(core.getGraphmapper()), "Graphmapper");
+    this.register(new PredicateMonitor(core.getPredicateMaster()), "Predicates");
+  }
+
+  /**
+   * Registers the MBean for a database connection pool (which the Core creates on first use).
+   * 
+   * @param manager
+   */
+  public void registerDatabasePool(DBConnectionManager manager) {
+    this.register(new DatabasePoolMonitor(manager), "DatabasePool");
+  }
+
+  /**
+   * Unregisters all the MBeans for the Core.
+   */
+  public synchronized void unregisterAll() {
+    for (ObjectName name : this._registered) {
+      try {
+        this._server.unregisterMBean(name);
+      }
+      catch (JMException e) {
+        this._logger.warn(String.format("Could not unregister MBean \"%s\": %s", name, e.getMessage()));
+      }
+    }
+    this._registered.clear();
+  }
+
+  @SuppressWarnings("boxing")
+  private synchronized void register(Object mbean, String type) {
+    try {
+      ObjectName name = new ObjectName(String.format("%s:type=%s,core=%d", DOMAIN, type, this._number));
+      this._server.registerMBean(mbean, name);
+      this._registered.add(name);
+    }
+    catch (JMException e) {
+      this._logger.warn(String.format("Could not register the %s MBean: %s", type, e.getMessage()));
+    }
+  }
+}
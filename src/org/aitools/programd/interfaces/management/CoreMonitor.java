@@ -0,0 +1,165 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.management;
+
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.util.ResponseStatistics;
+import org.aitools.util.resource.Filesystem;
+import org.aitools.util.resource.URLTools;
+
+/**
+ * Exposes a Core's responses and bots through JMX.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class CoreMonitor implements CoreMonitorMBean {
+
+  private Core _core;
+
+  /**
+   * Creates a new CoreMonitor for the given Core.
+   * 
+   * @param core
+   */
+  public CoreMonitor(Core core) {
+    this._core = core;
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getStatus()
+   */
+  @Override
+  public String getStatus() {
+    return this._core.getStatus().toString();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getBotIDs()
+   */
+  @Override
+  public String[] getBotIDs() {
+    synchronized (this._core) {
+      return this._core.getBots().keySet().toArray(new String[0]);
+    }
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getResponseCount()
+   */
+  @Override
+  public long getResponseCount() {
+    return this._core.getResponseStatistics().getCombinedHistogram(ResponseStatistics.RESPONSE).getCount();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getAverageResponseTime()
+   */
+  @Override
+  public float getAverageResponseTime() {
+    return this._core.averageResponseTime();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getQueriesPerHour()
+   */
+  @Override
+  public float getQueriesPerHour() {
+    return this._core.queriesPerHour();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getResponseTimeP50()
+   */
+  @Override
+  public long getResponseTimeP50() {
+    return this.getResponseTimePercentile(50);
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getResponseTimeP90()
+   */
+  @Override
+  public long getResponseTimeP90() {
+    return this.getResponseTimePercentile(90);
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getResponseTimeP99()
+   */
+  @Override
+  public long getResponseTimeP99() {
+    return this.getResponseTimePercentile(99);
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getResponseTimeP999()
+   */
+  @Override
+  public long getResponseTimeP999() {
+    return this.getResponseTimePercentile(99.9);
+  }
+
+  private long getResponseTimePercentile(double percentile) {
+    return this._core.getResponseStatistics().getCombinedHistogram(ResponseStatistics.RESPONSE).getPercentile(
+        percentile);
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getLoadedFiles(java.lang.String)
+   */
+  @Override
+  public String[] getLoadedFiles(String botid) {
+    List<String> files = new ArrayList<String>();
+    synchronized (this._core) {
+      Bot bot = this._core.getBots().get(botid);
+      if (bot == null) {
+        throw new IllegalArgumentException(String.format("No bot \"%s\" is loaded.", botid));
+      }
+      for (URL path : bot.getLoadedFilesMap().keySet()) {
+        files.add(URLTools.unescape(path));
+      }
+    }
+    return files.toArray(new String[files.size()]);
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#getLatencyReport(java.lang.String)
+   */
+  @Override
+  public String getLatencyReport(String botid) {
+    return this._core.getResponseStatistics().report(botid);
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#resetLatencyStatistics()
+   */
+  @Override
+  public void resetLatencyStatistics() {
+    this._core.getResponseStatistics().reset();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.CoreMonitorMBean#reloadFile(java.lang.String)
+   */
+  @Override
+  public void reloadFile(String path) {
+    URL url = URLTools.contextualize(Filesystem.getWorkingDirectory(), path);
+    // No response may be in progress while the graph changes.
+    synchronized (this._core) {
+      this._core.reload(url);
+    }
+  }
+}
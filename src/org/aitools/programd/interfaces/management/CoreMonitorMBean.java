@@ -0,0 +1,89 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.management;
+
+
+/**
+ * Responses and bots of a Core, as seen through JMX. Times are in milliseconds, except the percentiles, which are in
+ * microseconds.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public interface CoreMonitorMBean {
+
+  /**
+   * @return the status of the Core
+   */
+  public String getStatus();
+
+  /**
+   * @return the ids of the bots loaded
+   */
+  public String[] getBotIDs();
+
+  /**
+   * @return the number of responses produced
+   */
+  public long getResponseCount();
+
+  /**
+   * @return the average time taken to produce a response
+   */
+  public float getAverageResponseTime();
+
+  /**
+   * @return the number of responses produced per hour since the Core started
+   */
+  public float getQueriesPerHour();
+
+  /**
+   * @return the median time taken to produce a response, for all bots
+   */
+  public long getResponseTimeP50();
+
+  /**
+   * @return the 90th percentile of the time taken to produce a response, for all bots
+   */
+  public long getResponseTimeP90();
+
+  /**
+   * @return the 99th percentile of the time taken to produce a response, for all bots
+   */
+  public long getResponseTimeP99();
+
+  /**
+   * @return the 99.9th percentile of the time taken to produce a response, for all bots
+   */
+  public long getResponseTimeP999();
+
+  /**
+   * @param botid
+   * @return the files loaded for the bot
+   */
+  public String[] getLoadedFiles(String botid);
+
+  /**
+   * @param botid
+   * @return the time taken by each stage of a response for the bot
+   */
+  public String getLatencyReport(String botid);
+
+  /**
+   * Forgets the times recorded for all bots.
+   */
+  public void resetLatencyStatistics();
+
+  /**
+   * Reloads a file for every bot that has loaded it.
+   * 
+   * @param path the file's path or URL
+   */
+  public void reloadFile(String path);
+}
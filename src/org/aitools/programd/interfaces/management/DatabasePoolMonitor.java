@@ -0,0 +1,80 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.management;
+
+
+import org.aitools.util.db.DBConnectionManager;
+
+/**
+ * Exposes a Core's database connection pool through JMX.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class DatabasePoolMonitor implements DatabasePoolMonitorMBean {
+
+  private DBConnectionManager _manager;
+
+  /**
+   * Creates a new DatabasePoolMonitor for the given connection manager.
+   * 
+   * @param manager
+   */
+  public DatabasePoolMonitor(DBConnectionManager manager) {
+    this._manager = manager;
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.DatabasePoolMonitorMBean#getActiveCount()
+   */
+  @Override
+  public int getActiveCount() {
+    return this._manager.getActiveCount();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.DatabasePoolMonitorMBean#getIdleCount()
+   */
+  @Override
+  public int getIdleCount() {
+    return this._manager.getIdleCount();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.DatabasePoolMonitorMBean#getMaxActive()
+   */
+  @Override
+  public int getMaxActive() {
+    return this._manager.getMaxActive();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.DatabasePoolMonitorMBean#getBorrowCount()
+   */
+  @Override
+  public long getBorrowCount() {
+    return this._manager.getBorrowCount();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.DatabasePoolMonitorMBean#getAverageWait()
+   */
+  @Override
+  public float getAverageWait() {
+    return this._manager.getAverageWait();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.DatabasePoolMonitorMBean#getMaxWait()
+   */
+  @Override
+  public long getMaxWait() {
+    return this._manager.getMaxWait();
+  }
+}
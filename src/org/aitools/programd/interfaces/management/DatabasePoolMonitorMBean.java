@@ -0,0 +1,49 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.management;
+
+
+/**
+ * The database connection pool of a Core, as seen through JMX. Waits are in milliseconds.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public interface DatabasePoolMonitorMBean {
+
+  /**
+   * @return the number of connections in use
+   */
+  public int getActiveCount();
+
+  /**
+   * @return the number of idle connections in the pool
+   */
+  public int getIdleCount();
+
+  /**
+   * @return the largest number of connections that may be in use at once
+   */
+  public int getMaxActive();
+
+  /**
+   * @return the number of connections borrowed from the pool
+   */
+  public long getBorrowCount();
+
+  /**
+   * @return the average wait to borrow a connection
+   */
+  public float getAverageWait();
+
+  /**
+   * @return the longest wait to borrow a connection
+   */
+  public long getMaxWait();
+}
@@ -0,0 +1,120 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.management;
+
+
+import org.aitools.programd.graph.Graphmapper;
+
+/**
+ * Exposes a Core's graph through JMX.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class GraphmapperMonitor implements GraphmapperMonitorMBean {
+
+  private Graphmapper _graphmapper;
+
+  /**
+   * Creates a new GraphmapperMonitor for the given Graphmapper.
+   * 
+   * @param graphmapper
+   */
+  public GraphmapperMonitor(Graphmapper graphmapper) {
+    this._graphmapper = graphmapper;
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#getImplementation()
+   */
+  @Override
+  public String getImplementation() {
+    return this._graphmapper.getClass().getName();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#getCategoryCount()
+   */
+  @Override
+  public int getCategoryCount() {
+    return this._graphmapper.getCategoryCount();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#getDuplicateCategoryCount()
+   */
+  @Override
+  public int getDuplicateCategoryCount() {
+    return this._graphmapper.getDuplicateCategoryCount();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#getNodeCount()
+   */
+  @Override
+  public int getNodeCount() {
+    return this._graphmapper.getNodeCount();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#getCacheHitRatio()
+   */
+  @Override
+  public double getCacheHitRatio() {
+    return this._graphmapper.getCacheHitRatio();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#getCategoryReport()
+   */
+  @Override
+  public String getCategoryReport() {
+    return this._graphmapper.getCategoryReport();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#isFrozen()
+   */
+  @Override
+  public boolean isFrozen() {
+    return this._graphmapper.isFrozen();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#setFrozen(boolean)
+   */
+  @Override
+  public void setFrozen(boolean frozen) {
+    this._graphmapper.setFrozen(frozen);
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#freeze()
+   */
+  @Override
+  public void freeze() {
+    this._graphmapper.setFrozen(true);
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#thaw()
+   */
+  @Override
+  public void thaw() {
+    this._graphmapper.setFrozen(false);
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.GraphmapperMonitorMBean#dropCaches()
+   */
+  @Override
+  public void dropCaches() {
+    this._graphmapper.dropCaches();
+  }
+}
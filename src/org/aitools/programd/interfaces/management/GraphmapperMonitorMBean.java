@@ -0,0 +1,74 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.management;
+
+
+/**
+ * The graph of a Core, as seen through JMX.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public interface GraphmapperMonitorMBean {
+
+  /**
+   * @return the name of the Graphmapper implementation
+   */
+  public String getImplementation();
+
+  /**
+   * @return the number of categories loaded
+   */
+  public int getCategoryCount();
+
+  /**
+   * @return the number of path-identical categories encountered
+   */
+  public int getDuplicateCategoryCount();
+
+  /**
+   * @return the number of nodes in the graph (-1 if the Graphmapper does not keep count)
+   */
+  public int getNodeCount();
+
+  /**
+   * @return the share of lookups answered from the Graphmapper's cache or index (from 0 to 1)
+   */
+  public double getCacheHitRatio();
+
+  /**
+   * @return the Graphmapper's report on its categories and caches
+   */
+  public String getCategoryReport();
+
+  /**
+   * @return whether the graph is frozen against changes
+   */
+  public boolean isFrozen();
+
+  /**
+   * @param frozen whether the graph should be frozen against changes
+   */
+  public void setFrozen(boolean frozen);
+
+  /**
+   * Freezes the graph against changes.
+   */
+  public void freeze();
+
+  /**
+   * Lets the graph be changed again.
+   */
+  public void thaw();
+
+  /**
+   * Empties the Graphmapper's caches.
+   */
+  public void dropCaches();
+}
@@ -0,0 +1,83 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.management;
+
+
+import org.aitools.programd.predicates.PredicateManager;
+
+/**
+ * Exposes a Core's predicate cache through JMX.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class PredicateMonitor implements PredicateMonitorMBean {
+
+  private PredicateManager _predicateManager;
+
+  /**
+   * Creates a new PredicateMonitor for the given PredicateManager.
+   * 
+   * @param predicateManager
+   */
+  public PredicateMonitor(PredicateManager predicateManager) {
+    this._predicateManager = predicateManager;
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.PredicateMonitorMBean#getImplementation()
+   */
+  @Override
+  public String getImplementation() {
+    return this._predicateManager.getClass().getName();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.PredicateMonitorMBean#getCachedUserCount()
+   */
+  @Override
+  public int getCachedUserCount() {
+    return this._predicateManager.getCachedUserCount();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.PredicateMonitorMBean#getCachedPredicateCount()
+   */
+  @Override
+  public int getCachedPredicateCount() {
+    return this._predicateManager.getCachedPredicateCount();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.PredicateMonitorMBean#getUnsavedSetCount()
+   */
+  @Override
+  public int getUnsavedSetCount() {
+    return this._predicateManager.getUnsavedSetCount();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.PredicateMonitorMBean#getFlushSize()
+   */
+  @Override
+  public int getFlushSize() {
+    return this._predicateManager.getFlushSize();
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.management.PredicateMonitorMBean#flush()
+   */
+  @Override
+  public void flush() {
+    // Not while a predicate is being read or set.
+    synchronized (this._predicateManager) {
+      this._predicateManager.saveAll();
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.management;
+
+
+/**
+ * The predicate cache of a Core, as seen through JMX.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public interface PredicateMonitorMBean {
+
+  /**
+   * @return the name of the PredicateManager implementation
+   */
+  public String getImplementation();
+
+  /**
+   * @return the number of users whose predicates are cached
+   */
+  public int getCachedUserCount();
+
+  /**
+   * @return the number of predicate values cached
+   */
+  public int getCachedPredicateCount();
+
+  /**
+   * @return the number of sets since the predicates were last saved
+   */
+  public int getUnsavedSetCount();
+
+  /**
+   * @return the number of sets after which the predicates are saved
+   */
+  public int getFlushSize();
+
+  /**
+   * Saves all predicates and empties the cache.
+   */
+  public void flush();
+}
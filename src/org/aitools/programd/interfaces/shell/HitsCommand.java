@@ -0,0 +1,198 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.shell;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.graph.CategoryHits;
+import org.aitools.programd.graph.Graphmapper;
+import org.aitools.util.resource.Filesystem;
+import org.aitools.util.resource.URLTools;
+
+/**
+ * Reports how often the active bot's categories have been matched: a summary per file, the hottest categories, the
+ * categories never matched, or a dump of all of them (tab-separated, most hits first) to a file.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class HitsCommand extends ShellCommand {
+
+  /** Shell command string. */
+  public static final String COMMAND_STRING = "/hits";
+
+  /** Argument template. */
+  public static final String ARGUMENT_TEMPLATE = "[hot [n] | cold [n] | dump filename | reset]";
+
+  /** Shell help line. */
+  private static final String HELP_LINE = "shows how often the active bot's categories have been matched";
+
+  /** How many categories to list if no number is given. */
+  private static final int DEFAULT_LIST_SIZE = 20;
+
+  /**
+   * Creates a new HitsCommand.
+   */
+  public HitsCommand() {
+    super(COMMAND_STRING, ARGUMENT_TEMPLATE, HELP_LINE);
+  }
+
+  /**
+   * Shows or dumps the category hits for the active bot.
+   * 
+   * @see org.aitools.programd.interfaces.shell.ShellCommand#handle(java.lang.String,
+   *      org.aitools.programd.interfaces.shell.Shell)
+   */
+  @Override
+  public void handle(String commandLine, Shell shell) {
+    String[] arguments = commandLine.trim().split("\\s+");
+    String action = arguments.length > 1 ? arguments[1].toLowerCase() : "";
+    Graphmapper graphmapper = shell.getCore().getGraphmapper();
+    if (action.equals("reset")) {
+      graphmapper.resetCategoryHits();
+      shell.showMessage("Category hits reset.");
+      return;
+    }
+    Bot bot = shell.getBots().get(shell.getCurrentBotID());
+    List<CategoryHits> hits;
+    // Not while a match may be changing the graph.
+    synchronized (shell.getCore()) {
+      hits = graphmapper.getCategoryHits(bot);
+    }
+    if (hits.isEmpty()) {
+      shell.showMessage("No category hits are counted for the active bot.");
+      return;
+    }
+    Collections.sort(hits, CategoryHits.MOST_HITS_FIRST);
+    if (action.equals("hot")) {
+      this.showHot(hits, listSize(arguments), shell);
+    }
+    else if (action.equals("cold")) {
+      this.showCold(hits, listSize(arguments), shell);
+    }
+    else if (action.equals("dump")) {
+      if (arguments.length < 3) {
+        shell.showError("You must specify a filename.");
+        return;
+      }
+      this.dump(hits, arguments[2], shell);
+    }
+    else if (action.length() == 0) {
+      this.showSummary(hits, shell);
+    }
+    else {
+      shell.showError(String.format("Unknown argument \"%s\"; use %s %s", action, COMMAND_STRING, ARGUMENT_TEMPLATE));
+    }
+  }
+
+  @SuppressWarnings("boxing")
+  private void showSummary(List<CategoryHits> hits, Shell shell) {
+    // categories, categories hit, total hits
+    Map<String, long[]> files = new TreeMap<String, long[]>();
+    for (CategoryHits category : hits) {
+      String file = URLTools.unescape(category.getSource());
+      long[] counts = files.get(file);
+      if (counts == null) {
+        counts = new long[3];
+        files.put(file, counts);
+      }
+      counts[0]++;
+      if (category.getHits() > 0) {
+        counts[1]++;
+      }
+      counts[2] += category.getHits();
+    }
+    for (Map.Entry<String, long[]> file : files.entrySet()) {
+      long[] counts = file.getValue();
+      shell.showMessage(String.format("%s: %,d categories, %,d never hit, %,d hits", file.getKey(), counts[0],
+          counts[0] - counts[1], counts[2]));
+    }
+  }
+
+  @SuppressWarnings("boxing")
+  private void showHot(List<CategoryHits> hits, int size, Shell shell) {
+    int shown = 0;
+    for (CategoryHits category : hits) {
+      if (shown == size || category.getHits() == 0) {
+        break;
+      }
+      shell.showMessage(String.format("%,d: %s (%s)", category.getHits(), category.getPath(), URLTools
+          .unescape(category.getSource())));
+      shown++;
+    }
+    if (shown == 0) {
+      shell.showMessage("No category has been hit.");
+    }
+  }
+
+  @SuppressWarnings("boxing")
+  private void showCold(List<CategoryHits> hits, int size, Shell shell) {
+    int cold = 0;
+    // The never-hit categories are at the end, ordered by file.
+    for (CategoryHits category : hits) {
+      if (category.getHits() == 0) {
+        if (cold < size) {
+          shell.showMessage(String.format("%s (%s)", category.getPath(), URLTools.unescape(category.getSource())));
+        }
+        cold++;
+      }
+    }
+    if (cold > size) {
+      shell.showMessage(String.format("...and %,d more never hit (see %s dump).", cold - size, COMMAND_STRING));
+    }
+    else if (cold == 0) {
+      shell.showMessage("Every category has been hit.");
+    }
+  }
+
+  @SuppressWarnings("boxing")
+  private void dump(List<CategoryHits> hits, String path, Shell shell) {
+    PrintWriter out;
+    try {
+      out = new PrintWriter(Filesystem.checkOrCreate(path, "category hits"));
+    }
+    catch (FileNotFoundException e) {
+      shell.showError(String.format("Could not write to \"%s\".", path));
+      return;
+    }
+    out.println("hits\tfile\tpattern\tthat\ttopic");
+    for (CategoryHits category : hits) {
+      out.println(String.format("%d\t%s\t%s\t%s\t%s", category.getHits(), URLTools.unescape(category.getSource()),
+          category.getPattern(), category.getThat(), category.getTopic()));
+    }
+    out.close();
+    shell.showMessage(String.format("Hits for %,d categories written to \"%s\".", hits.size(), path));
+  }
+
+  private static int listSize(String[] arguments) {
+    if (arguments.length > 2) {
+      try {
+        return Integer.parseInt(arguments[2]);
+      }
+      catch (NumberFormatException e) {
+        // Use the default.
+      }
+    }
+    return DEFAULT_LIST_SIZE;
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.shell.ShellCommand#handles(java.lang.String)
+   */
+  @Override
+  public boolean handles(String commandLine) {
+    return commandLine.toLowerCase().startsWith(COMMAND_STRING);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interfaces.shell;
+
+import org.aitools.programd.util.ResponseStatistics;
+
+/**
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ * 
+ */
+public class LatencyCommand extends ShellCommand {
+
+  /** Shell command string. */
+  public static final String COMMAND_STRING = "/latency";
+
+  /** Argument template. */
+  public static final String ARGUMENT_TEMPLATE = "[botid|reset]";
+
+  /** Shell help line. */
+  private static final String HELP_LINE = "shows the time taken by each stage of a response (in microseconds)";
+
+  /**
+   * Creates a new LatencyCommand.
+   */
+  public LatencyCommand() {
+    super(COMMAND_STRING, ARGUMENT_TEMPLATE, HELP_LINE);
+  }
+
+  /**
+   * Displays the latency histograms for the named bot (or the current bot), or forgets them all.
+   * 
+   * @see org.aitools.programd.interfaces.shell.ShellCommand#handle(java.lang.String,
+   *      org.aitools.programd.interfaces.shell.Shell)
+   */
+  @Override
+  public void handle(String commandLine, Shell shell) {
+    ResponseStatistics statistics = shell.getCore().getResponseStatistics();
+    int space = commandLine.indexOf(' ');
+    String argument = space == -1 ? "" : commandLine.substring(space + 1).trim();
+    if (argument.equalsIgnoreCase("reset")) {
+      statistics.reset();
+      shell.showMessage("Latency statistics reset.");
+      return;
+    }
+    String botid = argument.length() > 0 ? argument : shell.getCurrentBotID();
+    String report = statistics.report(botid);
+    if (report.length() == 0) {
+      shell.showMessage(String.format("No responses recorded for \"%s\".", botid));
+      return;
+    }
+    for (String line : report.split(System.getProperty("line.separator"))) {
+      shell.showMessage(line);
+    }
+  }
+
+  /**
+   * @see org.aitools.programd.interfaces.shell.ShellCommand#handles(java.lang.String)
+   */
+  @Override
+  public boolean handles(String commandLine) {
+    return commandLine.toLowerCase().startsWith(COMMAND_STRING);
+  }
+}
@@ -25,7 +25,8 @@ public class ShellCommandRegistry extends ObjectExemplarRegistry<ShellCommand> {
       "org.aitools.programd.interfaces.shell.BotListCommand",
       "org.aitools.programd.interfaces.shell.CategoriesCommand",
       "org.aitools.programd.interfaces.shell.FlushPredicatesCommand",
-      "org.aitools.programd.interfaces.shell.HelpCommand", "org.aitools.programd.interfaces.shell.ListBotFilesCommand",
+      "org.aitools.programd.interfaces.shell.HelpCommand", "org.aitools.programd.interfaces.shell.HitsCommand",
+      "org.aitools.programd.interfaces.shell.LatencyCommand", "org.aitools.programd.interfaces.shell.ListBotFilesCommand",
       "org.aitools.programd.interfaces.shell.ListCommandablesCommand",
       "org.aitools.programd.interfaces.shell.LoadCommand", "org.aitools.programd.interfaces.shell.MemoryCommand",
       "org.aitools.programd.interfaces.shell.PrintGraphCommand", "org.aitools.programd.interfaces.shell.TalkToCommand",
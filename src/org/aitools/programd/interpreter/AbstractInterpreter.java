@@ -0,0 +1,57 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interpreter;
+
+import org.aitools.programd.util.Deadline;
+
+/**
+ * An {@link Interpreter} that can give up at the deadline of the reply of which an evaluation is a part. (This is a
+ * class rather than a new method of {@link Interpreter}, so that existing implementations of that still work: they
+ * are just not given the deadline.)
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+abstract public class AbstractInterpreter implements Interpreter {
+
+  /**
+   * Evaluates with no deadline.
+   * 
+   * @see org.aitools.programd.interpreter.Interpreter#evaluate(java.lang.String)
+   */
+  @Override
+  public String evaluate(String expression) {
+    return this.evaluate(expression, Deadline.NONE);
+  }
+
+  /**
+   * Evaluates a given expression, giving up at the given deadline.
+   * 
+   * @param expression the expression to evaluate
+   * @param deadline the deadline for the reply of which the evaluation is a part
+   * @return the result of evaluating the expression
+   */
+  abstract public String evaluate(String expression, Deadline deadline);
+
+  /**
+   * Evaluates a given expression with the given interpreter, passing on the deadline if the interpreter can use it.
+   * 
+   * @param interpreter the interpreter to use
+   * @param expression the expression to evaluate
+   * @param deadline the deadline for the reply of which the evaluation is a part
+   * @return the result of evaluating the expression
+   */
+  public static String evaluate(Interpreter interpreter, String expression, Deadline deadline) {
+    if (interpreter instanceof AbstractInterpreter) {
+      return ((AbstractInterpreter) interpreter).evaluate(expression, deadline);
+    }
+    // otherwise...
+    return interpreter.evaluate(expression);
+  }
+}
@@ -10,7 +10,9 @@
 package org.aitools.programd.interpreter;
 
 /**
- * An <code>Interpreter</code> handles some server-side script.
+ * An <code>Interpreter</code> handles some server-side script. Implementations are instantiated by the Core, and must
+ * provide a public constructor that takes the {@link org.aitools.programd.Core} as its only argument. An implementation
+ * that can give up at the deadline of the reply it is part of should extend {@link AbstractInterpreter}.
  */
 abstract public interface Interpreter {
 
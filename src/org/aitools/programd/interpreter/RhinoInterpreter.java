@@ -1,27 +1,179 @@
 package org.aitools.programd.interpreter;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aitools.programd.Core;
+import org.aitools.programd.CoreSettings;
+import org.aitools.programd.util.Deadline;
+import org.aitools.util.LRUCache;
+import org.aitools.util.runtime.DaemonThreadFactory;
 import org.apache.log4j.Logger;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 
 /**
  * An implementation of {@link org.aitools.programd.interpreter.Interpreter} that handles server-side JavaScript using
  * the Rhino package.
- * 
+ *
+ * The standard objects are built once, into a sealed scope that is shared by all evaluations; each evaluation gets a
+ * light child scope of its own, so scripts cannot see or disturb each other's variables. Compiled scripts are kept in
+ * an LRU cache keyed by their source text.
+ * <p>
+ * The instruction limit is counted by the scope, so it only sees scripts that look names up. The time limit is
+ * enforced from outside: when there is one, the script runs on a worker thread, and a script that is not finished in
+ * time (as with <code>for(;;){}</code>, which makes no lookups at all) is interrupted and its thread stopped. If the
+ * runtime cannot stop threads, the thread is abandoned; no more than {@link #MAX_RUNAWAYS} may be abandoned at once,
+ * after which scripts are refused.
+ * </p>
+ *
  * @author Jon Baer
  * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
  */
-public class RhinoInterpreter implements Interpreter {
+public class RhinoInterpreter extends AbstractInterpreter {
+
+  /**
+   * Thrown from inside a running script when it exceeds its instruction or time limit. This is an Error rather than an
+   * exception so that a script's own <code>try/catch</code> cannot swallow it.
+   */
+  private static class LimitExceededError extends Error {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message
+     */
+    LimitExceededError(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * A per-evaluation scope, whose prototype is the shared standard scope. Every name lookup made by the script passes
+   * through here, which is what we count against the instruction limit. (The version of Rhino we use has no instruction
+   * observer of its own.)
+   */
+  private static class EvaluationScope extends ScriptableObject {
+
+    /** How many lookups to make between clock checks. */
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+    private int _instructionLimit;
+
+    private long _deadline;
+
+    private int _count = 0;
+
+    /**
+     * @param parent the shared (sealed) standard scope
+     * @param instructionLimit the maximum number of lookups (0 for none)
+     * @param deadline the time by which the script must complete (0 for none)
+     */
+    EvaluationScope(Scriptable parent, int instructionLimit, long deadline) {
+      this.setPrototype(parent);
+      this.setParentScope(null);
+      this._instructionLimit = instructionLimit;
+      this._deadline = deadline;
+    }
+
+    private void tick() {
+      this._count++;
+      if (this._instructionLimit > 0 && this._count > this._instructionLimit) {
+        throw new LimitExceededError(String.format("Script exceeded the instruction limit of %d.",
+            Integer.valueOf(this._instructionLimit)));
+      }
+      if (this._deadline > 0 && this._count % CLOCK_CHECK_INTERVAL == 0
+          && System.currentTimeMillis() > this._deadline) {
+        throw new LimitExceededError("Script exceeded its time limit.");
+      }
+    }
+
+    /**
+     * @see org.mozilla.javascript.ScriptableObject#get(java.lang.String, org.mozilla.javascript.Scriptable)
+     */
+    @Override
+    public Object get(String name, Scriptable start) {
+      this.tick();
+      return super.get(name, start);
+    }
+
+    /**
+     * @see org.mozilla.javascript.ScriptableObject#getClassName()
+     */
+    @Override
+    public String getClassName() {
+      return "global";
+    }
+
+    /**
+     * @see org.mozilla.javascript.ScriptableObject#has(java.lang.String, org.mozilla.javascript.Scriptable)
+     */
+    @Override
+    public boolean has(String name, Scriptable start) {
+      this.tick();
+      return super.has(name, start);
+    }
+
+    /**
+     * @see org.mozilla.javascript.ScriptableObject#put(java.lang.String, org.mozilla.javascript.Scriptable,
+     *      java.lang.Object)
+     */
+    @Override
+    public void put(String name, Scriptable start, Object value) {
+      this.tick();
+      super.put(name, start, value);
+    }
+  }
 
   /** The logger. */
   private static final Logger logger = Logger.getLogger("programd");
 
+  /** The most runaway scripts whose threads may be left running before scripts are refused. */
+  public static final int MAX_RUNAWAYS = 4;
+
+  /** The threads on which scripts with a time limit run. */
+  private static final ExecutorService WORKERS = Executors.newCachedThreadPool(new DaemonThreadFactory("javascript"));
+
+  /** The number of scripts that ran past their time limit and are still running. */
+  private static final AtomicInteger RUNAWAYS = new AtomicInteger();
+
+  /** The sealed scope holding the standard objects, shared by all evaluations. */
+  private ScriptableObject _sharedScope;
+
+  /** Compiled scripts, keyed by source text (null if caching is disabled). */
+  private Map<String, Script> _scriptCache;
+
+  /** The maximum number of lookups per evaluation. */
+  private int _instructionLimit;
+
+  /** The maximum time (in milliseconds) per evaluation. */
+  private int _timeLimit;
+
   /**
-   * @see org.aitools.programd.interpreter.Interpreter#evaluate(java.lang.String)
+   * Creates a new RhinoInterpreter, configured from the given Core's settings.
+   *
+   * @param core the Core that will use this interpreter
    */
-  @Override
-  public String evaluate(String expression) {
-    logger.debug("evaluate: \"" + expression + "\"");
+  public RhinoInterpreter(Core core) {
+    CoreSettings settings = core.getSettings();
+    this._instructionLimit = settings.getJavascriptInstructionLimit();
+    this._timeLimit = settings.getJavascriptTimeLimit();
+    int cacheSize = settings.getJavascriptScriptCacheSize();
+    if (cacheSize > 0) {
+      this._scriptCache = new LRUCache<String, Script>(cacheSize);
+    }
+
     Context context;
     try {
       context = Context.enter();
@@ -29,19 +181,59 @@ public class RhinoInterpreter implements Interpreter {
     // If the Rhino js library is somehow missing....
     catch (NoClassDefFoundError e) {
       logger.error("Rhino JavaScript library is missing!", e);
-      return "";
+      return;
     }
-    Scriptable scope = context.initStandardObjects(null);
-
-    Object result = null;
     try {
-      result = context.evaluateString(scope, expression, "<cmd>", 1, null);
+      this._sharedScope = context.initStandardObjects(null, true);
     }
-    catch (Exception e) {
-      logger.warn(String.format(
-          "JavaScript exception (see interpreter log).%nGot exception:%n%s%nwhen processing:%n%s", e, expression));
+    finally {
+      Context.exit();
+    }
+  }
+
+  /**
+   * Returns the compiled form of the given expression, from the cache if possible.
+   *
+   * @param context the current context
+   * @param expression the source text
+   * @return the compiled script
+   * @throws IOException if the source cannot be read (should not happen with a string)
+   */
+  private Script compile(Context context, String expression) throws IOException {
+    if (this._scriptCache == null) {
+      return context.compileReader(this._sharedScope, new StringReader(expression), "<cmd>", 1, null);
+    }
+    Script script;
+    synchronized (this._scriptCache) {
+      script = this._scriptCache.get(expression);
+    }
+    if (script == null) {
+      script = context.compileReader(this._sharedScope, new StringReader(expression), "<cmd>", 1, null);
+      synchronized (this._scriptCache) {
+        this._scriptCache.put(expression, script);
+      }
+    }
+    return script;
+  }
+
+  /**
+   * @see org.aitools.programd.interpreter.AbstractInterpreter#evaluate(java.lang.String,
+   *      org.aitools.programd.util.Deadline)
+   */
+  @Override
+  public String evaluate(final String expression, Deadline replyDeadline) {
+    logger.debug("evaluate: \"" + expression + "\"");
+    if (this._sharedScope == null) {
+      return "";
+    }
+    final long timeLimit = replyDeadline.limit(this._timeLimit);
+    Object result;
+    if (timeLimit <= 0) {
+      result = this.run(expression, 0);
+    }
+    else {
+      result = this.runWithTimeLimit(expression, timeLimit);
     }
-    Context.exit();
     if (result != null) {
       return result.toString();
     }
@@ -49,4 +241,110 @@ public class RhinoInterpreter implements Interpreter {
     logger.info("JavaScript returned null!");
     return "";
   }
+
+  /**
+   * Runs a script on a worker thread, and stops it if it does not finish within the time limit.
+   *
+   * @param expression the script
+   * @param timeLimit the time limit (in milliseconds)
+   * @return the result of the script (<code>null</code> if it failed or was stopped)
+   */
+  private Object runWithTimeLimit(final String expression, final long timeLimit) {
+    if (RUNAWAYS.get() >= MAX_RUNAWAYS) {
+      logger.error(String.format("%d runaway scripts are still running; refusing to run:%n%s",
+          Integer.valueOf(RUNAWAYS.get()), expression));
+      return null;
+    }
+    final Thread[] worker = new Thread[1];
+    final boolean[] abandoned = new boolean[1];
+    Future<Object> future = WORKERS.submit(new Callable<Object>() {
+      @Override
+      public Object call() {
+        synchronized (worker) {
+          worker[0] = Thread.currentThread();
+        }
+        try {
+          return RhinoInterpreter.this.run(expression, System.currentTimeMillis() + timeLimit);
+        }
+        finally {
+          synchronized (worker) {
+            worker[0] = null;
+            if (abandoned[0]) {
+              RUNAWAYS.decrementAndGet();
+            }
+          }
+        }
+      }
+    });
+    try {
+      return future.get(timeLimit, TimeUnit.MILLISECONDS);
+    }
+    catch (TimeoutException e) {
+      logger.warn(String.format("JavaScript aborted: Script exceeded its time limit of %d ms.%nwhen processing:%n%s",
+          Long.valueOf(timeLimit), expression));
+      future.cancel(true);
+      synchronized (worker) {
+        if (worker[0] != null) {
+          abandoned[0] = true;
+          RUNAWAYS.incrementAndGet();
+          stop(worker[0]);
+        }
+      }
+      return null;
+    }
+    catch (ExecutionException e) {
+      logger.warn(String.format("JavaScript failed: %s%nwhen processing:%n%s", e.getCause(), expression));
+      return null;
+    }
+    catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  /**
+   * Stops a thread that is running a runaway script. Interpreted scripts do not notice interruption, so this is the
+   * only way to end a loop that makes no lookups.
+   *
+   * @param thread the thread to stop
+   */
+  @SuppressWarnings("deprecation")
+  private static void stop(Thread thread) {
+    try {
+      thread.stop();
+    }
+    catch (UnsupportedOperationException e) {
+      logger.error(String.format("Cannot stop runaway script thread \"%s\"; abandoning it.", thread.getName()));
+    }
+  }
+
+  /**
+   * Runs a script on the current thread.
+   *
+   * @param expression the script
+   * @param deadline the time by which the script must complete (0 for none)
+   * @return the result of the script (<code>null</code> if it failed or exceeded its instruction limit)
+   */
+  private Object run(String expression, long deadline) {
+    Context context = Context.enter();
+    // Interpreted mode, so that cached scripts do not each carry a generated class.
+    context.setOptimizationLevel(-1);
+
+    try {
+      Script script = this.compile(context, expression);
+      return script.exec(context, new EvaluationScope(this._sharedScope, this._instructionLimit, deadline));
+    }
+    catch (LimitExceededError e) {
+      logger.warn(String.format("JavaScript aborted: %s%nwhen processing:%n%s", e.getMessage(), expression));
+    }
+    catch (Exception e) {
+      logger.warn(String.format(
+          "JavaScript exception (see interpreter log).%nGot exception:%n%s%nwhen processing:%n%s", e, expression));
+    }
+    finally {
+      Context.exit();
+    }
+    return null;
+  }
 }
@@ -0,0 +1,73 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.logging;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Passes chat log records to the log4j appenders of a logger, as {@link ChatLogEvent}s, so that the chat log is still
+ * written as the log4j configuration says (but not by the responding thread).
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class AppenderChatLogWriter implements ChatLogWriter {
+
+  private Logger _logger;
+
+  /**
+   * Creates a new AppenderChatLogWriter.
+   *
+   * @param logger the logger whose appenders should receive the records
+   */
+  public AppenderChatLogWriter(Logger logger) {
+    this._logger = logger;
+  }
+
+  /**
+   * @see org.aitools.programd.logging.ChatLogWriter#open()
+   */
+  @Override
+  public void open() {
+    // Nothing to do.
+  }
+
+  /**
+   * @see org.aitools.programd.logging.ChatLogWriter#write(java.util.List)
+   */
+  @Override
+  public void write(List<ChatLogRecord> batch) {
+    for (ChatLogRecord record : batch) {
+      try {
+        this._logger.callAppenders(record.toEvent());
+      }
+      catch (RuntimeException e) {
+        this._logger.error("Error passing a chat log record to the appenders.", e);
+      }
+    }
+  }
+
+  /**
+   * @see org.aitools.programd.logging.ChatLogWriter#sync()
+   */
+  @Override
+  public void sync() {
+    // The appenders take care of themselves.
+  }
+
+  /**
+   * @see org.aitools.programd.logging.ChatLogWriter#close()
+   */
+  @Override
+  public void close() {
+    // The appenders are closed with the rest of the log4j configuration.
+  }
+}
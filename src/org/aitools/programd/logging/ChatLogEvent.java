@@ -54,7 +54,20 @@ public class ChatLogEvent extends LoggingEvent {
    * @param out the reply from the bot
    */
   public ChatLogEvent(String bot, String user, String in, String out) {
-    super(LOGGER_FQCN, Logger.getLogger("programd." + bot), Level.INFO, String.format(
+    this(System.currentTimeMillis(), bot, user, in, out);
+  }
+
+  /**
+   * Creates a new ChatLogEvent for an exchange that occurred at the given time.
+   * 
+   * @param time the time (as from {@link System#currentTimeMillis()}) at which this exchange occurred
+   * @param bot the botid with whom this exchange occurred
+   * @param user the userid with whom this exchange occurred
+   * @param in the input from the user
+   * @param out the reply from the bot
+   */
+  public ChatLogEvent(long time, String bot, String user, String in, String out) {
+    super(LOGGER_FQCN, Logger.getLogger("programd." + bot), time, Level.INFO, String.format(
         "%s -> %s: \"%s\"; %s -> %s: \"%s\"", user, bot, in, bot, user,
         Text.normalizeString(Characters.removeMarkup(out))), null);
     this.botid = bot;
@@ -0,0 +1,298 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.logging;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.aitools.programd.CoreSettings.ChatLogOverflowPolicy;
+import org.aitools.programd.util.ManagedProcess;
+import org.aitools.util.RingBuffer;
+import org.aitools.util.runtime.Errors;
+import org.apache.log4j.Logger;
+
+/**
+ * Takes chat log records off the responding threads and writes them in batches from a single background thread.
+ * {@link #log(ChatLogRecord)} puts a record into a {@link RingBuffer} without locking, and wakes the writer thread only
+ * if it is asleep; the writer thread takes whatever has accumulated and hands it to each {@link ChatLogWriter} as one
+ * batch. A writer that fails is dropped without stopping the others. What happens to a record when the buffer is full
+ * depends on the {@link ChatLogOverflowPolicy}.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ChatLogPipeline implements ManagedProcess {
+
+  /** The most records to write in one batch. */
+  private static final int MAX_BATCH = 512;
+
+  /** How long to sleep when there is nothing to write before checking whether to sync or stop. */
+  private static final long POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+
+  /** How long a blocked responding thread sleeps before trying again. */
+  private static final long BLOCK_INTERVAL = TimeUnit.MICROSECONDS.toNanos(100);
+
+  /** How long (in milliseconds) to wait for buffered records to be written at shutdown. */
+  private static final long SHUTDOWN_WAIT = 2000;
+
+  private RingBuffer<ChatLogRecord> _buffer;
+
+  private List<ChatLogWriter> _writers;
+
+  private ChatLogOverflowPolicy _overflowPolicy;
+
+  /** Under the sample policy, keep one record in this many when the buffer is nearly full. */
+  private int _sampleRate;
+
+  /** The number of records in the buffer above which the sample policy starts sampling. */
+  private int _sampleThreshold;
+
+  /** How often (in milliseconds) to force written records to disk (0 for never). */
+  private long _syncInterval;
+
+  /** The thread running the writer. */
+  private volatile Thread _thread;
+
+  /** Whether the writer thread is (about to be) asleep, waiting for records. */
+  private volatile boolean _waiting;
+
+  /** Whether the writer should keep running. */
+  private volatile boolean _running = true;
+
+  /** The number of records seen while sampling (to choose which to keep). */
+  private AtomicLong _sampled = new AtomicLong();
+
+  /** The number of records dropped. */
+  private AtomicLong _dropped = new AtomicLong();
+
+  /** The number of records written. */
+  private AtomicLong _written = new AtomicLong();
+
+  private Logger _logger;
+
+  /**
+   * Creates a new ChatLogPipeline. Records are buffered (and, if the buffer fills, dropped) until it is started as a
+   * {@link ManagedProcess}.
+   *
+   * @param writers where to write the records
+   * @param bufferSize the number of records that may wait to be written (rounded up to a power of two)
+   * @param overflowPolicy what to do with a record when the buffer is full
+   * @param sampleRate under the sample policy, keep one record in this many when the buffer is nearly full
+   * @param syncInterval how often (in milliseconds) to force written records to disk (0 for never)
+   * @param logger the logger to use
+   */
+  public ChatLogPipeline(List<ChatLogWriter> writers, int bufferSize, ChatLogOverflowPolicy overflowPolicy,
+      int sampleRate, int syncInterval, Logger logger) {
+    this._writers = writers;
+    this._buffer = new RingBuffer<ChatLogRecord>(bufferSize);
+    this._overflowPolicy = overflowPolicy;
+    this._sampleRate = Math.max(sampleRate, 1);
+    this._sampleThreshold = this._buffer.capacity() / 4 * 3;
+    this._syncInterval = syncInterval;
+    this._logger = logger;
+  }
+
+  /**
+   * Queues a record to be written. Returns at once, unless the buffer is full and the policy is to block.
+   *
+   * @param record the record to write
+   */
+  public void log(ChatLogRecord record) {
+    if (this._overflowPolicy == ChatLogOverflowPolicy.SAMPLE && this._buffer.size() > this._sampleThreshold
+        && this._sampled.getAndIncrement() % this._sampleRate != 0) {
+      this.drop();
+      return;
+    }
+    while (!this._buffer.offer(record)) {
+      if (this._overflowPolicy != ChatLogOverflowPolicy.BLOCK || !this._running) {
+        this.drop();
+        return;
+      }
+      this.wake();
+      LockSupport.parkNanos(this, BLOCK_INTERVAL);
+    }
+    if (this._waiting) {
+      this.wake();
+    }
+  }
+
+  private void drop() {
+    if (this._dropped.incrementAndGet() % 100 == 1) {
+      this._logger.warn(String.format("Chat log buffer is full; %d records dropped so far.",
+          Long.valueOf(this._dropped.get())));
+    }
+  }
+
+  private void wake() {
+    Thread thread = this._thread;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /**
+   * @return the number of records waiting to be written
+   */
+  public int getQueueDepth() {
+    return this._buffer.size();
+  }
+
+  /**
+   * @return the number of records dropped (because the buffer was full, or by sampling)
+   */
+  public long getDroppedCount() {
+    return this._dropped.get();
+  }
+
+  /**
+   * @return the number of records written
+   */
+  public long getWrittenCount() {
+    return this._written.get();
+  }
+
+  /**
+   * Writes records as they arrive until shut down, then writes whatever is left and closes the writers. A writer that
+   * fails is closed and no longer used; the others go on. Only when none is left does the pipeline stop.
+   *
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run() {
+    List<ChatLogRecord> batch = new ArrayList<ChatLogRecord>(MAX_BATCH);
+    long lastSync = System.currentTimeMillis();
+    boolean dirty = false;
+    this._thread = Thread.currentThread();
+    List<ChatLogWriter> writers = new ArrayList<ChatLogWriter>(this._writers);
+    for (Iterator<ChatLogWriter> iterator = writers.iterator(); iterator.hasNext();) {
+      ChatLogWriter writer = iterator.next();
+      try {
+        writer.open();
+      }
+      catch (IOException e) {
+        this.disable(iterator, writer, e);
+      }
+      catch (RuntimeException e) {
+        this.disable(iterator, writer, e);
+      }
+    }
+    try {
+      while ((this._running || !this._buffer.isEmpty()) && !writers.isEmpty()) {
+        if (this._buffer.drainTo(batch, MAX_BATCH) > 0) {
+          for (Iterator<ChatLogWriter> iterator = writers.iterator(); iterator.hasNext();) {
+            ChatLogWriter writer = iterator.next();
+            try {
+              writer.write(batch);
+            }
+            catch (IOException e) {
+              this.disable(iterator, writer, e);
+            }
+            catch (RuntimeException e) {
+              this.disable(iterator, writer, e);
+            }
+          }
+          this._written.addAndGet(batch.size());
+          batch.clear();
+          dirty = true;
+        }
+        else {
+          this._waiting = true;
+          // (Check again, in case a record was added before it could see that we are waiting.)
+          if (this._buffer.isEmpty() && this._running) {
+            LockSupport.parkNanos(this, POLL_INTERVAL);
+          }
+          this._waiting = false;
+          if (Thread.interrupted()) {
+            this._running = false;
+          }
+        }
+        long now = System.currentTimeMillis();
+        if (dirty && this._syncInterval > 0 && now - lastSync >= this._syncInterval) {
+          for (Iterator<ChatLogWriter> iterator = writers.iterator(); iterator.hasNext();) {
+            ChatLogWriter writer = iterator.next();
+            try {
+              writer.sync();
+            }
+            catch (IOException e) {
+              this.disable(iterator, writer, e);
+            }
+            catch (RuntimeException e) {
+              this.disable(iterator, writer, e);
+            }
+          }
+          lastSync = now;
+          dirty = false;
+        }
+      }
+      if (writers.isEmpty()) {
+        this._logger.error("No chat log writer is left; the chat log will no longer be recorded.");
+        this._running = false;
+      }
+    }
+    finally {
+      for (ChatLogWriter writer : writers) {
+        this.close(writer);
+      }
+    }
+  }
+
+  /**
+   * Stops using a writer that has failed.
+   *
+   * @param iterator the iterator over the writers in use, positioned at the writer
+   * @param writer the writer
+   * @param e what went wrong
+   */
+  private void disable(Iterator<ChatLogWriter> iterator, ChatLogWriter writer, Exception e) {
+    iterator.remove();
+    String name = writer.getClass().getSimpleName();
+    if (e instanceof IOException) {
+      this._logger.error(String.format("Error writing the chat log with %s; it will no longer be used: %s", name,
+          Errors.describe(e)));
+    }
+    else {
+      this._logger.error(String.format("Error writing the chat log with %s; it will no longer be used.", name), e);
+    }
+    this.close(writer);
+  }
+
+  private void close(ChatLogWriter writer) {
+    try {
+      writer.close();
+    }
+    catch (RuntimeException e) {
+      this._logger.error(String.format("Error closing %s.", writer.getClass().getSimpleName()), e);
+    }
+  }
+
+  /**
+   * Tells the writer to finish what is already buffered and stop, and waits (briefly) for it to do so.
+   *
+   * @see org.aitools.programd.util.ManagedProcess#shutdown()
+   */
+  @Override
+  public void shutdown() {
+    this._running = false;
+    Thread thread = this._thread;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+      try {
+        thread.join(SHUTDOWN_WAIT);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.logging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.aitools.util.runtime.UserError;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the records of an XML chat log (as written by {@link XMLChatLogLayout} or {@link FileChatLogWriter}, and
+ * described by <code>ChatLog.xsd</code>). The log is streamed, so it may be large; the namespace of the log is not
+ * checked, so logs from older versions can be read too.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ChatLogReader extends DefaultHandler {
+
+  /** The format of the time of a record (as written by log4j's ISO8601DateFormat). */
+  private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
+
+  private List<ChatLogRecord> _records = new ArrayList<ChatLogRecord>();
+
+  private SimpleDateFormat _timeFormat = new SimpleDateFormat(TIME_FORMAT);
+
+  private StringBuilder _text = new StringBuilder();
+
+  private long _time;
+
+  private String _botid;
+
+  private String _userid;
+
+  private String _input;
+
+  private String _reply;
+
+  /**
+   * Reads all the records from the chat log at the given URL.
+   *
+   * @param url the chat log
+   * @return the records, in the order in which they appear in the log
+   */
+  public static List<ChatLogRecord> read(URL url) {
+    ChatLogReader reader = new ChatLogReader();
+    try {
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(true);
+      InputStream in = url.openStream();
+      try {
+        factory.newSAXParser().parse(in, reader);
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      throw new UserError(String.format("Could not read chat log \"%s\".", url), e);
+    }
+    catch (SAXException e) {
+      throw new UserError(String.format("Chat log \"%s\" is not well-formed.", url), e);
+    }
+    catch (ParserConfigurationException e) {
+      throw new UserError("Could not create a parser for the chat log.", e);
+    }
+    return reader._records;
+  }
+
+  /**
+   * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String, java.lang.String, java.lang.String,
+   *      org.xml.sax.Attributes)
+   */
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes) {
+    if (localName.equals("record")) {
+      this._time = 0;
+      this._botid = null;
+      this._userid = null;
+      this._input = "";
+      this._reply = "";
+    }
+    this._text.setLength(0);
+  }
+
+  /**
+   * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+   */
+  @Override
+  public void characters(char[] ch, int start, int length) {
+    this._text.append(ch, start, length);
+  }
+
+  /**
+   * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String, java.lang.String, java.lang.String)
+   */
+  @Override
+  public void endElement(String uri, String localName, String qName) {
+    String text = this._text.toString();
+    if (localName.equals("time")) {
+      try {
+        this._time = this._timeFormat.parse(text.trim()).getTime();
+      }
+      catch (ParseException e) {
+        // Leave the time unknown; it is not needed to replay the record.
+      }
+    }
+    else if (localName.equals("botid")) {
+      this._botid = text.trim();
+    }
+    else if (localName.equals("userid")) {
+      this._userid = text.trim();
+    }
+    else if (localName.equals("input")) {
+      this._input = text;
+    }
+    else if (localName.equals("reply")) {
+      this._reply = text;
+    }
+    else if (localName.equals("record") && this._botid != null && this._userid != null) {
+      this._records.add(new ChatLogRecord(this._time, this._botid, this._userid, this._input, this._reply));
+    }
+    this._text.setLength(0);
+  }
+}
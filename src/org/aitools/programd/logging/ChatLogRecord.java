@@ -0,0 +1,100 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.logging;
+
+/**
+ * One exchange in a chat, as queued for the chat log. Making one costs the responding thread nothing but the object
+ * itself; any formatting is done by the thread that writes it.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ChatLogRecord {
+
+  private long _time;
+
+  private String _botid;
+
+  private String _userid;
+
+  private String _input;
+
+  private String _reply;
+
+  /**
+   * Creates a new ChatLogRecord for an exchange that has just occurred.
+   *
+   * @param botid the botid with whom this exchange occurred
+   * @param userid the userid with whom this exchange occurred
+   * @param input the input from the user
+   * @param reply the reply from the bot
+   */
+  public ChatLogRecord(String botid, String userid, String input, String reply) {
+    this(System.currentTimeMillis(), botid, userid, input, reply);
+  }
+
+  /**
+   * Creates a new ChatLogRecord for an exchange that occurred at the given time (as when reading a chat log).
+   *
+   * @param time the time (as from {@link System#currentTimeMillis()}) at which this exchange occurred
+   * @param botid the botid with whom this exchange occurred
+   * @param userid the userid with whom this exchange occurred
+   * @param input the input from the user
+   * @param reply the reply from the bot
+   */
+  public ChatLogRecord(long time, String botid, String userid, String input, String reply) {
+    this._time = time;
+    this._botid = botid;
+    this._userid = userid;
+    this._input = input;
+    this._reply = reply;
+  }
+
+  /**
+   * @return the time (as from {@link System#currentTimeMillis()}) at which this exchange occurred
+   */
+  public long getTime() {
+    return this._time;
+  }
+
+  /**
+   * @return the botid
+   */
+  public String getBotID() {
+    return this._botid;
+  }
+
+  /**
+   * @return the userid
+   */
+  public String getUserID() {
+    return this._userid;
+  }
+
+  /**
+   * @return the input
+   */
+  public String getInput() {
+    return this._input;
+  }
+
+  /**
+   * @return the reply
+   */
+  public String getReply() {
+    return this._reply;
+  }
+
+  /**
+   * @return a ChatLogEvent for this exchange, for the log4j appenders
+   */
+  public ChatLogEvent toEvent() {
+    return new ChatLogEvent(this._time, this._botid, this._userid, this._input, this._reply);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.logging;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes batches of chat log records somewhere. All the methods are called from the one thread of a
+ * {@link ChatLogPipeline}, so an implementation need not be thread-safe.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public interface ChatLogWriter {
+
+  /**
+   * Prepares to write.
+   *
+   * @throws IOException if the destination cannot be opened
+   */
+  public void open() throws IOException;
+
+  /**
+   * Writes a batch of records.
+   *
+   * @param batch the records, oldest first
+   * @throws IOException if the records cannot be written
+   */
+  public void write(List<ChatLogRecord> batch) throws IOException;
+
+  /**
+   * Makes sure that what has been written so far will survive a crash.
+   *
+   * @throws IOException if this fails
+   */
+  public void sync() throws IOException;
+
+  /**
+   * Finishes writing and releases the destination.
+   */
+  public void close();
+}
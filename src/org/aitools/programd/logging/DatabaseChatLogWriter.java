@@ -0,0 +1,206 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.logging;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aitools.util.db.DBConnectionManager;
+import org.aitools.util.runtime.UserError;
+import org.apache.log4j.Logger;
+
+/**
+ * Writes chat log records to the <code>chatlog</code> table of the database, with one prepared insert executed as a
+ * JDBC batch. Records are held until there are enough for a batch, or until the log is synced or closed.
+ * <p>
+ * Each batch borrows a connection from the {@link DBConnectionManager} pool and is inserted in one transaction. If the
+ * insert fails (as when the database has dropped the connection), the transaction is rolled back, the connection is
+ * discarded from the pool, and the batch is tried once more on another connection; if that fails too, the batch is
+ * dropped and the writer carries on with the next one.
+ * </p>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class DatabaseChatLogWriter implements ChatLogWriter {
+
+  private static final String CHATLOG_INSERT =
+      "INSERT INTO chatlog (timestamp, userid, botid, input, response) VALUES (?, ?, ?, ?, ?)";
+
+  private DBConnectionManager _connectionManager;
+
+  /** The number of records to insert at once. */
+  private int _batchSize;
+
+  /** The records waiting to be inserted. */
+  private List<ChatLogRecord> _pending;
+
+  /** The number of records dropped because they could not be inserted. */
+  private long _dropped;
+
+  private Logger _logger;
+
+  /**
+   * Creates a new DatabaseChatLogWriter.
+   *
+   * @param connectionManager the pool from which to borrow connections
+   * @param batchSize the number of records to insert at once
+   * @param logger the logger to use for problems with the database
+   */
+  public DatabaseChatLogWriter(DBConnectionManager connectionManager, int batchSize, Logger logger) {
+    this._connectionManager = connectionManager;
+    this._batchSize = Math.max(batchSize, 1);
+    this._pending = new ArrayList<ChatLogRecord>(this._batchSize);
+    this._logger = logger;
+  }
+
+  /**
+   * @see org.aitools.programd.logging.ChatLogWriter#open()
+   */
+  @Override
+  public void open() {
+    // Connections are borrowed for each batch.
+  }
+
+  /**
+   * @see org.aitools.programd.logging.ChatLogWriter#write(java.util.List)
+   */
+  @Override
+  public void write(List<ChatLogRecord> batch) {
+    this._pending.addAll(batch);
+    if (this._pending.size() >= this._batchSize) {
+      this.flush();
+    }
+  }
+
+  /**
+   * Inserts any records that are waiting.
+   *
+   * @see org.aitools.programd.logging.ChatLogWriter#sync()
+   */
+  @Override
+  public void sync() {
+    this.flush();
+  }
+
+  /**
+   * Inserts any records that are waiting.
+   *
+   * @see org.aitools.programd.logging.ChatLogWriter#close()
+   */
+  @Override
+  public void close() {
+    this.flush();
+  }
+
+  /**
+   * @return the number of records dropped because they could not be inserted
+   */
+  public long getDroppedCount() {
+    return this._dropped;
+  }
+
+  private void flush() {
+    if (this._pending.isEmpty()) {
+      return;
+    }
+    try {
+      this.insert();
+    }
+    catch (SQLException e) {
+      this._logger.warn("Error writing the chat log to the database; trying again with another connection.", e);
+      try {
+        this.insert();
+      }
+      catch (SQLException ee) {
+        this.drop(ee);
+      }
+      catch (UserError ee) {
+        this.drop(ee);
+      }
+    }
+    catch (UserError e) {
+      // The connection manager could not connect; there is no point trying again at once.
+      this.drop(e);
+    }
+    this._pending.clear();
+  }
+
+  private void drop(Throwable e) {
+    this._dropped += this._pending.size();
+    this._logger.error(String.format("Could not write %d chat log records to the database (%d dropped so far).",
+        Integer.valueOf(this._pending.size()), Long.valueOf(this._dropped)), e);
+  }
+
+  /**
+   * Inserts the waiting records as one batch, in one transaction, on a connection borrowed for the purpose. If the
+   * insert fails, the transaction is rolled back (so that a retry cannot insert any record twice) and the connection
+   * is discarded from the pool, since it may be broken.
+   *
+   * @throws SQLException if the records cannot be inserted
+   */
+  private void insert() throws SQLException {
+    Connection connection = this._connectionManager.getDBConnection();
+    boolean inserted = false;
+    try {
+      connection.setAutoCommit(false);
+      PreparedStatement insert = connection.prepareStatement(CHATLOG_INSERT);
+      try {
+        insert.clearBatch();
+        for (ChatLogRecord record : this._pending) {
+          // The time of the exchange, not of the insert, which may be a batch later.
+          insert.setTimestamp(1, new Timestamp(record.getTime()));
+          insert.setString(2, record.getUserID());
+          insert.setString(3, record.getBotID());
+          insert.setString(4, record.getInput());
+          insert.setString(5, record.getReply());
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+      finally {
+        insert.close();
+      }
+      connection.commit();
+      connection.setAutoCommit(true);
+      inserted = true;
+    }
+    finally {
+      if (inserted) {
+        this.close(connection);
+      }
+      else {
+        this.rollback(connection);
+        this._connectionManager.invalidate(connection);
+      }
+    }
+  }
+
+  private void rollback(Connection connection) {
+    try {
+      connection.rollback();
+    }
+    catch (SQLException e) {
+      this._logger.warn("DB error when rolling back the chat log insert.", e);
+    }
+  }
+
+  private void close(Connection connection) {
+    try {
+      connection.close();
+    }
+    catch (SQLException e) {
+      this._logger.error("DB error when closing connection.", e);
+    }
+  }
+}
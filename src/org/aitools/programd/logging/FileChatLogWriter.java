@@ -0,0 +1,170 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.aitools.util.xml.Characters;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.ISO8601DateFormat;
+
+/**
+ * Writes chat log records to a file, in the same form as {@link XMLChatLogLayout}, through a file channel: each batch
+ * is formatted into one buffer and written at once. If the file already ends with the closing tag of a log, records are
+ * written in place of it, so that the file stays one well-formed document. The file is rotated (to a file with a ".1"
+ * suffix) when it grows past a maximum size.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class FileChatLogWriter implements ChatLogWriter {
+
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+  private static final String HEADER = "<?xml version=\"1.0\"?>" + LINE_SEPARATOR
+      + "<log xmlns=\"http://aitools.org/programd/4.6/chatlog\">" + LINE_SEPARATOR;
+
+  private static final String FOOTER = "</log>\n";
+
+  private File _file;
+
+  /** The size (in bytes) at which to rotate the file (0 for never). */
+  private long _maxFileSize;
+
+  private FileChannel _channel;
+
+  private Charset _charset = Charset.defaultCharset();
+
+  private ISO8601DateFormat _timestampFormatter = new ISO8601DateFormat();
+
+  /** The text of the batch being written (reused). */
+  private StringBuilder _text = new StringBuilder(8192);
+
+  private Logger _logger;
+
+  /**
+   * Creates a new FileChatLogWriter.
+   *
+   * @param file the file to write to
+   * @param maxFileSize the size (in bytes) at which to rotate the file (0 for never)
+   * @param logger the logger to use for problems with the file
+   */
+  public FileChatLogWriter(File file, int maxFileSize, Logger logger) {
+    this._file = file;
+    this._maxFileSize = maxFileSize;
+    this._logger = logger;
+  }
+
+  /**
+   * @see org.aitools.programd.logging.ChatLogWriter#open()
+   */
+  @Override
+  public void open() throws IOException {
+    this._channel = new RandomAccessFile(this._file, "rw").getChannel();
+    long size = this._channel.size();
+    if (size == 0) {
+      this.put(HEADER);
+      return;
+    }
+    byte[] footer = FOOTER.getBytes(this._charset);
+    if (size >= footer.length) {
+      ByteBuffer end = ByteBuffer.allocate(footer.length);
+      this._channel.read(end, size - footer.length);
+      if (Arrays.equals(end.array(), footer)) {
+        this._channel.truncate(size - footer.length);
+        size -= footer.length;
+      }
+    }
+    this._channel.position(size);
+  }
+
+  /**
+   * @see org.aitools.programd.logging.ChatLogWriter#write(java.util.List)
+   */
+  @Override
+  public void write(List<ChatLogRecord> batch) throws IOException {
+    this._text.setLength(0);
+    for (ChatLogRecord record : batch) {
+      this._text.append("<record>").append(LINE_SEPARATOR);
+      this._text.append("  <time>").append(this._timestampFormatter.format(new Date(record.getTime())))
+          .append("</time>").append(LINE_SEPARATOR);
+      this._text.append("  <botid>").append(record.getBotID()).append("</botid>").append(LINE_SEPARATOR);
+      this._text.append("  <userid>").append(record.getUserID()).append("</userid>").append(LINE_SEPARATOR);
+      this._text.append("  <input>").append(Characters.escapeXMLChars(record.getInput())).append("</input>")
+          .append(LINE_SEPARATOR);
+      this._text.append("  <reply>").append(Characters.escapeXMLChars(record.getReply())).append("</reply>");
+      this._text.append("</record>").append(LINE_SEPARATOR);
+    }
+    this.put(this._text);
+    if (this._maxFileSize > 0 && this._channel.size() >= this._maxFileSize) {
+      this.rotate();
+    }
+  }
+
+  /**
+   * @see org.aitools.programd.logging.ChatLogWriter#sync()
+   */
+  @Override
+  public void sync() throws IOException {
+    this._channel.force(false);
+  }
+
+  /**
+   * Writes the closing tag of the log and closes the file.
+   *
+   * @see org.aitools.programd.logging.ChatLogWriter#close()
+   */
+  @Override
+  public void close() {
+    if (this._channel != null) {
+      try {
+        this.put(FOOTER);
+        this._channel.force(false);
+        this._channel.close();
+      }
+      catch (IOException e) {
+        this._logger.warn(String.format("Error closing chat log file \"%s\".", this._file), e);
+      }
+      this._channel = null;
+    }
+  }
+
+  private void put(CharSequence text) throws IOException {
+    ByteBuffer bytes = this._charset.encode(CharBuffer.wrap(text));
+    while (bytes.hasRemaining()) {
+      this._channel.write(bytes);
+    }
+  }
+
+  /**
+   * Closes the current file, renames it with a ".1" suffix (replacing any previous one) and starts a new file.
+   *
+   * @throws IOException if the new file cannot be opened
+   */
+  private void rotate() throws IOException {
+    this.close();
+    File rotated = new File(this._file.getPath() + ".1");
+    if (rotated.exists() && !rotated.delete()) {
+      this._logger.warn(String.format("Could not delete old chat log file \"%s\".", rotated));
+    }
+    if (!this._file.renameTo(rotated)) {
+      this._logger.warn(String.format("Could not rotate chat log file \"%s\".", this._file));
+    }
+    this.open();
+  }
+}
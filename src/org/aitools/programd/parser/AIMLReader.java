@@ -12,7 +12,7 @@ package org.aitools.programd.parser;
 import java.net.URL;
 
 import org.aitools.programd.Bot;
-import org.aitools.programd.graph.Graphmapper;
+import org.aitools.programd.graph.CategoryHandler;
 import org.aitools.programd.processor.aiml.AIMLProcessorRegistry;
 import org.aitools.util.xml.Characters;
 import org.aitools.util.xml.SAX;
@@ -31,7 +31,7 @@ public class AIMLReader extends DefaultHandler2 {
 
   private String _defaultNamespaceURI;
 
-  private Graphmapper _graphmapper;
+  private CategoryHandler _graphmapper;
 
   private URL _path;
 
@@ -67,11 +67,11 @@ public class AIMLReader extends DefaultHandler2 {
   /**
    * Creates a new AIMLReader.
    * 
-   * @param graphmapper the <code>Graphmapper</code> into which new categories are to be loaded.
+   * @param graphmapper the <code>Graphmapper</code> (or other handler) to which new categories are to be delivered
    * @param path the path that is being read
    * @param bot the bot itself
    */
-  public AIMLReader(Graphmapper graphmapper, URL path, Bot bot) {
+  public AIMLReader(CategoryHandler graphmapper, URL path, Bot bot) {
     this._graphmapper = graphmapper;
     this._path = path;
     this._bot = bot;
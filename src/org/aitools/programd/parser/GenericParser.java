@@ -132,6 +132,22 @@ abstract public class GenericParser<P extends Processor> {
     this._namespaceURI = this._registry.getNamespaceURI();
   }
 
+  /**
+   * Appends the given text to the given output.
+   * 
+   * @param text the text to append
+   * @param out the output
+   * @throws ProcessorException if the output cannot be written
+   */
+  public static void append(CharSequence text, Appendable out) throws ProcessorException {
+    try {
+      out.append(text);
+    }
+    catch (IOException e) {
+      throw new ProcessorException("Could not write to output.", e);
+    }
+  }
+
   /**
    * Formats a CDATA section node.
    * 
@@ -163,6 +179,17 @@ abstract public class GenericParser<P extends Processor> {
     return this.evaluate(document.getRootElement());
   }
 
+  /**
+   * Evaluates the given document, appending the result to the given output.
+   * 
+   * @param document the document to evaluate
+   * @param out where to write the result
+   * @throws ProcessorException if there is an error in processing
+   */
+  public void evaluate(Document document, Appendable out) throws ProcessorException {
+    this.evaluate(document.getRootElement(), out);
+  }
+
   /**
    * Recursively evaluates an element.
    * 
@@ -170,11 +197,24 @@ abstract public class GenericParser<P extends Processor> {
    * @return the result of processing the element
    * @throws ProcessorException if there is an error in processing
    */
-  @SuppressWarnings("unchecked")
   public String evaluate(Element element) throws ProcessorException {
+    StringBuilder result = new StringBuilder();
+    this.evaluate(element, result);
+    return result.toString();
+  }
+
+  /**
+   * Recursively evaluates an element, appending the result to the given output.
+   * 
+   * @param element the element
+   * @param out where to write the result
+   * @throws ProcessorException if there is an error in processing
+   */
+  @SuppressWarnings("unchecked")
+  public void evaluate(Element element, Appendable out) throws ProcessorException {
     // Is it a valid element?
     if (element == null) {
-      return "";
+      return;
     }
 
     // Search for the tag in the processor registry.
@@ -189,14 +229,23 @@ abstract public class GenericParser<P extends Processor> {
       processorClass = this._registry.get(element.getName());
 
       // Process the element with a new instance of the processor.
-      return Classes.getNewInstance(processorClass, "Processor", this._core).process(element, this);
+      Classes.getNewInstance(processorClass, "Processor", this._core).process(element, this, out);
+      return;
     }
     // otherwise (if this element is from a different namespace)
-    if (element.getContent().size() == 0) {
-      return JDOM.renderEmptyElement(element, emitXMLNS);
+    try {
+      if (element.getContent().size() == 0) {
+        JDOM.renderEmptyElement(element, emitXMLNS, out);
+        return;
+      }
+      // otherwise...
+      JDOM.renderStartTag(element, emitXMLNS, out);
+      this.evaluate(element.getContent(), out);
+      JDOM.renderEndTag(element, out);
+    }
+    catch (IOException e) {
+      throw new ProcessorException("Could not write to output.", e);
     }
-    // otherwise...
-    return JDOM.renderStartTag(element, emitXMLNS) + this.evaluate(element.getContent()) + JDOM.renderEndTag(element);
   }
 
   /**
@@ -208,25 +257,41 @@ abstract public class GenericParser<P extends Processor> {
    */
   public String evaluate(List<Content> list) throws ProcessorException {
     StringBuilder result = new StringBuilder();
-    for (Content node : list) {
-      // Would be nice not to have to do this:
-      if (node instanceof Element) {
-        result.append(this.evaluate((Element) node));
-      }
-      else if (node instanceof Text) {
-        result.append(GenericParser.evaluate((Text) node));
-      }
-      else if (node instanceof CDATA) {
-        result.append(GenericParser.evaluate((CDATA) node));
-      }
-      else if (node instanceof Comment) {
-        result.append(GenericParser.evaluate((Comment) node));
-      }
-      else {
-        assert false : "Unknown subclass of jdom.org.Content!";
+    this.evaluate(list, result);
+    return result.toString();
+  }
+
+  /**
+   * Evaluates the given content list, appending the result to the given output.
+   * 
+   * @param list the list of content to evaluate
+   * @param out where to write the result
+   * @throws ProcessorException if there is an error in processing
+   */
+  public void evaluate(List<Content> list, Appendable out) throws ProcessorException {
+    try {
+      for (Content node : list) {
+        // Would be nice not to have to do this:
+        if (node instanceof Element) {
+          this.evaluate((Element) node, out);
+        }
+        else if (node instanceof Text) {
+          out.append(GenericParser.evaluate((Text) node));
+        }
+        else if (node instanceof CDATA) {
+          out.append(GenericParser.evaluate((CDATA) node));
+        }
+        else if (node instanceof Comment) {
+          out.append(GenericParser.evaluate((Comment) node));
+        }
+        else {
+          assert false : "Unknown subclass of jdom.org.Content!";
+        }
       }
     }
-    return result.toString();
+    catch (IOException e) {
+      throw new ProcessorException("Could not write to output.", e);
+    }
   }
 
   /**
@@ -283,9 +348,26 @@ abstract public class GenericParser<P extends Processor> {
    * @throws IOException
    */
   public String processResponse(String input, String baseURI) throws ProcessorException, JDOMException, IOException {
+    StringBuilder result = new StringBuilder();
+    this.processResponse(input, baseURI, result);
+    return result.toString();
+  }
+
+  /**
+   * Processes an XML fragment provided in a string, appending the result to the given output.
+   * 
+   * @param input the string from which to create the document fragment
+   * @param baseURI the base URI to set for the document fragment
+   * @param out where to write the result of processing the document fragment
+   * @throws ProcessorException if there was a problem processing the document fragment created from the given string
+   * @throws JDOMException
+   * @throws IOException
+   */
+  public void processResponse(String input, String baseURI, Appendable out) throws ProcessorException, JDOMException,
+      IOException {
     Document document = new SAXBuilder().build(new StringReader(input));
     document.setBaseURI(baseURI);
-    return this.evaluate(document);
+    this.evaluate(document, out);
   }
 
   /**
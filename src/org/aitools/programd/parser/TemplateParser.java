@@ -16,6 +16,8 @@ import org.aitools.programd.Core;
 import org.aitools.programd.graph.Match;
 import org.aitools.programd.processor.ProcessorException;
 import org.aitools.programd.processor.aiml.AIMLProcessor;
+import org.aitools.programd.util.Deadline;
+import org.aitools.programd.util.ResponseStatistics;
 import org.jdom.Element;
 
 /**
@@ -41,6 +43,12 @@ public class TemplateParser extends GenericParser<AIMLProcessor> {
   /** The botid on whose behalf this parser is working. */
   private String _botid;
 
+  /** The deadline for the reply this parser is working on. */
+  private Deadline _deadline = Deadline.NONE;
+
+  /** The time (in nanoseconds) taken so far by the elements within the element being evaluated. */
+  private long _childTime;
+
   /**
    * @param core
    */
@@ -135,6 +143,13 @@ public class TemplateParser extends GenericParser<AIMLProcessor> {
     return this._botid;
   }
 
+  /**
+   * @return the deadline for the reply this parser is working on
+   */
+  public Deadline getDeadline() {
+    return this._deadline;
+  }
+
   /**
    * Returns the input that matched the <code>pattern</code> associated with this template.
    * 
@@ -176,6 +191,38 @@ public class TemplateParser extends GenericParser<AIMLProcessor> {
     return this._userid;
   }
 
+  /**
+   * Evaluates an element, unless the deadline for the reply has passed, and records how long it took, leaving out the
+   * time taken by the elements within it.
+   * 
+   * @see org.aitools.programd.parser.GenericParser#evaluate(org.jdom.Element, java.lang.Appendable)
+   */
+  @Override
+  public void evaluate(Element element, Appendable out) throws ProcessorException {
+    if (this._deadline.hasExpired()) {
+      throw new ProcessorException("Reply time expired.", null);
+    }
+    long outerChildTime = this._childTime;
+    this._childTime = 0;
+    long start = System.nanoTime();
+    try {
+      super.evaluate(element, out);
+    }
+    finally {
+      long elapsed = System.nanoTime() - start;
+      this._core.getResponseStatistics().record(this._botid, ResponseStatistics.templateStage(element.getName()),
+          (elapsed - this._childTime) / 1000);
+      this._childTime = outerChildTime + elapsed;
+    }
+  }
+
+  /**
+   * @param deadline the deadline for the reply this parser is working on
+   */
+  public void setDeadline(Deadline deadline) {
+    this._deadline = deadline;
+  }
+
   /**
    * Processes the AIML within and including a given AIML element.
    * 
@@ -54,47 +54,54 @@ public class DBPredicateManager extends PredicateManager {
   @Override
   public void dumpPredicates() {
     Connection connection = this._core.getDBConnection();
-    PreparedStatement insert;
     try {
-      insert = connection.prepareStatement(SET_PREDICATE_INSERT);
-      insert.clearBatch();
-      for (String bot : this._bots.keySet()) {
-        Map<String, PredicateMap> predicateCache = this._bots.get(bot).getPredicateCache();
-        int bot_id = Entity.getOrCreate(connection, "bot", "label", bot);
-        for (String user : predicateCache.keySet()) {
-          PredicateMap predicateMap = predicateCache.get(user);
-          int user_id = Entity.getOrCreate(connection, "user", "name", user);
-          for (String name : predicateMap.keySet()) {
-            PredicateValue value = predicateMap.get(name);
-            insert.clearParameters();
-            insert.setInt(3, user_id);
-            insert.setInt(4, bot_id);
-            if (value.size() == 1) {
-              insert.setString(1, name);
-              insert.setString(2, value.getFirstValue());
-              insert.addBatch();
-            }
-            else {
-              for (int index = 1; index <= value.size(); index++) {
-                insert.setString(1, String.format("%s.%d", name, index));
-                insert.setString(2, value.get(index));
+      PreparedStatement insert = connection.prepareStatement(SET_PREDICATE_INSERT);
+      try {
+        insert.clearBatch();
+        for (String bot : this._bots.keySet()) {
+          Map<String, PredicateMap> predicateCache = this._bots.get(bot).getPredicateCache();
+          int bot_id = Entity.getOrCreate(connection, "bot", "label", bot);
+          for (String user : predicateCache.keySet()) {
+            PredicateMap predicateMap = predicateCache.get(user);
+            int user_id = Entity.getOrCreate(connection, "user", "name", user);
+            for (String name : predicateMap.keySet()) {
+              PredicateValue value = predicateMap.get(name);
+              insert.clearParameters();
+              insert.setInt(3, user_id);
+              insert.setInt(4, bot_id);
+              if (value.size() == 1) {
+                insert.setString(1, name);
+                insert.setString(2, value.getFirstValue());
                 insert.addBatch();
               }
+              else {
+                for (int index = 1; index <= value.size(); index++) {
+                  insert.setString(1, String.format("%s.%d", name, index));
+                  insert.setString(2, value.get(index));
+                  insert.addBatch();
+                }
+              }
             }
+            predicateMap.clear();
           }
-          predicateMap.clear();
         }
+        insert.executeBatch();
+      }
+      finally {
+        insert.close();
       }
-      insert.executeBatch();
-      connection.close();
     }
     catch (SQLException e) {
       throw new DeveloperError("SQL error dumping predicates.", e);
     }
+    finally {
+      this.close(connection);
+    }
   }
 
   /**
-   * Prepares the {@link PreparedStatement}s that will be pooled and used for operations.
+   * Prepares the {@link PreparedStatement}s that will be used for operations, so that the first connection in the pool
+   * has them cached.
    */
   @Override
   public void initialize() {
@@ -102,13 +109,15 @@ public class DBPredicateManager extends PredicateManager {
 
     // These will be pooled by the connection manager.
     try {
-      connection.prepareStatement(LOAD_PREDICATE_SELECT);
-      connection.prepareStatement(SET_PREDICATE_INSERT);
-      connection.close();
+      connection.prepareStatement(LOAD_PREDICATE_SELECT).close();
+      connection.prepareStatement(SET_PREDICATE_INSERT).close();
     }
     catch (SQLException e) {
       throw new DeveloperError("SQL exception creating PreparedStatements.", e);
     }
+    finally {
+      this.close(connection);
+    }
   }
 
   /**
@@ -121,25 +130,41 @@ public class DBPredicateManager extends PredicateManager {
     Connection connection = this._core.getDBConnection();
     try {
       PreparedStatement select = connection.prepareStatement(LOAD_PREDICATE_SELECT);
-      select.clearParameters();
-      select.setString(1, bot);
-      select.setString(2, user);
-      select.setString(3, name);
-      ResultSet records = select.executeQuery();
-      while (records.next()) {
-        result = records.getString("value");
+      try {
+        select.clearParameters();
+        select.setString(1, bot);
+        select.setString(2, user);
+        select.setString(3, name);
+        ResultSet records = select.executeQuery();
+        while (records.next()) {
+          result = records.getString("value");
+        }
+        records.close();
+      }
+      finally {
+        select.close();
       }
-      records.close();
-      connection.close();
     }
     catch (SQLException e) {
       this._logger.error("Database error.", e);
       throw new NoSuchPredicateException(name);
     }
+    finally {
+      this.close(connection);
+    }
     if (result == null) {
       throw new NoSuchPredicateException(name);
     }
     // If found, return it.
     return result;
   }
+
+  private void close(Connection connection) {
+    try {
+      connection.close();
+    }
+    catch (SQLException e) {
+      this._logger.error("DB error when closing connection.", e);
+    }
+  }
 }
@@ -11,9 +11,11 @@ package org.aitools.programd.predicates;
 
 import java.util.Map;
 
+import org.aitools.programd.Bot;
 import org.aitools.programd.Bots;
 import org.aitools.programd.Core;
 import org.aitools.programd.CoreSettings;
+import org.aitools.programd.util.ResponseStatistics;
 import org.aitools.util.xml.Characters;
 import org.apache.log4j.Logger;
 
@@ -141,8 +143,21 @@ abstract public class PredicateManager {
    * @return the <code>value</code> associated with the given <code>name</code> at the given <code>index</code>, for the
    *         given <code>userid</code>
    */
+  public String get(String name, int index, String userid, String botid) {
+    long start = System.nanoTime();
+    try {
+      return this.doGet(name, index, userid, botid);
+    }
+    finally {
+      this._core.getResponseStatistics().recordTime(botid, ResponseStatistics.PREDICATE_READ, start);
+    }
+  }
+
+  /**
+   * Does the work of {@link #get(String, int, String, String)}.
+   */
   @SuppressWarnings("boxing")
-  public synchronized String get(String name, int index, String userid, String botid) {
+  protected synchronized String doGet(String name, int index, String userid, String botid) {
     // Get existing or new predicates map for userid.
     PredicateMap predicates = this._bots.get(botid).predicatesFor(userid);
 
@@ -229,7 +244,20 @@ abstract public class PredicateManager {
    * @param botid
    * @return the <code>value</code> associated with the given <code>name</code>, for the given <code>userid</code>
    */
-  public synchronized String get(String name, String userid, String botid) {
+  public String get(String name, String userid, String botid) {
+    long start = System.nanoTime();
+    try {
+      return this.doGet(name, userid, botid);
+    }
+    finally {
+      this._core.getResponseStatistics().recordTime(botid, ResponseStatistics.PREDICATE_READ, start);
+    }
+  }
+
+  /**
+   * Does the work of {@link #get(String, String, String)}.
+   */
+  protected synchronized String doGet(String name, String userid, String botid) {
     // Get existing or new predicates map for userid.
     PredicateMap predicates = this._bots.get(botid).predicatesFor(userid);
 
@@ -414,7 +442,20 @@ abstract public class PredicateManager {
    * @param botid
    * @return the <code>name</code> or the <code>value</code>, depending on the predicate type
    */
-  public synchronized String push(String name, String newValue, String userid, String botid) {
+  public String push(String name, String newValue, String userid, String botid) {
+    long start = System.nanoTime();
+    try {
+      return this.doPush(name, newValue, userid, botid);
+    }
+    finally {
+      this._core.getResponseStatistics().recordTime(botid, ResponseStatistics.PREDICATE_WRITE, start);
+    }
+  }
+
+  /**
+   * Does the work of {@link #push(String, String, String, String)}.
+   */
+  protected synchronized String doPush(String name, String newValue, String userid, String botid) {
     // Get existing or new predicates map for userid.
     PredicateMap userPredicates = this._bots.get(botid).predicatesFor(userid);
 
@@ -434,6 +475,44 @@ abstract public class PredicateManager {
     return this.nameOrValue(name, newValue, botid);
   }
 
+  /**
+   * @return the number of users whose predicates are cached, for all bots
+   */
+  public synchronized int getCachedUserCount() {
+    int count = 0;
+    for (Bot bot : this._bots.values()) {
+      count += bot.getPredicateCache().size();
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of predicate values cached, for all users and bots
+   */
+  public synchronized int getCachedPredicateCount() {
+    int count = 0;
+    for (Bot bot : this._bots.values()) {
+      for (PredicateMap predicates : bot.getPredicateCache().values()) {
+        count += predicates.size();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of sets since the predicates were last saved
+   */
+  public int getUnsavedSetCount() {
+    return this._setCount;
+  }
+
+  /**
+   * @return the number of sets after which the predicates are saved
+   */
+  public int getFlushSize() {
+    return this._flushSize;
+  }
+
   /**
    * Saves all predicates and empties the caches.
    */
@@ -456,7 +535,20 @@ abstract public class PredicateManager {
    * @param botid
    * @return the <code>name</code> or the <code>value</code>, depending on the predicate type
    */
-  public synchronized String set(String name, int index, String valueToSet, String userid, String botid) {
+  public String set(String name, int index, String valueToSet, String userid, String botid) {
+    long start = System.nanoTime();
+    try {
+      return this.doSet(name, index, valueToSet, userid, botid);
+    }
+    finally {
+      this._core.getResponseStatistics().recordTime(botid, ResponseStatistics.PREDICATE_WRITE, start);
+    }
+  }
+
+  /**
+   * Does the work of {@link #set(String, int, String, String, String)}.
+   */
+  protected synchronized String doSet(String name, int index, String valueToSet, String userid, String botid) {
     // Get existing or new predicates map for userid.
     PredicateMap predicates = this._bots.get(botid).predicatesFor(userid);
 
@@ -486,7 +578,20 @@ abstract public class PredicateManager {
    * @param botid
    * @return the <code>name</code> or the <code>value</code>, depending on the predicate type
    */
-  public synchronized String set(String name, String value, String userid, String botid) {
+  public String set(String name, String value, String userid, String botid) {
+    long start = System.nanoTime();
+    try {
+      return this.doSet(name, value, userid, botid);
+    }
+    finally {
+      this._core.getResponseStatistics().recordTime(botid, ResponseStatistics.PREDICATE_WRITE, start);
+    }
+  }
+
+  /**
+   * Does the work of {@link #set(String, String, String, String)}.
+   */
+  protected synchronized String doSet(String name, String value, String userid, String botid) {
     // Get existing or new predicates map for userid.
     PredicateMap predicates = this._bots.get(botid).predicatesFor(userid);
 
@@ -15,7 +15,10 @@ import org.jdom.Element;
 
 /**
  * A <code>Processor</code> is responsible for processing an element. Subclasses of this base class need only implement
- * the {@link #process} method and set <code>label</code> to the appropriate string.
+ * the {@link #process(Element, GenericParser)} method and set <code>label</code> to the appropriate string. Processors
+ * whose result is just the evaluated content of (some of) their children can also override
+ * {@link #process(Element, GenericParser, Appendable)} to write that content straight to the output, rather than
+ * building a string of their own.
  * 
  * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
  */
@@ -49,4 +52,19 @@ abstract public class Processor {
    */
   abstract public <P extends Processor> String process(Element element, GenericParser<P> parser)
       throws ProcessorException;
+
+  /**
+   * Processes an element, appending the result to the given output. By default this appends whatever
+   * {@link #process(Element, GenericParser)} returns.
+   * 
+   * @param <P> the type of processor
+   * @param element the element to process
+   * @param parser the parser calling the processor
+   * @param out where to write the result of processing the given element
+   * @throws ProcessorException if the <code>tag</code> or its contents are invalid, or the output cannot be written
+   */
+  public <P extends Processor> void process(Element element, GenericParser<P> parser, Appendable out)
+      throws ProcessorException {
+    GenericParser.append(this.process(element, parser), out);
+  }
 }
@@ -60,4 +60,32 @@ abstract public class AIMLProcessor extends Processor {
    * @throws ProcessorException if there is an unrecoverable problem processing the element
    */
   abstract public String process(Element element, TemplateParser parser) throws ProcessorException;
+
+  /**
+   * @see org.aitools.programd.processor.Processor#process(org.jdom.Element, org.aitools.programd.parser.GenericParser,
+   *      java.lang.Appendable)
+   */
+  @Override
+  @SuppressWarnings("rawtypes")
+  public void process(Element element, GenericParser parser, Appendable out) throws ProcessorException {
+    try {
+      this.process(element, (TemplateParser) parser, out);
+    }
+    catch (ClassCastException e) {
+      throw new ProcessorException("Tried to pass a non-TemplateParser to an AIMLProcessor.", e);
+    }
+  }
+
+  /**
+   * Processes the given element, using the given parser if needed, and appends the result to the given output. By
+   * default this appends whatever {@link #process(Element, TemplateParser)} returns.
+   * 
+   * @param element the element to process
+   * @param parser the parser that has ordered the processing
+   * @param out where to write the result of processing the element
+   * @throws ProcessorException if there is an unrecoverable problem processing the element
+   */
+  public void process(Element element, TemplateParser parser, Appendable out) throws ProcessorException {
+    GenericParser.append(this.process(element, parser), out);
+  }
 }
@@ -16,6 +16,7 @@ import org.aitools.programd.parser.TemplateParser;
 import org.aitools.programd.processor.ProcessorException;
 import org.aitools.programd.util.NotAnAIMLPatternException;
 import org.aitools.programd.util.PatternArbiter;
+import org.jdom.Content;
 import org.jdom.Element;
 
 /**
@@ -50,9 +51,35 @@ public class ConditionProcessor extends AIMLProcessor {
    * @throws ProcessorException
    * @see AIMLProcessor#process(Element, TemplateParser)
    */
-  @SuppressWarnings("unchecked")
   @Override
   public String process(Element element, TemplateParser parser) throws ProcessorException {
+    List<Content> chosen = this.choose(element, parser);
+    if (chosen == null) {
+      return "";
+    }
+    return parser.evaluate(chosen);
+  }
+
+  /**
+   * @see AIMLProcessor#process(Element, TemplateParser, Appendable)
+   */
+  @Override
+  public void process(Element element, TemplateParser parser, Appendable out) throws ProcessorException {
+    List<Content> chosen = this.choose(element, parser);
+    if (chosen != null) {
+      parser.evaluate(chosen, out);
+    }
+  }
+
+  /**
+   * Decides which content of the given condition (if any) should be evaluated.
+   * 
+   * @param element the <code>condition</code> element
+   * @param parser the parser that is at work
+   * @return the content to evaluate, or null if there is none
+   */
+  @SuppressWarnings("unchecked")
+  private List<Content> choose(Element element, TemplateParser parser) {
     String name = element.getAttributeValue("name");
     String value = element.getAttributeValue("value");
 
@@ -63,16 +90,16 @@ public class ConditionProcessor extends AIMLProcessor {
       if (name != null && value != null) {
         if (PatternArbiter.matches(
             parser.getCore().getPredicateMaster().get(name, parser.getUserID(), parser.getBotID()), value, true)) {
-          return parser.evaluate(element.getContent());
+          return element.getContent();
         }
-        return "";
+        return null;
       }
 
       /*
        * Process a multiPredicateCondition: <condition> <li name="xxx" value="xxx"> ... </li><li> ... </li> </condition>
        */
       if (name == null && value == null) {
-        return this.processMultiPredicateListItems(parser, element);
+        return this.chooseMultiPredicateListItem(parser, element);
       }
 
       /*
@@ -80,30 +107,29 @@ public class ConditionProcessor extends AIMLProcessor {
        * </condition>
        */
       if (name != null && value == null) {
-        return this.processSinglePredicateListItems(parser, element, name);
+        return this.chooseSinglePredicateListItem(parser, element, name);
       }
     }
     catch (NotAnAIMLPatternException e) {
       logger.warn("ConditionProcessor got a non-AIML pattern in a value attribute.", e);
-      return "";
+      return null;
     }
 
-    // In other cases, return an empty string.
-    return "";
+    // In other cases, there is nothing to evaluate.
+    return null;
   }
 
   /**
-   * Evaluates all the &lt;li/&gt; elements inside a multi-predicate &lt;condition/&gt;.
+   * Chooses among the &lt;li/&gt; elements inside a multi-predicate &lt;condition/&gt;.
    * 
    * @param parser the TemplateParser object responsible for this
    * @param condition the parent condition
-   * @return the result of processing this &lt;li/&gt;
-   * @throws ProcessorException
+   * @return the content of the chosen &lt;li/&gt;, or null if none applies
    * @throws NotAnAIMLPatternException
    */
   @SuppressWarnings("unchecked")
-  protected String processMultiPredicateListItems(TemplateParser parser, Element condition) throws ProcessorException,
-      NotAnAIMLPatternException {
+  protected List<Content> chooseMultiPredicateListItem(TemplateParser parser, Element condition)
+      throws NotAnAIMLPatternException {
     List<Element> listItems = condition.getChildren();
 
     int lastLI = listItems.size() - 1;
@@ -115,29 +141,28 @@ public class ConditionProcessor extends AIMLProcessor {
       if (liName != null && liValue != null) {
         if (PatternArbiter.matches(this._core.getPredicateMaster().get(liName, parser.getUserID(), parser.getBotID()),
             liValue, true)) {
-          return parser.evaluate(listItem.getContent());
+          return listItem.getContent();
         }
       }
       else if (index == lastLI && liName == null && liValue == null) {
-        return parser.evaluate(listItem.getContent());
+        return listItem.getContent();
       }
     }
-    return "";
+    return null;
   }
 
   /**
-   * Evaluates all the &lt;li/&gt; elements inside a single-predicate &lt;condition/&gt;.
+   * Chooses among the &lt;li/&gt; elements inside a single-predicate &lt;condition/&gt;.
    * 
    * @param parser the TemplateParser object responsible for this
    * @param condition the parent condition
    * @param name the name attribute of the &lt;li/&gt; (if applicable)
-   * @return the result of processing this &lt;li/&gt;
-   * @throws ProcessorException
+   * @return the content of the chosen &lt;li/&gt;, or null if none applies
    * @throws NotAnAIMLPatternException
    */
   @SuppressWarnings("unchecked")
-  protected String processSinglePredicateListItems(TemplateParser parser, Element condition, String name)
-      throws ProcessorException, NotAnAIMLPatternException {
+  protected List<Content> chooseSinglePredicateListItem(TemplateParser parser, Element condition, String name)
+      throws NotAnAIMLPatternException {
     List<Element> listItems = condition.getChildren();
 
     int lastLI = listItems.size() - 1;
@@ -147,13 +172,13 @@ public class ConditionProcessor extends AIMLProcessor {
       String predicateValue = this._core.getPredicateMaster().get(name, parser.getUserID(), parser.getBotID());
       if (liValue != null) {
         if (PatternArbiter.matches(predicateValue, liValue, true)) {
-          return parser.evaluate(listItem.getContent());
+          return listItem.getContent();
         }
       }
       else if (index == lastLI) {
-        return parser.evaluate(listItem.getContent());
+        return listItem.getContent();
       }
     }
-    return "";
+    return null;
   }
 }
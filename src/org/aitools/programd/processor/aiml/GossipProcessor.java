@@ -9,15 +9,9 @@
 
 package org.aitools.programd.processor.aiml;
 
-import java.io.FileWriter;
-import java.io.IOException;
-
 import org.aitools.programd.Core;
 import org.aitools.programd.parser.TemplateParser;
 import org.aitools.programd.processor.ProcessorException;
-import org.aitools.util.resource.Filesystem;
-import org.aitools.util.runtime.DeveloperError;
-import org.aitools.util.runtime.UserError;
 import org.jdom.Element;
 
 /**
@@ -31,8 +25,6 @@ public class GossipProcessor extends AIMLProcessor {
   /** The label (as required by the registration scheme). */
   public static final String label = "gossip";
 
-  private static FileWriter gossipFile;
-
   /**
    * Creates a new GossipProcessor using the given Core.
    * 
@@ -51,25 +43,8 @@ public class GossipProcessor extends AIMLProcessor {
     // Get the gossip.
     String response = parser.evaluate(element.getContent());
 
-    // Initialize the FileWriter if necessary.
-    if (gossipFile == null) {
-      try {
-        gossipFile = new FileWriter(Filesystem.checkOrCreate(parser.getCore().getSettings().getGossipURL().getPath(),
-            "gossip file"));
-      }
-      catch (IOException e) {
-        throw new UserError(e);
-      }
-    }
-
-    // Put the gossip in the log.
-    try {
-      gossipFile.append(String.format("<li>%s</li>%n", response));
-      gossipFile.flush();
-    }
-    catch (IOException e) {
-      throw new DeveloperError("Error trying to write gossip.", e);
-    }
+    // Queue the gossip for the writer.
+    parser.getCore().getGossipWriter().write(String.format("<li>%s</li>%n", response));
     return "";
   }
 }
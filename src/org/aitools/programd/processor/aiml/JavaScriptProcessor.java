@@ -10,6 +10,7 @@
 package org.aitools.programd.processor.aiml;
 
 import org.aitools.programd.Core;
+import org.aitools.programd.interpreter.AbstractInterpreter;
 import org.aitools.programd.parser.TemplateParser;
 import org.aitools.programd.processor.ProcessorException;
 import org.jdom.Element;
@@ -51,6 +52,7 @@ public class JavaScriptProcessor extends AIMLProcessor {
       return "";
     }
     logger.debug("Calling JavaScript interpreter.");
-    return parser.getCore().getInterpreter().evaluate(parser.evaluate(element.getContent()));
+    return AbstractInterpreter.evaluate(parser.getCore().getInterpreter(), parser.evaluate(element.getContent()),
+        parser.getDeadline());
   }
 }
@@ -40,6 +40,7 @@ public class LearnProcessor extends AIMLProcessor {
 
   /**
    * Attempts to load an AIML file whose location is described by the results of processing the content of the element.
+   * The file is loaded in the background; the reply does not wait for it (beyond the configured limit, if any).
    * 
    * @param element the <code>learn</code> element
    * @param parser the parser that is at work
@@ -50,7 +51,7 @@ public class LearnProcessor extends AIMLProcessor {
   @Override
   public String process(Element element, TemplateParser parser) throws ProcessorException {
     URL path = JDOM.contextualize(parser.evaluate(element.getContent()), element);
-    parser.getCore().load(path, parser.getBotID());
+    parser.getCore().learn(path, parser.getBotID());
     return "";
   }
 }
@@ -20,6 +20,7 @@ import org.aitools.programd.parser.TemplateParser;
 import org.aitools.programd.processor.ProcessorException;
 import org.aitools.util.math.MersenneTwisterFast;
 import org.apache.commons.collections.map.LRUMap;
+import org.jdom.Content;
 import org.jdom.Element;
 
 /**
@@ -98,9 +99,28 @@ public class RandomProcessor extends AIMLProcessor {
   /**
    * @see AIMLProcessor#process(Element, TemplateParser)
    */
-  @SuppressWarnings({ "boxing", "unchecked" })
   @Override
   public String process(Element element, TemplateParser parser) throws ProcessorException {
+    return parser.evaluate(this.choose(element, parser));
+  }
+
+  /**
+   * @see AIMLProcessor#process(Element, TemplateParser, Appendable)
+   */
+  @Override
+  public void process(Element element, TemplateParser parser, Appendable out) throws ProcessorException {
+    parser.evaluate(this.choose(element, parser), out);
+  }
+
+  /**
+   * Chooses one of the given element's list items, according to the random strategy in effect.
+   * 
+   * @param element the <code>random</code> element
+   * @param parser the parser that is at work
+   * @return the content of the chosen list item
+   */
+  @SuppressWarnings({ "boxing", "unchecked" })
+  private List<Content> choose(Element element, TemplateParser parser) {
     // Construct the identifying string (botid + userid + element
     // contents).
     String userid = parser.getUserID();
@@ -118,12 +138,12 @@ public class RandomProcessor extends AIMLProcessor {
 
     // Only one <li></li> child means we don't have to pick anything.
     if (nodeCount == 1) {
-      return parser.evaluate(listitems.get(0).getChildren());
+      return listitems.get(0).getChildren();
     }
 
     // Otherwise, select a random element of the listitem (if strategy is pure-random).
     if (this._core.getSettings().getRandomStrategy() == CoreSettings.RandomStrategy.PURE_RANDOM) {
-      return parser.evaluate(listitems.get(generator.nextInt(nodeCount)).getContent());
+      return listitems.get(generator.nextInt(nodeCount)).getContent();
     }
 
     // If we get here, then the no-repeat strategy is wanted.
@@ -174,7 +194,7 @@ public class RandomProcessor extends AIMLProcessor {
       indices.add(choice);
     }
 
-    // Evaluate the node corresponding to the chosen index.
-    return parser.evaluate(listitems.get(choice).getContent());
+    // Return the content of the node corresponding to the chosen index.
+    return listitems.get(choice).getContent();
   }
 }
@@ -57,6 +57,7 @@ public class SRAIProcessor extends AIMLProcessor {
     String botid = parser.getBotID();
     TemplateParser recursiveParser = new TemplateParser(parser.getInputs(), parser.getThats(), parser.getTopics(),
         userid, botid, this._core);
+    recursiveParser.setDeadline(parser.getDeadline());
     return this._core.getInternalResponse(input, userid, botid, recursiveParser);
   }
 }
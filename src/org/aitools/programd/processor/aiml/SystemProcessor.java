@@ -9,11 +9,7 @@
 
 package org.aitools.programd.processor.aiml;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 
 import org.aitools.programd.Core;
 import org.aitools.programd.CoreSettings;
@@ -29,6 +25,10 @@ import org.jdom.Element;
  * <p>
  * No attempt is made to check whether the command passed to the OS interpreter is harmful.
  * </p>
+ * <p>
+ * Commands are run by the Core's {@link org.aitools.programd.util.SystemCommandExecutor}, which bounds how many run at
+ * once and how long each may take.
+ * </p>
  * 
  * @author Jon Baer
  * @author Mark Anacker
@@ -91,7 +91,6 @@ public class SystemProcessor extends AIMLProcessor {
     if (prefix != null) {
       commandLine = prefix + commandLine;
     }
-    String output = "";
     commandLine = commandLine.trim();
     logger.debug("<system> call: " + commandLine);
     if (directoryPath == null || "".equals(directoryPath)) {
@@ -108,45 +107,9 @@ public class SystemProcessor extends AIMLProcessor {
       processBuilder = new ProcessBuilder(commandLine);
     }
     processBuilder.directory(directory);
-    Process child = null;
-    try {
-      child = processBuilder.start();
-    }
-    catch (IOException e) {
-      logger.warn(String.format("Error executing <system> command \"%s\"", commandLine), e);
-      return "";
-    }
-    if (child == null) {
-      logger.error("Could not get separate process for <system> command.");
-      return "";
-    }
-
-    try {
-      child.waitFor();
-    }
-    catch (InterruptedException e) {
-      logger.error("System process interruped; could not complete.");
-      return "";
-    }
-
-    try {
-      InputStream in = child.getInputStream();
-      BufferedReader br = new BufferedReader(new InputStreamReader(in));
-      String line;
-      while ((line = br.readLine()) != null) {
-        output = output + line + "\n";
-      }
-
-      logger.debug("output: " + output);
-
-      commandLine = output;
-      in.close();
-      logger.debug("System process exit value: " + child.exitValue());
-    }
-    catch (IOException e) {
-      logger.warn(String.format("Error reading result of <system> command \"%s\"", commandLine), e);
-    }
 
-    return commandLine.trim();
+    String output = parser.getCore().getSystemCommandExecutor().execute(processBuilder, parser.getDeadline());
+    logger.debug("output: " + output);
+    return output.trim();
   }
 }
@@ -41,4 +41,13 @@ public class TemplateProcessor extends AIMLProcessor {
   public String process(Element element, TemplateParser parser) throws ProcessorException {
     return parser.evaluate(element.getContent());
   }
+
+  /**
+   * @see AIMLProcessor#process(Element, TemplateParser, Appendable)
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public void process(Element element, TemplateParser parser, Appendable out) throws ProcessorException {
+    parser.evaluate(element.getContent(), out);
+  }
 }
@@ -23,6 +23,25 @@ import org.jdom.Element;
  */
 public class ThinkProcessor extends AIMLProcessor {
 
+  /** Swallows whatever is written to it. */
+  private static final Appendable DISCARD = new Appendable() {
+
+    @Override
+    public Appendable append(CharSequence csq) {
+      return this;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) {
+      return this;
+    }
+
+    @Override
+    public Appendable append(char c) {
+      return this;
+    }
+  };
+
   /** The label (as required by the registration scheme). */
   public static final String label = "think";
 
@@ -41,7 +60,16 @@ public class ThinkProcessor extends AIMLProcessor {
   @SuppressWarnings("unchecked")
   @Override
   public String process(Element element, TemplateParser parser) throws ProcessorException {
-    parser.evaluate(element.getContent());
+    parser.evaluate(element.getContent(), DISCARD);
     return "";
   }
+
+  /**
+   * @see AIMLProcessor#process(Element, TemplateParser, Appendable)
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public void process(Element element, TemplateParser parser, Appendable out) throws ProcessorException {
+    parser.evaluate(element.getContent(), DISCARD);
+  }
 }
@@ -0,0 +1,300 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.server.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.apache.log4j.Logger;
+import org.jdom.Text;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Answers chat requests, by GET or POST, at the exact path of its context (anything below it is not found). The
+ * parameters are <code>input</code> (required), <code>botid</code> (if not given, any bot will answer) and
+ * <code>userid</code> (if not given, the address of the client is used). They may be given in the query string, or in
+ * the body of a POST as a form or (if the content type is <code>application/json</code>) as a JSON object.
+ * <p>
+ * The reply is sent either as plain text or as a JSON object with <code>botid</code>, <code>userid</code> and
+ * <code>reply</code> members. Every reply has a known length and every request body is read to the end, so that the
+ * connection can be kept alive for the client's next request. A body longer than {@link #MAX_BODY_SIZE} is refused
+ * (with 413) without being read, and the connection is closed.
+ * </p>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ChatHandler implements HttpHandler {
+
+  private static final String ENCODING = "UTF-8";
+
+  /** Replies shorter than this (in bytes) are not worth compressing. */
+  private static final int GZIP_THRESHOLD = 256;
+
+  /** The longest request body (in bytes) that will be read. */
+  public static final int MAX_BODY_SIZE = 64 * 1024;
+
+  private Core _core;
+
+  /** Whether to reply with JSON (rather than plain text). */
+  private boolean _json;
+
+  /** Whether to compress replies for clients that accept it. */
+  private boolean _gzip;
+
+  private Logger _logger;
+
+  /**
+   * Creates a new ChatHandler.
+   *
+   * @param core the Core whose bots will reply
+   * @param json whether to reply with JSON (rather than plain text)
+   * @param gzip whether to compress replies for clients that accept it
+   */
+  public ChatHandler(Core core, boolean json, boolean gzip) {
+    this._core = core;
+    this._json = json;
+    this._gzip = gzip;
+    this._logger = core.getLogger();
+  }
+
+  /**
+   * @see com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.HttpExchange)
+   */
+  @Override
+  public void handle(HttpExchange exchange) throws IOException {
+    try {
+      String method = exchange.getRequestMethod();
+      boolean head = method.equals("HEAD");
+      // A context also receives the paths below it.
+      if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+        this.sendError(exchange, 404, "Not found.", head);
+        return;
+      }
+      // A HEAD is refused too: its headers would need the reply, and asking for one would change the conversation.
+      if (!method.equals("GET") && !method.equals("POST")) {
+        exchange.getResponseHeaders().set("Allow", "GET, POST");
+        this.sendError(exchange, 405, "Method not allowed.", head);
+        return;
+      }
+      Map<String, String> parameters;
+      try {
+        parameters = this.getParameters(exchange);
+      }
+      catch (IllegalArgumentException e) {
+        this.sendError(exchange, 400, e.getMessage(), head);
+        return;
+      }
+      catch (BodyTooLargeException e) {
+        // The rest of the body is not read, so the connection cannot be used again.
+        exchange.getResponseHeaders().set("Connection", "close");
+        this.sendError(exchange, 413, "Request body too large.", head);
+        return;
+      }
+      String input = parameters.get("input");
+      if (input == null) {
+        this.sendError(exchange, 400, "Missing input parameter.", head);
+        return;
+      }
+      String botid = parameters.get("botid");
+      if (botid == null || botid.length() == 0) {
+        Bot bot = this._core.getBots().getABot();
+        if (bot == null) {
+          this.sendError(exchange, 503, "No bots are available.", head);
+          return;
+        }
+        botid = bot.getID();
+      }
+      else if (!this._core.getBots().containsKey(botid)) {
+        this.sendError(exchange, 404, "Requested botid not found.", head);
+        return;
+      }
+      String userid = parameters.get("userid");
+      if (userid == null || userid.length() == 0) {
+        userid = exchange.getRemoteAddress().getAddress().getHostAddress();
+      }
+
+      String reply = this._core.getResponse(input, userid, botid);
+      if (reply == null) {
+        this.sendError(exchange, 503, "The bot is not ready.", head);
+        return;
+      }
+      reply = Text.normalizeString(reply);
+      if (this._json) {
+        StringBuilder body = new StringBuilder("{\"botid\":");
+        JSON.quote(botid, body);
+        body.append(",\"userid\":");
+        JSON.quote(userid, body);
+        body.append(",\"reply\":");
+        JSON.quote(reply, body);
+        body.append('}');
+        this.send(exchange, 200, body.toString(), head);
+      }
+      else {
+        this.send(exchange, 200, reply, head);
+      }
+    }
+    catch (IOException e) {
+      // The client has probably gone away.
+      this._logger.debug("Could not answer HTTP chat request.", e);
+    }
+    catch (RuntimeException e) {
+      this._logger.error("Error answering HTTP chat request.", e);
+      try {
+        this.sendError(exchange, 500, "Internal error.", false);
+      }
+      catch (IOException ee) {
+        // The response had probably already begun.
+      }
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Gathers the parameters from the query string and (for a POST) the body, reading the body to the end.
+   *
+   * @param exchange the exchange
+   * @return the parameters
+   * @throws IOException if the body cannot be read
+   * @throws BodyTooLargeException if the body is longer than {@link #MAX_BODY_SIZE}
+   * @throws IllegalArgumentException if the body cannot be parsed
+   */
+  private Map<String, String> getParameters(HttpExchange exchange) throws IOException, BodyTooLargeException {
+    Map<String, String> parameters = new HashMap<String, String>();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query != null) {
+      decodeForm(query, parameters);
+    }
+    String length = exchange.getRequestHeaders().getFirst("Content-Length");
+    if (length != null) {
+      try {
+        if (Long.parseLong(length.trim()) > MAX_BODY_SIZE) {
+          throw new BodyTooLargeException();
+        }
+      }
+      catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid Content-Length.");
+      }
+    }
+    String body = readBody(exchange.getRequestBody());
+    if (body.length() > 0) {
+      String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+      if (contentType != null && contentType.toLowerCase().startsWith("application/json")) {
+        parameters.putAll(JSON.parseObject(body));
+      }
+      else {
+        decodeForm(body, parameters);
+      }
+    }
+    return parameters;
+  }
+
+  /**
+   * Reads a request body (whose length may not have been given in advance) to the end.
+   *
+   * @throws BodyTooLargeException if the body is longer than {@link #MAX_BODY_SIZE}
+   */
+  private static String readBody(InputStream in) throws IOException, BodyTooLargeException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      body.write(buffer, 0, count);
+      if (body.size() > MAX_BODY_SIZE) {
+        throw new BodyTooLargeException();
+      }
+    }
+    in.close();
+    return body.toString(ENCODING);
+  }
+
+  private static void decodeForm(String form, Map<String, String> parameters) throws UnsupportedEncodingException {
+    for (String pair : form.split("&")) {
+      if (pair.length() == 0) {
+        continue;
+      }
+      int equals = pair.indexOf('=');
+      if (equals == -1) {
+        parameters.put(URLDecoder.decode(pair, ENCODING), "");
+      }
+      else {
+        parameters.put(URLDecoder.decode(pair.substring(0, equals), ENCODING),
+            URLDecoder.decode(pair.substring(equals + 1), ENCODING));
+      }
+    }
+  }
+
+  private void sendError(HttpExchange exchange, int status, String message, boolean head) throws IOException {
+    if (this._json) {
+      StringBuilder body = new StringBuilder("{\"error\":");
+      JSON.quote(message, body);
+      body.append('}');
+      this.send(exchange, status, body.toString(), head);
+    }
+    else {
+      this.send(exchange, status, message, head);
+    }
+  }
+
+  /**
+   * Sends a response with a known length, compressed if that is enabled, the client accepts it and the response is
+   * long enough to be worth it.
+   */
+  private void send(HttpExchange exchange, int status, String text, boolean head) throws IOException {
+    byte[] body = text.getBytes(ENCODING);
+    Headers headers = exchange.getResponseHeaders();
+    headers.set("Content-Type", (this._json ? "application/json" : "text/plain") + "; charset=" + ENCODING);
+    if (this._gzip) {
+      headers.set("Vary", "Accept-Encoding");
+      String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+      if (body.length >= GZIP_THRESHOLD && accept != null && accept.toLowerCase().contains("gzip")) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2);
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(body);
+        gzip.close();
+        body = compressed.toByteArray();
+        headers.set("Content-Encoding", "gzip");
+      }
+    }
+    if (head) {
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(status, body.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(body);
+    out.close();
+  }
+
+  /**
+   * Thrown when a request body is longer than {@link ChatHandler#MAX_BODY_SIZE}.
+   */
+  private static class BodyTooLargeException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    BodyTooLargeException() {
+      super("Request body too large.");
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.server.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.aitools.programd.Core;
+import org.aitools.util.runtime.DaemonThreadFactory;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embedded HTTP server through which users can talk to the bots of a {@link Core}, without a servlet container. It
+ * answers at <code>/chat</code> with plain text and at <code>/chat.json</code> with JSON (see {@link ChatHandler}).
+ * <p>
+ * Connections are accepted and kept alive by the server's own selector thread; each request read from them is handed
+ * to a fixed pool of worker threads, so that reading one client's request or writing its reply does not hold up the
+ * other connections. The replies themselves are produced by the Core one at a time (see
+ * {@link Core#getResponse(String, String, String)}), so a slow reply does hold up the requests waiting for theirs.
+ * </p>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ChatServer {
+
+  /** The number of connections that may wait to be accepted. */
+  private static final int BACKLOG = 128;
+
+  private HttpServer _server;
+
+  private ExecutorService _workers;
+
+  /**
+   * Creates a new ChatServer (which is not started yet).
+   *
+   * @param core the Core whose bots will reply
+   * @param address the address on which to listen
+   * @param workers the number of worker threads
+   * @param gzip whether to compress replies for clients that accept it
+   * @throws IOException if the server cannot listen on the address
+   */
+  public ChatServer(Core core, InetSocketAddress address, int workers, boolean gzip) throws IOException {
+    this._server = HttpServer.create(address, BACKLOG);
+    this._server.createContext("/chat", new ChatHandler(core, false, gzip));
+    this._server.createContext("/chat.json", new ChatHandler(core, true, gzip));
+    this._workers = Executors.newFixedThreadPool(Math.max(workers, 1), new DaemonThreadFactory("http-worker"));
+    this._server.setExecutor(this._workers);
+  }
+
+  /**
+   * Starts accepting requests.
+   */
+  public void start() {
+    this._server.start();
+  }
+
+  /**
+   * @return the address on which the server is listening
+   */
+  public InetSocketAddress getAddress() {
+    return this._server.getAddress();
+  }
+
+  /**
+   * Stops accepting requests, waits up to the given time for those in progress to finish, and stops the workers.
+   *
+   * @param delay the time (in seconds) to wait for requests in progress
+   */
+  public void stop(int delay) {
+    this._server.stop(delay);
+    this._workers.shutdown();
+  }
+}
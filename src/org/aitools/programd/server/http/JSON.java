@@ -0,0 +1,205 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.server.http;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the chat endpoint: quoting strings, and reading a flat object whose values are strings, numbers,
+ * booleans or <code>null</code>.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+class JSON {
+
+  private String _text;
+
+  private int _position;
+
+  private JSON(String text) {
+    this._text = text;
+  }
+
+  /**
+   * Quotes a string, escaping as necessary.
+   *
+   * @param value the string to quote
+   * @param out where to write the quoted string
+   */
+  static void quote(String value, StringBuilder out) {
+    out.append('"');
+    for (int index = 0; index < value.length(); index++) {
+      char c = value.charAt(index);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+            out.append(String.format("\\u%04x", Integer.valueOf(c)));
+          }
+          else {
+            out.append(c);
+          }
+      }
+    }
+    out.append('"');
+  }
+
+  /**
+   * Reads a flat JSON object. Values other than strings are given as their JSON text (<code>null</code> as
+   * <code>null</code>).
+   *
+   * @param text the JSON text
+   * @return the members of the object, in order
+   * @throws IllegalArgumentException if the text is not a flat JSON object
+   */
+  static Map<String, String> parseObject(String text) {
+    return new JSON(text).object();
+  }
+
+  private Map<String, String> object() {
+    Map<String, String> members = new LinkedHashMap<String, String>();
+    this.expect('{');
+    if (this.peek() == '}') {
+      this._position++;
+    }
+    else {
+      do {
+        this.skipSpace();
+        String name = this.string();
+        this.expect(':');
+        members.put(name, this.value());
+      } while (this.next(",}") == ',');
+    }
+    this.skipSpace();
+    if (this._position < this._text.length()) {
+      throw this.error("Unexpected text after the object");
+    }
+    return members;
+  }
+
+  private String value() {
+    char c = this.peek();
+    if (c == '"') {
+      return this.string();
+    }
+    if (c == '{' || c == '[') {
+      throw this.error("Nested values are not supported");
+    }
+    int start = this._position;
+    while (this._position < this._text.length() && ",} \t\r\n".indexOf(this._text.charAt(this._position)) == -1) {
+      this._position++;
+    }
+    String literal = this._text.substring(start, this._position);
+    if (literal.length() == 0) {
+      throw this.error("Missing value");
+    }
+    return literal.equals("null") ? null : literal;
+  }
+
+  private String string() {
+    this.expect('"');
+    StringBuilder result = new StringBuilder();
+    while (true) {
+      if (this._position >= this._text.length()) {
+        throw this.error("Unterminated string");
+      }
+      char c = this._text.charAt(this._position++);
+      if (c == '"') {
+        return result.toString();
+      }
+      if (c != '\\') {
+        result.append(c);
+        continue;
+      }
+      if (this._position >= this._text.length()) {
+        throw this.error("Unterminated string");
+      }
+      c = this._text.charAt(this._position++);
+      switch (c) {
+        case 'b':
+          result.append('\b');
+          break;
+        case 'f':
+          result.append('\f');
+          break;
+        case 'n':
+          result.append('\n');
+          break;
+        case 'r':
+          result.append('\r');
+          break;
+        case 't':
+          result.append('\t');
+          break;
+        case 'u':
+          if (this._position + 4 > this._text.length()) {
+            throw this.error("Bad unicode escape");
+          }
+          try {
+            result.append((char) Integer.parseInt(this._text.substring(this._position, this._position + 4), 16));
+          }
+          catch (NumberFormatException e) {
+            throw this.error("Bad unicode escape");
+          }
+          this._position += 4;
+          break;
+        default:
+          result.append(c);
+      }
+    }
+  }
+
+  private void skipSpace() {
+    while (this._position < this._text.length() && Character.isWhitespace(this._text.charAt(this._position))) {
+      this._position++;
+    }
+  }
+
+  private char peek() {
+    this.skipSpace();
+    if (this._position >= this._text.length()) {
+      throw this.error("Unexpected end of text");
+    }
+    return this._text.charAt(this._position);
+  }
+
+  private char next(String expected) {
+    char c = this.peek();
+    if (expected.indexOf(c) == -1) {
+      throw this.error(String.format("Expected one of \"%s\"", expected));
+    }
+    this._position++;
+    return c;
+  }
+
+  private void expect(char expected) {
+    this.next(String.valueOf(expected));
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(String.format("%s at position %d.", message,
+        Integer.valueOf(this._position)));
+  }
+}
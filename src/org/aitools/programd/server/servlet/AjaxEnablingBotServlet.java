@@ -5,7 +5,9 @@ import java.io.IOException;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
+import org.aitools.programd.Bot;
 import org.aitools.programd.server.BotAccess;
 import org.aitools.util.runtime.Errors;
 
@@ -52,12 +54,15 @@ public class AjaxEnablingBotServlet extends JSPOrientedBotServlet {
    * 
    * @param req the request
    * @param resp the response
+   * @return the state of this request, or <code>null</code> if it could not be set up (and the error page has been
+   *         shown)
    * @throws ServletException
    */
   @Override
-  protected void setupBot(HttpServletRequest req, HttpServletResponse resp) throws ServletException {
+  protected BotRequest setupBot(HttpServletRequest req, HttpServletResponse resp) throws ServletException {
+    BotRequest request;
     try {
-      super.setupBot(req, resp);
+      request = super.setupBot(req, resp);
     }
     catch (ServletException e) {
       req.setAttribute("error", Errors.describe(e));
@@ -67,23 +72,26 @@ public class AjaxEnablingBotServlet extends JSPOrientedBotServlet {
       catch (IOException ee) {
         throw new ServletException(ee);
       }
-      return;
+      return null;
     }
+    HttpSession session = request.getSession();
+    String botid = request.getBotID();
+    Bot bot = request.getBot();
 
     // See if there is already a bot access object in the session.
-    Object botAccessObject = this.session.getAttribute("bot");
+    Object botAccessObject = session.getAttribute("bot");
 
     // If it's null, or if it is a bot but there's a bot id specified that doesn't match it, replace it.
     if (botAccessObject == null
-        || !(botAccessObject instanceof BotAccess && ((BotAccess) botAccessObject).getBotId().equals(this.botid))) {
-      BotAccess botAccess = new BotAccess(this.core, this.botid, this.userid);
-      this.session.setAttribute("bot", botAccess);
+        || !(botAccessObject instanceof BotAccess && ((BotAccess) botAccessObject).getBotId().equals(botid))) {
+      BotAccess botAccess = new BotAccess(this.core, botid, request.getUserID());
+      session.setAttribute("bot", botAccess);
     }
     else {
-      this.bot = ((BotAccess) botAccessObject).getBot();
+      bot = ((BotAccess) botAccessObject).getBot();
     }
 
-    String botPage = this.bot.getServletPage();
+    String botPage = bot.getServletPage();
     if (botPage == null || botPage.length() == 0) {
       botPage = this.defaultBotServletPage;
     }
@@ -93,5 +101,6 @@ public class AjaxEnablingBotServlet extends JSPOrientedBotServlet {
     catch (IOException e) {
       throw new ServletException(e);
     }
+    return new BotRequest(session, request.getUserID(), botid, bot);
   }
 }
@@ -0,0 +1,66 @@
+package org.aitools.programd.server.servlet;
+
+import javax.servlet.http.HttpSession;
+
+import org.aitools.programd.Bot;
+
+/**
+ * The state of one request to a {@link BotServlet}: the session, the user, and the bot to whom the user is talking. A
+ * servlet instance serves many requests at once, so this is passed along with the request rather than kept in the
+ * servlet.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class BotRequest {
+
+  private HttpSession _session;
+
+  private String _userid;
+
+  private String _botid;
+
+  private Bot _bot;
+
+  /**
+   * Creates a new BotRequest.
+   * 
+   * @param session the session
+   * @param userid the userid
+   * @param botid the botid
+   * @param bot the bot
+   */
+  public BotRequest(HttpSession session, String userid, String botid, Bot bot) {
+    this._session = session;
+    this._userid = userid;
+    this._botid = botid;
+    this._bot = bot;
+  }
+
+  /**
+   * @return the session
+   */
+  public HttpSession getSession() {
+    return this._session;
+  }
+
+  /**
+   * @return the userid
+   */
+  public String getUserID() {
+    return this._userid;
+  }
+
+  /**
+   * @return the botid
+   */
+  public String getBotID() {
+    return this._botid;
+  }
+
+  /**
+   * @return the bot
+   */
+  public Bot getBot() {
+    return this._bot;
+  }
+}
@@ -13,6 +13,9 @@ import org.aitools.programd.Bots;
 import org.aitools.programd.Core;
 
 /**
+ * The base of the servlets that let users talk to bots. One instance serves many requests at once, so nothing about a
+ * particular request is kept in its fields; {@link #setupBot} returns a {@link BotRequest} instead.
+ * 
  * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
  */
 public class BotServlet extends HttpServlet {
@@ -22,21 +25,9 @@ public class BotServlet extends HttpServlet {
    */
   private static final long serialVersionUID = 1L;
 
-  /** The current session. */
-  protected HttpSession session;
-
   /** The Core object that will be used throughout. */
   protected Core core;
 
-  /** The current botid. */
-  protected String botid;
-
-  /** The userid. */
-  protected String userid;
-
-  /** The bot object in use. */
-  protected Bot bot;
-
   /**
    * Removes the reference to the Core, and removes it from the context attributes.
    * 
@@ -83,49 +74,50 @@ public class BotServlet extends HttpServlet {
   }
 
   /**
+   * Works out who is talking to which bot.
+   * 
    * @param req the request
    * @param resp the response
-   * @throws ServletException
+   * @return the state of this request
+   * @throws ServletException if there is no userid, or the requested bot (or any bot) is not available
    */
-  protected void setupBot(HttpServletRequest req, HttpServletResponse resp) throws ServletException {
+  protected BotRequest setupBot(HttpServletRequest req, HttpServletResponse resp) throws ServletException {
     // Get/create the session.
-    this.session = req.getSession(true);
+    HttpSession session = req.getSession(true);
 
     // Look for a userid.
-    this.userid = null;
+    String userid = null;
     Principal principal = req.getUserPrincipal();
     if (principal == null) {
       // Use the session id.
-      this.userid = this.session.getId();
+      userid = session.getId();
     }
     else {
-      this.userid = principal.getName();
+      userid = principal.getName();
     }
-    if (this.userid == null) {
+    if (userid == null) {
       throw new ServletException("Missing userid parameter.");
     }
 
     // Put the userid into a session attribute (so it can be accessed by other things; but we always recompute it!)
-    this.session.setAttribute("userid", this.userid);
+    session.setAttribute("userid", userid);
 
     // Get the bot parameter, if there is one.
-    this.botid = req.getParameter("botid");
+    String botid = req.getParameter("botid");
 
     // It might be in a request attribute.
-    if (this.botid == null) {
-      this.botid = (String) req.getAttribute("botid");
+    if (botid == null) {
+      botid = (String) req.getAttribute("botid");
     }
 
-    this.bot = null;
-
     // If a bot parameter is not specified, try to get any bot.
-    if (this.botid == null || this.botid.length() == 0) {
+    if (botid == null || botid.length() == 0) {
       boolean noBot = true;
       Bots bots = this.core.getBots();
       if (bots != null && bots.size() > 0) {
-        this.bot = this.core.getBots().getABot();
-        if (this.bot != null) {
-          this.botid = this.bot.getID();
+        Bot bot = this.core.getBots().getABot();
+        if (bot != null) {
+          botid = bot.getID();
           noBot = false;
         }
       }
@@ -133,10 +125,10 @@ public class BotServlet extends HttpServlet {
         throw new ServletException("No bots are available from the Core.  Cannot continue.");
       }
     }
-    else if (!this.core.getBots().containsKey(this.botid)) {
+    else if (!this.core.getBots().containsKey(botid)) {
       throw new ServletException("Requested botid not found.");
     }
     // otherwise...
-    this.bot = this.core.getBot(this.botid);
+    return new BotRequest(session, userid, botid, this.core.getBot(botid));
   }
 }
@@ -2,6 +2,8 @@ package org.aitools.programd.server.servlet;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -12,6 +14,20 @@ import org.jdom.Text;
 /**
  * A simple HTTP GET based servlet which accepts a user input and botid as request parameters and returns the reply as a
  * single string (not an HTML page!).
+ * <p>
+ * The servlet may be called by any number of container threads at once, but no more than
+ * <code>max-concurrent-responses</code> of them (default 1; 0 for no limit) are let through to the Core at a time, in
+ * the order in which they arrive. By default a request waits as long as it takes for its turn; if
+ * <code>response-wait</code> is set to a number of milliseconds, a request that cannot get a turn within that time is
+ * answered with 503 (Service Unavailable) instead, so that a burst of traffic does not tie up every container thread.
+ * Since requests are answered one at a time, the wait should be at least the time it takes to answer the backlog
+ * expected in a burst; otherwise a burst will be answered mostly with 503s.
+ * </p>
+ * <p>
+ * The Core produces replies one at a time (see {@link org.aitools.programd.Core#getResponse(String, String, String)}),
+ * so a larger limit does not make replies faster: the requests let through only wait for the Core's lock instead,
+ * where they are no longer answered in order or given up after <code>response-wait</code>.
+ * </p>
  * 
  * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
  */
@@ -22,24 +38,81 @@ public class GetBotResponseServlet extends BotServlet {
    */
   private static final long serialVersionUID = 1L;
 
+  /** The number of requests let through to the Core at once, if the init parameter is not set. */
+  private static final int DEFAULT_MAX_CONCURRENT_RESPONSES = 1;
+
+  /** Limits the number of requests let through to the Core at once (<code>null</code> if there is no limit). */
+  private Semaphore _turns;
+
+  /** How long (in milliseconds) a request may wait for a turn (0 for as long as it takes). */
+  private long _responseWait = 0;
+
+  /**
+   * @see org.aitools.programd.server.servlet.BotServlet#init()
+   */
+  @Override
+  public void init() {
+    super.init();
+    String maxConcurrentParameter = this.getInitParameter("max-concurrent-responses");
+    int maxConcurrent = maxConcurrentParameter == null ? DEFAULT_MAX_CONCURRENT_RESPONSES : Integer
+        .parseInt(maxConcurrentParameter);
+    if (maxConcurrent > 0) {
+      this._turns = new Semaphore(maxConcurrent, true);
+    }
+    String responseWait = this.getInitParameter("response-wait");
+    if (responseWait != null) {
+      this._responseWait = Long.parseLong(responseWait);
+    }
+  }
+
   @Override
   protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException {
-    super.doGet(req, resp);
+    BotRequest request = this.setupBot(req, resp);
     resp.setContentType(req.getContentType());
     resp.setCharacterEncoding(req.getCharacterEncoding());
-    PrintWriter writer = null;
+    String input = req.getParameter("input");
     try {
-      writer = resp.getWriter();
+      if (input == null) {
+        resp.getWriter().close();
+        return;
+      }
+      if (!this.takeTurn()) {
+        resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many requests; try again later.");
+        return;
+      }
+      String reply;
+      try {
+        reply = this.core.getResponse(input, request.getUserID(), request.getBotID());
+      }
+      finally {
+        if (this._turns != null) {
+          this._turns.release();
+        }
+      }
+      PrintWriter writer = resp.getWriter();
+      writer.write(Text.normalizeString(reply));
+      writer.flush();
+      writer.close();
     }
     catch (IOException e) {
-      throw new ServletException("IO exception when trying to get response printwriter.", e);
+      throw new ServletException("IO exception when trying to write response.", e);
     }
-    String input = req.getParameter("input");
-    if (input == null) {
-      return;
+  }
+
+  private boolean takeTurn() throws ServletException {
+    if (this._turns == null) {
+      return true;
+    }
+    try {
+      if (this._responseWait <= 0) {
+        this._turns.acquire();
+        return true;
+      }
+      return this._turns.tryAcquire(this._responseWait, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServletException("Interrupted while waiting to compute a response.", e);
     }
-    writer.write(Text.normalizeString(this.core.getResponse(input, this.userid, this.botid)));
-    writer.flush();
-    writer.close();
   }
 }
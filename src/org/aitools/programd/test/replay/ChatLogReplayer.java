@@ -0,0 +1,395 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.test.replay;
+
+import gnu.getopt.Getopt;
+import gnu.getopt.LongOpt;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.aitools.programd.Core;
+import org.aitools.programd.logging.ChatLogReader;
+import org.aitools.programd.logging.ChatLogRecord;
+import org.aitools.programd.util.ResponseStatistics;
+import org.aitools.util.resource.URLTools;
+import org.apache.log4j.Logger;
+
+/**
+ * Replays the inputs recorded in a chat log against a Core, as a load test. Each user's inputs are sent in the order in
+ * which they were recorded, and only once the reply to the one before has come back; different users' inputs are sent
+ * in parallel. There are two ways to replay:
+ * <ul>
+ * <li>{@link Mode#CLOSED}: a fixed number of simulated clients each take a user's whole conversation and play it
+ * through, sending each input as soon as the last reply comes back (but no faster, all together, than the given rate,
+ * if there is one). This measures the most the Core can do.</li>
+ * <li>{@link Mode#OPEN}: inputs arrive at the given rate, in the order in which they were recorded, whether or not the
+ * Core has kept up; an input for a user who is still waiting for a reply is queued. Latency is measured from when each
+ * input was due, so it includes any time spent waiting. This shows how the Core behaves at a given load.</li>
+ * </ul>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ChatLogReplayer {
+
+  /** The ways to replay a chat log. */
+  public static enum Mode {
+    /** Clients send each input as soon as the last reply comes back. */
+    CLOSED,
+
+    /** Inputs arrive at a fixed rate. */
+    OPEN
+  }
+
+  /** An input waiting to be sent. */
+  private static class Pending {
+
+    ChatLogRecord record;
+
+    /** When the input was due (from {@link System#nanoTime()}). */
+    long due;
+
+    Pending(ChatLogRecord record, long due) {
+      this.record = record;
+      this.due = due;
+    }
+  }
+
+  /** The inputs waiting to be sent for one user, sent one at a time. */
+  private class UserQueue implements Runnable {
+
+    private Queue<Pending> _pending = new ConcurrentLinkedQueue<Pending>();
+
+    private AtomicBoolean _running = new AtomicBoolean();
+
+    private ExecutorService _executor;
+
+    UserQueue(ExecutorService executor) {
+      this._executor = executor;
+    }
+
+    void add(Pending pending) {
+      this._pending.add(pending);
+      if (this._running.compareAndSet(false, true)) {
+        this._executor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      do {
+        Pending pending;
+        while ((pending = this._pending.poll()) != null) {
+          ChatLogReplayer.this.send(pending.record, pending.due);
+        }
+        this._running.set(false);
+      } while (!this._pending.isEmpty() && this._running.compareAndSet(false, true));
+    }
+  }
+
+  /** How long to wait for the last replies once all the inputs have been sent or queued. */
+  private static final long FINISH_WAIT = TimeUnit.MINUTES.toMillis(10);
+
+  private Core _core;
+
+  private List<ChatLogRecord> _records;
+
+  /** The bot to which to send all the inputs (<code>null</code> for the bot recorded with each). */
+  private String _botid;
+
+  private int _clients;
+
+  /** The rate (inputs per second) at which to send inputs (0 for no limit). */
+  private double _rate;
+
+  private ReplayReport _report;
+
+  /** The time at which the next input may be sent, when pacing a closed-loop replay. */
+  private AtomicLong _nextSlot = new AtomicLong();
+
+  private Logger _logger = Logger.getLogger("programd.testing");
+
+  /**
+   * Creates a new ChatLogReplayer.
+   *
+   * @param core the Core to which to send the inputs
+   * @param records the records of the chat log, in the order in which they were recorded
+   * @param botid the bot to which to send all the inputs (<code>null</code> for the bot recorded with each)
+   * @param clients the number of simulated clients (the number of inputs that may be sent at once)
+   * @param rate the rate (inputs per second) at which to send inputs (0 for no limit, which is only allowed for
+   *          {@link Mode#CLOSED})
+   */
+  public ChatLogReplayer(Core core, List<ChatLogRecord> records, String botid, int clients, double rate) {
+    this._core = core;
+    this._records = records;
+    this._botid = botid;
+    this._clients = Math.max(clients, 1);
+    this._rate = Math.max(rate, 0);
+  }
+
+  /**
+   * Replays the chat log, and waits until the last reply has come back.
+   *
+   * @param mode how to replay
+   * @return what happened
+   */
+  public ReplayReport run(Mode mode) {
+    if (mode == Mode.OPEN && this._rate == 0) {
+      throw new IllegalArgumentException("An open-loop replay needs a rate.");
+    }
+    this._report = new ReplayReport();
+    long noMatches = this.getNoMatchCount();
+    long start = System.nanoTime();
+    this._nextSlot.set(start);
+    ExecutorService executor = Executors.newFixedThreadPool(this._clients);
+    if (mode == Mode.OPEN) {
+      this.runOpen(executor, start);
+    }
+    else {
+      this.runClosed(executor);
+    }
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(FINISH_WAIT, TimeUnit.MILLISECONDS)) {
+        this._logger.warn("Gave up waiting for the last replies of the replay.");
+        executor.shutdownNow();
+      }
+    }
+    catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    this._report.finish(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), this.getNoMatchCount() - noMatches);
+    return this._report;
+  }
+
+  /**
+   * Sends the inputs at the rate, in the order recorded, queueing each behind any earlier input for the same user.
+   */
+  private void runOpen(ExecutorService executor, long start) {
+    long interval = (long) (TimeUnit.SECONDS.toNanos(1) / this._rate);
+    Map<String, UserQueue> users = new LinkedHashMap<String, UserQueue>();
+    long due = start;
+    for (ChatLogRecord record : this._records) {
+      String key = this.key(record);
+      UserQueue user = users.get(key);
+      if (user == null) {
+        user = new UserQueue(executor);
+        users.put(key, user);
+      }
+      waitUntil(due);
+      user.add(new Pending(record, due));
+      due += interval;
+    }
+  }
+
+  /**
+   * Gives each client a whole conversation at a time, until all have been played.
+   */
+  private void runClosed(ExecutorService executor) {
+    Map<String, List<ChatLogRecord>> conversations = new LinkedHashMap<String, List<ChatLogRecord>>();
+    for (ChatLogRecord record : this._records) {
+      String key = this.key(record);
+      List<ChatLogRecord> conversation = conversations.get(key);
+      if (conversation == null) {
+        conversation = new ArrayList<ChatLogRecord>();
+        conversations.put(key, conversation);
+      }
+      conversation.add(record);
+    }
+    final Queue<List<ChatLogRecord>> remaining = new ConcurrentLinkedQueue<List<ChatLogRecord>>(conversations.values());
+    for (int client = 0; client < this._clients; client++) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          List<ChatLogRecord> conversation;
+          while ((conversation = remaining.poll()) != null) {
+            for (ChatLogRecord record : conversation) {
+              waitUntil(ChatLogReplayer.this.nextSlot());
+              ChatLogReplayer.this.send(record, System.nanoTime());
+            }
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * @return the time at which the next input may be sent, under the rate (or now, if there is no rate)
+   */
+  long nextSlot() {
+    if (this._rate == 0) {
+      return System.nanoTime();
+    }
+    return this._nextSlot.getAndAdd((long) (TimeUnit.SECONDS.toNanos(1) / this._rate));
+  }
+
+  private static void waitUntil(long time) {
+    long wait;
+    while ((wait = time - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(wait);
+    }
+  }
+
+  /**
+   * Sends an input and records the result.
+   *
+   * @param record the recorded exchange
+   * @param due when the input was due (from {@link System#nanoTime()})
+   */
+  void send(ChatLogRecord record, long due) {
+    String botid = this._botid != null ? this._botid : record.getBotID();
+    try {
+      String reply = this._core.getResponse(record.getInput(), record.getUserID(), botid);
+      if (reply == null) {
+        this._report.recordError();
+      }
+      else {
+        this._report.recordReply((System.nanoTime() - due) / 1000, !reply.equals(record.getReply()));
+      }
+    }
+    catch (RuntimeException e) {
+      this._logger.warn(String.format("Error replaying input \"%s\" from %s to %s.", record.getInput(),
+          record.getUserID(), botid), e);
+      this._report.recordError();
+    }
+  }
+
+  private String key(ChatLogRecord record) {
+    return record.getUserID() + '\u0000' + (this._botid != null ? this._botid : record.getBotID());
+  }
+
+  private long getNoMatchCount() {
+    return this._core.getResponseStatistics().getCombinedHistogram(ResponseStatistics.NO_MATCH).getCount();
+  }
+
+  /**
+   * Replays a chat log against a Core started with the given configuration, and prints a report. Required arguments
+   * are:
+   * <ul>
+   * <li><code>-c, --core-properties     the path to the core configuration (XML properties) file</code></li>
+   * <li><code>-l, --log                 the path to the chat log</code></li>
+   * </ul>
+   * Optional arguments are:
+   * <ul>
+   * <li><code>-m, --mode                closed (default) or open</code></li>
+   * <li><code>-n, --clients             the number of simulated clients (default 8)</code></li>
+   * <li><code>-r, --rate                inputs per second (required for open; default no limit)</code></li>
+   * <li><code>-b, --bot                 send all inputs to this bot</code></li>
+   * </ul>
+   *
+   * @param argv
+   */
+  public static void main(String[] argv) {
+    String corePropertiesPath = null;
+    String logPath = null;
+    Mode mode = Mode.CLOSED;
+    int clients = 8;
+    double rate = 0;
+    String botid = null;
+
+    LongOpt[] longopts = new LongOpt[6];
+    longopts[0] = new LongOpt("core-properties", LongOpt.REQUIRED_ARGUMENT, null, 'c');
+    longopts[1] = new LongOpt("log", LongOpt.REQUIRED_ARGUMENT, null, 'l');
+    longopts[2] = new LongOpt("mode", LongOpt.REQUIRED_ARGUMENT, null, 'm');
+    longopts[3] = new LongOpt("clients", LongOpt.REQUIRED_ARGUMENT, null, 'n');
+    longopts[4] = new LongOpt("rate", LongOpt.REQUIRED_ARGUMENT, null, 'r');
+    longopts[5] = new LongOpt("bot", LongOpt.REQUIRED_ARGUMENT, null, 'b');
+
+    Getopt getopt = new Getopt("replay", argv, ":c:l:m:n:r:b:", longopts);
+
+    int opt;
+    try {
+      while ((opt = getopt.getopt()) != -1) {
+        switch (opt) {
+          case 'c':
+            corePropertiesPath = getopt.getOptarg();
+            break;
+          case 'l':
+            logPath = getopt.getOptarg();
+            break;
+          case 'm':
+            mode = Mode.valueOf(getopt.getOptarg().toUpperCase());
+            break;
+          case 'n':
+            clients = Integer.parseInt(getopt.getOptarg());
+            break;
+          case 'r':
+            rate = Double.parseDouble(getopt.getOptarg());
+            break;
+          case 'b':
+            botid = getopt.getOptarg();
+            break;
+        }
+      }
+    }
+    catch (IllegalArgumentException e) {
+      System.err.println(String.format("Invalid argument: %s", e.getMessage()));
+      usage();
+      System.exit(1);
+    }
+
+    if (corePropertiesPath == null || logPath == null || (mode == Mode.OPEN && rate <= 0)) {
+      System.err.println("You must specify a core properties path and a chat log, and a rate for an open-loop replay.");
+      usage();
+      System.exit(1);
+    }
+
+    Core core;
+    try {
+      core = new Core(URLTools.createValidURL(System.getProperty("user.dir")), URLTools
+          .createValidURL(corePropertiesPath));
+    }
+    catch (FileNotFoundException e) {
+      System.err.println(String.format("Core properties file \"%s\" not found.", corePropertiesPath));
+      return;
+    }
+    try {
+      List<ChatLogRecord> records = ChatLogReader.read(URLTools.createValidURL(logPath));
+      System.out.println(String.format("Replaying %d inputs (%s).", Integer.valueOf(records.size()), mode
+          .name().toLowerCase()));
+      System.out.println(new ChatLogReplayer(core, records, botid, clients, rate).run(mode).summary());
+    }
+    catch (FileNotFoundException e) {
+      System.err.println(String.format("Chat log \"%s\" not found.", logPath));
+    }
+    finally {
+      core.shutdown();
+    }
+  }
+
+  protected static void usage() {
+    System.out.println("Usage: replay -c <CORE_CONFIG> -l <CHAT_LOG> [-m closed|open] [-n <CLIENTS>] [-r <RATE>]");
+    System.out.println("              [-b <BOTID>]");
+    System.out.println("Replay the inputs in an XML chat log against Program D, and report throughput and latency.");
+    System.out.println();
+    System.out.println("  -c, --core-properties     the path to the core configuration (XML properties) file");
+    System.out.println("  -l, --log                 the path to the chat log");
+    System.out.println("  -m, --mode                closed (default): each client sends as soon as it has a reply;");
+    System.out.println("                            open: inputs arrive at the given rate, whether or not the replies");
+    System.out.println("                            to earlier ones have come back");
+    System.out.println("  -n, --clients             the number of simulated clients (default 8)");
+    System.out.println("  -r, --rate                inputs per second (required for open; default no limit)");
+    System.out.println("  -b, --bot                 send all inputs to this bot (default: the bot recorded with each)");
+    System.out.println();
+    System.out.println("Report bugs to <programd@aitools.org>");
+  }
+}
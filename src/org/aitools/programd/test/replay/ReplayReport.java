@@ -0,0 +1,118 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.test.replay;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aitools.util.Histogram;
+
+/**
+ * What happened during a replay of a chat log: how many inputs were sent, how long they took, and how many failed,
+ * matched nothing, or got a different reply from the one recorded.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ReplayReport {
+
+  /** Latencies, in microseconds. */
+  private Histogram _latency = new Histogram();
+
+  private AtomicLong _errors = new AtomicLong();
+
+  private AtomicLong _changed = new AtomicLong();
+
+  private long _noMatches;
+
+  private long _elapsed;
+
+  /**
+   * Records an input that got a reply.
+   *
+   * @param latency the time (in microseconds) from when the input was due to be sent until the reply
+   * @param changed whether the reply differs from the one recorded
+   */
+  void recordReply(long latency, boolean changed) {
+    this._latency.record(latency);
+    if (changed) {
+      this._changed.incrementAndGet();
+    }
+  }
+
+  /**
+   * Records an input that got no reply (because of an error).
+   */
+  void recordError() {
+    this._errors.incrementAndGet();
+  }
+
+  void finish(long elapsed, long noMatches) {
+    this._elapsed = elapsed;
+    this._noMatches = noMatches;
+  }
+
+  /**
+   * @return the latencies (in microseconds) of the inputs that got replies
+   */
+  public Histogram getLatency() {
+    return this._latency;
+  }
+
+  /**
+   * @return the number of inputs sent
+   */
+  public long getSentCount() {
+    return this._latency.getCount() + this._errors.get();
+  }
+
+  /**
+   * @return the number of inputs that got no reply because of an error
+   */
+  public long getErrorCount() {
+    return this._errors.get();
+  }
+
+  /**
+   * @return the number of input sentences for which no category matched
+   */
+  public long getNoMatchCount() {
+    return this._noMatches;
+  }
+
+  /**
+   * @return the number of replies that differ from those recorded
+   */
+  public long getChangedCount() {
+    return this._changed.get();
+  }
+
+  /**
+   * @return the time (in milliseconds) the replay took
+   */
+  public long getElapsed() {
+    return this._elapsed;
+  }
+
+  /**
+   * @return the number of inputs sent per second
+   */
+  public double getThroughput() {
+    return this._elapsed == 0 ? 0d : this.getSentCount() * 1000d / this._elapsed;
+  }
+
+  /**
+   * @return a description of the replay
+   */
+  @SuppressWarnings("boxing")
+  public String summary() {
+    return String.format("%,d inputs in %,d ms (%.1f/s); %,d errors, %,d no-match sentences, %,d changed replies.%n"
+        + "Latency (microseconds): %s", this.getSentCount(), this._elapsed, this.getThroughput(), this._errors.get(),
+        this._noMatches, this._changed.get(), this._latency.summary());
+  }
+}
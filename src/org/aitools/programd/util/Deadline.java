@@ -0,0 +1,121 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.util;
+
+/**
+ * A time by which some piece of work (matching an input, or producing a whole reply) must be done. Work that checks it
+ * often (at each node of the graph, or each template element) calls {@link #hasExpired()}, which only looks at the
+ * clock once every {@link #CLOCK_CHECK_INTERVAL} calls; once a deadline has been seen to pass, it stays expired.
+ * <p>
+ * A Deadline is meant to be used by one thread at a time.
+ * </p>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class Deadline {
+
+  /** A deadline that never expires. */
+  public static final Deadline NONE = new Deadline(0);
+
+  /** How many calls to {@link #hasExpired()} to make between looks at the clock. */
+  public static final int CLOCK_CHECK_INTERVAL = 256;
+
+  /** The time by which the work must be done (0 for no limit). */
+  private long _time;
+
+  /** How many more calls to {@link #hasExpired()} before the next look at the clock. */
+  private int _countdown = CLOCK_CHECK_INTERVAL;
+
+  private boolean _expired;
+
+  /**
+   * Creates a new Deadline the given time from now.
+   *
+   * @param budget the time (in milliseconds) allowed from now (0 for no limit)
+   */
+  public Deadline(long budget) {
+    this._time = budget > 0 ? System.currentTimeMillis() + budget : 0;
+  }
+
+  /**
+   * Returns a deadline for a part of the work: the given time from now, or this deadline, whichever comes first.
+   *
+   * @param budget the time (in milliseconds) allowed for the part of the work (0 for no limit of its own)
+   * @return the deadline for the part of the work
+   */
+  public Deadline within(long budget) {
+    if (budget <= 0) {
+      return this;
+    }
+    Deadline part = new Deadline(budget);
+    if (this._time > 0 && this._time < part._time) {
+      part._time = this._time;
+    }
+    part._expired = this._expired;
+    return part;
+  }
+
+  /**
+   * Tells whether the deadline has passed, looking at the clock only once every {@link #CLOCK_CHECK_INTERVAL} calls.
+   *
+   * @return whether the deadline has been seen to pass
+   */
+  public boolean hasExpired() {
+    if (this._expired) {
+      return true;
+    }
+    if (this._time == 0 || --this._countdown > 0) {
+      return false;
+    }
+    this._countdown = CLOCK_CHECK_INTERVAL;
+    return this.hasExpiredNow();
+  }
+
+  /**
+   * Tells whether the deadline has passed, looking at the clock (for use between larger steps of the work).
+   *
+   * @return whether the deadline has passed
+   */
+  public boolean hasExpiredNow() {
+    if (!this._expired && this._time > 0 && System.currentTimeMillis() >= this._time) {
+      this._expired = true;
+    }
+    return this._expired;
+  }
+
+  /**
+   * @return the time (in milliseconds) left before the deadline (0 if it has passed), or {@link Long#MAX_VALUE} if
+   *         there is no limit
+   */
+  public long getRemaining() {
+    if (this._time == 0) {
+      return Long.MAX_VALUE;
+    }
+    if (this._expired) {
+      return 0;
+    }
+    return Math.max(this._time - System.currentTimeMillis(), 0);
+  }
+
+  /**
+   * Gives the time limit for work that takes a limit of its own: that limit, or the time left before this deadline if
+   * that is shorter.
+   *
+   * @param limit the work's own limit, in milliseconds (0 for none)
+   * @return the limit to give the work (at least 1, or 0 if there is none)
+   */
+  public long limit(long limit) {
+    long remaining = this.getRemaining();
+    if (remaining == Long.MAX_VALUE) {
+      return limit;
+    }
+    return Math.max(limit > 0 ? Math.min(limit, remaining) : remaining, 1);
+  }
+}
@@ -0,0 +1,321 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aitools.util.runtime.Errors;
+import org.apache.log4j.Logger;
+
+/**
+ * Writes gossip entries to the gossip file from a single background thread. Entries are put on a bounded queue by
+ * {@link #write(String)}, which never touches the disk; the writer thread takes whatever has accumulated, writes it
+ * as one batch through a file channel, rotates the file when it grows past a maximum size, and forces the data to disk
+ * at a configurable interval. If the queue is full, new entries are dropped (and counted). If the file cannot be
+ * written, the entries of that batch are lost (and counted), the file is closed, and it is opened again for the next
+ * batch; so a passing problem (a full disk, a file removed from under the writer) does not end the gossip.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class GossipWriter implements ManagedProcess {
+
+  /** The most entries to write in one batch. */
+  private static final int MAX_BATCH = 256;
+
+  /** How long (in milliseconds) to wait for an entry before checking whether to sync or stop. */
+  private static final long POLL_INTERVAL = 250;
+
+  /** How long (in milliseconds) to wait for queued entries to be written at shutdown. */
+  private static final long SHUTDOWN_WAIT = 2000;
+
+  /** The gossip file. */
+  private File _file;
+
+  /** The queue of entries waiting to be written. */
+  private BlockingQueue<String> _queue;
+
+  /** The size (in bytes) at which to rotate the file (0 for never). */
+  private long _maxFileSize;
+
+  /** How often (in milliseconds) to force written data to disk (0 for never). */
+  private long _syncInterval;
+
+  /** The channel to the current file. */
+  private FileChannel _channel;
+
+  /** The charset in which to write. */
+  private Charset _charset = Charset.defaultCharset();
+
+  /** The thread running the writer. */
+  private volatile Thread _thread;
+
+  /** Whether the writer should keep running. */
+  private volatile boolean _running = true;
+
+  /** The number of entries dropped because the queue was full. */
+  private AtomicLong _dropped = new AtomicLong();
+
+  /** The number of entries lost because they could not be written. */
+  private AtomicLong _lost = new AtomicLong();
+
+  /** The number of batches written. */
+  private AtomicLong _batches = new AtomicLong();
+
+  /** The number of times written data has been forced to disk at the sync interval. */
+  private AtomicLong _syncs = new AtomicLong();
+
+  /** Whether the last attempt to write failed (so that a run of failures is only reported once). */
+  private boolean _failing;
+
+  /** The logger. */
+  private Logger _logger;
+
+  /**
+   * Creates a new GossipWriter. The writer does nothing until it is started as a {@link ManagedProcess}.
+   *
+   * @param file the file to write to (appended to, if it exists)
+   * @param queueCapacity the number of entries that may wait to be written
+   * @param maxFileSize the size (in bytes) at which to rotate the file (0 for never)
+   * @param syncInterval how often (in milliseconds) to force written data to disk (0 for never)
+   * @param logger the logger to use
+   */
+  public GossipWriter(File file, int queueCapacity, int maxFileSize, int syncInterval, Logger logger) {
+    this._file = file;
+    this._queue = new ArrayBlockingQueue<String>(Math.max(queueCapacity, 1));
+    this._maxFileSize = maxFileSize;
+    this._syncInterval = syncInterval;
+    this._logger = logger;
+  }
+
+  /**
+   * Queues an entry to be written. Returns immediately; if the queue is full, the entry is dropped.
+   *
+   * @param entry the text to write (including any line terminator)
+   */
+  public void write(String entry) {
+    if (!this._queue.offer(entry)) {
+      if (this._dropped.incrementAndGet() % 100 == 1) {
+        this._logger.warn(String.format("Gossip queue is full; %d entries dropped so far.",
+            Long.valueOf(this._dropped.get())));
+      }
+    }
+  }
+
+  /**
+   * @return the number of entries waiting to be written
+   */
+  public int getQueueDepth() {
+    return this._queue.size();
+  }
+
+  /**
+   * @return the number of entries dropped because the queue was full
+   */
+  public long getDroppedCount() {
+    return this._dropped.get();
+  }
+
+  /**
+   * @return the number of entries lost because they could not be written
+   */
+  public long getLostCount() {
+    return this._lost.get();
+  }
+
+  /**
+   * @return the number of batches written
+   */
+  public long getBatchCount() {
+    return this._batches.get();
+  }
+
+  /**
+   * @return the number of times written data has been forced to disk at the sync interval
+   */
+  public long getSyncCount() {
+    return this._syncs.get();
+  }
+
+  /**
+   * Drains the queue until shut down, then writes whatever is left and closes the file.
+   *
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run() {
+    List<String> batch = new ArrayList<String>(MAX_BATCH);
+    long lastSync = System.currentTimeMillis();
+    boolean dirty = false;
+    this._thread = Thread.currentThread();
+    try {
+      try {
+        this.open();
+      }
+      catch (IOException e) {
+        this.fail(0, e);
+      }
+      while (this._running || !this._queue.isEmpty()) {
+        String first;
+        try {
+          first = this._queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+          this._running = false;
+          continue;
+        }
+        if (first != null) {
+          batch.add(first);
+          this._queue.drainTo(batch, MAX_BATCH - 1);
+          try {
+            if (this._channel == null) {
+              this.open();
+            }
+            this.writeBatch(batch);
+            this._batches.incrementAndGet();
+            dirty = true;
+            if (this._failing) {
+              this._logger.info(String.format("Writing gossip to \"%s\" again.", this._file));
+              this._failing = false;
+            }
+          }
+          catch (IOException e) {
+            this.fail(batch.size(), e);
+          }
+          batch.clear();
+          if (this._channel != null && this._maxFileSize > 0) {
+            try {
+              if (this._channel.size() >= this._maxFileSize) {
+                this.rotate();
+              }
+            }
+            catch (IOException e) {
+              this.fail(0, e);
+            }
+          }
+        }
+        long now = System.currentTimeMillis();
+        if (dirty && this._syncInterval > 0 && now - lastSync >= this._syncInterval) {
+          if (this._channel != null) {
+            try {
+              this._channel.force(false);
+              this._syncs.incrementAndGet();
+            }
+            catch (IOException e) {
+              this.fail(0, e);
+            }
+          }
+          lastSync = now;
+          dirty = false;
+        }
+      }
+    }
+    finally {
+      this.close();
+    }
+  }
+
+  /**
+   * Counts the entries of a batch that could not be written, and closes the file, to be opened again for the next
+   * batch.
+   *
+   * @param lost the number of entries lost
+   * @param e what went wrong
+   */
+  private void fail(int lost, IOException e) {
+    this._lost.addAndGet(lost);
+    if (!this._failing) {
+      this._logger.error(String.format("Error writing gossip to \"%s\"; will try again with the next entries: %s",
+          this._file, Errors.describe(e)));
+      this._failing = true;
+    }
+    this.close();
+  }
+
+  private void open() throws IOException {
+    this._channel = new FileOutputStream(this._file, true).getChannel();
+  }
+
+  private void close() {
+    if (this._channel != null) {
+      try {
+        this._channel.force(false);
+      }
+      catch (IOException e) {
+        this._logger.warn("Error forcing gossip file to disk.", e);
+      }
+      try {
+        this._channel.close();
+      }
+      catch (IOException e) {
+        this._logger.warn("Error closing gossip file.", e);
+      }
+      this._channel = null;
+    }
+  }
+
+  private void writeBatch(List<String> batch) throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (String entry : batch) {
+      text.append(entry);
+    }
+    ByteBuffer bytes = this._charset.encode(CharBuffer.wrap(text));
+    while (bytes.hasRemaining()) {
+      this._channel.write(bytes);
+    }
+  }
+
+  /**
+   * Renames the current file with a ".1" suffix (replacing any previous one) and starts a new file.
+   *
+   * @throws IOException if the new file cannot be opened
+   */
+  private void rotate() throws IOException {
+    this.close();
+    File rotated = new File(this._file.getPath() + ".1");
+    if (rotated.exists() && !rotated.delete()) {
+      this._logger.warn(String.format("Could not delete old gossip file \"%s\".", rotated));
+    }
+    if (!this._file.renameTo(rotated)) {
+      this._logger.warn(String.format("Could not rotate gossip file \"%s\".", this._file));
+    }
+    this.open();
+  }
+
+  /**
+   * Tells the writer to finish what is already queued and stop, and waits (briefly) for it to do so.
+   *
+   * @see org.aitools.programd.util.ManagedProcess#shutdown()
+   */
+  @Override
+  public void shutdown() {
+    this._running = false;
+    Thread thread = this._thread;
+    if (thread != null) {
+      try {
+        thread.join(SHUTDOWN_WAIT);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.util;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aitools.programd.ResponseCallback;
+
+/**
+ * Produces responses on an executor, with a limit (if set) on how many may be in progress for any one bot at once.
+ * Responses for a bot that is at its limit wait in a queue of their own, without holding a thread; when one of the
+ * bot's responses finishes, the next one waiting is handed to the executor.
+ * <p>
+ * The {@link org.aitools.programd.Core} still produces its replies one at a time, under its own lock, so this does not
+ * make replies concurrent: a template that blocks holds up every bot. Nor does it make the bots take turns: the
+ * responses handed to the executor all wait on the Core's lock, which is not fair, so they are answered in no
+ * particular order. What the limit does is cap each bot's share of the executor's threads (by default twice the number
+ * of processors), so that one busy bot's backlog waits in its own queue rather than filling the executor's queue ahead
+ * of everyone else's; a response for another bot still finds a thread, and so a place among those waiting for the
+ * lock.
+ * </p>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ResponseExecutor {
+
+  private ExecutorService _executor;
+
+  /** The most responses that may be in progress for one bot (0 for no limit). */
+  private int _perBotLimit;
+
+  private ConcurrentMap<String, Lane> _lanes = new ConcurrentHashMap<String, Lane>();
+
+  private AtomicLong _submitted = new AtomicLong();
+
+  private AtomicLong _completed = new AtomicLong();
+
+  private AtomicLong _failed = new AtomicLong();
+
+  /**
+   * Creates a new ResponseExecutor.
+   *
+   * @param executor the executor on which to produce responses (it will be shut down with this)
+   * @param perBotLimit the most responses that may be in progress for one bot (0 for no limit)
+   */
+  public ResponseExecutor(ExecutorService executor, int perBotLimit) {
+    this._executor = executor;
+    this._perBotLimit = Math.max(perBotLimit, 0);
+  }
+
+  /**
+   * Submits the production of a response.
+   *
+   * @param botid the bot whose response it is
+   * @param task produces the response
+   * @param callback to be told when the response is ready (may be null)
+   * @return the response, when it is ready
+   * @throws RejectedExecutionException if this has been shut down
+   */
+  public Future<String> submit(String botid, Callable<String> task, ResponseCallback callback) {
+    Response response = new Response(task, callback);
+    this._submitted.incrementAndGet();
+    if (this._perBotLimit == 0) {
+      this._executor.execute(response);
+    }
+    else {
+      Lane lane = this._lanes.get(botid);
+      if (lane == null) {
+        Lane newLane = new Lane();
+        lane = this._lanes.putIfAbsent(botid, newLane);
+        if (lane == null) {
+          lane = newLane;
+        }
+      }
+      lane.add(response);
+    }
+    return response;
+  }
+
+  /**
+   * @return the number of responses submitted
+   */
+  public long getSubmittedCount() {
+    return this._submitted.get();
+  }
+
+  /**
+   * @return the number of responses produced
+   */
+  public long getCompletedCount() {
+    return this._completed.get();
+  }
+
+  /**
+   * @return the number of responses whose production failed
+   */
+  public long getFailedCount() {
+    return this._failed.get();
+  }
+
+  /**
+   * @return the number of responses waiting because their bot is at its limit
+   */
+  public int getWaitingCount() {
+    int waiting = 0;
+    for (Lane lane : this._lanes.values()) {
+      waiting += lane.getWaitingCount();
+    }
+    return waiting;
+  }
+
+  /**
+   * @return a description of the work done
+   */
+  @SuppressWarnings("boxing")
+  public String report() {
+    return String.format("Asynchronous responses: %d submitted, %d completed, %d failed, %d waiting for their bot.",
+        this.getSubmittedCount(), this.getCompletedCount(), this.getFailedCount(), this.getWaitingCount());
+  }
+
+  /**
+   * Stops accepting responses. Those already handed to the executor are finished; those waiting for their bot are
+   * cancelled.
+   */
+  public void shutdown() {
+    this._executor.shutdown();
+    for (Lane lane : this._lanes.values()) {
+      lane.cancelWaiting();
+    }
+  }
+
+  /**
+   * A response in production, which keeps count and tells its callback when it is done.
+   */
+  private class Response extends FutureTask<String> {
+
+    private ResponseCallback _callback;
+
+    Response(Callable<String> task, ResponseCallback callback) {
+      super(task);
+      this._callback = callback;
+    }
+
+    /**
+     * @see java.util.concurrent.FutureTask#done()
+     */
+    @Override
+    protected void done() {
+      if (this.isCancelled()) {
+        return;
+      }
+      String response;
+      try {
+        response = this.get();
+      }
+      catch (InterruptedException e) {
+        // Cannot happen: the task is done.
+        Thread.currentThread().interrupt();
+        return;
+      }
+      catch (ExecutionException e) {
+        ResponseExecutor.this._failed.incrementAndGet();
+        if (this._callback != null) {
+          this._callback.failed(e.getCause());
+        }
+        return;
+      }
+      ResponseExecutor.this._completed.incrementAndGet();
+      if (this._callback != null) {
+        this._callback.responded(response);
+      }
+    }
+  }
+
+  /**
+   * The responses in progress, and waiting, for one bot.
+   */
+  private class Lane {
+
+    private int _running;
+
+    private Queue<Response> _waiting = new LinkedList<Response>();
+
+    synchronized void add(Response response) {
+      if (this._running < ResponseExecutor.this._perBotLimit) {
+        this._running++;
+        try {
+          ResponseExecutor.this._executor.execute(this.wrap(response));
+        }
+        catch (RejectedExecutionException e) {
+          this._running--;
+          throw e;
+        }
+      }
+      else {
+        this._waiting.add(response);
+      }
+    }
+
+    /**
+     * Starts the next waiting response (if any) in place of one that has finished.
+     */
+    synchronized void next() {
+      Response response = this._waiting.poll();
+      if (response == null) {
+        this._running--;
+        return;
+      }
+      try {
+        ResponseExecutor.this._executor.execute(this.wrap(response));
+      }
+      catch (RejectedExecutionException e) {
+        this._running--;
+        response.cancel(false);
+        this.cancelWaiting();
+      }
+    }
+
+    synchronized int getWaitingCount() {
+      return this._waiting.size();
+    }
+
+    synchronized void cancelWaiting() {
+      Response response;
+      while ((response = this._waiting.poll()) != null) {
+        response.cancel(false);
+      }
+    }
+
+    private Runnable wrap(final Response response) {
+      return new Runnable() {
+        @Override
+        public void run() {
+          try {
+            response.run();
+          }
+          finally {
+            Lane.this.next();
+          }
+        }
+      };
+    }
+  }
+}
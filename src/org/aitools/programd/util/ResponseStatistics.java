@@ -0,0 +1,194 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aitools.util.Histogram;
+
+/**
+ * Histograms, per bot, of how long each stage of producing a response takes (in microseconds), and of a few counts
+ * (graph nodes visited and backtracks per match, depth of each <code>&lt;srai/&gt;</code>).
+ * <p>
+ * Times for template elements are recorded by element name (with the prefix {@link #TEMPLATE}; see
+ * {@link #templateStage(String)}), and are exclusive: they leave out the time taken by the elements within them, so
+ * that the times of nested elements add up to that of the template. The exception is
+ * <code>&lt;srai/&gt;</code> (and anything else that starts a new reply), whose time includes the whole of the
+ * nested reply, whose elements are also recorded separately.
+ * </p>
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ResponseStatistics {
+
+  /** The whole response. */
+  public static final String RESPONSE = "response";
+
+  /** Applying the input substitutions. */
+  public static final String INPUT_SUBSTITUTION = "input-substitution";
+
+  /** Splitting the input into sentences. */
+  public static final String SENTENCE_SPLIT = "sentence-split";
+
+  /** Reading a predicate. */
+  public static final String PREDICATE_READ = "predicate-read";
+
+  /** Matching an input in the graph. */
+  public static final String MATCH = "match";
+
+  /** The number of graph nodes visited by a match (a count, not a time). */
+  public static final String MATCH_NODES = "match-nodes";
+
+  /** The number of branches abandoned by a match (a count, not a time). */
+  public static final String MATCH_BACKTRACKS = "match-backtracks";
+
+  /** A match that found no category (a count: 1 is recorded for each). */
+  public static final String NO_MATCH = "no-match";
+
+  /** The prefix for evaluating a template element (followed by the element name). */
+  public static final String TEMPLATE = "template:";
+
+  /** The depth of each <code>&lt;srai/&gt;</code> (a count, not a time). */
+  public static final String SRAI_DEPTH = "srai-depth";
+
+  /** Setting (or pushing) a predicate. */
+  public static final String PREDICATE_WRITE = "predicate-write";
+
+  /** Logging a response to the chat log. */
+  public static final String CHAT_LOG = "chat-log";
+
+  /** The stages for template elements, by element name (so that they are not built for each element evaluated). */
+  private static final ConcurrentMap<String, String> TEMPLATE_STAGES = new ConcurrentHashMap<String, String>();
+
+  /** The histograms, by botid and stage. */
+  private ConcurrentMap<String, ConcurrentMap<String, Histogram>> _bots =
+      new ConcurrentHashMap<String, ConcurrentMap<String, Histogram>>();
+
+  /**
+   * @param elementName the name of a template element
+   * @return the stage under which the time for the element is recorded
+   */
+  public static String templateStage(String elementName) {
+    String stage = TEMPLATE_STAGES.get(elementName);
+    if (stage == null) {
+      stage = TEMPLATE + elementName;
+      TEMPLATE_STAGES.putIfAbsent(elementName, stage);
+    }
+    return stage;
+  }
+
+  /**
+   * Records a value (a time in microseconds, or a count) for a stage.
+   *
+   * @param botid
+   * @param stage
+   * @param value
+   */
+  public void record(String botid, String stage, long value) {
+    this.getHistogram(botid, stage).record(value);
+  }
+
+  /**
+   * Records the time since the given start for a stage.
+   *
+   * @param botid
+   * @param stage
+   * @param start the start of the stage, from {@link System#nanoTime()}
+   */
+  public void recordTime(String botid, String stage, long start) {
+    this.getHistogram(botid, stage).record((System.nanoTime() - start) / 1000);
+  }
+
+  /**
+   * @param botid
+   * @param stage
+   * @return the histogram for the stage (created if there was none)
+   */
+  public Histogram getHistogram(String botid, String stage) {
+    ConcurrentMap<String, Histogram> stages = this._bots.get(botid);
+    if (stages == null) {
+      ConcurrentMap<String, Histogram> created = new ConcurrentHashMap<String, Histogram>();
+      stages = this._bots.putIfAbsent(botid, created);
+      if (stages == null) {
+        stages = created;
+      }
+    }
+    Histogram histogram = stages.get(stage);
+    if (histogram == null) {
+      Histogram created = new Histogram();
+      histogram = stages.putIfAbsent(stage, created);
+      if (histogram == null) {
+        histogram = created;
+      }
+    }
+    return histogram;
+  }
+
+  /**
+   * @param stage
+   * @return a histogram of the values recorded for the stage for all bots together
+   */
+  public Histogram getCombinedHistogram(String stage) {
+    Histogram combined = new Histogram();
+    for (ConcurrentMap<String, Histogram> stages : this._bots.values()) {
+      Histogram histogram = stages.get(stage);
+      if (histogram != null) {
+        combined.add(histogram);
+      }
+    }
+    return combined;
+  }
+
+  /**
+   * @return the ids of the bots for which anything has been recorded
+   */
+  public Set<String> getBotIDs() {
+    return Collections.unmodifiableSet(this._bots.keySet());
+  }
+
+  /**
+   * @param botid
+   * @return the histograms for the bot, by stage (sorted by stage)
+   */
+  public Map<String, Histogram> getHistograms(String botid) {
+    Map<String, Histogram> stages = this._bots.get(botid);
+    if (stages == null) {
+      return Collections.emptyMap();
+    }
+    return new TreeMap<String, Histogram>(stages);
+  }
+
+  /**
+   * @param botid
+   * @return a report of the histograms for the bot, one line per stage
+   */
+  public String report(String botid) {
+    StringBuilder report = new StringBuilder();
+    for (Map.Entry<String, Histogram> stage : this.getHistograms(botid).entrySet()) {
+      if (report.length() > 0) {
+        report.append(System.getProperty("line.separator"));
+      }
+      report.append(String.format("%s: %s", stage.getKey(), stage.getValue().summary()));
+    }
+    return report.toString();
+  }
+
+  /**
+   * Forgets everything recorded.
+   */
+  public void reset() {
+    this._bots.clear();
+  }
+}
@@ -0,0 +1,392 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aitools.util.runtime.DaemonThreadFactory;
+import org.aitools.util.runtime.Errors;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the OS commands issued by <code>&lt;system/&gt;</code> elements on a dedicated, bounded pool of threads, so
+ * that a slow or hung command cannot hold a request thread beyond its timeout. Standard output and standard error are
+ * drained together by the command's thread (so a command with a lot of output cannot deadlock against a full pipe),
+ * until the command exits; a command that runs past its timeout is killed, and its thread freed even if a background
+ * process it started still holds the pipe.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class SystemCommandExecutor {
+
+  /** The initial capacity of the buffer into which command output is read. */
+  private static final int OUTPUT_BUFFER_SIZE = 4096;
+
+  /** How long (in milliseconds) to wait between looks at a command's output when there is none. */
+  private static final int POLL_INTERVAL = 5;
+
+  /**
+   * Runs one command and collects its output.
+   */
+  private class CommandTask implements Callable<String> {
+
+    private ProcessBuilder _builder;
+
+    private long _submitted = System.currentTimeMillis();
+
+    private volatile Process _process;
+
+    private volatile boolean _killed = false;
+
+    /**
+     * @param builder the process builder for the command
+     */
+    CommandTask(ProcessBuilder builder) {
+      this._builder = builder;
+    }
+
+    /**
+     * @see java.util.concurrent.Callable#call()
+     */
+    @Override
+    public String call() throws IOException, InterruptedException {
+      SystemCommandExecutor.this._totalQueueWait.addAndGet(System.currentTimeMillis() - this._submitted);
+      Process process = this._builder.start();
+      this._process = process;
+      if (this._killed) {
+        SystemCommandExecutor.kill(process);
+        return "";
+      }
+      ByteArrayOutputStream output = new ByteArrayOutputStream(OUTPUT_BUFFER_SIZE);
+      ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+      InputStream out = process.getInputStream();
+      InputStream err = process.getErrorStream();
+      byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+      try {
+        // Poll rather than block: a blocked read cannot be woken, and the pipe stays open for as long as any
+        // background process started by the command holds it. The sleep also makes this answer cancellation.
+        while (true) {
+          boolean read = drain(out, output, buffer);
+          read |= drain(err, errorOutput, buffer);
+          if (!read) {
+            if (hasExited(process)) {
+              drain(out, output, buffer);
+              drain(err, errorOutput, buffer);
+              break;
+            }
+            Thread.sleep(POLL_INTERVAL);
+          }
+        }
+      }
+      finally {
+        closeStreams(process);
+      }
+      int exitValue = process.exitValue();
+      if (SystemCommandExecutor.this._logger.isDebugEnabled()) {
+        SystemCommandExecutor.this._logger.debug("System process exit value: " + exitValue);
+        if (errorOutput.size() > 0) {
+          SystemCommandExecutor.this._logger.debug("System process error output: " + errorOutput.toString());
+        }
+      }
+      return lines(output);
+    }
+
+    /**
+     * Kills the command's process, if it has started (and prevents it from starting, if it has not).
+     */
+    void kill() {
+      this._killed = true;
+      Process process = this._process;
+      if (process != null) {
+        SystemCommandExecutor.kill(process);
+      }
+    }
+  }
+
+  /**
+   * Destroys a process and closes its streams.
+   *
+   * @param process the process
+   */
+  static void kill(Process process) {
+    process.destroy();
+    closeStreams(process);
+  }
+
+  private static void closeStreams(Process process) {
+    close(process.getInputStream());
+    close(process.getErrorStream());
+    close(process.getOutputStream());
+  }
+
+  private static void close(Closeable stream) {
+    try {
+      stream.close();
+    }
+    catch (IOException e) {
+      // Nothing more can be done with it.
+    }
+  }
+
+  /**
+   * Reads whatever can be read from a stream without blocking.
+   *
+   * @param in the stream
+   * @param to where to put what is read
+   * @param buffer a buffer to use
+   * @return whether anything was read
+   * @throws IOException if the stream cannot be read
+   */
+  private static boolean drain(InputStream in, ByteArrayOutputStream to, byte[] buffer) throws IOException {
+    boolean read = false;
+    int available;
+    while ((available = in.available()) > 0) {
+      int count = in.read(buffer, 0, Math.min(available, buffer.length));
+      if (count < 0) {
+        break;
+      }
+      to.write(buffer, 0, count);
+      read = true;
+    }
+    return read;
+  }
+
+  private static boolean hasExited(Process process) {
+    try {
+      process.exitValue();
+      return true;
+    }
+    catch (IllegalThreadStateException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @param output the output of a command
+   * @return the output, with each line ended by a newline
+   * @throws IOException (should not happen when reading from a string)
+   */
+  private static String lines(ByteArrayOutputStream output) throws IOException {
+    StringBuilder result = new StringBuilder(output.size());
+    BufferedReader reader = new BufferedReader(new StringReader(output.toString()));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      result.append(line).append('\n');
+    }
+    return result.toString();
+  }
+
+  /** The pool that runs commands. */
+  private ThreadPoolExecutor _executor;
+
+  /** The maximum time (in milliseconds) to allow a command, including time spent waiting in the queue. */
+  private int _timeout;
+
+  /** The logger. */
+  Logger _logger;
+
+  private AtomicLong _completed = new AtomicLong();
+
+  private AtomicLong _failed = new AtomicLong();
+
+  private AtomicLong _timedOut = new AtomicLong();
+
+  private AtomicLong _rejected = new AtomicLong();
+
+  private AtomicLong _totalLatency = new AtomicLong();
+
+  private AtomicLong _maxLatency = new AtomicLong();
+
+  AtomicLong _totalQueueWait = new AtomicLong();
+
+  /**
+   * Creates a new SystemCommandExecutor.
+   *
+   * @param poolSize the number of commands that may run at once
+   * @param queueCapacity the number of commands that may wait for a free thread
+   * @param timeout the maximum time (in milliseconds) to allow a command (0 for no limit)
+   * @param logger the logger to use
+   */
+  public SystemCommandExecutor(int poolSize, int queueCapacity, int timeout, Logger logger) {
+    int threads = Math.max(poolSize, 1);
+    this._executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(Math.max(queueCapacity, 1)), new DaemonThreadFactory("system-command"));
+    this._timeout = timeout;
+    this._logger = logger;
+  }
+
+  /**
+   * Runs the command described by the given process builder and returns its standard output. If the command cannot
+   * be queued, fails, or runs past the timeout, the problem is logged and an empty string is returned.
+   *
+   * @param builder the process builder for the command
+   * @return the output of the command
+   */
+  public String execute(ProcessBuilder builder) {
+    return this.execute(builder, Deadline.NONE);
+  }
+
+  /**
+   * Runs the command described by the given process builder and returns its standard output, as
+   * {@link #execute(ProcessBuilder)}, but giving up at the given deadline if that comes before the timeout.
+   *
+   * @param builder the process builder for the command
+   * @param deadline the deadline for the reply of which the command is a part
+   * @return the output of the command
+   */
+  public String execute(ProcessBuilder builder, Deadline deadline) {
+    long timeout = deadline.limit(this._timeout);
+    long start = System.currentTimeMillis();
+    CommandTask task = new CommandTask(builder);
+    Future<String> future;
+    try {
+      future = this._executor.submit(task);
+    }
+    catch (RejectedExecutionException e) {
+      this._rejected.incrementAndGet();
+      this._logger.warn(String.format("Too many <system> calls waiting (%d); refusing \"%s\".",
+          Integer.valueOf(this.getQueueDepth()), builder.command()));
+      return "";
+    }
+    try {
+      String output = timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+      this._completed.incrementAndGet();
+      return output;
+    }
+    catch (TimeoutException e) {
+      this._timedOut.incrementAndGet();
+      task.kill();
+      future.cancel(true);
+      this._logger.warn(String.format("<system> command \"%s\" did not complete within %d ms; killed it.",
+          builder.command(), Long.valueOf(timeout)));
+    }
+    catch (InterruptedException e) {
+      task.kill();
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      this._logger.error("Interrupted while waiting for <system> command; could not complete.");
+    }
+    catch (ExecutionException e) {
+      this._failed.incrementAndGet();
+      this._logger.warn(String.format("Error executing <system> command \"%s\": %s", builder.command(),
+          Errors.describe(e.getCause())));
+    }
+    finally {
+      this.recordLatency(System.currentTimeMillis() - start);
+    }
+    return "";
+  }
+
+  private void recordLatency(long latency) {
+    this._totalLatency.addAndGet(latency);
+    long max = this._maxLatency.get();
+    while (latency > max && !this._maxLatency.compareAndSet(max, latency)) {
+      max = this._maxLatency.get();
+    }
+  }
+
+  /**
+   * @return the number of commands waiting for a free thread
+   */
+  public int getQueueDepth() {
+    return this._executor.getQueue().size();
+  }
+
+  /**
+   * @return the number of commands currently running
+   */
+  public int getActiveCount() {
+    return this._executor.getActiveCount();
+  }
+
+  /**
+   * @return the number of commands that completed normally
+   */
+  public long getCompletedCount() {
+    return this._completed.get();
+  }
+
+  /**
+   * @return the number of commands that failed with an error
+   */
+  public long getFailedCount() {
+    return this._failed.get();
+  }
+
+  /**
+   * @return the number of commands killed for running past the timeout
+   */
+  public long getTimedOutCount() {
+    return this._timedOut.get();
+  }
+
+  /**
+   * @return the number of commands refused because the queue was full
+   */
+  public long getRejectedCount() {
+    return this._rejected.get();
+  }
+
+  /**
+   * @return the average time (in milliseconds) from submitting a command to getting its result
+   */
+  public float getAverageLatency() {
+    long count = this._completed.get() + this._failed.get() + this._timedOut.get();
+    return count == 0 ? 0 : (float) this._totalLatency.get() / count;
+  }
+
+  /**
+   * @return the longest time (in milliseconds) from submitting a command to getting its result
+   */
+  public long getMaxLatency() {
+    return this._maxLatency.get();
+  }
+
+  /**
+   * @return the average time (in milliseconds) a command spent waiting for a free thread
+   */
+  public float getAverageQueueWait() {
+    long count = this._executor.getCompletedTaskCount();
+    return count == 0 ? 0 : (float) this._totalQueueWait.get() / count;
+  }
+
+  /**
+   * @return a one-line summary of the executor's state and statistics
+   */
+  @SuppressWarnings("boxing")
+  public String report() {
+    return String.format(
+        "<system> calls: %d queued, %d running, %d completed, %d failed, %d timed out, %d refused; latency avg %.1fms, max %dms; queue wait avg %.1fms.",
+        this.getQueueDepth(), this.getActiveCount(), this.getCompletedCount(), this.getFailedCount(),
+        this.getTimedOutCount(), this.getRejectedCount(), this.getAverageLatency(), this.getMaxLatency(),
+        this.getAverageQueueWait());
+  }
+
+  /**
+   * Stops accepting commands and kills any that are running.
+   */
+  public void shutdown() {
+    this._executor.shutdownNow();
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values (such as latencies), from which percentiles can be read. The buckets are
+ * log-linear, as in an HDR histogram: values below 32 each have their own bucket, and each power of two above that is
+ * split into 16 buckets, so that a percentile is accurate to within about 6% however large the values are. Recording a
+ * value takes a few atomic increments and no locking.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class Histogram {
+
+  /** The number of buckets into which each power of two is split. */
+  private static final int SUB_BUCKETS = 16;
+
+  /** log2 of {@link #SUB_BUCKETS}. */
+  private static final int SUB_BUCKET_BITS = 4;
+
+  /** Values below this each have their own bucket. */
+  private static final int EXACT = 2 * SUB_BUCKETS;
+
+  /** Enough buckets for any long (the largest, {@link Long#MAX_VALUE}, has a top bit of 62). */
+  static final int BUCKETS = EXACT + (62 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+
+  private AtomicLong _count = new AtomicLong();
+
+  private AtomicLong _total = new AtomicLong();
+
+  private AtomicLong _max = new AtomicLong();
+
+  /**
+   * Records a value.
+   *
+   * @param value the value (a negative value is recorded as 0)
+   */
+  public void record(long value) {
+    long recorded = Math.max(value, 0);
+    this._counts.incrementAndGet(bucket(recorded));
+    this._count.incrementAndGet();
+    this._total.addAndGet(recorded);
+    long max = this._max.get();
+    while (recorded > max && !this._max.compareAndSet(max, recorded)) {
+      max = this._max.get();
+    }
+  }
+
+  /**
+   * Adds the values recorded in another histogram to this one.
+   *
+   * @param other the other histogram
+   */
+  public void add(Histogram other) {
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      long count = other._counts.get(bucket);
+      if (count > 0) {
+        this._counts.addAndGet(bucket, count);
+      }
+    }
+    this._count.addAndGet(other._count.get());
+    this._total.addAndGet(other._total.get());
+    long otherMax = other._max.get();
+    long max = this._max.get();
+    while (otherMax > max && !this._max.compareAndSet(max, otherMax)) {
+      max = this._max.get();
+    }
+  }
+
+  /**
+   * @return the number of values recorded
+   */
+  public long getCount() {
+    return this._count.get();
+  }
+
+  /**
+   * @return the largest value recorded
+   */
+  public long getMax() {
+    return this._max.get();
+  }
+
+  /**
+   * @return the mean of the values recorded
+   */
+  public double getMean() {
+    long count = this._count.get();
+    return count == 0 ? 0d : (double) this._total.get() / count;
+  }
+
+  /**
+   * Gives the value below which (or at which) the given percentage of the recorded values fall, as the top of the
+   * bucket in which that value falls (but no more than the largest value recorded).
+   *
+   * @param percentile the percentage (such as 99.9)
+   * @return the value at the percentile (0 if nothing has been recorded)
+   */
+  public long getPercentile(double percentile) {
+    long count = this._count.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(count * Math.min(percentile, 100d) / 100d), 1);
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += this._counts.get(bucket);
+      if (seen >= rank) {
+        return Math.min(top(bucket), this._max.get());
+      }
+    }
+    // (Values recorded while we were counting.)
+    return this._max.get();
+  }
+
+  /**
+   * Forgets all the values recorded.
+   */
+  public void reset() {
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      this._counts.set(bucket, 0);
+    }
+    this._count.set(0);
+    this._total.set(0);
+    this._max.set(0);
+  }
+
+  /**
+   * @return a one-line summary: the count, mean, median, 90th, 99th and 99.9th percentiles, and the maximum
+   */
+  @SuppressWarnings("boxing")
+  public String summary() {
+    return String.format("n=%,d mean=%.1f p50=%,d p90=%,d p99=%,d p99.9=%,d max=%,d", this.getCount(), this.getMean(),
+        this.getPercentile(50), this.getPercentile(90), this.getPercentile(99), this.getPercentile(99.9), this
+            .getMax());
+  }
+
+  /**
+   * @return the bucket in which the given value falls
+   */
+  static int bucket(long value) {
+    if (value < EXACT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int top = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+    return EXACT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+  }
+
+  /**
+   * @return the largest value that falls in the given bucket
+   */
+  static long top(int bucket) {
+    if (bucket < EXACT) {
+      return bucket;
+    }
+    int exponent = (bucket - EXACT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+    long top = (bucket - EXACT) % SUB_BUCKETS + SUB_BUCKETS;
+    long next = (top + 1) << (exponent - SUB_BUCKET_BITS);
+    return next < 0 ? Long.MAX_VALUE : next - 1;
+  }
+}
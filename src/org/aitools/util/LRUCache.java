@@ -0,0 +1,55 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded map that evicts its least recently accessed entry once it grows past its capacity. Like
+ * {@link LinkedHashMap}, this is not synchronized; callers that share an instance between threads must synchronize on
+ * it themselves.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class LRUCache<K, V> extends LinkedHashMap<K, V> {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The maximum number of entries to keep. */
+  private int _capacity;
+
+  /**
+   * Creates a new LRUCache that will hold at most <code>capacity</code> entries.
+   *
+   * @param capacity the maximum number of entries
+   */
+  public LRUCache(int capacity) {
+    super(Math.min(capacity, 1024) * 4 / 3 + 1, 0.75f, true);
+    this._capacity = capacity;
+  }
+
+  /**
+   * @return the maximum number of entries this cache will hold
+   */
+  public int getCapacity() {
+    return this._capacity;
+  }
+
+  /**
+   * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+   */
+  @Override
+  protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+    return this.size() > this._capacity;
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue that any number of threads may add to, but only one thread may take from, without locking. Each slot
+ * carries a sequence number that says whether it is free for the producer whose turn it is or holds an element for the
+ * consumer; a producer claims its turn by advancing the tail with a compare-and-set, so producers only contend with one
+ * another for that one counter.
+ *
+ * @param <E> the type of element held
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class RingBuffer<E> {
+
+  private AtomicReferenceArray<E> _elements;
+
+  /** For each slot, the turn for which it is free (equal to the turn) or full (one more than the turn). */
+  private AtomicLongArray _sequences;
+
+  private int _mask;
+
+  /** The next turn for a producer. */
+  private AtomicLong _tail = new AtomicLong();
+
+  /** The next turn for the consumer (written only by the consumer). */
+  private volatile long _head;
+
+  /**
+   * Creates a new RingBuffer.
+   *
+   * @param capacity the number of elements it may hold (rounded up to a power of two)
+   */
+  public RingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    this._elements = new AtomicReferenceArray<E>(size);
+    this._sequences = new AtomicLongArray(size);
+    for (int slot = 0; slot < size; slot++) {
+      this._sequences.set(slot, slot);
+    }
+    this._mask = size - 1;
+  }
+
+  /**
+   * Adds an element, if there is room. May be called from any thread.
+   *
+   * @param element the element to add (not <code>null</code>)
+   * @return whether the element was added
+   */
+  public boolean offer(E element) {
+    if (element == null) {
+      throw new NullPointerException("A RingBuffer cannot hold null.");
+    }
+    long turn = this._tail.get();
+    while (true) {
+      int slot = (int) turn & this._mask;
+      long difference = this._sequences.get(slot) - turn;
+      if (difference == 0) {
+        if (this._tail.compareAndSet(turn, turn + 1)) {
+          this._elements.lazySet(slot, element);
+          this._sequences.set(slot, turn + 1);
+          return true;
+        }
+      }
+      else if (difference < 0) {
+        // The slot still holds the element from the last time round.
+        return false;
+      }
+      turn = this._tail.get();
+    }
+  }
+
+  /**
+   * Takes the oldest element. Must only be called from the one consuming thread.
+   *
+   * @return the oldest element, or <code>null</code> if there is none
+   */
+  public E poll() {
+    long turn = this._head;
+    int slot = (int) turn & this._mask;
+    if (this._sequences.get(slot) != turn + 1) {
+      return null;
+    }
+    E element = this._elements.get(slot);
+    this._elements.lazySet(slot, null);
+    this._sequences.set(slot, turn + this._mask + 1);
+    this._head = turn + 1;
+    return element;
+  }
+
+  /**
+   * Takes up to the given number of elements, oldest first. Must only be called from the one consuming thread.
+   *
+   * @param destination where to put the elements
+   * @param max the most elements to take
+   * @return the number of elements taken
+   */
+  public int drainTo(Collection<? super E> destination, int max) {
+    int taken = 0;
+    while (taken < max) {
+      E element = this.poll();
+      if (element == null) {
+        break;
+      }
+      destination.add(element);
+      taken++;
+    }
+    return taken;
+  }
+
+  /**
+   * @return whether there is nothing to take (exact only when called from the consuming thread)
+   */
+  public boolean isEmpty() {
+    return this._sequences.get((int) this._head & this._mask) != this._head + 1;
+  }
+
+  /**
+   * @return the number of elements held (approximate while other threads are adding or taking)
+   */
+  public int size() {
+    long size = this._tail.get() - this._head;
+    return (int) Math.max(0, Math.min(size, this._mask + 1));
+  }
+
+  /**
+   * @return the number of elements the buffer may hold
+   */
+  public int capacity() {
+    return this._mask + 1;
+  }
+}
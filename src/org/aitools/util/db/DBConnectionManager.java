@@ -11,55 +11,86 @@ package org.aitools.util.db;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
 import org.aitools.util.Classes;
 import org.aitools.util.runtime.UserError;
 import org.apache.commons.dbcp.ConnectionFactory;
+import org.apache.commons.dbcp.DelegatingConnection;
 import org.apache.commons.dbcp.DriverManagerConnectionFactory;
 import org.apache.commons.dbcp.PoolableConnectionFactory;
 import org.apache.commons.dbcp.PoolingDataSource;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool.impl.GenericKeyedObjectPoolFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
 
 
 /**
  * A class for managing pooled connections to the database.
  * 
+ * Each pooled connection keeps its own cache of prepared statements: calling
+ * {@link Connection#prepareStatement(String)} on a connection from this manager returns
+ * the statement already prepared for that SQL on that connection (if one is free), and
+ * closing the statement returns it to the connection's cache rather than closing it.
+ * Code that uses these connections should therefore prepare statements where it needs
+ * them and close them when done, rather than holding on to statements across connections.
+ * (Statements prepared with other arguments, such as requests for generated keys, are
+ * not cached.)
+ * 
  * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
  */
 public class DBConnectionManager {
   
   private DataSource _dataSource;
   
+  private GenericObjectPool _connectionPool;
+  
+  private AtomicLong _borrowed = new AtomicLong();
+  
+  private AtomicLong _totalWait = new AtomicLong();
+  
+  private AtomicLong _maxWait = new AtomicLong();
+  
   /**
    * Create a new database connection manager using the given driver (classname)
    * and database URI (DBMS-specific).
    * 
-   * @param logger
    * @param driver
    * @param uri
    * @param username
    * @param password
    * @param minIdle
    * @param maxActive
+   * @param statementCacheSize the maximum number of prepared statements to keep per connection (0 for none)
    */
-  public DBConnectionManager(String driver, String uri, String username, String password, int minIdle, int maxActive) {
+  public DBConnectionManager(String driver, String uri, String username, String password, int minIdle, int maxActive, int statementCacheSize) {
     
     Classes.verifyAvailable(driver, "database driver");
     
-    GenericObjectPool connectionPool = new GenericObjectPool(null);
-    connectionPool.setMinIdle(minIdle);
-    connectionPool.setMaxActive(maxActive);
+    this._connectionPool = new GenericObjectPool(null);
+    this._connectionPool.setMinIdle(minIdle);
+    this._connectionPool.setMaxActive(maxActive);
     
     ConnectionFactory connectionFactory =
         new DriverManagerConnectionFactory(uri, username, password);
     
+    KeyedObjectPoolFactory statementPoolFactory = null;
+    if (statementCacheSize > 0) {
+      statementPoolFactory = new GenericKeyedObjectPoolFactory(null, -1, GenericKeyedObjectPool.WHEN_EXHAUSTED_GROW,
+          0, 1, statementCacheSize);
+    }
+    
     @SuppressWarnings("unused")
     PoolableConnectionFactory poolableConnectionFactory =
-        new PoolableConnectionFactory(connectionFactory, connectionPool, null, null, false, true);
+        new PoolableConnectionFactory(connectionFactory, this._connectionPool, statementPoolFactory, null, false, true);
     
-    this._dataSource = new PoolingDataSource(connectionPool);
+    PoolingDataSource dataSource = new PoolingDataSource(this._connectionPool);
+    // (So that a broken connection can be found in the pool, to be discarded.)
+    dataSource.setAccessToUnderlyingConnectionAllowed(true);
+    this._dataSource = dataSource;
     
     // Was using DdlUtils here, but it did not correctly work for all column properties.
     //this.checkDBSchema();
@@ -72,11 +103,99 @@ public class DBConnectionManager {
    */
   public Connection getDBConnection() {
     
+    long start = System.currentTimeMillis();
     try {
       return this._dataSource.getConnection();
     }
     catch (SQLException e) {
       throw new UserError("Error connecting to database.", e);
     }
+    finally {
+      long wait = System.currentTimeMillis() - start;
+      this._borrowed.incrementAndGet();
+      this._totalWait.addAndGet(wait);
+      long max = this._maxWait.get();
+      while (wait > max && !this._maxWait.compareAndSet(max, wait)) {
+        max = this._maxWait.get();
+      }
+    }
+  }
+  
+  /**
+   * Gives back a connection that may be broken (as after an error), so that the pool discards it rather than lending
+   * it out again. Use this instead of closing the connection.
+   * 
+   * @param connection a connection from {@link #getDBConnection()}
+   */
+  public void invalidate(Connection connection) {
+    Connection pooled = connection instanceof DelegatingConnection ? ((DelegatingConnection) connection).getDelegate()
+        : null;
+    if (pooled != null) {
+      try {
+        this._connectionPool.invalidateObject(pooled);
+      }
+      catch (Exception e) {
+        // It is out of the pool either way.
+      }
+    }
+    try {
+      connection.close();
+    }
+    catch (SQLException e) {
+      // It was broken anyway.
+    }
+  }
+  
+  /**
+   * @return the number of connections currently borrowed from the pool
+   */
+  public int getActiveCount() {
+    return this._connectionPool.getNumActive();
+  }
+  
+  /**
+   * @return the number of connections currently idle in the pool
+   */
+  public int getIdleCount() {
+    return this._connectionPool.getNumIdle();
+  }
+  
+  /**
+   * @return the maximum number of connections that may be borrowed at once
+   */
+  public int getMaxActive() {
+    return this._connectionPool.getMaxActive();
+  }
+  
+  /**
+   * @return the number of times a connection has been requested
+   */
+  public long getBorrowCount() {
+    return this._borrowed.get();
+  }
+  
+  /**
+   * @return the average time (in milliseconds) spent waiting for a connection
+   */
+  public float getAverageWait() {
+    long count = this._borrowed.get();
+    return count == 0 ? 0 : (float) this._totalWait.get() / count;
+  }
+  
+  /**
+   * @return the longest time (in milliseconds) spent waiting for a connection
+   */
+  public long getMaxWait() {
+    return this._maxWait.get();
+  }
+  
+  /**
+   * @return a one-line summary of the pool's state and statistics
+   */
+  @SuppressWarnings("boxing")
+  public String report() {
+    return String.format("Database connections: %d active (of %d), %d idle; %d borrowed, wait avg %.1fms, max %dms.",
+        this.getActiveCount(), this.getMaxActive(), this.getIdleCount(), this.getBorrowCount(), this.getAverageWait(),
+        this.getMaxWait());
   }
 }
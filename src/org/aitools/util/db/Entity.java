@@ -14,7 +14,6 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
 
 import org.aitools.util.runtime.DeveloperError;
 
@@ -26,13 +25,11 @@ import org.aitools.util.runtime.DeveloperError;
  */
 public class Entity {
   
-  private static HashMap<String, PreparedStatement> PREPARED_SELECTS = new HashMap<String, PreparedStatement>();
-  private static HashMap<String, PreparedStatement> PREPARED_INSERTS = new HashMap<String, PreparedStatement>();
-
   /**
    * Try to find an entity in the given table that is identified by the given value
    * for the given field.  If the entity is not found, create it.  Then, in either case,
    * return the id of the entity.  (This assumes a standard field "id" for such "entities".)
+   * The statements are prepared on the given connection (which, if pooled, caches them).
    * 
    * @param connection
    * @param table
@@ -42,52 +39,41 @@ public class Entity {
    */
   public static int getOrCreate(Connection connection, String table, String field, String value) {
     
-    String key = table + field;
-    PreparedStatement statement;
-    if (PREPARED_SELECTS.containsKey(key)) {
-      statement = PREPARED_SELECTS.get(key);
-    }
-    else {
-      try {
-        statement = connection.prepareStatement(
-            String.format("SELECT id from %s WHERE %s = ?", table, field));
-      }
-      catch (SQLException e) {
-        throw new DeveloperError("SQL error trying to initialize prepare statement.", e);
-      }
-      PREPARED_SELECTS.put(key, statement);
-    }
-    
     try {
       // Try to find an existing entity in the given table with the given value for the given field.
       int id = -1;
-      statement.setString(1, value);
-      ResultSet results = statement.executeQuery();
-      if (results.next()) {
-        id = results.getInt(1);
+      PreparedStatement statement = connection.prepareStatement(String.format("SELECT id from %s WHERE %s = ?", table, field));
+      try {
+        statement.setString(1, value);
+        ResultSet results = statement.executeQuery();
+        if (results.next()) {
+          id = results.getInt(1);
+        }
+        results.close();
+      }
+      finally {
+        statement.close();
       }
-      results.close();
       
       // If the entity was not found, create it.
       if (id == -1) {
-        if (PREPARED_INSERTS.containsKey(key)) {
-          statement = PREPARED_INSERTS.get(key);
-        }
-        else {
-          statement = connection.prepareStatement(
-              String.format("INSERT INTO %s (%s) VALUES (?)", table, field), Statement.RETURN_GENERATED_KEYS);
-          PREPARED_INSERTS.put(key, statement);
-        }
-        statement.setString(1, value);
-        statement.execute();
-        results = statement.getGeneratedKeys();
-        if (results.next()) {
-          id = results.getInt(1);
+        statement = connection.prepareStatement(
+            String.format("INSERT INTO %s (%s) VALUES (?)", table, field), Statement.RETURN_GENERATED_KEYS);
+        try {
+          statement.setString(1, value);
+          statement.execute();
+          ResultSet results = statement.getGeneratedKeys();
+          if (results.next()) {
+            id = results.getInt(1);
+          }
+          else {
+            throw new DeveloperError(String.format("No %s id generated!", table));
+          }
+          results.close();
         }
-        else {
-          throw new DeveloperError(String.format("No %s id generated!", table));
+        finally {
+          statement.close();
         }
-        results.close();
       }
       return id;
     }
@@ -0,0 +1,57 @@
+/*
+ * aitools utilities
+ * Copyright (C) 2006 Noel Bush
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.aitools.util.runtime;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ThreadFactory} that produces daemon threads named with a common prefix and a sequence number, so that
+ * background workers do not keep the JVM alive and are easy to pick out in a thread dump.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+  /** The prefix for thread names. */
+  private String _prefix;
+
+  /** The sequence number of the next thread. */
+  private AtomicInteger _sequence = new AtomicInteger(1);
+
+  /**
+   * Creates a new DaemonThreadFactory whose threads will be named <code>prefix-1</code>, <code>prefix-2</code>, etc.
+   *
+   * @param prefix the prefix for thread names
+   */
+  public DaemonThreadFactory(String prefix) {
+    this._prefix = prefix;
+  }
+
+  /**
+   * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+   */
+  @Override
+  public Thread newThread(Runnable runnable) {
+    Thread thread = new Thread(runnable, this._prefix + "-" + this._sequence.getAndIncrement());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
@@ -121,15 +121,31 @@ public class JDOM {
    */
   public static String renderAttributes(List<Attribute> attributes) {
     StringBuilder result = new StringBuilder();
+    try {
+      renderAttributes(attributes, result);
+    }
+    catch (IOException e) {
+      assert false : "StringBuilder threw an IOException.";
+    }
+    return result.toString();
+  }
+
+  /**
+   * Renders a set of attributes to the given output.
+   * 
+   * @param attributes the attributes to render
+   * @param out where to write the rendered attributes
+   * @throws IOException if the output cannot be written
+   */
+  public static void renderAttributes(List<Attribute> attributes, Appendable out) throws IOException {
     if (attributes != null) {
       for (Attribute attribute : attributes) {
         String attributeName = attribute.getName();
         if (attributeName != null && !"xmlns".equals(attributeName)) {
-          result.append(String.format(" %s=\"%s\"", attributeName, attribute.getValue()));
+          out.append(' ').append(attributeName).append("=\"").append(attribute.getValue()).append('"');
         }
       }
     }
-    return result.toString();
   }
 
   /**
@@ -139,17 +155,31 @@ public class JDOM {
    * @param includeNamespaceAttribute whether to include the namespace attribute
    * @return the result of the rendering
    */
-  @SuppressWarnings("unchecked")
   public static String renderEmptyElement(Element element, boolean includeNamespaceAttribute) {
     StringBuilder result = new StringBuilder();
-    result.append(String.format("<%s", element.getName()));
-    if (includeNamespaceAttribute) {
-      result.append(String.format(" xmlns=\"%s\"", element.getNamespaceURI()));
+    try {
+      renderEmptyElement(element, includeNamespaceAttribute, result);
+    }
+    catch (IOException e) {
+      assert false : "StringBuilder threw an IOException.";
     }
-    result.append(String.format("%s/>", renderAttributes(element.getAttributes())));
     return result.toString();
   }
 
+  /**
+   * Renders a given element as an empty element to the given output, including a namespace declaration, if requested.
+   * 
+   * @param element the element to render
+   * @param includeNamespaceAttribute whether to include the namespace attribute
+   * @param out where to write the rendering
+   * @throws IOException if the output cannot be written
+   */
+  public static void renderEmptyElement(Element element, boolean includeNamespaceAttribute, Appendable out)
+      throws IOException {
+    renderTagStart(element, includeNamespaceAttribute, out);
+    out.append("/>");
+  }
+
   /**
    * Renders a given element as an end tag.
    * 
@@ -160,6 +190,17 @@ public class JDOM {
     return String.format("</%s>", element.getName());
   }
 
+  /**
+   * Renders a given element as an end tag to the given output.
+   * 
+   * @param element the element to render
+   * @param out where to write the rendering
+   * @throws IOException if the output cannot be written
+   */
+  public static void renderEndTag(Element element, Appendable out) throws IOException {
+    out.append("</").append(element.getName()).append('>');
+  }
+
   /**
    * Renders a given element as a start tag, including a namespace declaration, if requested.
    * 
@@ -167,17 +208,44 @@ public class JDOM {
    * @param includeNamespaceAttribute whether to include the namespace attribute
    * @return the rendering of the element
    */
-  @SuppressWarnings("unchecked")
   public static String renderStartTag(Element element, boolean includeNamespaceAttribute) {
     StringBuilder result = new StringBuilder();
-    result.append(String.format("<%s", element.getName()));
-    if (includeNamespaceAttribute) {
-      result.append(String.format(" xmlns=\"%s\"", element.getNamespaceURI()));
+    try {
+      renderStartTag(element, includeNamespaceAttribute, result);
+    }
+    catch (IOException e) {
+      assert false : "StringBuilder threw an IOException.";
     }
-    result.append(String.format("%s>", renderAttributes(element.getAttributes())));
     return result.toString();
   }
 
+  /**
+   * Renders a given element as a start tag to the given output, including a namespace declaration, if requested.
+   * 
+   * @param element the element to render
+   * @param includeNamespaceAttribute whether to include the namespace attribute
+   * @param out where to write the rendering
+   * @throws IOException if the output cannot be written
+   */
+  public static void renderStartTag(Element element, boolean includeNamespaceAttribute, Appendable out)
+      throws IOException {
+    renderTagStart(element, includeNamespaceAttribute, out);
+    out.append('>');
+  }
+
+  /**
+   * Renders everything in a start tag up to (not including) the closing <code>&gt;</code> or <code>/&gt;</code>.
+   */
+  @SuppressWarnings("unchecked")
+  private static void renderTagStart(Element element, boolean includeNamespaceAttribute, Appendable out)
+      throws IOException {
+    out.append('<').append(element.getName());
+    if (includeNamespaceAttribute) {
+      out.append(" xmlns=\"").append(element.getNamespaceURI()).append('"');
+    }
+    renderAttributes(element.getAttributes(), out);
+  }
+
   /**
    * Renders a given element name and set of attributes as a start tag, including a namespace declaration, if requested.
    * 
@@ -0,0 +1,167 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aitools.util.resource.Filesystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the ways of asking the {@link Core} for responses.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class CoreTest
+{
+    private static final String TESTBOT_ID = "TestBot";
+
+    private Core _core;
+
+    private File _file;
+
+    /**
+     * Creates a core with a bot that remembers each user's name.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this._core = new Core(Filesystem.getWorkingDirectory(), new ProgrammaticCoreSettings());
+        this._core.addBot(new Bot(TESTBOT_ID, this._core.getSettings()));
+        this._file = File.createTempFile("core-test", ".aiml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(this._file), "UTF-8");
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<aiml version=\"1.0.1\" xmlns=\"http://alicebot.org/2001/AIML-1.0.1\">\n");
+        out.write("<category><pattern>MY NAME IS *</pattern>"
+                + "<template><think><set name=\"name\"><star/></set></think>Hello.</template></category>\n");
+        out.write("<category><pattern>WHAT IS MY NAME</pattern><template><get name=\"name\"/></template></category>\n");
+        out.write("</aiml>\n");
+        out.close();
+        this._core.getGraphmapper().load(this._file.toURI().toURL(), TESTBOT_ID);
+    }
+
+    /**
+     * Shuts the core down and deletes the AIML file.
+     */
+    @After
+    public void tearDown()
+    {
+        this._core.shutdown();
+        this._file.delete();
+    }
+
+    private static BatchRequest request(String input, String userid)
+    {
+        return new BatchRequest(input, userid, TESTBOT_ID);
+    }
+
+    /**
+     * Keeps each piece of text appended to it, and fails (if told to) once it has been given a number of pieces.
+     */
+    private static class Pieces implements Appendable
+    {
+        List<String> pieces = new ArrayList<String>();
+
+        private int _failAfter;
+
+        Pieces(int failAfter)
+        {
+            this._failAfter = failAfter;
+        }
+
+        @Override
+        public Appendable append(CharSequence text) throws IOException
+        {
+            if (this.pieces.size() == this._failAfter)
+            {
+                throw new IOException("Closed.");
+            }
+            this.pieces.add(text.toString());
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) throws IOException
+        {
+            return this.append(text.subSequence(start, end));
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException
+        {
+            return this.append(String.valueOf(c));
+        }
+    }
+
+    /**
+     * Tests that the reply to each sentence of an input is written to the output on its own, in order, and that the
+     * whole response is still returned if the output fails part way.
+     */
+    @Test
+    public void testResponseIsWrittenAsProduced()
+    {
+        Bot bot = this._core.getBot(TESTBOT_ID);
+        bot.addSentenceSplitter("\\.");
+        bot.addSentenceSplitter("\\?");
+        Pieces out = new Pieces(-1);
+        String response = this._core.getResponse("My name is Ann. What is my name?", "ann", TESTBOT_ID, out);
+        assertEquals(Arrays.asList("Hello.", "Ann"), out.pieces);
+        assertEquals("Hello.Ann", response);
+
+        Pieces failing = new Pieces(1);
+        response = this._core.getResponse("My name is Bob. What is my name?", "bob", TESTBOT_ID, failing);
+        assertEquals(Arrays.asList("Hello."), failing.pieces);
+        assertEquals("Hello.Bob", response);
+    }
+
+    /**
+     * Tests that the responses to a batch come back in the order of the requests, that each user's requests are
+     * answered in order (so that a later one sees what an earlier one set), and that users are kept apart.
+     */
+    @Test
+    public void testBatch()
+    {
+        List<BatchResponse> responses = this._core.getResponses(Arrays.asList(request("My name is Ann.", "ann"),
+                request("My name is Bob.", "bob"), request("What is my name?", "ann"), request("What is my name?",
+                        "bob"), new BatchRequest("Hello.", "ann", "NoBot")));
+        assertEquals(5, responses.size());
+        assertEquals("Hello.", responses.get(0).getResponse());
+        assertEquals("Hello.", responses.get(1).getResponse());
+        assertEquals("ann", responses.get(2).getRequest().getUserID());
+        assertEquals("Ann", responses.get(2).getResponse());
+        assertEquals("Bob", responses.get(3).getResponse());
+        assertEquals(BatchResponse.Status.OK, responses.get(3).getStatus());
+        assertEquals(BatchResponse.Status.NO_SUCH_BOT, responses.get(4).getStatus());
+        assertNull(responses.get(4).getResponse());
+    }
+
+    /**
+     * Tests that a batch given to a core that has been shut down is answered as not ready.
+     */
+    @Test
+    public void testBatchWhenNotReady()
+    {
+        this._core.shutdown();
+        List<BatchResponse> responses = this._core.getResponses(Arrays.asList(request("What is my name?", "ann")));
+        assertEquals(BatchResponse.Status.NOT_READY, responses.get(0).getStatus());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link AdaptiveMemoryNodemapper} against {@link NonOptimalMemoryNodemapper} (a plain map), as the node grows
+ * and shrinks through each of its representations.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class AdaptiveMemoryNodemapperTest
+{
+    private AdaptiveMemoryNodemapper _node = new AdaptiveMemoryNodemapper();
+
+    private NonOptimalMemoryNodemapper _model = new NonOptimalMemoryNodemapper();
+
+    private static String key(int index)
+    {
+        return "word" + index;
+    }
+
+    private static String value(int index)
+    {
+        return "value" + index;
+    }
+
+    /**
+     * Checks that the node holds what the model does, looking keys up in both cases, and that a few keys not there are
+     * not found.
+     */
+    private void check(int range)
+    {
+        assertEquals(this._model.size(), this._node.size());
+        Set<String> keys = this._model.keySet();
+        assertEquals(keys == null ? Collections.<String> emptySet() : keys, this._node.keySet());
+        for (int index = 0; index < range; index++)
+        {
+            String key = key(index);
+            assertEquals(key, this._model.get(key), this._node.get(key));
+            assertEquals(key, this._model.get(key), this._node.get(key.toUpperCase()));
+            assertEquals(key, this._model.containsKey(key), this._node.containsKey(key));
+        }
+        assertNull(this._node.get("missing"));
+        assertFalse(this._node.containsKey("missing"));
+    }
+
+    private void put(int index)
+    {
+        this._node.put(key(index), value(index));
+        this._model.put(key(index), value(index));
+    }
+
+    private void remove(int index)
+    {
+        this._node.remove(value(index));
+        this._model.remove(value(index));
+    }
+
+    /**
+     * Tests that an empty node finds nothing.
+     */
+    @Test
+    public void testEmpty()
+    {
+        this.check(1);
+        this._node.compact();
+        this.check(1);
+    }
+
+    /**
+     * Tests that every mapping can be found as the node grows from fields through the sorted array and the hash table
+     * to the dense table.
+     */
+    @Test
+    public void testGrow()
+    {
+        int size = AdaptiveMemoryNodemapper.DENSE_MIN + 100;
+        for (int index = 0; index < size; index++)
+        {
+            this.put(index);
+            if (index < AdaptiveMemoryNodemapper.SORTED_MAX + 2 || index == AdaptiveMemoryNodemapper.DENSE_MIN - 1
+                    || index == AdaptiveMemoryNodemapper.DENSE_MIN)
+            {
+                this.check(index + 2);
+            }
+        }
+        this.check(size);
+    }
+
+    /**
+     * Tests that putting a key again, in another case, replaces its value rather than adding a mapping.
+     */
+    @Test
+    public void testReplace()
+    {
+        for (int size : new int[] { 1, 2, 3, AdaptiveMemoryNodemapper.SORTED_MAX + 1,
+                AdaptiveMemoryNodemapper.DENSE_MIN })
+        {
+            for (int index = this._node.size(); index < size; index++)
+            {
+                this.put(index);
+            }
+            this._node.put(key(0).toUpperCase(), "replaced");
+            this._model.put(key(0), "replaced");
+            this.check(size);
+            this.put(0);
+        }
+    }
+
+    /**
+     * Tests that mappings can still be found as others are removed, before and after the node is compacted (which
+     * moves it back down through the representations).
+     */
+    @Test
+    public void testShrink()
+    {
+        int size = AdaptiveMemoryNodemapper.DENSE_MIN + 100;
+        for (int index = 0; index < size; index++)
+        {
+            this.put(index);
+        }
+        int[] sizes = { AdaptiveMemoryNodemapper.DENSE_MIN - 1, 100, AdaptiveMemoryNodemapper.SORTED_MAX, 2, 1, 0 };
+        int remaining = size;
+        for (int target : sizes)
+        {
+            while (remaining > target)
+            {
+                this.remove(--remaining);
+            }
+            this.check(size);
+            this._node.compact();
+            this.check(size);
+        }
+        // A compacted node can grow again.
+        for (int index = 0; index < AdaptiveMemoryNodemapper.SORTED_MAX * 2; index++)
+        {
+            this.put(index);
+        }
+        this.check(size);
+    }
+
+    /**
+     * Tests random puts, removes and compactions at each size, so that removals from the middle of probe sequences in
+     * the hash tables are covered.
+     */
+    @Test
+    public void testRandom()
+    {
+        Random random = new Random(42);
+        for (int range : new int[] { 4, AdaptiveMemoryNodemapper.SORTED_MAX * 2, 200,
+                AdaptiveMemoryNodemapper.DENSE_MIN * 2 })
+        {
+            this._node = new AdaptiveMemoryNodemapper();
+            this._model = new NonOptimalMemoryNodemapper();
+            for (int step = 0; step < range * 4; step++)
+            {
+                int index = random.nextInt(range);
+                int action = random.nextInt(10);
+                if (action < 6)
+                {
+                    this.put(index);
+                }
+                else if (action < 9)
+                {
+                    if (this._model.containsKey(key(index)))
+                    {
+                        this.remove(index);
+                    }
+                }
+                else
+                {
+                    this._node.compact();
+                }
+            }
+            this.check(range);
+        }
+    }
+}
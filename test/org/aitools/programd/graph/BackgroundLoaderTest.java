@@ -0,0 +1,203 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.util.resource.Filesystem;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link BackgroundLoader} and the {@link StagedLoad}s it publishes: that repeated learns are folded together,
+ * that an unchanged file is not loaded again, that a file is published all at once under the Core's lock, and that a
+ * learn waits no longer than it is allowed.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class BackgroundLoaderTest
+{
+    private static final Logger LOGGER = Logger.getLogger("programd");
+
+    private static final String TESTBOT_ID = "TestBot";
+
+    private Core _core;
+
+    private List<File> _files = new ArrayList<File>();
+
+    /**
+     * Creates a core with an empty bot.
+     */
+    @Before
+    public void setUp()
+    {
+        this._core = new Core(Filesystem.getWorkingDirectory(), new ProgrammaticCoreSettings());
+        this._core.addBot(new Bot(TESTBOT_ID, this._core.getSettings()));
+    }
+
+    /**
+     * Shuts the core down and deletes the AIML files.
+     */
+    @After
+    public void tearDown()
+    {
+        this._core.shutdown();
+        for (File file : this._files)
+        {
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes an AIML file with a category for each of the given patterns.
+     */
+    private URL writeAIML(String... patterns) throws IOException
+    {
+        File file = File.createTempFile("background-loader-test", ".aiml");
+        this._files.add(file);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<aiml version=\"1.0.1\" xmlns=\"http://alicebot.org/2001/AIML-1.0.1\">\n");
+        for (String pattern : patterns)
+        {
+            out.write(String.format("<category><pattern>%s</pattern><template>Yes.</template></category>\n",
+                    pattern));
+        }
+        out.write("</aiml>\n");
+        out.close();
+        return file.toURI().toURL();
+    }
+
+    private static void awaitLoaded(BackgroundLoader loader, long count) throws InterruptedException
+    {
+        for (int wait = 0; wait < 500 && loader.getLoadedCount() < count; wait++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(count, loader.getLoadedCount());
+    }
+
+    /**
+     * Tests that a learn of a file already waiting to be loaded for the same bot is folded into the waiting one, and
+     * that the file is then loaded once.
+     * @throws Exception
+     */
+    @Test
+    public void testRepeatedLearnIsFolded() throws Exception
+    {
+        BackgroundLoader loader = new BackgroundLoader(this._core, 4, 0, LOGGER);
+        URL path = this.writeAIML("ONE", "TWO");
+        // While the Core's lock is held, the first learn cannot be published, so it is still waiting.
+        synchronized (this._core)
+        {
+            loader.learn(path, TESTBOT_ID);
+            loader.learn(path, TESTBOT_ID);
+            assertEquals(1, loader.getCoalescedCount());
+        }
+        awaitLoaded(loader, 1);
+        assertEquals(2, this._core.getGraphmapper().getCategoryCount());
+        loader.shutdown();
+    }
+
+    /**
+     * Tests that a learn of a local file already loaded, and not changed since, is skipped, and that one of a file
+     * changed since is not.
+     * @throws Exception
+     */
+    @Test
+    public void testUnchangedFileIsSkipped() throws Exception
+    {
+        BackgroundLoader loader = new BackgroundLoader(this._core, 4, 5000, LOGGER);
+        URL path = this.writeAIML("ONE");
+        loader.learn(path, TESTBOT_ID);
+        assertEquals(1, loader.getLoadedCount());
+        loader.learn(path, TESTBOT_ID);
+        assertEquals(1, loader.getSkippedCount());
+        assertEquals(1, loader.getLoadedCount());
+
+        File file = this._files.get(0);
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        loader.learn(path, TESTBOT_ID);
+        assertEquals(1, loader.getSkippedCount());
+        assertEquals(2, loader.getLoadedCount());
+        assertEquals(1, this._core.getGraphmapper().getCategoryCount());
+        loader.shutdown();
+    }
+
+    /**
+     * Tests that a file read in the background is not published while the Core's lock is held, and that it is then
+     * published whole.
+     * @throws Exception
+     */
+    @Test
+    public void testPublishedUnderCoreLock() throws Exception
+    {
+        BackgroundLoader loader = new BackgroundLoader(this._core, 4, 0, LOGGER);
+        URL path = this.writeAIML("ONE", "TWO", "THREE");
+        Graphmapper graphmapper = this._core.getGraphmapper();
+        synchronized (this._core)
+        {
+            loader.learn(path, TESTBOT_ID);
+            // Give the loader time to read the file; it must still wait for the lock to publish it.
+            Thread.sleep(500);
+            assertEquals(0, graphmapper.getCategoryCount());
+            assertEquals(0, loader.getLoadedCount());
+        }
+        awaitLoaded(loader, 1);
+        synchronized (this._core)
+        {
+            assertEquals(3, graphmapper.getCategoryCount());
+        }
+        loader.shutdown();
+    }
+
+    /**
+     * Tests that a learn whose file cannot be read in time returns after the configured wait, and that the file is
+     * loaded afterward.
+     * @throws Exception
+     */
+    @Test
+    public void testLearnWaitIsBounded() throws Exception
+    {
+        BackgroundLoader loader = new BackgroundLoader(this._core, 4, 200, LOGGER);
+        URL first = this.writeAIML("ONE");
+        URL second = this.writeAIML("TWO");
+        synchronized (this._core)
+        {
+            // The first file is read and published on this thread; the loader's own thread is then left waiting
+            // for the lock, so the second file cannot be read until it is released.
+            loader.learn(first, TESTBOT_ID);
+            assertEquals(1, loader.getLoadedCount());
+            long start = System.currentTimeMillis();
+            loader.learn(second, TESTBOT_ID);
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue(String.valueOf(elapsed), elapsed >= 150);
+            assertTrue(String.valueOf(elapsed), elapsed < 2000);
+            assertEquals(1, this._core.getGraphmapper().getCategoryCount());
+        }
+        awaitLoaded(loader, 2);
+        assertEquals(2, this._core.getGraphmapper().getCategoryCount());
+        loader.shutdown();
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.programd.util.NoMatchException;
+import org.aitools.util.db.FakeDriver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CachedDBGraphmapper} (and the {@link DBBulkLoader} through which it loads files) against a
+ * {@link FakeGraphDatabase}, checking in particular that the caches are emptied whenever the graph changes.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class CachedDBGraphmapperTest extends GraphmapperTest
+{
+    private static int databases = 0;
+
+    /**
+     * A fake database that, once told to, adds a category while the edges of the root are being fetched.
+     */
+    private class ChangingDatabase extends FakeGraphDatabase
+    {
+        boolean changing = false;
+
+        ChangingDatabase()
+        {
+            // Nothing to do.
+        }
+
+        @Override
+        public List<Object[]> execute(String sql, List<Object> p, List<Integer> keys) throws SQLException
+        {
+            List<Object[]> result = super.execute(sql, p, keys);
+            if (this.changing && sql.startsWith("select from_node_id, label, to_node_id from edge")
+                    && p.get(0).equals(this.nodes.first()))
+            {
+                this.changing = false;
+                CachedDBGraphmapperTest test = CachedDBGraphmapperTest.this;
+                test._graphmapper.addCategory("GOODBYE", "*", "*", "goodbye", test._testBot, BASE_URL);
+            }
+            return result;
+        }
+    }
+
+    private FakeGraphDatabase _database;
+
+    /**
+     * Creates a core whose graph lives in a new fake database, and the test bot.
+     * @see org.aitools.programd.graph.GraphmapperTest#setUp()
+     */
+    @Override
+    @Before
+    public void setUp()
+    {
+        this.start(new FakeGraphDatabase(), 2);
+    }
+
+    /**
+     * Creates a core whose graph lives in the given fake database, keeping the given number of levels pinned, and the
+     * test bot.
+     */
+    private void start(FakeGraphDatabase database, int pinnedDepth)
+    {
+        this._database = database;
+        ProgrammaticCoreSettings settings = new ProgrammaticCoreSettings();
+        settings.setDatabaseDriver(FakeDriver.class.getName());
+        settings.setDatabaseURI(FakeDriver.register("graph" + databases++, this._database));
+        settings.setDatabaseMinIdle(0);
+        settings.setDatabaseMaxActive(4);
+        settings.setGraphmapperImplementation(CachedDBGraphmapper.class.getName());
+        settings.setGraphmapperPinnedDepth(pinnedDepth);
+        this._core = new Core(BASE_URL, settings);
+        this._testBot = new Bot(TESTBOT_ID, this._core.getSettings());
+        this._core.addBot(this._testBot);
+        this._graphmapper = this._core.getGraphmapper();
+    }
+
+    /**
+     * Deletes the AIML files written by the test.
+     * @see org.aitools.programd.graph.GraphmapperTest#tearDown()
+     */
+    @Override
+    @After
+    public void tearDown()
+    {
+        this.deleteFiles();
+    }
+
+    /**
+     * Tests that matching the same input again is answered from the caches.
+     * @throws Exception
+     */
+    @Test
+    public void testRepeatedMatchIsCached() throws Exception
+    {
+        this._graphmapper.load(this.writeAIML("HELLO THERE", "first", "HELLO *", "second"), TESTBOT_ID);
+        assertTrue(this.match("hello there").contains("first"));
+        int edgeQueries = this._database.edgeQueries.get();
+        int templateQueries = this._database.templateQueries.get();
+        assertTrue(this.match("hello there").contains("first"));
+        assertTrue(this.match("Hello There").contains("first"));
+        assertEquals(edgeQueries, this._database.edgeQueries.get());
+        assertEquals(templateQueries, this._database.templateQueries.get());
+    }
+
+    /**
+     * Tests that a file loaded after the caches were filled can be matched.
+     * @throws Exception
+     */
+    @Test
+    public void testLoadInvalidatesCache() throws Exception
+    {
+        this._graphmapper.load(this.writeAIML("HELLO", "hello"), TESTBOT_ID);
+        assertTrue(this.match("hello").contains("hello"));
+        try
+        {
+            this.match("goodbye");
+            fail("Matched a category that has not been loaded.");
+        }
+        catch (NoMatchException e)
+        {
+            // This is expected.
+        }
+        this._graphmapper.load(this.writeAIML("GOODBYE", "goodbye"), TESTBOT_ID);
+        assertTrue(this.match("goodbye").contains("goodbye"));
+        assertTrue(this.match("hello").contains("hello"));
+    }
+
+    /**
+     * Tests that the categories of an unloaded file can no longer be matched, though they had been cached.
+     * @throws Exception
+     */
+    @Test
+    public void testUnloadInvalidatesCache() throws Exception
+    {
+        URL hello = this.writeAIML("HELLO", "hello");
+        URL goodbye = this.writeAIML("GOODBYE", "goodbye");
+        this._graphmapper.load(hello, TESTBOT_ID);
+        this._graphmapper.load(goodbye, TESTBOT_ID);
+        assertTrue(this.match("goodbye").contains("goodbye"));
+        assertTrue(this.match("hello").contains("hello"));
+        this._graphmapper.unload(goodbye, this._testBot);
+        try
+        {
+            this.match("goodbye");
+            fail("Matched a category from an unloaded file.");
+        }
+        catch (NoMatchException e)
+        {
+            // This is expected.
+        }
+        assertTrue(this.match("hello").contains("hello"));
+    }
+
+    /**
+     * Tests that a path-identical category loaded later is merged (by the default policy, combining), that the cached
+     * template is not used after that, and that the replaced template is not left behind.
+     * @throws Exception
+     */
+    @Test
+    public void testMergeReplacesTemplate() throws Exception
+    {
+        this._graphmapper.load(this.writeAIML("HELLO", "first"), TESTBOT_ID);
+        assertTrue(this.match("hello").contains("first"));
+        this._graphmapper.load(this.writeAIML("HELLO", "second", "HELLO", "third"), TESTBOT_ID);
+        String template = this.match("hello");
+        assertTrue(template, template.contains("first"));
+        assertTrue(template, template.contains("second"));
+        assertTrue(template, template.contains("third"));
+        assertEquals(0, this._database.orphanedTemplates());
+        assertEquals(1, this._database.templates.size());
+    }
+
+    /**
+     * Tests that the pinned depth is the number of levels below the root that are kept: with a depth of 2, the edges
+     * of the root and of its children are pinned, and no more.
+     * @throws Exception
+     */
+    @Test
+    public void testPinnedDepth() throws Exception
+    {
+        this._graphmapper.load(this.writeAIML("HELLO THERE", "hello"), TESTBOT_ID);
+        int edgeQueries = this._database.edgeQueries.get();
+        assertTrue(this.match("hello there").contains("hello"));
+        String report = this._graphmapper.getCategoryReport();
+        assertTrue(report, report.contains(" 2 nodes pinned"));
+        // One query for each pinned level, and one for each of the other nodes on the path.
+        assertEquals(2 + 6, this._database.edgeQueries.get() - edgeQueries);
+    }
+
+    /**
+     * Tests that the edges of a node, fetched while the graph was being changed, are not kept in the cache after the
+     * change, so that what was added meanwhile can be matched.
+     * @throws Exception
+     */
+    @Test
+    public void testFetchDuringChangeIsNotCached() throws Exception
+    {
+        ChangingDatabase database = new ChangingDatabase();
+        this.start(database, 0);
+        this._graphmapper.load(this.writeAIML("HELLO", "hello"), TESTBOT_ID);
+        database.changing = true;
+        assertTrue(this.match("hello").contains("hello"));
+        assertTrue(this.match("goodbye").contains("goodbye"));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.util.db.FakeDriver;
+import org.aitools.util.resource.Filesystem;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DBBulkLoader} (through a {@link SlowDBGraphmapper}) against a {@link FakeGraphDatabase}: that the
+ * ids of a file's new nodes and templates are reserved in one block per table, that its rows are sent in batches, and
+ * that the reserved ids never collide with those of rows added otherwise.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class DBBulkLoaderTest
+{
+    private static final String TESTBOT_ID = "TestBot";
+
+    private static int databases = 0;
+
+    private FakeGraphDatabase _database;
+
+    private Core _core;
+
+    private Bot _bot;
+
+    private Graphmapper _graphmapper;
+
+    private List<File> _files = new ArrayList<File>();
+
+    /**
+     * Creates a core whose graph lives in the given fake database, and the test bot.
+     */
+    private void start(FakeGraphDatabase database)
+    {
+        this._database = database;
+        ProgrammaticCoreSettings settings = new ProgrammaticCoreSettings();
+        settings.setDatabaseDriver(FakeDriver.class.getName());
+        settings.setDatabaseURI(FakeDriver.register("bulk" + databases++, database));
+        settings.setDatabaseMinIdle(0);
+        settings.setDatabaseMaxActive(4);
+        settings.setGraphmapperImplementation(SlowDBGraphmapper.class.getName());
+        this._core = new Core(Filesystem.getWorkingDirectory(), settings);
+        this._bot = new Bot(TESTBOT_ID, this._core.getSettings());
+        this._core.addBot(this._bot);
+        this._graphmapper = this._core.getGraphmapper();
+    }
+
+    /**
+     * Shuts the core down and deletes the AIML files written by the test.
+     */
+    @After
+    public void tearDown()
+    {
+        this._core.shutdown();
+        for (File file : this._files)
+        {
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes an AIML file with a category for each of the given patterns, whose template is the pattern in lower case.
+     */
+    private URL writeAIML(String... patterns) throws IOException
+    {
+        File file = File.createTempFile("bulk-loader-test", ".aiml");
+        this._files.add(file);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<aiml version=\"1.0.1\" xmlns=\"http://alicebot.org/2001/AIML-1.0.1\">\n");
+        for (String pattern : patterns)
+        {
+            out.write(String.format("<category><pattern>%s</pattern><template>%s</template></category>\n", pattern,
+                    pattern.toLowerCase()));
+        }
+        out.write("</aiml>\n");
+        out.close();
+        return file.toURI().toURL();
+    }
+
+    private static String[] patterns(String prefix, int count)
+    {
+        String[] result = new String[count];
+        for (int index = 0; index < count; index++)
+        {
+            result[index] = prefix + index + " WORD";
+        }
+        return result;
+    }
+
+    private String match(String input) throws Exception
+    {
+        return this._graphmapper.match(input, "*", "*", TESTBOT_ID).getTemplate();
+    }
+
+    /**
+     * Tests that a file's nodes and templates take their ids from one block per table, and that the number of
+     * statements sent does not grow with the size of the file.
+     * @throws Exception
+     */
+    @Test
+    public void testOneReservationPerFile() throws Exception
+    {
+        this.start(new FakeGraphDatabase());
+        // The bot and the root's first edges now exist, so the next two loads do the same lookups.
+        this._graphmapper.load(this.writeAIML("FIRST"), TESTBOT_ID);
+
+        TreeSet<Integer> before = new TreeSet<Integer>(this._database.nodes);
+        int reservations = this._database.idReservations.get();
+        int roundTrips = this._database.roundTrips.get();
+        this._graphmapper.load(this.writeAIML(patterns("SMALL", 3)), TESTBOT_ID);
+        assertEquals(2, this._database.idReservations.get() - reservations);
+        int small = this._database.roundTrips.get() - roundTrips;
+
+        reservations = this._database.idReservations.get();
+        roundTrips = this._database.roundTrips.get();
+        this._graphmapper.load(this.writeAIML(patterns("LARGE", 60)), TESTBOT_ID);
+        assertEquals(2, this._database.idReservations.get() - reservations);
+        assertEquals(small, this._database.roundTrips.get() - roundTrips);
+
+        // The new nodes of one file have consecutive ids.
+        TreeSet<Integer> added = new TreeSet<Integer>(this._database.nodes.tailSet(before.last(), false));
+        assertEquals(added.size(), added.last().intValue() - added.first().intValue() + 1);
+        assertTrue(this.match("large59 word").contains("large59 word"));
+        assertTrue(this.match("small2 word").contains("small2 word"));
+    }
+
+    /**
+     * Tests that categories added one at a time between loads take ids from the same blocks, so that no id is given
+     * twice (the fake database refuses a duplicate key).
+     * @throws Exception
+     */
+    @Test
+    public void testSingleAddsShareTheBlocks() throws Exception
+    {
+        this.start(new FakeGraphDatabase());
+        this._graphmapper.load(this.writeAIML("ONE", "TWO"), TESTBOT_ID);
+        this._graphmapper.addCategory("SINGLE", "*", "*", "single", this._bot, this._files.get(0).toURI().toURL());
+        this._graphmapper.load(this.writeAIML("THREE"), TESTBOT_ID);
+        assertEquals(Integer.valueOf(this._database.nodes.last().intValue() + 1), this._database.idBlocks.get("node"));
+        assertEquals(Integer.valueOf(this._database.templates.lastKey().intValue() + 1), this._database.idBlocks
+                .get("template"));
+        assertTrue(this.match("single").contains("single"));
+        assertTrue(this.match("three").contains("three"));
+        assertTrue(this.match("one").contains("one"));
+    }
+
+    /**
+     * Tests that ids are reserved above those of rows already in the database, even when no block has been recorded.
+     * @throws Exception
+     */
+    @Test
+    public void testReservationStartsAboveExistingRows() throws Exception
+    {
+        FakeGraphDatabase database = new FakeGraphDatabase();
+        database.nodes.add(Integer.valueOf(40));
+        database.templates.put(Integer.valueOf(70), "left over");
+        this.start(database);
+        this._graphmapper.load(this.writeAIML("HELLO"), TESTBOT_ID);
+        assertEquals(40, database.nodes.first().intValue());
+        assertEquals(Integer.valueOf(41), database.nodes.higher(Integer.valueOf(40)));
+        assertEquals(Integer.valueOf(71), database.templates.higherKey(Integer.valueOf(70)));
+        assertTrue(this.match("hello").contains("hello"));
+    }
+}
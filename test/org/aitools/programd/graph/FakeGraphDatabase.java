@@ -0,0 +1,498 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aitools.util.db.FakeDriver;
+
+/**
+ * An in-memory version of the graph tables of <code>programd-schema.sql</code>, answering just the statements that
+ * {@link SlowDBNodemapper}, {@link SlowDBGraphmapper}, {@link CachedDBGraphmapper} and {@link DBBulkLoader} send.
+ * Labels compare without regard to case, as they do in MySQL. Any other statement fails, so a test notices when the
+ * code starts to send something new.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class FakeGraphDatabase extends FakeDriver.Database
+{
+    /** An edge. */
+    static class Edge
+    {
+        int from;
+
+        String label;
+
+        int to;
+
+        Edge(int from, String label, int to)
+        {
+            this.from = from;
+            this.label = label;
+            this.to = to;
+        }
+    }
+
+    /** The ids of the nodes. */
+    TreeSet<Integer> nodes = new TreeSet<Integer>();
+
+    List<Edge> edges = new ArrayList<Edge>();
+
+    TreeMap<Integer, String> templates = new TreeMap<Integer, String>();
+
+    Map<Integer, String> files = new TreeMap<Integer, String>();
+
+    Map<Integer, String> bots = new TreeMap<Integer, String>();
+
+    /** The next free id of each table, by table (the rows of <code>id_block</code>). */
+    Map<String, Integer> idBlocks = new TreeMap<String, Integer>();
+
+    /** Rows of (node_id, template_id). */
+    List<int[]> nodeTemplates = new ArrayList<int[]>();
+
+    /** Rows of (file_id, node_id). */
+    List<int[]> fileNodes = new ArrayList<int[]>();
+
+    /** Rows of (bot_id, file_id). */
+    List<int[]> botFiles = new ArrayList<int[]>();
+
+    /** Rows of (botidnode_id, file_id). */
+    List<int[]> botidnodeFiles = new ArrayList<int[]>();
+
+    private int _nextID = 1;
+
+    /** How many queries for the outgoing edges of nodes have been run. */
+    final AtomicInteger edgeQueries = new AtomicInteger();
+
+    /** How many queries for templates have been run. */
+    final AtomicInteger templateQueries = new AtomicInteger();
+
+    /** How many blocks of ids have been reserved. */
+    final AtomicInteger idReservations = new AtomicInteger();
+
+    private static int intAt(List<Object> parameters, int index)
+    {
+        return ((Number) parameters.get(index)).intValue();
+    }
+
+    private static String stringAt(List<Object> parameters, int index)
+    {
+        return (String) parameters.get(index);
+    }
+
+    private static List<Object[]> rows()
+    {
+        return new ArrayList<Object[]>();
+    }
+
+    private static List<Object[]> row(Object... values)
+    {
+        List<Object[]> result = rows();
+        result.add(values);
+        return result;
+    }
+
+    private int generate(List<Integer> keys)
+    {
+        int id = this._nextID++;
+        keys.add(Integer.valueOf(id));
+        return id;
+    }
+
+    private static Integer find(Map<Integer, String> table, String value)
+    {
+        for (Map.Entry<Integer, String> entry : table.entrySet())
+        {
+            if (entry.getValue().equals(value))
+            {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private static void removeRows(List<int[]> table, int column, int value)
+    {
+        for (Iterator<int[]> rows = table.iterator(); rows.hasNext();)
+        {
+            if (rows.next()[column] == value)
+            {
+                rows.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the templates attached to the given node
+     */
+    private List<Integer> templatesOf(int node)
+    {
+        List<Integer> result = new ArrayList<Integer>();
+        for (int[] row : this.nodeTemplates)
+        {
+            if (row[0] == node)
+            {
+                result.add(Integer.valueOf(row[1]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of templates stored that no node refers to
+     */
+    int orphanedTemplates()
+    {
+        int count = 0;
+        for (Integer id : this.templates.keySet())
+        {
+            boolean used = false;
+            for (int[] row : this.nodeTemplates)
+            {
+                used |= row[1] == id.intValue();
+            }
+            if (!used)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @see org.aitools.util.db.FakeDriver.Database#execute(java.lang.String, java.util.List, java.util.List)
+     */
+    @Override
+    @SuppressWarnings("boxing")
+    public List<Object[]> execute(String sql, List<Object> p, List<Integer> keys) throws SQLException
+    {
+        // Reading the graph.
+        if (sql.equals("select min(id) from node"))
+        {
+            return row(this.nodes.isEmpty() ? null : this.nodes.first());
+        }
+        if (sql.startsWith("select from_node_id, label, to_node_id from edge where from_node_id in ("))
+        {
+            this.edgeQueries.incrementAndGet();
+            List<Object[]> result = rows();
+            for (Edge edge : this.edges)
+            {
+                if (p.contains(edge.from))
+                {
+                    result.add(new Object[] { edge.from, edge.label, edge.to });
+                }
+            }
+            return result;
+        }
+        if (sql.equals("select label, to_node_id from edge where from_node_id = ?"))
+        {
+            this.edgeQueries.incrementAndGet();
+            List<Object[]> result = rows();
+            for (Edge edge : this.edges)
+            {
+                if (edge.from == intAt(p, 0))
+                {
+                    result.add(new Object[] { edge.label, edge.to });
+                }
+            }
+            return result;
+        }
+        if (sql.equals("select to_node_id from edge where from_node_id = ? and label = ?")
+                || sql.equals("select 1 from edge where from_node_id = ? and label = ?"))
+        {
+            for (Edge edge : this.edges)
+            {
+                if (edge.from == intAt(p, 0) && edge.label.equalsIgnoreCase(stringAt(p, 1)))
+                {
+                    return row(sql.startsWith("select 1") ? 1 : edge.to);
+                }
+            }
+            return rows();
+        }
+        if (sql.equals("select from_node_id from edge where to_node_id = ?"))
+        {
+            for (Edge edge : this.edges)
+            {
+                if (edge.to == intAt(p, 0))
+                {
+                    return row(edge.from);
+                }
+            }
+            return rows();
+        }
+        if (sql.equals("select count(from_node_id) from edge where from_node_id = ?"))
+        {
+            int count = 0;
+            for (Edge edge : this.edges)
+            {
+                if (edge.from == intAt(p, 0))
+                {
+                    count++;
+                }
+            }
+            return row(count);
+        }
+        if (sql.startsWith("select text from template inner join node_template")
+                || sql.startsWith("select template.id, template.text from template inner join node_template"))
+        {
+            this.templateQueries.incrementAndGet();
+            List<Object[]> result = rows();
+            for (Integer id : this.templatesOf(intAt(p, 0)))
+            {
+                result.add(sql.startsWith("select text") ? new Object[] { this.templates.get(id) } : new Object[] {
+                        id, this.templates.get(id) });
+            }
+            return result;
+        }
+        if (sql.startsWith("select file.path from file_node inner join file"))
+        {
+            List<Object[]> result = rows();
+            for (int[] row : this.fileNodes)
+            {
+                if (row[1] == intAt(p, 0))
+                {
+                    result.add(new Object[] { this.files.get(row[0]) });
+                }
+            }
+            return result;
+        }
+        if (sql.startsWith("select botidnode_id from botidnode_file inner join file"))
+        {
+            Integer file = find(this.files, stringAt(p, 0));
+            List<Object[]> result = rows();
+            for (int[] row : this.botidnodeFiles)
+            {
+                if (file != null && row[1] == file.intValue())
+                {
+                    result.add(new Object[] { row[0] });
+                }
+            }
+            return result;
+        }
+        if (sql.startsWith("select bot.label from bot_file inner join file"))
+        {
+            Integer file = find(this.files, stringAt(p, 0));
+            List<Object[]> result = rows();
+            for (int[] row : this.botFiles)
+            {
+                if (file != null && row[1] == file.intValue())
+                {
+                    result.add(new Object[] { this.bots.get(row[0]) });
+                }
+            }
+            return result;
+        }
+        if (sql.equals("select template_id from node_template where node_id = ?"))
+        {
+            List<Object[]> result = rows();
+            for (Integer id : this.templatesOf(intAt(p, 0)))
+            {
+                result.add(new Object[] { id });
+            }
+            return result;
+        }
+        if (sql.startsWith("select file.path from bot_file inner join file"))
+        {
+            Integer bot = find(this.bots, stringAt(p, 0));
+            List<Object[]> result = rows();
+            for (int[] row : this.botFiles)
+            {
+                if (bot != null && row[0] == bot.intValue())
+                {
+                    result.add(new Object[] { this.files.get(row[1]) });
+                }
+            }
+            return result;
+        }
+        if (sql.equals("select 1 from file where path = ?"))
+        {
+            return find(this.files, stringAt(p, 0)) == null ? rows() : row(1);
+        }
+        if (sql.startsWith("select 1 from file inner join bot_file"))
+        {
+            Integer file = find(this.files, stringAt(p, 0));
+            Integer bot = find(this.bots, stringAt(p, 1));
+            for (int[] row : this.botFiles)
+            {
+                if (file != null && bot != null && row[0] == bot.intValue() && row[1] == file.intValue())
+                {
+                    return row(1);
+                }
+            }
+            return rows();
+        }
+        if (sql.equals("select id from file where path = ?") || sql.equals("select id from bot where label = ?"))
+        {
+            Integer id = find(sql.contains("file") ? this.files : this.bots, stringAt(p, 0));
+            return id == null ? rows() : row(id);
+        }
+
+        if (sql.equals("select next_id from id_block where name = ? for update"))
+        {
+            this.idReservations.incrementAndGet();
+            Integer next = this.idBlocks.get(stringAt(p, 0));
+            return next == null ? rows() : row(next);
+        }
+        if (sql.equals("select max(id) from node") || sql.equals("select max(id) from template"))
+        {
+            Integer max = null;
+            if (sql.endsWith("node"))
+            {
+                max = this.nodes.isEmpty() ? null : this.nodes.last();
+            }
+            else if (!this.templates.isEmpty())
+            {
+                max = this.templates.lastKey();
+            }
+            return row(max);
+        }
+
+        // Changing the graph.
+        if (sql.equals("insert into id_block (name, next_id) values (?, ?)"))
+        {
+            if (this.idBlocks.containsKey(stringAt(p, 0)))
+            {
+                throw new SQLException("Duplicate key in id_block.");
+            }
+            this.idBlocks.put(stringAt(p, 0), intAt(p, 1));
+            return null;
+        }
+        if (sql.equals("update id_block set next_id = ? where name = ?"))
+        {
+            this.idBlocks.put(stringAt(p, 1), intAt(p, 0));
+            return null;
+        }
+        if (sql.equals("insert into node (id) values (?)"))
+        {
+            if (!this.nodes.add(intAt(p, 0)))
+            {
+                throw new SQLException("Duplicate key in node.");
+            }
+            return null;
+        }
+        if (sql.equals("insert into template (id, text) values (?, ?)"))
+        {
+            if (this.templates.containsKey(intAt(p, 0)))
+            {
+                throw new SQLException("Duplicate key in template.");
+            }
+            this.templates.put(intAt(p, 0), stringAt(p, 1));
+            return null;
+        }
+        if (sql.equals("insert into file (path) values (?)"))
+        {
+            this.files.put(this.generate(keys), stringAt(p, 0));
+            return null;
+        }
+        if (sql.equals("insert into bot (label) values (?)"))
+        {
+            this.bots.put(this.generate(keys), stringAt(p, 0));
+            return null;
+        }
+        if (sql.equals("insert into edge (from_node_id, label, to_node_id) values (?, ?, ?)"))
+        {
+            if (!this.nodes.contains(intAt(p, 0)) || !this.nodes.contains(intAt(p, 2)))
+            {
+                throw new SQLException("Foreign key violation on edge.");
+            }
+            this.edges.add(new Edge(intAt(p, 0), stringAt(p, 1), intAt(p, 2)));
+            return null;
+        }
+        if (sql.equals("insert into node_template (node_id, template_id) values (?, ?)"))
+        {
+            if (!this.templates.containsKey(intAt(p, 1)))
+            {
+                throw new SQLException("Foreign key violation on node_template.");
+            }
+            this.nodeTemplates.add(new int[] { intAt(p, 0), intAt(p, 1) });
+            return null;
+        }
+        if (sql.equals("update node_template set template_id = ? where node_id = ?"))
+        {
+            for (int[] row : this.nodeTemplates)
+            {
+                if (row[0] == intAt(p, 1))
+                {
+                    row[1] = intAt(p, 0);
+                }
+            }
+            return null;
+        }
+        if (sql.equals("delete from template where id = ? and not exists "
+                + "(select * from node_template where template_id = ?)"))
+        {
+            for (int[] row : this.nodeTemplates)
+            {
+                if (row[1] == intAt(p, 1))
+                {
+                    return null;
+                }
+            }
+            this.templates.remove(intAt(p, 0));
+            return null;
+        }
+        if (sql.equals("insert into file_node (file_id, node_id) values (?, ?)"))
+        {
+            this.fileNodes.add(new int[] { intAt(p, 0), intAt(p, 1) });
+            return null;
+        }
+        if (sql.equals("delete from file_node where node_id = ?"))
+        {
+            removeRows(this.fileNodes, 1, intAt(p, 0));
+            return null;
+        }
+        if (sql.equals("insert into bot_file (bot_id, file_id) values (?, ?)"))
+        {
+            this.botFiles.add(new int[] { intAt(p, 0), intAt(p, 1) });
+            return null;
+        }
+        if (sql.equals("delete from bot_file where bot_id = ? and file_id = ?"))
+        {
+            for (Iterator<int[]> rows = this.botFiles.iterator(); rows.hasNext();)
+            {
+                int[] row = rows.next();
+                if (row[0] == intAt(p, 0) && row[1] == intAt(p, 1))
+                {
+                    rows.remove();
+                }
+            }
+            return null;
+        }
+        if (sql.equals("insert into botidnode_file (botidnode_id, file_id) values (?, ?)"))
+        {
+            this.botidnodeFiles.add(new int[] { intAt(p, 0), intAt(p, 1) });
+            return null;
+        }
+        if (sql.equals("delete from edge where from_node_id = ? and to_node_id = ?"))
+        {
+            for (Iterator<Edge> iterator = this.edges.iterator(); iterator.hasNext();)
+            {
+                Edge edge = iterator.next();
+                if (edge.from == intAt(p, 0) && edge.to == intAt(p, 1))
+                {
+                    iterator.remove();
+                }
+            }
+            return null;
+        }
+        if (sql.startsWith("truncate "))
+        {
+            return null;
+        }
+        throw new SQLException("Statement not supported by the fake graph database: " + sql);
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.aitools.util.runtime.UserError;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link FileGraphStore}: what is committed can be read back, after closing and opening the store again and after
+ * opening it without closing (as after a crash); what is rolled back cannot; and a damaged store is either recovered to
+ * its last commit or refused.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class FileGraphStoreTest
+{
+    private static final Logger LOGGER = Logger.getLogger("programd");
+
+    private static final byte[] CATALOG = { 1, 2, 3 };
+
+    private File _directory;
+
+    private FileGraphStore _store;
+
+    /** The nodes of the small graph written by {@link #build()}. */
+    private int _hello, _there, _star;
+
+    /**
+     * Creates an empty store in a new directory.
+     * @throws IOException
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        this._directory = File.createTempFile("file-graph-store", "");
+        assertTrue(this._directory.delete());
+        this._store = new FileGraphStore(this._directory, false, LOGGER);
+    }
+
+    /**
+     * Closes the store and deletes its directory.
+     */
+    @After
+    public void tearDown()
+    {
+        if (this._store != null && !this._store.inTransaction())
+        {
+            try
+            {
+                this._store.close();
+            }
+            catch (RuntimeException e)
+            {
+                // Already closed.
+            }
+        }
+        File[] files = this._directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        this._directory.delete();
+    }
+
+    /**
+     * Writes (and commits) the graph <code>HELLO THERE</code> and <code>HELLO *</code>, with a template at each end.
+     */
+    private void build()
+    {
+        FileGraphStore store = this._store;
+        store.begin();
+        this._hello = store.newNode(FileGraphStore.ROOT);
+        store.putEdge(FileGraphStore.ROOT, store.createLabel("HELLO"), this._hello);
+        this._there = store.newNode(this._hello);
+        store.putEdge(this._hello, store.createLabel("THERE"), this._there);
+        this._star = store.newNode(this._hello);
+        store.putEdge(this._hello, store.createLabel("*"), this._star);
+        store.setTemplate(this._there, store.putStrings("<template>hi</template>", "file:/a.aiml"));
+        store.setTemplate(this._star, store.putStrings("<template>hello</template>", "file:/b.aiml"));
+        store.setHeight(this._hello, 1);
+        store.commit(CATALOG);
+    }
+
+    /**
+     * Checks that the store holds what {@link #build()} wrote.
+     */
+    private static void check(FileGraphStore store, int hello, int there, int star)
+    {
+        assertEquals(hello, store.getChild(FileGraphStore.ROOT, store.getLabel("HELLO")));
+        assertEquals(there, store.getChild(hello, store.getLabel("THERE")));
+        assertEquals(star, store.getChild(hello, store.getLabel("*")));
+        assertEquals(2, store.getEdgeCount(hello));
+        assertEquals(hello, store.getParent(there));
+        assertEquals(1, store.getHeight(hello));
+        assertEquals(FileGraphStore.NO_RECORD, store.getTemplate(hello));
+        assertEquals(Arrays.asList("<template>hi</template>", "file:/a.aiml"), Arrays.asList(store.getStrings(store
+                .getTemplate(there))));
+        assertEquals(Arrays.asList("<template>hello</template>", "file:/b.aiml"), Arrays.asList(store
+                .getStrings(store.getTemplate(star))));
+        assertTrue(Arrays.equals(CATALOG, store.getCatalog()));
+    }
+
+    private void reopen()
+    {
+        this._store.close();
+        this._store = new FileGraphStore(this._directory, false, LOGGER);
+    }
+
+    private File file(String name)
+    {
+        return new File(this._directory, name);
+    }
+
+    /**
+     * Tests that what is committed can be read back, and that labels are found in any case.
+     */
+    @Test
+    public void testRoundTrip()
+    {
+        this.build();
+        check(this._store, this._hello, this._there, this._star);
+        assertEquals(this._store.getLabel("HELLO"), this._store.getLabel("Hello"));
+        assertEquals("HELLO", this._store.getWord(this._store.getLabel("hello")));
+        this._store.begin();
+        long record = this._store.putInts(new int[] { 7, -1, Integer.MAX_VALUE });
+        this._store.commit(CATALOG);
+        assertTrue(Arrays.equals(new int[] { 7, -1, Integer.MAX_VALUE }, this._store.getInts(record)));
+    }
+
+    /**
+     * Tests that what is committed is there after the store is closed and opened again, and that the store can still be
+     * changed.
+     */
+    @Test
+    public void testReopen()
+    {
+        this.build();
+        this.reopen();
+        check(this._store, this._hello, this._there, this._star);
+        this._store.begin();
+        int goodbye = this._store.newNode(FileGraphStore.ROOT);
+        this._store.putEdge(FileGraphStore.ROOT, this._store.createLabel("GOODBYE"), goodbye);
+        this._store.commit(CATALOG);
+        this.reopen();
+        assertEquals(goodbye, this._store.getChild(FileGraphStore.ROOT, this._store.getLabel("GOODBYE")));
+        assertEquals(this._hello, this._store.getChild(FileGraphStore.ROOT, this._store.getLabel("HELLO")));
+    }
+
+    /**
+     * Tests that what is committed is there when the store is opened without having been closed, from its log.
+     */
+    @Test
+    public void testReopenWithoutClose()
+    {
+        this.build();
+        assertTrue(this._store.getLogSize() > 0);
+        FileGraphStore recovered = new FileGraphStore(this._directory, false, LOGGER);
+        check(recovered, this._hello, this._there, this._star);
+        assertEquals(4, recovered.getNodeCount());
+        assertEquals(0, recovered.getLogSize());
+        recovered.close();
+    }
+
+    /**
+     * Tests that what is rolled back is gone, including new labels, and is not written at the next commit.
+     */
+    @Test
+    public void testRollback()
+    {
+        this.build();
+        this._store.begin();
+        int goodbye = this._store.newNode(FileGraphStore.ROOT);
+        this._store.putEdge(FileGraphStore.ROOT, this._store.createLabel("GOODBYE"), goodbye);
+        this._store.setTemplate(this._there, FileGraphStore.NO_RECORD);
+        this._store.removeEdge(this._hello, this._store.getLabel("*"));
+        this._store.rollback();
+        check(this._store, this._hello, this._there, this._star);
+        assertEquals(4, this._store.getNodeCount());
+        assertEquals(FileGraphStore.NO_LABEL, this._store.getLabel("GOODBYE"));
+        this._store.begin();
+        this._store.commit(CATALOG);
+        this.reopen();
+        check(this._store, this._hello, this._there, this._star);
+    }
+
+    /**
+     * Tests that a transaction only partly written to the log (as when a commit is cut short) is discarded, and that
+     * transactions committed after that are not lost.
+     * @throws IOException
+     */
+    @Test
+    public void testTornLogRecordIsDiscarded() throws IOException
+    {
+        this.build();
+        this._store.close();
+        RandomAccessFile wal = new RandomAccessFile(this.file("wal"), "rw");
+        wal.seek(wal.length());
+        wal.writeInt(1000);
+        wal.writeLong(0);
+        wal.write(new byte[10]);
+        wal.close();
+
+        this._store = new FileGraphStore(this._directory, false, LOGGER);
+        check(this._store, this._hello, this._there, this._star);
+        // Commits are appended to the log, so the torn record must be cut off before any are.
+        assertEquals(0, this._store.getLogSize());
+        this._store.begin();
+        int goodbye = this._store.newNode(FileGraphStore.ROOT);
+        this._store.putEdge(FileGraphStore.ROOT, this._store.createLabel("GOODBYE"), goodbye);
+        this._store.commit(CATALOG);
+
+        // Open without closing, so that the new transaction can only come from the log.
+        FileGraphStore recovered = new FileGraphStore(this._directory, false, LOGGER);
+        assertEquals(5, recovered.getNodeCount());
+        assertEquals(goodbye, recovered.getChild(FileGraphStore.ROOT, recovered.getLabel("GOODBYE")));
+        check(recovered, this._hello, this._there, this._star);
+        recovered.close();
+    }
+
+    /**
+     * Tests that a log record whose checksum does not match is not applied.
+     * @throws IOException
+     */
+    @Test
+    public void testCorruptLogRecordIsDiscarded() throws IOException
+    {
+        this.build();
+        this._store.begin();
+        int goodbye = this._store.newNode(FileGraphStore.ROOT);
+        this._store.putEdge(FileGraphStore.ROOT, this._store.createLabel("GOODBYE"), goodbye);
+        this._store.commit(new byte[] { 9 });
+        long length = this._store.getLogSize();
+        assertTrue(length > 0);
+        RandomAccessFile wal = new RandomAccessFile(this.file("wal"), "rw");
+        wal.seek(length - 1);
+        int last = wal.read();
+        wal.seek(length - 1);
+        wal.write(last ^ 0xFF);
+        wal.close();
+
+        FileGraphStore recovered = new FileGraphStore(this._directory, false, LOGGER);
+        // The catalog is only ever taken from a record that checks out.
+        assertTrue(Arrays.equals(CATALOG, recovered.getCatalog()));
+        recovered.close();
+    }
+
+    /**
+     * Tests that a directory whose node file is not a graph store is refused.
+     * @throws IOException
+     */
+    @Test
+    public void testNotAStore() throws IOException
+    {
+        this.build();
+        this._store.close();
+        this._store = null;
+        RandomAccessFile nodes = new RandomAccessFile(this.file("nodes"), "rw");
+        nodes.seek(0);
+        nodes.writeInt(0x12345678);
+        nodes.close();
+        try
+        {
+            new FileGraphStore(this._directory, false, LOGGER);
+            fail("Opened a store with the wrong magic number.");
+        }
+        catch (UserError e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains("does not hold a graph store"));
+        }
+    }
+
+    /**
+     * Tests that a store whose heap has been truncated is refused, rather than failing later when a template is read.
+     * @throws IOException
+     */
+    @Test
+    public void testTruncatedHeapIsRefused() throws IOException
+    {
+        this.truncate("heap");
+    }
+
+    /**
+     * Tests that a store whose label file has been truncated is refused.
+     * @throws IOException
+     */
+    @Test
+    public void testTruncatedLabelsAreRefused() throws IOException
+    {
+        this.truncate("labels");
+    }
+
+    private void truncate(String name) throws IOException
+    {
+        this.build();
+        this._store.close();
+        this._store = null;
+        RandomAccessFile file = new RandomAccessFile(this.file(name), "rw");
+        file.setLength(file.length() / 2);
+        file.close();
+        try
+        {
+            new FileGraphStore(this._directory, false, LOGGER);
+            fail(String.format("Opened a store with a truncated %s file.", name));
+        }
+        catch (UserError e)
+        {
+            assertTrue(e.getMessage(), e.getMessage().contains("damaged"));
+        }
+    }
+
+    /**
+     * Tests that erasing a store on opening leaves only the root.
+     */
+    @Test
+    public void testErase()
+    {
+        this.build();
+        this._store.close();
+        this._store = new FileGraphStore(this._directory, true, LOGGER);
+        assertEquals(1, this._store.getNodeCount());
+        assertEquals(FileGraphStore.NO_LABEL, this._store.getLabel("HELLO"));
+        assertEquals(0, this._store.getCatalog().length);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.programd.util.NoMatchException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link FileGraphmapper}, in particular that the graph it keeps on disk can be matched again by a new Core.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class FileGraphmapperTest extends GraphmapperTest
+{
+    private File _store;
+
+    /**
+     * Creates a core whose graph lives in a new store, and the test bot.
+     * @see org.aitools.programd.graph.GraphmapperTest#setUp()
+     */
+    @Override
+    @Before
+    public void setUp()
+    {
+        try
+        {
+            this._store = File.createTempFile("file-graphmapper", "");
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        assertTrue(this._store.delete());
+        this.start(true);
+    }
+
+    /**
+     * Shuts the core down and deletes the store and the AIML files.
+     * @see org.aitools.programd.graph.GraphmapperTest#tearDown()
+     */
+    @Override
+    @After
+    public void tearDown()
+    {
+        this._core.shutdown();
+        ((FileGraphmapper) this._graphmapper).close();
+        this.deleteFiles();
+        File[] files = this._store.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        this._store.delete();
+    }
+
+    /**
+     * Starts a core on the store.
+     */
+    private void start(boolean resetGraph)
+    {
+        ProgrammaticCoreSettings settings = new ProgrammaticCoreSettings();
+        settings.setGraphmapperImplementation(FileGraphmapper.class.getName());
+        try
+        {
+            settings.setGraphmapperFileStore(this._store.toURI().toURL());
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        settings.setResetGraph(resetGraph);
+        this._core = new Core(BASE_URL, settings);
+        this._testBot = new Bot(TESTBOT_ID, this._core.getSettings());
+        this._core.addBot(this._testBot);
+        this._graphmapper = this._core.getGraphmapper();
+    }
+
+    /**
+     * Shuts down the core and starts a new one on the same store.
+     */
+    private void restart(boolean resetGraph)
+    {
+        this._core.shutdown();
+        ((FileGraphmapper) this._graphmapper).close();
+        this.start(resetGraph);
+    }
+
+    private void assertNoMatch(String input)
+    {
+        try
+        {
+            this.match(input);
+            fail(String.format("Matched \"%s\".", input));
+        }
+        catch (NoMatchException e)
+        {
+            // This is expected.
+        }
+    }
+
+    /**
+     * Tests that a graph kept between runs matches as it did, without the file being read again.
+     * @throws Exception
+     */
+    @Test
+    public void testGraphIsKeptBetweenRuns() throws Exception
+    {
+        URL path = this.writeAIML("HELLO THERE", "first", "HELLO *", "second", "_ THERE", "third");
+        this._graphmapper.load(path, TESTBOT_ID);
+        int nodes = ((FileGraphmapper) this._graphmapper).getNodeCount();
+        this.restart(false);
+        assertEquals(3, this._graphmapper.getCategoryCount());
+        assertEquals(nodes, ((FileGraphmapper) this._graphmapper).getNodeCount());
+        assertTrue(this.match("hello there").contains("third"));
+        assertTrue(this.match("hello you").contains("second"));
+
+        // Loading the unmodified file again does not add anything.
+        this._graphmapper.load(path, TESTBOT_ID);
+        assertEquals(3, this._graphmapper.getCategoryCount());
+        assertEquals(nodes, ((FileGraphmapper) this._graphmapper).getNodeCount());
+    }
+
+    /**
+     * Tests that a graph is discarded when the core starts with <code>reset-graph</code> on.
+     * @throws Exception
+     */
+    @Test
+    public void testResetGraph() throws Exception
+    {
+        this._graphmapper.load(this.writeAIML("HELLO", "hello"), TESTBOT_ID);
+        this.restart(true);
+        this.assertNoMatch("hello");
+        assertEquals(0, this._graphmapper.getCategoryCount());
+    }
+
+    /**
+     * Tests that unloading is kept between runs.
+     * @throws Exception
+     */
+    @Test
+    public void testUnloadIsKept() throws Exception
+    {
+        URL hello = this.writeAIML("HELLO", "hello");
+        URL goodbye = this.writeAIML("GOODBYE", "goodbye");
+        this._graphmapper.load(hello, TESTBOT_ID);
+        this._graphmapper.load(goodbye, TESTBOT_ID);
+        this._graphmapper.unload(goodbye, this._testBot);
+        this.assertNoMatch("goodbye");
+        this.restart(false);
+        this.assertNoMatch("goodbye");
+        assertTrue(this.match("hello").contains("hello"));
+    }
+
+    /**
+     * Tests that a file that cannot be read to the end adds nothing to the graph.
+     * @throws Exception
+     */
+    @Test
+    public void testBrokenFileAddsNothing() throws Exception
+    {
+        File file = File.createTempFile("graphmapper-test", ".aiml");
+        this._files.add(file);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<aiml version=\"1.0.1\" xmlns=\"http://alicebot.org/2001/AIML-1.0.1\">\n");
+        out.write("<category><pattern>HELLO</pattern><template>hello</template></category>\n");
+        out.write("<category><pattern>GOODBYE</pattern><template>goodbye");
+        out.close();
+        this._graphmapper.load(file.toURI().toURL(), TESTBOT_ID);
+        this.assertNoMatch("hello");
+        this.restart(false);
+        this.assertNoMatch("hello");
+    }
+}
@@ -11,7 +11,15 @@ package org.aitools.programd.graph;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.aitools.programd.Bot;
 import org.aitools.programd.Core;
@@ -40,6 +48,9 @@ abstract public class GraphmapperTest
     
     protected Graphmapper _graphmapper;
     
+    /** AIML files written by a test (deleted by {@link #deleteFiles()}). */
+    protected List<File> _files = new ArrayList<File>();
+    
     /**
      *
      */
@@ -61,6 +72,237 @@ abstract public class GraphmapperTest
     @After
     abstract public void tearDown();
 
+    /**
+     * Writes an AIML file holding one category per pair of pattern and template.
+     * 
+     * @param categories patterns and templates, alternately
+     * @return the URL of the file
+     * @throws IOException
+     */
+    protected URL writeAIML(String... categories) throws IOException
+    {
+        List<String[]> list = new ArrayList<String[]>();
+        for (int index = 0; index < categories.length; index += 2)
+        {
+            list.add(new String[] { categories[index], "*", "*", categories[index + 1] });
+        }
+        return this.writeAIML(list);
+    }
+
+    /**
+     * Writes an AIML file holding the given categories.
+     * 
+     * @param categories each a pattern, that, topic and template
+     * @return the URL of the file
+     * @throws IOException
+     */
+    protected URL writeAIML(List<String[]> categories) throws IOException
+    {
+        File file = File.createTempFile("graphmapper-test", ".aiml");
+        this._files.add(file);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<aiml version=\"1.0.1\" xmlns=\"http://alicebot.org/2001/AIML-1.0.1\">\n");
+        for (String[] category : categories)
+        {
+            out.write(String.format("<topic name=\"%s\"><category><pattern>%s</pattern><that>%s</that>"
+                    + "<template>%s</template></category></topic>\n", category[2], category[0], category[1],
+                    category[3]));
+        }
+        out.write("</aiml>\n");
+        out.close();
+        return file.toURI().toURL();
+    }
+
+    /**
+     * Deletes the files written by {@link #writeAIML(String...)}.
+     */
+    protected void deleteFiles()
+    {
+        for (File file : this._files)
+        {
+            file.delete();
+        }
+        this._files.clear();
+    }
+
+    /**
+     * Matches the given input (with any that and topic) for the test bot.
+     * 
+     * @param input
+     * @return the template matched
+     * @throws NoMatchException
+     */
+    protected String match(String input) throws NoMatchException
+    {
+        return this._graphmapper.match(input, "*", "*", TESTBOT_ID).getTemplate();
+    }
+
+    /**
+     * Matches the given input, that and topic for the test bot.
+     * 
+     * @param input
+     * @param that
+     * @param topic
+     * @return the match
+     * @throws NoMatchException
+     */
+    protected Match match(String input, String that, String topic) throws NoMatchException
+    {
+        return this._graphmapper.match(input, that, topic, TESTBOT_ID);
+    }
+
+    /**
+     * Adds a category for the test bot.
+     * 
+     * @param pattern
+     * @param that
+     * @param topic
+     * @param template
+     */
+    protected void add(String pattern, String that, String topic, String template)
+    {
+        this._graphmapper.addCategory(pattern, that, topic, template, this._testBot, BASE_URL);
+    }
+
+    /**
+     * Tests that at each word <code>_</code> is tried first, then the word itself, then <code>*</code>, and that a
+     * branch that fails further on gives way to the next.
+     * @throws NoMatchException
+     */
+    @Test
+    public void testWildcardPrecedence() throws NoMatchException
+    {
+        this.add("A B", null, null, "word");
+        this.add("A *", null, null, "star");
+        this.add("A _", null, null, "underscore");
+        this.add("C D", null, null, "word");
+        this.add("C *", null, null, "star");
+        this.add("E F", null, null, "word");
+        this.add("_ F", null, null, "underscore");
+        this.add("* F", null, null, "star");
+        this.add("G * I", null, null, "star");
+        this.add("G H", null, null, "word");
+        assertEquals("underscore", this.match("a b"));
+        assertEquals("word", this.match("c d"));
+        assertEquals("star", this.match("c e"));
+        assertEquals("star", this.match("c d e"));
+        assertEquals("underscore", this.match("e f"));
+        assertEquals("underscore", this.match("x f"));
+        assertEquals("star", this.match("g h i"));
+        assertEquals("word", this.match("g h"));
+        assertEquals(Arrays.asList("h"), this.match("g h i", "*", "*").getInputStars());
+        try
+        {
+            this.match("g");
+            fail("Matched a category with more words than the input.");
+        }
+        catch (NoMatchException e)
+        {
+            // This is expected.
+        }
+    }
+
+    /**
+     * Tests that the that and topic are matched after the pattern, a literal before <code>*</code>, and that their
+     * wildcards are caught.
+     * @throws NoMatchException
+     */
+    @Test
+    public void testThatAndTopic() throws NoMatchException
+    {
+        this.add("YES", null, null, "yes");
+        this.add("YES", "DO YOU LIKE CHEESE", null, "cheese");
+        this.add("YES", "DO YOU LIKE *", null, "like");
+        this.add("YES", null, "FOOD", "food");
+        this.add("YES", "DO YOU LIKE CHEESE", "FOOD", "cheese food");
+        assertEquals("yes", this.match("yes", "what", "*").getTemplate());
+        assertEquals("cheese", this.match("yes", "Do you like cheese", "*").getTemplate());
+        Match match = this.match("yes", "do you like bread", "*");
+        assertEquals("like", match.getTemplate());
+        assertEquals(Arrays.asList("bread"), match.getThatStars());
+        assertEquals("food", this.match("yes", "what", "food").getTemplate());
+        assertEquals("cheese food", this.match("yes", "do you like cheese", "food").getTemplate());
+        // The that is matched before the topic.
+        assertEquals("like", this.match("yes", "do you like bread", "food").getTemplate());
+        assertEquals("yes", this.match("yes", "*", "*").getTemplate());
+    }
+
+    /**
+     * Tests that unloading a file removes its categories and leaves those of other files, including ones that share
+     * part of their path.
+     * @throws Exception
+     */
+    @Test
+    public void testUnload() throws Exception
+    {
+        URL first = this.writeAIML("HELLO", "hello", "HELLO THERE", "hello there", "GOOD *", "good");
+        URL second = this.writeAIML("HELLO YOU", "hello you", "GOOD MORNING", "good morning");
+        this._graphmapper.load(first, TESTBOT_ID);
+        this._graphmapper.load(second, TESTBOT_ID);
+        assertTrue(this.match("good morning").contains("good morning"));
+        this._graphmapper.unload(first, this._testBot);
+        assertTrue(this.match("hello you").contains("hello you"));
+        assertTrue(this.match("good morning").contains("good morning"));
+        for (String input : new String[] { "hello", "hello there", "good evening" })
+        {
+            try
+            {
+                this.match(input);
+                fail(String.format("Matched \"%s\" from an unloaded file.", input));
+            }
+            catch (NoMatchException e)
+            {
+                // This is expected.
+            }
+        }
+        this._graphmapper.unload(second, this._testBot);
+        try
+        {
+            this.match("hello you");
+            fail("Matched a category from an unloaded file.");
+        }
+        catch (NoMatchException e)
+        {
+            // This is expected.
+        }
+    }
+
+    /**
+     * Tests that a bot matches only the categories loaded for it, even where a path for another bot would match first,
+     * and that a file loaded again for a second bot is matched for both.
+     * @throws Exception
+     */
+    @Test
+    public void testBots() throws Exception
+    {
+        Bot other = new Bot("OtherBot", this._core.getSettings());
+        this._core.addBot(other);
+        URL shared = this.writeAIML("HELLO *", "hello star");
+        URL own = this.writeAIML("HELLO THERE", "hello there");
+        this._graphmapper.load(shared, TESTBOT_ID);
+        this._graphmapper.load(own, other.getID());
+        assertTrue(this.match("hello there").contains("hello star"));
+        assertTrue(this._graphmapper.match("hello there", "*", "*", other.getID()).getTemplate().contains(
+                "hello there"));
+        try
+        {
+            this._graphmapper.match("hello you", "*", "*", other.getID());
+            fail("Matched a category loaded for another bot.");
+        }
+        catch (NoMatchException e)
+        {
+            // This is expected.
+        }
+
+        this._graphmapper.load(shared, other.getID());
+        assertTrue(this._graphmapper.match("hello you", "*", "*", other.getID()).getTemplate().contains("hello star"));
+        assertTrue(this._graphmapper.match("hello there", "*", "*", other.getID()).getTemplate().contains(
+                "hello there"));
+        assertTrue(this.match("hello you").contains("hello star"));
+        assertTrue(this.match("hello there").contains("hello star"));
+    }
+
     /**
      * Test method for {@link org.aitools.programd.graph.MemoryGraphmapper#addCategory(java.lang.String, java.lang.String, java.lang.String, java.lang.String, org.aitools.programd.Bot, java.net.URL)}.
      */
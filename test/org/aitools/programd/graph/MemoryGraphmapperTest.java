@@ -1,7 +1,30 @@
 package org.aitools.programd.graph;
 
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
 import org.aitools.programd.Bot;
 import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.programd.interfaces.shell.HitsCommand;
+import org.aitools.programd.interfaces.shell.Shell;
+import org.aitools.programd.util.NoMatchException;
+import org.aitools.util.resource.URLTools;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -32,7 +55,478 @@ public class MemoryGraphmapperTest extends GraphmapperTest
     @After
     public void tearDown()
     {
-        // Nothing to do right now.
+        this.deleteFiles();
+    }
+
+    /**
+     * @return the template matched for the input by the given graphmapper, or <code>null</code> if there is no match
+     */
+    private static String matchOrNull(Graphmapper graphmapper, String input)
+    {
+        try
+        {
+            return graphmapper.match(input, "*", "*", TESTBOT_ID).getTemplate();
+        }
+        catch (NoMatchException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Tests that with more bots than there are bits to tell them apart (so that some share a bit), each bot still
+     * matches only its own categories, including after one bot's file has been unloaded.
+     * @throws Exception
+     */
+    @Test
+    public void testManyBots() throws Exception
+    {
+        int count = 70;
+        Bot[] bots = new Bot[count];
+        URL[] paths = new URL[count];
+        for (int index = 0; index < count; index++)
+        {
+            bots[index] = new Bot("Bot" + index, this._core.getSettings());
+            this._core.addBot(bots[index]);
+            paths[index] = this.writeAIML("WHO ARE YOU", "bot " + index, "HELLO *", "hello " + index);
+            this._graphmapper.load(paths[index], bots[index].getID());
+        }
+        this._graphmapper.unload(paths[5], bots[5]);
+        for (int index = 0; index < count; index++)
+        {
+            for (String input : new String[] { "who are you", "hello there" })
+            {
+                String template;
+                try
+                {
+                    template = this._graphmapper.match(input, "*", "*", bots[index].getID()).getTemplate();
+                }
+                catch (NoMatchException e)
+                {
+                    template = null;
+                }
+                if (index == 5)
+                {
+                    assertNull(template);
+                }
+                else
+                {
+                    assertTrue(template, template.contains(" " + index + "<"));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a description of the match for the input by the given graphmapper (template, path and stars), or
+     *         <code>null</code> if there is no match
+     */
+    private static String describe(Graphmapper graphmapper, String input, String that, String topic)
+    {
+        try
+        {
+            Match match = graphmapper.match(input, that, topic, TESTBOT_ID);
+            return String.format("%s %s %s %s %s", match.getTemplate(), match.getPath(), match.getInputStars(), match
+                    .getThatStars(), match.getTopicStars());
+        }
+        catch (NoMatchException e)
+        {
+            return null;
+        }
+    }
+
+    private static String words(Random random, String[] vocabulary, int max)
+    {
+        StringBuilder result = new StringBuilder();
+        int length = 1 + random.nextInt(max);
+        for (int index = 0; index < length; index++)
+        {
+            if (index > 0)
+            {
+                result.append(' ');
+            }
+            result.append(vocabulary[random.nextInt(vocabulary.length)]);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Tests that matches answered by the {@link ExactPathIndex} are the same as those found by walking the graph
+     * (template, path and stars), over random graphs of literal, <code>_</code> and <code>*</code> categories with
+     * thats and topics, and again after some of the categories have been unloaded.
+     */
+    @Test
+    public void testExactIndexMatchesWalk()
+    {
+        String[] patternWords = { "A", "B", "C", "A", "B", "C", "*", "_" };
+        String[] thats = { "*", "*", "A", "B C", "A *", "_ C" };
+        String[] topics = { "*", "*", "A", "B" };
+        String[] inputWords = { "a", "b", "c", "d" };
+        String[] inputThats = { "*", "a", "b c", "a d", "d", "d c" };
+        String[] inputTopics = { "*", "a", "b", "c" };
+        Random random = new Random(7);
+        double answered = 0;
+        for (int graph = 0; graph < 20; graph++)
+        {
+            ProgrammaticCoreSettings settings = new ProgrammaticCoreSettings();
+            settings.setGraphmapperExactIndex(false);
+            Core core = new Core(BASE_URL, settings);
+            Bot bot = new Bot(TESTBOT_ID, core.getSettings());
+            core.addBot(bot);
+            Graphmapper walk = core.getGraphmapper();
+
+            this._core = new Core(BASE_URL);
+            this._testBot = new Bot(TESTBOT_ID, this._core.getSettings());
+            this._core.addBot(this._testBot);
+            this._graphmapper = this._core.getGraphmapper();
+
+            URL[] sources = { BASE_URL, walk.getClass().getResource("MemoryGraphmapper.class") };
+            // A _ high in the graph makes most paths ineligible for the index, so half the graphs have none.
+            String[] vocabulary = graph % 2 == 0 ? patternWords : Arrays.copyOf(patternWords, patternWords.length - 1);
+            for (int category = 0; category < 40; category++)
+            {
+                String pattern = words(random, vocabulary, 3);
+                String that = thats[random.nextInt(thats.length)];
+                String topic = topics[random.nextInt(topics.length)];
+                URL source = sources[random.nextInt(2)];
+                String template = "t" + category;
+                walk.addCategory(pattern, that, topic, template, bot, source);
+                this._graphmapper.addCategory(pattern, that, topic, template, this._testBot, source);
+            }
+            for (int round = 0; round < 2; round++)
+            {
+                for (int input = 0; input < 200; input++)
+                {
+                    String words = words(random, inputWords, 4);
+                    String that = inputThats[random.nextInt(inputThats.length)];
+                    String topic = inputTopics[random.nextInt(inputTopics.length)];
+                    assertEquals(String.format("%s:%s:%s", words, that, topic), describe(walk, words, that, topic),
+                            describe(this._graphmapper, words, that, topic));
+                }
+                walk.unload(sources[1], bot);
+                this._graphmapper.unload(sources[1], this._testBot);
+            }
+            answered += ((MemoryGraphmapper) this._graphmapper)._exactPaths.getHitRatio();
+            core.shutdown();
+        }
+        // Make sure that the index was put to the test.
+        assertTrue(answered > 0);
+    }
+
+    /**
+     * Tests that pruning by minimum and maximum height and by required words gives up only on branches that could not
+     * match, by comparing matches (template, path and stars) with those of a {@link FileGraphmapper}, which prunes by
+     * minimum height only, over random graphs with long and short paths, and again after a file has been unloaded and
+     * after it has been loaded again.
+     * @throws Exception
+     */
+    @Test
+    public void testPruningMatchesFileGraphmapper() throws Exception
+    {
+        String[] patternWords = { "A", "B", "C", "D", "E", "A", "B", "*", "_" };
+        String[] thats = { "*", "*", "A", "B C", "A *" };
+        String[] topics = { "*", "*", "A", "B" };
+        String[] inputWords = { "a", "b", "c", "d", "e", "f" };
+        String[] inputThats = { "*", "a", "b c", "a d", "d" };
+        String[] inputTopics = { "*", "a", "b" };
+        Random random = new Random(11);
+        File store = File.createTempFile("memory-graphmapper", "");
+        assertTrue(store.delete());
+        for (int graph = 0; graph < 10; graph++)
+        {
+            ProgrammaticCoreSettings settings = new ProgrammaticCoreSettings();
+            settings.setGraphmapperImplementation(FileGraphmapper.class.getName());
+            settings.setGraphmapperFileStore(store.toURI().toURL());
+            settings.setResetGraph(true);
+            Core core = new Core(BASE_URL, settings);
+            Bot bot = new Bot(TESTBOT_ID, core.getSettings());
+            core.addBot(bot);
+            Graphmapper expected = core.getGraphmapper();
+
+            this._core = new Core(BASE_URL);
+            this._testBot = new Bot(TESTBOT_ID, this._core.getSettings());
+            this._core.addBot(this._testBot);
+            this._graphmapper = this._core.getGraphmapper();
+
+            URL[] paths = new URL[2];
+            // Graphmappers differ on which file a merged category belongs to, so no path is used twice.
+            Set<String> used = new HashSet<String>();
+            for (int file = 0; file < 2; file++)
+            {
+                List<String[]> categories = new ArrayList<String[]>();
+                for (int category = 0; category < 30; category++)
+                {
+                    String[] path = { words(random, patternWords, 6), thats[random.nextInt(thats.length)],
+                            topics[random.nextInt(topics.length)] };
+                    if (used.add(Arrays.toString(path)))
+                    {
+                        categories.add(new String[] { path[0], path[1], path[2], "t" + file + "-" + category });
+                    }
+                }
+                paths[file] = this.writeAIML(categories);
+                expected.load(paths[file], TESTBOT_ID);
+                this._graphmapper.load(paths[file], TESTBOT_ID);
+            }
+            for (int round = 0; round < 3; round++)
+            {
+                for (int input = 0; input < 200; input++)
+                {
+                    String words = words(random, inputWords, 8);
+                    String that = inputThats[random.nextInt(inputThats.length)];
+                    String topic = inputTopics[random.nextInt(inputTopics.length)];
+                    assertEquals(String.format("%s:%s:%s", words, that, topic), describe(expected, words, that, topic),
+                            describe(this._graphmapper, words, that, topic));
+                }
+                if (round == 0)
+                {
+                    expected.unload(paths[1], bot);
+                    this._graphmapper.unload(paths[1], this._testBot);
+                }
+                else
+                {
+                    expected.load(paths[1], TESTBOT_ID);
+                    this._graphmapper.load(paths[1], TESTBOT_ID);
+                }
+            }
+            core.shutdown();
+            ((FileGraphmapper) expected).close();
+        }
+        File[] files = store.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        store.delete();
+    }
+
+    /**
+     * Tests that with templates compressed, a template used by two files is matched from each, merged, and kept while
+     * one file that uses it is still loaded.
+     * @throws Exception
+     */
+    @Test
+    public void testPooledTemplates() throws Exception
+    {
+        ProgrammaticCoreSettings settings = new ProgrammaticCoreSettings();
+        settings.setGraphmapperTemplateCompressionMinLength(20);
+        this._core = new Core(BASE_URL, settings);
+        this._testBot = new Bot(TESTBOT_ID, this._core.getSettings());
+        this._core.addBot(this._testBot);
+        this._graphmapper = this._core.getGraphmapper();
+
+        String shared = "I do not know how to answer that just yet.";
+        URL first = this.writeAIML("HELLO", shared, "GOODBYE", shared);
+        URL second = this.writeAIML("HELLO THERE", shared, "GOODBYE", "See you later.");
+        this._graphmapper.load(first, TESTBOT_ID);
+        this._graphmapper.load(second, TESTBOT_ID);
+        assertTrue(this.match("hello").contains(shared));
+        assertTrue(this.match("hello there").contains(shared));
+        String goodbye = this.match("goodbye");
+        assertTrue(goodbye, goodbye.contains(shared) && goodbye.contains("See you later."));
+        assertEquals(2, this._graphmapper.match("goodbye", "*", "*", TESTBOT_ID).getFileNames().size());
+
+        this._graphmapper.unload(first, this._testBot);
+        assertTrue(this.match("hello there").contains(shared));
+        assertEquals(Arrays.asList(second.toExternalForm()), this._graphmapper.match("hello there", "*", "*",
+                TESTBOT_ID).getFileNames());
+        assertNull(matchOrNull(this._graphmapper, "hello"));
+    }
+
+    /**
+     * Tests that the default {@link AdaptiveMemoryNodemapper} matches the same templates as the
+     * {@link TwoOptimalMemoryNodemapper} it replaced, with nodes of every size (the root grows past
+     * {@link AdaptiveMemoryNodemapper#DENSE_MIN}, and <code>HELLO</code> past {@link AdaptiveMemoryNodemapper#SORTED_MAX}),
+     * and again after unloading has shrunk them.
+     * @throws Exception
+     */
+    @Test
+    public void testSameMatchesAsTwoOptimalNodemapper() throws Exception
+    {
+        List<String> big = new ArrayList<String>();
+        List<String> inputs = new ArrayList<String>();
+        for (int index = 0; index < AdaptiveMemoryNodemapper.DENSE_MIN + 100; index++)
+        {
+            big.add("WORD" + index);
+            big.add("word " + index);
+            inputs.add("word" + index);
+        }
+        List<String> small = new ArrayList<String>();
+        for (int index = 0; index < AdaptiveMemoryNodemapper.SORTED_MAX + 4; index++)
+        {
+            small.add("HELLO WORD" + index);
+            small.add("hello word " + index);
+            inputs.add("hello word" + index);
+            inputs.add("Hello Word" + index + " you");
+        }
+        String[] others = { "HELLO *", "hello star", "HELLO THERE", "hello there", "_ THERE", "underscore there",
+                "* YOU", "star you" };
+        for (String other : others)
+        {
+            small.add(other);
+        }
+        String[] extra = { "hello", "hello there", "say there", "hello you", "word5 you", "nothing", "word" };
+        for (String input : extra)
+        {
+            inputs.add(input);
+        }
+        URL bigPath = this.writeAIML(big.toArray(new String[big.size()]));
+        URL smallPath = this.writeAIML(small.toArray(new String[small.size()]));
+
+        ProgrammaticCoreSettings settings = new ProgrammaticCoreSettings();
+        settings.setNodemapperImplementation(TwoOptimalMemoryNodemapper.class.getName());
+        // Make every match walk the graph.
+        settings.setGraphmapperExactIndex(false);
+        Core core = new Core(BASE_URL, settings);
+        Bot bot = new Bot(TESTBOT_ID, core.getSettings());
+        core.addBot(bot);
+        Graphmapper expected = core.getGraphmapper();
+
+        settings = new ProgrammaticCoreSettings();
+        settings.setGraphmapperExactIndex(false);
+        this._core = new Core(BASE_URL, settings);
+        this._testBot = new Bot(TESTBOT_ID, this._core.getSettings());
+        this._core.addBot(this._testBot);
+        this._graphmapper = this._core.getGraphmapper();
+
+        for (Graphmapper graphmapper : new Graphmapper[] { expected, this._graphmapper })
+        {
+            graphmapper.load(bigPath, TESTBOT_ID);
+            graphmapper.load(smallPath, TESTBOT_ID);
+        }
+        assertTrue(matchOrNull(this._graphmapper, "word7").contains("word 7"));
+        for (String input : inputs)
+        {
+            assertEquals(input, matchOrNull(expected, input), matchOrNull(this._graphmapper, input));
+        }
+
+        expected.unload(bigPath, bot);
+        this._graphmapper.unload(bigPath, this._testBot);
+        assertNull(matchOrNull(this._graphmapper, "word7"));
+        for (String input : inputs)
+        {
+            assertEquals(input, matchOrNull(expected, input), matchOrNull(this._graphmapper, input));
+        }
+        core.shutdown();
+    }
+
+    private CategoryHits hitsFor(String pattern)
+    {
+        for (CategoryHits category : this._graphmapper.getCategoryHits(this._testBot))
+        {
+            if (category.getPattern().equals(pattern))
+            {
+                return category;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tests that each match counts a hit for the category matched (and only for it), that the category is described
+     * by its file and its path, and that resetting sets every count back to 0.
+     * @throws Exception
+     */
+    @Test
+    public void testCategoryHits() throws Exception
+    {
+        URL path = this.writeAIML("HELLO", "hello", "HELLO *", "hello star", "GOODBYE", "goodbye");
+        this._graphmapper.load(path, TESTBOT_ID);
+        assertEquals(3, this._graphmapper.getCategoryHits(this._testBot).size());
+        assertEquals(0, this.hitsFor("HELLO").getHits());
+
+        this.match("hello");
+        this.match("hello");
+        this.match("hello there");
+        CategoryHits hello = this.hitsFor("HELLO");
+        assertEquals(2, hello.getHits());
+        assertEquals(path, hello.getSource());
+        assertEquals("*", hello.getThat());
+        assertEquals("*", hello.getTopic());
+        assertEquals("HELLO : * : *", hello.getPath());
+        assertEquals(1, this.hitsFor("HELLO *").getHits());
+        assertEquals(0, this.hitsFor("GOODBYE").getHits());
+
+        this._graphmapper.resetCategoryHits();
+        for (CategoryHits category : this._graphmapper.getCategoryHits(this._testBot))
+        {
+            assertEquals(category.getPath(), 0, category.getHits());
+        }
+        this.match("goodbye");
+        assertEquals(1, this.hitsFor("GOODBYE").getHits());
+    }
+
+    /**
+     * Tests that categories are ordered by hits, most first, and then by file and path, so that those never hit are
+     * last.
+     * @throws Exception
+     */
+    @Test
+    public void testCategoryHitsOrder() throws Exception
+    {
+        this._graphmapper.load(this.writeAIML("ONE", "one", "TWO", "two", "THREE", "three", "FOUR", "four"),
+                TESTBOT_ID);
+        this.match("two");
+        this.match("two");
+        this.match("four");
+        List<CategoryHits> hits = this._graphmapper.getCategoryHits(this._testBot);
+        Collections.sort(hits, CategoryHits.MOST_HITS_FIRST);
+        List<String> patterns = new ArrayList<String>();
+        for (CategoryHits category : hits)
+        {
+            patterns.add(category.getPattern());
+        }
+        assertEquals(Arrays.asList("TWO", "FOUR", "ONE", "THREE"), patterns);
+    }
+
+    /**
+     * Tests the {@link HitsCommand}: that <code>hot</code> lists the categories hit, most first, that
+     * <code>cold</code> lists those never hit, and that <code>dump</code> writes a tab-separated line per category
+     * (hits, file, pattern, that, topic) under a header, most hits first.
+     * @throws Exception
+     */
+    @Test
+    public void testHitsCommand() throws Exception
+    {
+        URL path = this.writeAIML("ONE", "one", "TWO", "two", "THREE", "three");
+        this._graphmapper.load(path, TESTBOT_ID);
+        this.match("two");
+        this.match("two");
+        this.match("one");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream print = new PrintStream(out, true, "UTF-8");
+        Shell shell = new Shell(new ByteArrayInputStream(new byte[0]), print, print, print);
+        shell.attachTo(this._core);
+        shell.switchToBot(TESTBOT_ID);
+        HitsCommand command = new HitsCommand();
+        String file = URLTools.unescape(path);
+
+        out.reset();
+        command.handle("/hits hot 1", shell);
+        assertEquals(String.format("2: TWO : * : * (%s)%n", file), out.toString("UTF-8"));
+
+        out.reset();
+        command.handle("/hits cold", shell);
+        assertEquals(String.format("THREE : * : * (%s)%n", file), out.toString("UTF-8"));
+
+        File dump = new File(this._files.get(0).getPath() + ".hits");
+        this._files.add(dump);
+        command.handle("/hits dump " + dump.getPath(), shell);
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(dump), "UTF-8"));
+        assertEquals("hits\tfile\tpattern\tthat\ttopic", in.readLine());
+        assertEquals("2\t" + file + "\tTWO\t*\t*", in.readLine());
+        assertEquals("1\t" + file + "\tONE\t*\t*", in.readLine());
+        assertEquals("0\t" + file + "\tTHREE\t*\t*", in.readLine());
+        assertNull(in.readLine());
+        in.close();
+
+        command.handle("/hits reset", shell);
+        out.reset();
+        command.handle("/hits hot", shell);
+        assertEquals(String.format("No category has been hit.%n"), out.toString("UTF-8"));
     }
 
     /**
@@ -0,0 +1,135 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.graph;
+
+import static org.junit.Assert.*;
+
+import java.net.URL;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TemplatePool}: that templates and lists of sources are kept once, freed when no longer used, and read
+ * back unchanged whether or not they were compressed.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class TemplatePoolTest
+{
+    private static final String LONG = "<template><random><li>A reply long enough to be compressed.</li>"
+            + "<li>Another reply long enough to be compressed.</li></random></template>";
+
+    private static URL url(String name) throws Exception
+    {
+        return new URL("file:/" + name + ".aiml");
+    }
+
+    private static void assertReport(TemplatePool pool, String expected)
+    {
+        assertTrue(pool.report(), pool.report().startsWith(expected));
+    }
+
+    /**
+     * Tests that the same template from two sources is kept once, with the sources kept apart, and that it is kept
+     * until the last category using it is released.
+     * @throws Exception
+     */
+    @Test
+    public void testSharedTemplate() throws Exception
+    {
+        TemplatePool pool = new TemplatePool(0);
+        TemplatePool.Reference first = pool.add("<template>hi</template>", url("a"));
+        TemplatePool.Reference second = pool.add("<template>hi</template>", url("b"));
+        TemplatePool.Reference other = pool.add("<template>bye</template>", url("a"));
+        assertReport(pool, "2 distinct templates (0 compressed), 2 source files, 2 distinct source lists.");
+        assertEquals("<template>hi</template>", pool.getTemplate(first));
+        assertEquals("<template>hi</template>", pool.getTemplate(second));
+        assertEquals(Arrays.asList("file:/a.aiml"), pool.getFilenames(first));
+        assertEquals(Arrays.asList("file:/b.aiml"), pool.getFilenames(second));
+        // Lists of sources are shared too.
+        assertSame(pool.getFilenames(first), pool.getFilenames(other));
+
+        pool.release(first);
+        assertReport(pool, "2 distinct templates");
+        assertEquals("<template>hi</template>", pool.getTemplate(second));
+        pool.release(second);
+        assertReport(pool, "1 distinct templates");
+        assertEquals("<template>bye</template>", pool.getTemplate(other));
+
+        // A freed number is used again.
+        TemplatePool.Reference again = pool.add("<template>again</template>", url("c"));
+        assertEquals("<template>again</template>", pool.getTemplate(again));
+        assertEquals("<template>bye</template>", pool.getTemplate(other));
+        assertReport(pool, "2 distinct templates");
+    }
+
+    /**
+     * Tests that replacing a template (as merging does) releases the old one, and keeps or replaces the sources.
+     * @throws Exception
+     */
+    @Test
+    public void testReplace() throws Exception
+    {
+        TemplatePool pool = new TemplatePool(0);
+        TemplatePool.Reference old = pool.add("<template>first</template>", url("a"));
+        TemplatePool.Reference combined = pool.replace(old, "<template>both</template>", url("b"), true);
+        assertEquals("<template>both</template>", pool.getTemplate(combined));
+        assertEquals(Arrays.asList("file:/a.aiml", "file:/b.aiml"), pool.getFilenames(combined));
+        assertReport(pool, "1 distinct templates");
+
+        TemplatePool.Reference overwritten = pool.replace(combined, "<template>last</template>", url("c"), false);
+        assertEquals("<template>last</template>", pool.getTemplate(overwritten));
+        assertEquals(Arrays.asList("file:/c.aiml"), pool.getFilenames(overwritten));
+        assertReport(pool, "1 distinct templates");
+    }
+
+    /**
+     * Tests that templates from the minimum length are kept compressed until they are fetched, that they read back
+     * unchanged, and that they are shared like any other.
+     * @throws Exception
+     */
+    @Test
+    public void testCompression() throws Exception
+    {
+        TemplatePool pool = new TemplatePool(40);
+        TemplatePool.Reference first = pool.add(LONG, url("a"));
+        TemplatePool.Reference second = pool.add(LONG, url("b"));
+        TemplatePool.Reference brief = pool.add("<template>hi</template>", url("a"));
+        assertReport(pool, "2 distinct templates (1 compressed)");
+        assertEquals(LONG, pool.getTemplate(first));
+        assertReport(pool, "2 distinct templates (0 compressed)");
+        assertEquals(LONG, pool.getTemplate(second));
+        assertEquals("<template>hi</template>", pool.getTemplate(brief));
+    }
+
+    /**
+     * Tests that a template that is not fetched between two sweeps is compressed again, and one that is, is not.
+     * @throws Exception
+     */
+    @Test
+    public void testSweep() throws Exception
+    {
+        TemplatePool pool = new TemplatePool(40);
+        TemplatePool.Reference idle = pool.add(LONG, url("a"));
+        TemplatePool.Reference busy = pool.add(LONG + " ", url("a"));
+        assertEquals(LONG, pool.getTemplate(idle));
+        assertEquals(LONG + " ", pool.getTemplate(busy));
+        assertReport(pool, "2 distinct templates (0 compressed)");
+        // Fetching marks the template as used; a sweep comes every 100,000 fetches.
+        for (int fetch = 0; fetch < 2 * 100000; fetch++)
+        {
+            pool.getTemplate(busy);
+        }
+        assertReport(pool, "2 distinct templates (1 compressed)");
+        assertEquals(LONG, pool.getTemplate(idle));
+        assertEquals(LONG + " ", pool.getTemplate(busy));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.interpreter;
+
+import static org.junit.Assert.*;
+
+import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.programd.util.Deadline;
+import org.aitools.util.resource.Filesystem;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link RhinoInterpreter} evaluates scripts, and stops those that run past their limits.
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class RhinoInterpreterTest
+{
+    private static final int TIME_LIMIT = 500;
+
+    private static RhinoInterpreter INTERPRETER;
+
+    /**
+     * Creates an interpreter with a short time limit.
+     */
+    @BeforeClass
+    public static void setUpClass()
+    {
+        ProgrammaticCoreSettings settings = new ProgrammaticCoreSettings();
+        settings.setJavascriptInstructionLimit(100000);
+        settings.setJavascriptTimeLimit(TIME_LIMIT);
+        INTERPRETER = new RhinoInterpreter(new Core(Filesystem.getWorkingDirectory(), settings));
+    }
+
+    /**
+     * An ordinary script gives its result.
+     */
+    @Test
+    public void testEvaluate()
+    {
+        assertEquals("a3", INTERPRETER.evaluate("'a' + (1 + 2)"));
+        assertEquals("abc", INTERPRETER.evaluate("var s = 'a'; s + 'bc'"));
+    }
+
+    /**
+     * A loop that makes no lookups is stopped by the time limit.
+     */
+    @Test(timeout = 10000)
+    public void testEmptyLoopIsStopped()
+    {
+        assertEquals("", INTERPRETER.evaluate("for(;;){}"));
+    }
+
+    /**
+     * A loop inside a function, on local variables only, is stopped by the time limit.
+     */
+    @Test(timeout = 10000)
+    public void testLocalLoopIsStopped()
+    {
+        assertEquals("", INTERPRETER.evaluate("(function(){var i=0;while(true){i++}})()"));
+    }
+
+    /**
+     * A loop that looks up global names is stopped by the instruction limit.
+     */
+    @Test(timeout = 10000)
+    public void testGlobalLoopIsStopped()
+    {
+        assertEquals("", INTERPRETER.evaluate("x = 0; while (true) { x++; }", Deadline.NONE));
+    }
+
+    /**
+     * Runaway scripts do not use up the interpreter: scripts still run after several have been stopped.
+     */
+    @Test(timeout = 30000)
+    public void testRunawaysDoNotAccumulate()
+    {
+        for (int index = 0; index <= RhinoInterpreter.MAX_RUNAWAYS; index++)
+        {
+            assertEquals("", INTERPRETER.evaluate("for(;;){}"));
+        }
+        assertEquals("a3", INTERPRETER.evaluate("'a' + (1 + 2)"));
+    }
+
+    /**
+     * The deadline of the reply is passed on to an interpreter that can use it, and one that only implements
+     * {@link Interpreter} is still called.
+     */
+    @Test(timeout = 10000)
+    public void testDeadlineIsPassedOn()
+    {
+        long start = System.currentTimeMillis();
+        assertEquals("", AbstractInterpreter.evaluate(INTERPRETER, "for(;;){}", new Deadline(50)));
+        assertTrue(System.currentTimeMillis() - start < TIME_LIMIT);
+
+        Interpreter plain = new Interpreter()
+        {
+            @Override
+            public String evaluate(String expression)
+            {
+                return "plain " + expression;
+            }
+        };
+        assertEquals("plain 1", AbstractInterpreter.evaluate(plain, "1", new Deadline(50)));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.logging;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aitools.programd.CoreSettings.ChatLogOverflowPolicy;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+/**
+ * Tests {@link ChatLogPipeline}: that records reach every writer, and that a writer that fails is dropped without
+ * stopping the others.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ChatLogPipelineTest
+{
+    private static final Logger LOGGER = Logger.getLogger("programd");
+
+    /**
+     * Keeps the inputs of the records it is given, and fails (if told to) on the given call to {@link #write(List)}.
+     */
+    private static class TestWriter implements ChatLogWriter
+    {
+        List<String> inputs = new ArrayList<String>();
+
+        int failAt;
+
+        RuntimeException failure;
+
+        volatile boolean closed;
+
+        private int _writes;
+
+        TestWriter(int failAt, RuntimeException failure)
+        {
+            this.failAt = failAt;
+            this.failure = failure;
+        }
+
+        @Override
+        public void open()
+        {
+            // Nothing to do.
+        }
+
+        @Override
+        public void write(List<ChatLogRecord> batch) throws IOException
+        {
+            if (++this._writes == this.failAt)
+            {
+                if (this.failure != null)
+                {
+                    throw this.failure;
+                }
+                throw new IOException("Cannot write.");
+            }
+            for (ChatLogRecord record : batch)
+            {
+                this.inputs.add(record.getInput());
+            }
+        }
+
+        @Override
+        public void sync()
+        {
+            // Nothing to do.
+        }
+
+        @Override
+        public void close()
+        {
+            this.closed = true;
+        }
+    }
+
+    private static ChatLogPipeline start(TestWriter... writers)
+    {
+        ChatLogPipeline pipeline = new ChatLogPipeline(Arrays.<ChatLogWriter> asList(writers), 64,
+                ChatLogOverflowPolicy.BLOCK, 1, 0, LOGGER);
+        new Thread(pipeline, "chat log writer").start();
+        return pipeline;
+    }
+
+    private static void log(ChatLogPipeline pipeline, String input) throws InterruptedException
+    {
+        pipeline.log(new ChatLogRecord("bot", "user", input, "reply"));
+        // Wait for the record to be taken, so that each record is a batch of its own.
+        for (int wait = 0; wait < 500 && pipeline.getQueueDepth() > 0; wait++)
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Tests that records reach every writer, and that the writers are closed at shutdown.
+     * @throws Exception
+     */
+    @Test
+    public void testEveryWriter() throws Exception
+    {
+        TestWriter first = new TestWriter(0, null);
+        TestWriter second = new TestWriter(0, null);
+        ChatLogPipeline pipeline = start(first, second);
+        log(pipeline, "one");
+        log(pipeline, "two");
+        pipeline.shutdown();
+        assertEquals(Arrays.asList("one", "two"), first.inputs);
+        assertEquals(Arrays.asList("one", "two"), second.inputs);
+        assertTrue(first.closed);
+        assertTrue(second.closed);
+    }
+
+    /**
+     * Tests that a writer that throws a runtime exception is closed and no longer used, and that the others go on.
+     * @throws Exception
+     */
+    @Test
+    public void testFailingWriterIsDropped() throws Exception
+    {
+        TestWriter failing = new TestWriter(2, new IllegalStateException("Broken."));
+        TestWriter working = new TestWriter(0, null);
+        ChatLogPipeline pipeline = start(failing, working);
+        log(pipeline, "one");
+        log(pipeline, "two");
+        log(pipeline, "three");
+        pipeline.shutdown();
+        assertEquals(Arrays.asList("one"), failing.inputs);
+        assertEquals(Arrays.asList("one", "two", "three"), working.inputs);
+        assertTrue(failing.closed);
+        assertTrue(working.closed);
+        assertEquals(3, pipeline.getWrittenCount());
+    }
+
+    /**
+     * Tests that when every writer has failed (here with an I/O error), the pipeline stops taking records.
+     * @throws Exception
+     */
+    @Test
+    public void testStopsWhenNoWriterIsLeft() throws Exception
+    {
+        TestWriter failing = new TestWriter(1, null);
+        ChatLogPipeline pipeline = start(failing);
+        log(pipeline, "one");
+        for (int wait = 0; wait < 500 && !failing.closed; wait++)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(failing.closed);
+        // With no writer left, records are dropped rather than blocking.
+        for (int record = 0; record < 100; record++)
+        {
+            pipeline.log(new ChatLogRecord("bot", "user", "more", "reply"));
+        }
+        assertTrue(pipeline.getDroppedCount() > 0);
+        pipeline.shutdown();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.logging;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.List;
+
+import org.aitools.util.runtime.UserError;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests {@link ChatLogReader}: that it reads back the records of a log written by {@link XMLChatLogLayout}.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ChatLogReaderTest
+{
+    private static final long TIME = 1234567890123L;
+
+    private File _file;
+
+    /**
+     * Deletes the log written by the test.
+     */
+    @After
+    public void tearDown()
+    {
+        if (this._file != null)
+        {
+            this._file.delete();
+        }
+    }
+
+    private URL write(String text) throws IOException
+    {
+        this._file = File.createTempFile("chat-log-reader-test", ".xml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(this._file), "UTF-8");
+        out.write(text);
+        out.close();
+        return this._file.toURI().toURL();
+    }
+
+    /**
+     * Tests that each record of a log written by {@link XMLChatLogLayout} is read back, in order, with its time, bot,
+     * user, input and reply (markup in the input and reply included).
+     * @throws Exception
+     */
+    @Test
+    public void testReadsXMLChatLogLayout() throws Exception
+    {
+        XMLChatLogLayout layout = new XMLChatLogLayout();
+        StringBuilder log = new StringBuilder(layout.getHeader());
+        log.append(layout.format(new ChatLogEvent(TIME, "TestBot", "ann", "Hello", "Hi <b>Ann</b> & co.")));
+        log.append(layout.format(new ChatLogEvent(TIME + 1500, "TestBot", "bob", "1 < 2?", "")));
+        log.append(layout.format(new ChatLogEvent(TIME + 3000, "OtherBot", "ann", "Bye", "Goodbye.")));
+        log.append(layout.getFooter());
+
+        List<ChatLogRecord> records = ChatLogReader.read(this.write(log.toString()));
+        assertEquals(3, records.size());
+        ChatLogRecord first = records.get(0);
+        assertEquals(TIME, first.getTime());
+        assertEquals("TestBot", first.getBotID());
+        assertEquals("ann", first.getUserID());
+        assertEquals("Hello", first.getInput());
+        assertEquals("Hi <b>Ann</b> & co.", first.getReply());
+        ChatLogRecord second = records.get(1);
+        assertEquals(TIME + 1500, second.getTime());
+        assertEquals("bob", second.getUserID());
+        assertEquals("1 < 2?", second.getInput());
+        assertEquals("", second.getReply());
+        ChatLogRecord third = records.get(2);
+        assertEquals("OtherBot", third.getBotID());
+        assertEquals("Bye", third.getInput());
+    }
+
+    /**
+     * Tests that a record with no bot or no user is skipped, and that one whose time cannot be read is kept with a
+     * time of 0.
+     * @throws Exception
+     */
+    @Test
+    public void testIncompleteRecords() throws Exception
+    {
+        List<ChatLogRecord> records = ChatLogReader.read(this.write("<log>"
+                + "<record><botid>TestBot</botid><input>no user</input><reply/></record>"
+                + "<record><time>yesterday</time><botid>TestBot</botid><userid>ann</userid><input>kept</input>"
+                + "<reply>Yes.</reply></record></log>"));
+        assertEquals(1, records.size());
+        assertEquals("kept", records.get(0).getInput());
+        assertEquals(0, records.get(0).getTime());
+    }
+
+    /**
+     * Tests that a log that is not well-formed (as when it was still being written) is reported as such.
+     * @throws Exception
+     */
+    @Test(expected = UserError.class)
+    public void testNotWellFormed() throws Exception
+    {
+        XMLChatLogLayout layout = new XMLChatLogLayout();
+        ChatLogReader.read(this.write(layout.getHeader()
+                + layout.format(new ChatLogEvent(TIME, "TestBot", "ann", "Hello", "Hi."))));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.logging;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aitools.util.db.DBConnectionManager;
+import org.aitools.util.db.FakeDriver;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link DatabaseChatLogWriter}: that records are inserted in one transaction per batch, and that a failed
+ * insert is rolled back and tried again on a new connection.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class DatabaseChatLogWriterTest
+{
+    private static final Logger LOGGER = Logger.getLogger("programd");
+
+    private static final long TIME = 1234567890000L;
+
+    private static int databases = 0;
+
+    /** The inputs of the rows inserted, whether or not they were committed. */
+    List<String> _executed = new ArrayList<String>();
+
+    /** The timestamps of the rows inserted. */
+    List<Timestamp> _timestamps = new ArrayList<Timestamp>();
+
+    /** The number of times still to fail inserting the row with the input "two". */
+    int _failures;
+
+    private FakeDriver.Database _database;
+
+    private DBConnectionManager _manager;
+
+    /**
+     * Creates a database that fails to insert the row "two" as many times as {@link #_failures} says.
+     */
+    @Before
+    public void setUp()
+    {
+        this._database = new FakeDriver.Database()
+        {
+            @Override
+            public List<Object[]> execute(String sql, List<Object> parameters, List<Integer> keys)
+                    throws SQLException
+            {
+                assertTrue(sql, sql.startsWith("insert into chatlog"));
+                DatabaseChatLogWriterTest test = DatabaseChatLogWriterTest.this;
+                test._timestamps.add((Timestamp) parameters.get(0));
+                if (parameters.get(3).equals("two") && test._failures > 0)
+                {
+                    test._failures--;
+                    throw new SQLException("Connection reset.");
+                }
+                test._executed.add((String) parameters.get(3));
+                return null;
+            }
+        };
+        this._manager = new DBConnectionManager(FakeDriver.class.getName(), FakeDriver.register("chatlog"
+                + databases++, this._database), "", "", 0, 4, 8);
+    }
+
+    private static List<ChatLogRecord> records(String... inputs)
+    {
+        List<ChatLogRecord> records = new ArrayList<ChatLogRecord>();
+        for (String input : inputs)
+        {
+            records.add(new ChatLogRecord(TIME, "bot", "user", input, "reply"));
+        }
+        return records;
+    }
+
+    /**
+     * Tests that a batch is inserted in one transaction, on a connection that is then given back to the pool.
+     */
+    @Test
+    public void testBatchIsCommitted()
+    {
+        DatabaseChatLogWriter writer = new DatabaseChatLogWriter(this._manager, 2, LOGGER);
+        writer.write(records("one"));
+        assertEquals(0, this._database.connections.get());
+        writer.write(records("two"));
+        assertEquals(Arrays.asList("one", "two"), this._executed);
+        // Each row carries the time of its exchange.
+        assertEquals(Arrays.asList(new Timestamp(TIME), new Timestamp(TIME)), this._timestamps);
+        assertEquals(1, this._database.commits.get());
+        assertEquals(0, this._database.rollbacks.get());
+        assertEquals(0, this._manager.getActiveCount());
+        assertEquals(1, this._manager.getIdleCount());
+        writer.close();
+    }
+
+    /**
+     * Tests that a batch that fails part way is rolled back, that the connection is discarded rather than given back,
+     * and that the batch is inserted once on another connection.
+     */
+    @Test
+    public void testFailedBatchIsRolledBackAndRetried()
+    {
+        this._failures = 1;
+        DatabaseChatLogWriter writer = new DatabaseChatLogWriter(this._manager, 3, LOGGER);
+        writer.write(records("one", "two", "three"));
+        assertEquals(1, this._database.rollbacks.get());
+        assertEquals(1, this._database.commits.get());
+        // The first "one" was rolled back; the retry inserted the whole batch again.
+        assertEquals(Arrays.asList("one", "one", "two", "three"), this._executed);
+        assertEquals(2, this._database.connections.get());
+        assertEquals(0, this._manager.getActiveCount());
+        assertEquals(1, this._manager.getIdleCount());
+        assertEquals(0, writer.getDroppedCount());
+        writer.close();
+    }
+
+    /**
+     * Tests that a batch that fails twice is dropped, and that neither connection is kept.
+     */
+    @Test
+    public void testBatchIsDroppedAfterSecondFailure()
+    {
+        this._failures = 2;
+        DatabaseChatLogWriter writer = new DatabaseChatLogWriter(this._manager, 2, LOGGER);
+        writer.write(records("one", "two"));
+        assertEquals(2, writer.getDroppedCount());
+        assertEquals(2, this._database.rollbacks.get());
+        assertEquals(0, this._database.commits.get());
+        assertEquals(0, this._manager.getActiveCount());
+        assertEquals(0, this._manager.getIdleCount());
+        writer.close();
+    }
+}
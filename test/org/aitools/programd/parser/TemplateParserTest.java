@@ -0,0 +1,84 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.parser;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.util.resource.Filesystem;
+import org.jdom.CDATA;
+import org.jdom.Comment;
+import org.jdom.Content;
+import org.jdom.Element;
+import org.jdom.input.SAXBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that a {@link TemplateParser} gives the same result whether it returns a string or appends to an output.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class TemplateParserTest
+{
+    private static final String TESTBOT_ID = "TestBot";
+
+    private Core _core;
+
+    /**
+     * Creates a core with an empty bot.
+     */
+    @Before
+    public void setUp()
+    {
+        this._core = new Core(Filesystem.getWorkingDirectory(), new ProgrammaticCoreSettings());
+        this._core.addBot(new Bot(TESTBOT_ID, this._core.getSettings()));
+    }
+
+    /**
+     * Shuts the core down.
+     */
+    @After
+    public void tearDown()
+    {
+        this._core.shutdown();
+    }
+
+    /**
+     * Tests that text, CDATA, comments, AIML elements and elements from other namespaces are written the same way
+     * to an output as they are returned as a string.
+     * @throws Exception
+     */
+    @Test
+    public void testAppendableMatchesString() throws Exception
+    {
+        String text = "<template xmlns=\"http://alicebot.org/2001/AIML-1.0.1\">One <uppercase>two</uppercase>"
+                + "<!--three--><b xmlns=\"http://www.w3.org/1999/xhtml\">four</b></template>";
+        Element template = new SAXBuilder().build(new StringReader(text)).getRootElement();
+        template.addContent(new CDATA("<five>"));
+        template.addContent(new Comment("six"));
+        @SuppressWarnings("unchecked")
+        List<Content> content = template.getContent();
+
+        TemplateParser parser = new TemplateParser("user", TESTBOT_ID, this._core);
+        String result = parser.evaluate(content);
+        StringBuilder out = new StringBuilder();
+        parser.evaluate(content, out);
+        assertEquals(result, out.toString());
+        assertTrue(result, result.startsWith("One TWO<!--three-->"));
+        assertTrue(result, result.endsWith("four</b><five><!--six-->"));
+    }
+}
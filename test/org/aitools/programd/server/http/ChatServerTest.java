@@ -0,0 +1,351 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.server.http;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.programd.util.ResponseStatistics;
+import org.aitools.util.resource.Filesystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ChatServer} and its {@link ChatHandler} over HTTP.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ChatServerTest
+{
+    private static final String TESTBOT_ID = "TestBot";
+
+    /** A reply long enough to be worth compressing. */
+    private static final String LONG_REPLY;
+    static
+    {
+        StringBuilder reply = new StringBuilder();
+        for (int sentence = 0; sentence < 40; sentence++)
+        {
+            reply.append(sentence > 0 ? " " : "").append("Talk ").append(sentence).append('.');
+        }
+        LONG_REPLY = reply.toString();
+    }
+
+    private Core _core;
+
+    private ChatServer _server;
+
+    private File _file;
+
+    /**
+     * Starts a core with a bot that says hello, and a server on a free port.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this._core = new Core(Filesystem.getWorkingDirectory(), new ProgrammaticCoreSettings());
+        this._core.addBot(new Bot(TESTBOT_ID, this._core.getSettings()));
+        this._file = File.createTempFile("chat-server-test", ".aiml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(this._file), "UTF-8");
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<aiml version=\"1.0.1\" xmlns=\"http://alicebot.org/2001/AIML-1.0.1\">\n");
+        out.write("<category><pattern>HELLO</pattern><template>Hi there.</template></category>\n");
+        out.write(String.format("<category><pattern>TALK</pattern><template>%s</template></category>\n", LONG_REPLY));
+        out.write("</aiml>\n");
+        out.close();
+        this._core.getGraphmapper().load(this._file.toURI().toURL(), TESTBOT_ID);
+        this._server = new ChatServer(this._core, new InetSocketAddress("127.0.0.1", 0), 2, false);
+        this._server.start();
+    }
+
+    /**
+     * Stops the server and the core, and deletes the AIML file.
+     */
+    @After
+    public void tearDown()
+    {
+        this._server.stop(0);
+        this._core.shutdown();
+        this._file.delete();
+    }
+
+    private HttpURLConnection open(String path) throws IOException
+    {
+        return open(this._server, path);
+    }
+
+    private static HttpURLConnection open(ChatServer server, String path) throws IOException
+    {
+        URL url = new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private static String readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1)
+        {
+            body.write(buffer, 0, count);
+        }
+        in.close();
+        return body.toString("UTF-8");
+    }
+
+    /**
+     * Reads one response (which must give its length) from a connection, leaving the connection open.
+     * @return the status line and the body, with the headers (in lower case) between them
+     */
+    private static List<String> readResponse(InputStream in) throws IOException
+    {
+        List<String> response = new ArrayList<String>();
+        StringBuilder line = new StringBuilder();
+        int length = -1;
+        int c;
+        while ((c = in.read()) != -1)
+        {
+            if (c == '\n')
+            {
+                String text = line.toString().trim();
+                line.setLength(0);
+                if (text.length() == 0)
+                {
+                    break;
+                }
+                response.add(response.isEmpty() ? text : text.toLowerCase());
+                if (text.toLowerCase().startsWith("content-length:"))
+                {
+                    length = Integer.parseInt(text.substring(15).trim());
+                }
+            }
+            else
+            {
+                line.append((char) c);
+            }
+        }
+        assertTrue(response.toString(), length >= 0);
+        byte[] body = new byte[length];
+        for (int read = 0; read < length;)
+        {
+            int count = in.read(body, read, length - read);
+            assertTrue(count > 0);
+            read += count;
+        }
+        response.add(new String(body, "UTF-8"));
+        return response;
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException
+    {
+        return readAll(connection.getResponseCode() < 400 ? connection.getInputStream() : connection
+                .getErrorStream());
+    }
+
+    private HttpURLConnection post(String path, byte[] body, boolean chunked) throws IOException
+    {
+        HttpURLConnection connection = this.open(path);
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        if (chunked)
+        {
+            connection.setChunkedStreamingMode(4096);
+        }
+        else
+        {
+            connection.setFixedLengthStreamingMode(body.length);
+        }
+        OutputStream out = connection.getOutputStream();
+        try
+        {
+            out.write(body);
+            out.close();
+        }
+        catch (IOException e)
+        {
+            // The server may refuse the body before it has all been sent.
+        }
+        return connection;
+    }
+
+    /**
+     * Tests that a question asked by GET or POST, as plain text or as JSON, is answered.
+     * @throws Exception
+     */
+    @Test
+    public void testReply() throws Exception
+    {
+        HttpURLConnection connection = this.open("/chat?input=hello&botid=" + TESTBOT_ID);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("Hi there.", read(connection));
+
+        connection = this.post("/chat.json", "input=hello&userid=ann".getBytes("UTF-8"), false);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("{\"botid\":\"TestBot\",\"userid\":\"ann\",\"reply\":\"Hi there.\"}", read(connection));
+    }
+
+    /**
+     * Tests that only the exact path of a context is answered.
+     * @throws Exception
+     */
+    @Test
+    public void testExactPath() throws Exception
+    {
+        for (String path : new String[] { "/chatfoo?input=hello", "/chat/more?input=hello",
+                "/chat.jsonp?input=hello" })
+        {
+            HttpURLConnection connection = this.open(path);
+            assertEquals(path, 404, connection.getResponseCode());
+            read(connection);
+        }
+    }
+
+    /**
+     * Tests that a body longer than the limit is refused, whether or not its length is given in advance, and that a
+     * body at the limit is not.
+     * @throws Exception
+     */
+    @Test
+    public void testBodyTooLarge() throws Exception
+    {
+        byte[] large = new byte[ChatHandler.MAX_BODY_SIZE + 1];
+        Arrays.fill(large, (byte) 'a');
+        HttpURLConnection connection = this.post("/chat", large, false);
+        assertEquals(413, connection.getResponseCode());
+
+        connection = this.post("/chat", large, true);
+        assertEquals(413, connection.getResponseCode());
+
+        byte[] fits = new byte[ChatHandler.MAX_BODY_SIZE];
+        Arrays.fill(fits, (byte) 'a');
+        System.arraycopy("input=hello&x=".getBytes("UTF-8"), 0, fits, 0, 14);
+        connection = this.post("/chat", fits, false);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("Hi there.", read(connection));
+    }
+
+    /**
+     * Tests that a HEAD is refused without asking the Core for a reply (which would change the conversation).
+     * @throws Exception
+     */
+    @Test
+    public void testHeadIsRefused() throws Exception
+    {
+        HttpURLConnection connection = this.open("/chat?input=hello&userid=ann");
+        connection.setRequestMethod("HEAD");
+        assertEquals(405, connection.getResponseCode());
+        assertEquals("GET, POST", connection.getHeaderField("Allow"));
+        assertEquals(0, this._core.getResponseStatistics().getCombinedHistogram(ResponseStatistics.RESPONSE)
+                .getCount());
+
+        connection = this.open("/chat?input=hello&userid=ann");
+        assertEquals(200, connection.getResponseCode());
+        read(connection);
+        assertEquals(1, this._core.getResponseStatistics().getCombinedHistogram(ResponseStatistics.RESPONSE)
+                .getCount());
+    }
+
+    /**
+     * Tests that with compression on, a long reply is compressed for a client that accepts it and not for one that
+     * does not, and that a short reply is never compressed.
+     * @throws Exception
+     */
+    @Test
+    public void testGzipReply() throws Exception
+    {
+        ChatServer server = new ChatServer(this._core, new InetSocketAddress("127.0.0.1", 0), 2, true);
+        server.start();
+        try
+        {
+            HttpURLConnection connection = open(server, "/chat?input=talk");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            assertEquals(200, connection.getResponseCode());
+            assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+            assertEquals("Accept-Encoding", connection.getHeaderField("Vary"));
+            assertTrue(connection.getContentLength() < LONG_REPLY.length());
+            assertEquals(LONG_REPLY, readAll(new GZIPInputStream(connection.getInputStream())));
+
+            connection = open(server, "/chat?input=talk");
+            connection.setRequestProperty("Accept-Encoding", "identity");
+            assertEquals(200, connection.getResponseCode());
+            assertNull(connection.getHeaderField("Content-Encoding"));
+            assertEquals(LONG_REPLY, read(connection));
+
+            connection = open(server, "/chat?input=hello");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            assertEquals(200, connection.getResponseCode());
+            assertNull(connection.getHeaderField("Content-Encoding"));
+            assertEquals("Hi there.", read(connection));
+        }
+        finally
+        {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Tests that two requests (a GET, then a POST) sent one after the other over the same connection are both
+     * answered, each with its length, and that the connection is left open after each.
+     * @throws Exception
+     */
+    @Test
+    public void testKeepAlive() throws Exception
+    {
+        Socket socket = new Socket("127.0.0.1", this._server.getAddress().getPort());
+        try
+        {
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write(("GET /chat?input=hello&userid=ann HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").getBytes("UTF-8"));
+            out.flush();
+            List<String> first = readResponse(in);
+            assertEquals("HTTP/1.1 200 OK", first.get(0));
+            assertFalse(first.toString(), first.contains("connection: close"));
+            assertEquals("Hi there.", first.get(first.size() - 1));
+
+            byte[] body = "input=talk&userid=ann".getBytes("UTF-8");
+            out.write(String.format("POST /chat HTTP/1.1\r\nHost: 127.0.0.1\r\n"
+                    + "Content-Type: application/x-www-form-urlencoded\r\nContent-Length: %d\r\n\r\n",
+                    Integer.valueOf(body.length)).getBytes("UTF-8"));
+            out.write(body);
+            out.flush();
+            List<String> second = readResponse(in);
+            assertEquals("HTTP/1.1 200 OK", second.get(0));
+            assertEquals(LONG_REPLY, second.get(second.size() - 1));
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.server.servlet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.util.resource.Filesystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link GetBotResponseServlet} (with fake requests and responses): that requests wait their turn for the Core,
+ * or get a 503 if they are not allowed to wait that long, and that requests served at once do not see one another's
+ * user or bot.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class GetBotResponseServletTest
+{
+    /**
+     * A call to the servlet, run on a thread of its own, keeping the status and text of the response.
+     */
+    private class Call extends Thread
+    {
+        private String _userid;
+
+        private String _botid;
+
+        private String[] _inputs;
+
+        int status = HttpServletResponse.SC_OK;
+
+        List<String> replies = new ArrayList<String>();
+
+        Throwable failure;
+
+        Call(String userid, String botid, String... inputs)
+        {
+            this._userid = userid;
+            this._botid = botid;
+            this._inputs = inputs;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                for (String input : this._inputs)
+                {
+                    StringWriter text = new StringWriter();
+                    GetBotResponseServletTest.this._servlet.doGet(request(this._userid, this._botid, input),
+                            this.response(text));
+                    this.replies.add(text.toString());
+                }
+            }
+            catch (Throwable e)
+            {
+                this.failure = e;
+            }
+        }
+
+        private HttpServletResponse response(final StringWriter text)
+        {
+            return proxy(HttpServletResponse.class, new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    if (method.getName().equals("getWriter"))
+                    {
+                        return new PrintWriter(text);
+                    }
+                    if (method.getName().equals("sendError"))
+                    {
+                        Call.this.status = ((Integer) args[0]).intValue();
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    private static final String[] BOT_IDS = { "BotA", "BotB" };
+
+    private Core _core;
+
+    private GetBotResponseServlet _servlet;
+
+    private List<File> _files = new ArrayList<File>();
+
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, InvocationHandler handler)
+    {
+        return (T) Proxy.newProxyInstance(GetBotResponseServletTest.class.getClassLoader(), new Class<?>[] { type },
+                handler);
+    }
+
+    static HttpServletRequest request(final String userid, final String botid, final String input)
+    {
+        final HttpSession session = proxy(HttpSession.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                return method.getName().equals("getId") ? userid : null;
+            }
+        });
+        return proxy(HttpServletRequest.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().equals("getSession"))
+                {
+                    return session;
+                }
+                if (method.getName().equals("getParameter"))
+                {
+                    return args[0].equals("botid") ? botid : args[0].equals("input") ? input : null;
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Creates a core with two bots, each of which says which it is and remembers the user's name.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this._core = new Core(Filesystem.getWorkingDirectory(), new ProgrammaticCoreSettings());
+        for (String botid : BOT_IDS)
+        {
+            this._core.addBot(new Bot(botid, this._core.getSettings()));
+            File file = File.createTempFile("get-bot-response-servlet-test", ".aiml");
+            this._files.add(file);
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<aiml version=\"1.0.1\" xmlns=\"http://alicebot.org/2001/AIML-1.0.1\">\n");
+            out.write("<category><pattern>MY NAME IS *</pattern><template><think><set name=\"name\"><star/></set>"
+                    + "</think>OK.</template></category>\n");
+            out.write(String.format("<category><pattern>WHO ARE WE</pattern><template>%s and <get name=\"name\"/>"
+                    + "</template></category>\n", botid));
+            out.write("</aiml>\n");
+            out.close();
+            this._core.getGraphmapper().load(file.toURI().toURL(), botid);
+        }
+    }
+
+    /**
+     * Shuts the core down and deletes the AIML files.
+     */
+    @After
+    public void tearDown()
+    {
+        this._core.shutdown();
+        for (File file : this._files)
+        {
+            file.delete();
+        }
+    }
+
+    /**
+     * Creates the servlet with the given init parameters (name, value, ...).
+     * @throws Exception
+     */
+    private void startServlet(String... parameters) throws Exception
+    {
+        final Map<String, String> values = new HashMap<String, String>();
+        for (int index = 0; index < parameters.length; index += 2)
+        {
+            values.put(parameters[index], parameters[index + 1]);
+        }
+        final Core core = this._core;
+        final ServletContext context = proxy(ServletContext.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                return method.getName().equals("getAttribute") && args[0].equals("core") ? core : null;
+            }
+        });
+        this._servlet = new GetBotResponseServlet();
+        this._servlet.init(proxy(ServletConfig.class, new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().equals("getServletContext"))
+                {
+                    return context;
+                }
+                if (method.getName().equals("getInitParameter"))
+                {
+                    return values.get(args[0]);
+                }
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * Starts a call and waits until it is blocked on the Core's lock (which the caller must hold), having taken the
+     * only turn.
+     */
+    private Call startBlocked(String userid) throws InterruptedException
+    {
+        Call call = new Call(userid, BOT_IDS[0], "who are we");
+        call.start();
+        for (int wait = 0; wait < 500 && call.getState() != Thread.State.BLOCKED; wait++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.BLOCKED, call.getState());
+        return call;
+    }
+
+    /**
+     * Tests that with a <code>response-wait</code>, a request that cannot get a turn in time is answered with 503,
+     * and that the request holding the turn is answered once the Core is free.
+     * @throws Exception
+     */
+    @Test
+    public void testBusyAnswersServiceUnavailable() throws Exception
+    {
+        this.startServlet("max-concurrent-responses", "1", "response-wait", "100");
+        Call first;
+        Call second;
+        synchronized (this._core)
+        {
+            first = this.startBlocked("ann");
+            second = new Call("bob", BOT_IDS[0], "who are we");
+            second.start();
+            second.join(5000);
+            assertFalse(second.isAlive());
+        }
+        first.join(5000);
+        assertNull(first.failure);
+        assertEquals(HttpServletResponse.SC_OK, first.status);
+        assertEquals("BotA and undefined", first.replies.get(0).trim());
+        assertNull(second.failure);
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, second.status);
+        assertEquals("", second.replies.get(0));
+    }
+
+    /**
+     * Tests that by default a request waits as long as it takes for its turn, rather than getting a 503.
+     * @throws Exception
+     */
+    @Test
+    public void testWaitsForTurnByDefault() throws Exception
+    {
+        this.startServlet();
+        Call first;
+        Call second;
+        synchronized (this._core)
+        {
+            first = this.startBlocked("ann");
+            second = new Call("bob", BOT_IDS[0], "who are we");
+            second.start();
+            // Longer than requests used to be allowed to wait.
+            second.join(1500);
+            assertTrue(second.isAlive());
+        }
+        first.join(5000);
+        second.join(5000);
+        for (Call call : new Call[] { first, second })
+        {
+            assertNull(call.failure);
+            assertEquals(HttpServletResponse.SC_OK, call.status);
+            assertEquals("BotA and undefined", call.replies.get(0).trim());
+        }
+    }
+
+    /**
+     * Tests that many requests served at once, for different users and bots, each get the reply of their own bot to
+     * their own user, with no limit on how many are let through.
+     * @throws Exception
+     */
+    @Test
+    public void testRequestStateDoesNotLeak() throws Exception
+    {
+        this.startServlet("max-concurrent-responses", "0");
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Call> calls = new ArrayList<Call>();
+        for (int index = 0; index < 16; index++)
+        {
+            final String[] inputs = new String[10];
+            for (int round = 0; round < inputs.length; round += 2)
+            {
+                inputs[round] = "my name is user" + index + "x" + round;
+                inputs[round + 1] = "who are we";
+            }
+            Call call = new Call("user" + index, BOT_IDS[index % 2], inputs)
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    super.run();
+                }
+            };
+            call.start();
+            calls.add(call);
+        }
+        start.countDown();
+        for (int index = 0; index < calls.size(); index++)
+        {
+            Call call = calls.get(index);
+            call.join(30000);
+            assertNull(call.failure);
+            assertEquals(HttpServletResponse.SC_OK, call.status);
+            for (int round = 0; round < call.replies.size(); round += 2)
+            {
+                assertEquals("OK.", call.replies.get(round).trim());
+                assertEquals(String.format("%s and user%dx%d", BOT_IDS[index % 2], Integer.valueOf(index), Integer
+                        .valueOf(round)), call.replies.get(round + 1).trim());
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.test.replay;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.programd.logging.ChatLogEvent;
+import org.aitools.programd.logging.ChatLogReader;
+import org.aitools.programd.logging.ChatLogRecord;
+import org.aitools.programd.logging.XMLChatLogLayout;
+import org.aitools.util.resource.Filesystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ChatLogReplayer}: that an open-loop replay sends each user's inputs one at a time and in order, that a
+ * closed-loop replay keeps to its rate, and that a recorded log replayed against a Core is reported faithfully.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ChatLogReplayerTest
+{
+    /**
+     * Notes the order in which each user's inputs are sent, and how many are being sent at once (for one user and for
+     * all), taking a while over each.
+     */
+    private static class WatchedReplayer extends ChatLogReplayer
+    {
+        Map<String, List<String>> sent = new HashMap<String, List<String>>();
+
+        Map<String, AtomicInteger> sending = new HashMap<String, AtomicInteger>();
+
+        AtomicInteger sendingAll = new AtomicInteger();
+
+        volatile int mostForOneUser;
+
+        volatile int mostForAll;
+
+        WatchedReplayer(Core core, List<ChatLogRecord> records, int clients, double rate)
+        {
+            super(core, records, null, clients, rate);
+            for (ChatLogRecord record : records)
+            {
+                this.sent.put(record.getUserID(), new ArrayList<String>());
+                this.sending.put(record.getUserID(), new AtomicInteger());
+            }
+        }
+
+        @Override
+        void send(ChatLogRecord record, long due)
+        {
+            int forUser = this.sending.get(record.getUserID()).incrementAndGet();
+            int forAll = this.sendingAll.incrementAndGet();
+            synchronized (this)
+            {
+                this.mostForOneUser = Math.max(this.mostForOneUser, forUser);
+                this.mostForAll = Math.max(this.mostForAll, forAll);
+                this.sent.get(record.getUserID()).add(record.getInput());
+            }
+            try
+            {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            super.send(record, due);
+            this.sendingAll.decrementAndGet();
+            this.sending.get(record.getUserID()).decrementAndGet();
+        }
+    }
+
+    private static final String TESTBOT_ID = "TestBot";
+
+    private Core _core;
+
+    private List<File> _files = new ArrayList<File>();
+
+    /**
+     * Creates a core whose bot answers "hello" and "goodbye".
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this._core = new Core(Filesystem.getWorkingDirectory(), new ProgrammaticCoreSettings());
+        this._core.addBot(new Bot(TESTBOT_ID, this._core.getSettings()));
+        File file = this.createFile(".aiml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<aiml version=\"1.0.1\" xmlns=\"http://alicebot.org/2001/AIML-1.0.1\">\n");
+        out.write("<category><pattern>HELLO</pattern><template>Hi.</template></category>\n");
+        out.write("<category><pattern>GOODBYE</pattern><template>See you.</template></category>\n");
+        out.write("<category><pattern>INPUT *</pattern><template>Yes.</template></category>\n");
+        out.write("</aiml>\n");
+        out.close();
+        this._core.getGraphmapper().load(file.toURI().toURL(), TESTBOT_ID);
+    }
+
+    /**
+     * Shuts the core down and deletes the files written by the test.
+     */
+    @After
+    public void tearDown()
+    {
+        this._core.shutdown();
+        for (File file : this._files)
+        {
+            file.delete();
+        }
+    }
+
+    private File createFile(String suffix) throws IOException
+    {
+        File file = File.createTempFile("chat-log-replayer-test", suffix);
+        this._files.add(file);
+        return file;
+    }
+
+    /**
+     * @return records for the given number of users, taking turns, each with the given number of inputs
+     */
+    private static List<ChatLogRecord> records(int users, int inputs)
+    {
+        List<ChatLogRecord> records = new ArrayList<ChatLogRecord>();
+        for (int input = 0; input < inputs; input++)
+        {
+            for (int user = 0; user < users; user++)
+            {
+                records.add(new ChatLogRecord(TESTBOT_ID, "user" + user, "input " + input, "Yes."));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Tests that in an open-loop replay, inputs that arrive faster than they are answered are queued per user, so that
+     * each user's inputs are sent one at a time and in the order recorded, while different users' are sent at once.
+     */
+    @Test
+    public void testOpenKeepsEachUserInOrder()
+    {
+        List<ChatLogRecord> records = records(3, 6);
+        WatchedReplayer replayer = new WatchedReplayer(this._core, records, 4, 400);
+        ReplayReport report = replayer.run(ChatLogReplayer.Mode.OPEN);
+        assertEquals(records.size(), report.getSentCount());
+        assertEquals(0, report.getErrorCount());
+        assertEquals(0, report.getChangedCount());
+        for (List<String> inputs : replayer.sent.values())
+        {
+            assertEquals(6, inputs.size());
+            for (int input = 0; input < inputs.size(); input++)
+            {
+                assertEquals("input " + input, inputs.get(input));
+            }
+        }
+        assertEquals(1, replayer.mostForOneUser);
+        assertTrue(String.valueOf(replayer.mostForAll), replayer.mostForAll > 1);
+    }
+
+    /**
+     * Tests that a closed-loop replay with a rate sends no faster than that rate, however many clients there are, and
+     * that one without a rate is not held back.
+     */
+    @Test
+    public void testClosedKeepsToRate()
+    {
+        List<ChatLogRecord> records = records(5, 2);
+        ReplayReport report = new ChatLogReplayer(this._core, records, null, 4, 50).run(ChatLogReplayer.Mode.CLOSED);
+        assertEquals(records.size(), report.getSentCount());
+        // Ten inputs at 50 a second: the last may not be sent until 180 ms after the first.
+        assertTrue(String.valueOf(report.getElapsed()), report.getElapsed() >= 170);
+
+        report = new ChatLogReplayer(this._core, records, null, 4, 0).run(ChatLogReplayer.Mode.CLOSED);
+        assertEquals(records.size(), report.getSentCount());
+        assertEquals(0, report.getErrorCount());
+    }
+
+    /**
+     * Tests that an open-loop replay needs a rate.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testOpenNeedsRate()
+    {
+        new ChatLogReplayer(this._core, records(1, 1), null, 1, 0).run(ChatLogReplayer.Mode.OPEN);
+    }
+
+    /**
+     * Tests that a small log, written as the Core writes its chat log and read back, is replayed against the Core,
+     * counting the replies that differ from those recorded and the inputs that matched nothing.
+     * @throws Exception
+     */
+    @Test
+    public void testReplaysRecordedLog() throws Exception
+    {
+        XMLChatLogLayout layout = new XMLChatLogLayout();
+        File log = this.createFile(".xml");
+        Writer out = new OutputStreamWriter(new FileOutputStream(log), "UTF-8");
+        out.write(layout.getHeader());
+        out.write(layout.format(new ChatLogEvent(TESTBOT_ID, "ann", "Hello", "Hi.")));
+        out.write(layout.format(new ChatLogEvent(TESTBOT_ID, "bob", "Hello", "Hi.")));
+        out.write(layout.format(new ChatLogEvent(TESTBOT_ID, "ann", "Goodbye", "Bye.")));
+        out.write(layout.format(new ChatLogEvent(TESTBOT_ID, "bob", "Nothing matches this", "")));
+        out.write(layout.getFooter());
+        out.close();
+
+        List<ChatLogRecord> records = ChatLogReader.read(log.toURI().toURL());
+        assertEquals(4, records.size());
+        ReplayReport report = new ChatLogReplayer(this._core, records, null, 2, 0).run(ChatLogReplayer.Mode.CLOSED);
+        assertEquals(4, report.getSentCount());
+        assertEquals(0, report.getErrorCount());
+        // The reply to "Goodbye" has changed since the log was recorded.
+        assertEquals(1, report.getChangedCount());
+        assertEquals(1, report.getNoMatchCount());
+        assertEquals(4, report.getLatency().getCount());
+        assertTrue(report.summary(), report.summary().startsWith("4 inputs in "));
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link GossipWriter}: batching, rotation, forcing to disk at the sync interval, dropping entries when the queue
+ * is full, and carrying on after the file could not be written.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class GossipWriterTest
+{
+    private static final Logger LOGGER = Logger.getLogger("programd");
+
+    private File _directory;
+
+    private File _file;
+
+    /**
+     * Creates a directory for the gossip file.
+     * @throws IOException
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        this._directory = File.createTempFile("gossip-writer", "");
+        assertTrue(this._directory.delete());
+        assertTrue(this._directory.mkdir());
+        this._file = new File(this._directory, "gossip.txt");
+    }
+
+    /**
+     * Deletes the directory and the files in it.
+     */
+    @After
+    public void tearDown()
+    {
+        delete(this._directory);
+    }
+
+    private static void delete(File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null)
+        {
+            for (File child : files)
+            {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String read(File file) throws IOException
+    {
+        if (!file.exists())
+        {
+            return "";
+        }
+        InputStream in = new FileInputStream(file);
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1)
+        {
+            text.write(buffer, 0, count);
+        }
+        in.close();
+        return text.toString();
+    }
+
+    private static GossipWriter start(GossipWriter writer)
+    {
+        new Thread(writer, "gossip writer").start();
+        return writer;
+    }
+
+    private static void awaitEmpty(GossipWriter writer) throws InterruptedException
+    {
+        for (int wait = 0; wait < 500 && writer.getQueueDepth() > 0; wait++)
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Tests that entries waiting together are written as one batch (of at most 256), in order.
+     * @throws Exception
+     */
+    @Test
+    public void testBatching() throws Exception
+    {
+        GossipWriter writer = new GossipWriter(this._file, 1000, 0, 0, LOGGER);
+        StringBuilder expected = new StringBuilder();
+        for (int entry = 0; entry < 300; entry++)
+        {
+            writer.write(entry + "\n");
+            expected.append(entry).append('\n');
+        }
+        // Once shut down, the writer writes what is queued and returns.
+        writer.shutdown();
+        writer.run();
+        assertEquals(expected.toString(), read(this._file));
+        assertEquals(2, writer.getBatchCount());
+    }
+
+    /**
+     * Tests that the file is renamed with ".1" once it reaches the maximum size, and a new one started.
+     * @throws Exception
+     */
+    @Test
+    public void testRotation() throws Exception
+    {
+        GossipWriter writer = start(new GossipWriter(this._file, 100, 20, 0, LOGGER));
+        writer.write("0123456789\n");
+        awaitEmpty(writer);
+        writer.write("abcdefghij\n");
+        awaitEmpty(writer);
+        writer.write("after\n");
+        writer.shutdown();
+        File rotated = new File(this._directory, "gossip.txt.1");
+        assertEquals("0123456789\nabcdefghij\n", read(rotated));
+        assertEquals("after\n", read(this._file));
+    }
+
+    /**
+     * Tests that written data is forced to disk at the sync interval, and not at all when the interval is 0.
+     * @throws Exception
+     */
+    @Test
+    public void testSyncInterval() throws Exception
+    {
+        GossipWriter syncing = start(new GossipWriter(this._file, 100, 0, 10, LOGGER));
+        syncing.write("one\n");
+        for (int wait = 0; wait < 500 && syncing.getSyncCount() == 0; wait++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(1, syncing.getSyncCount());
+        // Nothing more has been written, so there is nothing more to force.
+        Thread.sleep(600);
+        assertEquals(1, syncing.getSyncCount());
+        syncing.shutdown();
+
+        GossipWriter never = start(new GossipWriter(new File(this._directory, "other.txt"), 100, 0, 0, LOGGER));
+        never.write("one\n");
+        Thread.sleep(600);
+        never.shutdown();
+        assertEquals(0, never.getSyncCount());
+    }
+
+    /**
+     * Tests that entries are dropped (and counted) when the queue is full, and that those queued are written.
+     * @throws Exception
+     */
+    @Test
+    public void testOverflow() throws Exception
+    {
+        GossipWriter writer = new GossipWriter(this._file, 2, 0, 0, LOGGER);
+        for (int entry = 0; entry < 5; entry++)
+        {
+            writer.write(entry + "\n");
+        }
+        assertEquals(3, writer.getDroppedCount());
+        writer.shutdown();
+        writer.run();
+        assertEquals("0\n1\n", read(this._file));
+    }
+
+    /**
+     * Tests that when the file cannot be written, the entries are counted as lost and the writer goes on, writing
+     * the next entries once the file can be opened again.
+     * @throws Exception
+     */
+    @Test
+    public void testRecoversFromFailure() throws Exception
+    {
+        File missing = new File(new File(this._directory, "missing"), "gossip.txt");
+        GossipWriter writer = start(new GossipWriter(missing, 100, 0, 0, LOGGER));
+        writer.write("lost\n");
+        for (int wait = 0; wait < 500 && writer.getLostCount() == 0; wait++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(1, writer.getLostCount());
+        assertTrue(missing.getParentFile().mkdir());
+        writer.write("kept\n");
+        writer.shutdown();
+        assertEquals("kept\n", read(missing));
+        assertEquals(1, writer.getLostCount());
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.aitools.programd.ResponseCallback;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ResponseExecutor}: that a bot at its limit has its responses wait without holding a thread, that each
+ * one finishing hands its place to the next waiting, and that waiting responses are cancelled when they can no longer
+ * be run.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ResponseExecutorTest
+{
+    /**
+     * A response that notes when it starts, and then waits to be let go.
+     */
+    private class Task implements Callable<String>
+    {
+        private String _name;
+
+        CountDownLatch go = new CountDownLatch(1);
+
+        Task(String name)
+        {
+            this._name = name;
+        }
+
+        @Override
+        public String call() throws Exception
+        {
+            ResponseExecutorTest.this._started.add(this._name);
+            assertTrue(this.go.await(10, TimeUnit.SECONDS));
+            if (this._name.startsWith("fail"))
+            {
+                throw new IllegalStateException(this._name);
+            }
+            return this._name;
+        }
+    }
+
+    /**
+     * Keeps what it is told.
+     */
+    private class Callback implements ResponseCallback
+    {
+        @Override
+        public void responded(String response)
+        {
+            ResponseExecutorTest.this._responded.add(response);
+        }
+
+        @Override
+        public void failed(Throwable error)
+        {
+            ResponseExecutorTest.this._failed.add(error.getMessage());
+        }
+    }
+
+    List<String> _started = Collections.synchronizedList(new ArrayList<String>());
+
+    List<String> _responded = Collections.synchronizedList(new ArrayList<String>());
+
+    List<String> _failed = Collections.synchronizedList(new ArrayList<String>());
+
+    private ExecutorService _threads;
+
+    private List<Task> _tasks = new ArrayList<Task>();
+
+    /**
+     * Creates a pool of four threads.
+     */
+    @Before
+    public void setUp()
+    {
+        this._threads = Executors.newFixedThreadPool(4);
+    }
+
+    /**
+     * Lets any task still waiting go, and stops the pool.
+     */
+    @After
+    public void tearDown()
+    {
+        for (Task task : this._tasks)
+        {
+            task.go.countDown();
+        }
+        this._threads.shutdownNow();
+    }
+
+    private Task task(String name)
+    {
+        Task task = new Task(name);
+        this._tasks.add(task);
+        return task;
+    }
+
+    /**
+     * Waits until the given number of responses have been counted as done (which is after their futures are).
+     */
+    private static void awaitDone(ResponseExecutor executor, long count) throws InterruptedException
+    {
+        for (int wait = 0; wait < 500 && executor.getCompletedCount() + executor.getFailedCount() < count; wait++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(count, executor.getCompletedCount() + executor.getFailedCount());
+    }
+
+    /**
+     * Waits until the given responses (and only those) have started, in any order.
+     */
+    private void awaitStarted(String... names) throws InterruptedException
+    {
+        List<String> expected = new ArrayList<String>(Arrays.asList(names));
+        Collections.sort(expected);
+        for (int wait = 0; wait < 500 && this._started.size() < expected.size(); wait++)
+        {
+            Thread.sleep(10);
+        }
+        // Give anything that should not have started the chance to.
+        Thread.sleep(50);
+        List<String> started;
+        synchronized (this._started)
+        {
+            started = new ArrayList<String>(this._started);
+        }
+        Collections.sort(started);
+        assertEquals(expected, started);
+    }
+
+    /**
+     * Tests that a bot at its limit has its further responses wait (without holding a thread), while another bot's
+     * response is started at once.
+     * @throws Exception
+     */
+    @Test
+    public void testAdmission() throws Exception
+    {
+        ResponseExecutor executor = new ResponseExecutor(this._threads, 1);
+        Task first = this.task("a1");
+        executor.submit("A", first, null);
+        executor.submit("A", this.task("a2"), null);
+        executor.submit("A", this.task("a3"), null);
+        Task other = this.task("b1");
+        Future<String> b1 = executor.submit("B", other, null);
+        this.awaitStarted("a1", "b1");
+        assertEquals(2, executor.getWaitingCount());
+        assertEquals(4, executor.getSubmittedCount());
+        other.go.countDown();
+        assertEquals("b1", b1.get(10, TimeUnit.SECONDS));
+        awaitDone(executor, 1);
+        // The bot's waiting responses are not started by another bot's finishing.
+        assertEquals(2, executor.getWaitingCount());
+    }
+
+    /**
+     * Tests that with no limit, every response is handed to the executor at once.
+     * @throws Exception
+     */
+    @Test
+    public void testNoLimit() throws Exception
+    {
+        ResponseExecutor executor = new ResponseExecutor(this._threads, 0);
+        executor.submit("A", this.task("a1"), null);
+        executor.submit("A", this.task("a2"), null);
+        this.awaitStarted("a1", "a2");
+        assertEquals(0, executor.getWaitingCount());
+    }
+
+    /**
+     * Tests that when a bot's response finishes (or fails), its place goes to the next of its responses waiting, in
+     * the order submitted, and that each callback is told the outcome.
+     * @throws Exception
+     */
+    @Test
+    public void testHandoff() throws Exception
+    {
+        ResponseExecutor executor = new ResponseExecutor(this._threads, 1);
+        Callback callback = new Callback();
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        List<Task> tasks = new ArrayList<Task>();
+        for (String name : new String[] { "a1", "fail2", "a3" })
+        {
+            Task task = this.task(name);
+            tasks.add(task);
+            futures.add(executor.submit("A", task, callback));
+        }
+        this.awaitStarted("a1");
+        tasks.get(0).go.countDown();
+        assertEquals("a1", futures.get(0).get(10, TimeUnit.SECONDS));
+        this.awaitStarted("a1", "fail2");
+        assertEquals(1, executor.getWaitingCount());
+        tasks.get(1).go.countDown();
+        try
+        {
+            futures.get(1).get(10, TimeUnit.SECONDS);
+            fail("The response should have failed.");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        this.awaitStarted("a1", "fail2", "a3");
+        tasks.get(2).go.countDown();
+        assertEquals("a3", futures.get(2).get(10, TimeUnit.SECONDS));
+        awaitDone(executor, 3);
+        assertEquals(Arrays.asList("a1", "a3"), this._responded);
+        assertEquals(Arrays.asList("fail2"), this._failed);
+        assertEquals(2, executor.getCompletedCount());
+        assertEquals(1, executor.getFailedCount());
+        assertEquals(0, executor.getWaitingCount());
+    }
+
+    /**
+     * Tests that when the executor refuses the next waiting response, it and the rest waiting for the bot are
+     * cancelled (and their callbacks not called), and that a response refused on submission is reported to the caller.
+     * @throws Exception
+     */
+    @Test
+    public void testRejectionCancelsWaiting() throws Exception
+    {
+        ResponseExecutor executor = new ResponseExecutor(this._threads, 1);
+        Callback callback = new Callback();
+        Task first = this.task("a1");
+        Future<String> a1 = executor.submit("A", first, callback);
+        Future<String> a2 = executor.submit("A", this.task("a2"), callback);
+        Future<String> a3 = executor.submit("A", this.task("a3"), callback);
+        this.awaitStarted("a1");
+        // The pool stops taking work, but finishes what it has.
+        this._threads.shutdown();
+        first.go.countDown();
+        assertEquals("a1", a1.get(10, TimeUnit.SECONDS));
+        assertTrue(this._threads.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(a2.isCancelled());
+        assertTrue(a3.isCancelled());
+        assertEquals(0, executor.getWaitingCount());
+        assertEquals(Arrays.asList("a1"), this._responded);
+        assertTrue(this._failed.isEmpty());
+
+        try
+        {
+            executor.submit("A", this.task("a4"), callback);
+            fail("The response should have been refused.");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // As expected.
+        }
+    }
+
+    /**
+     * Tests that shutting down lets the responses already handed to the executor finish, and cancels those waiting
+     * for their bot.
+     * @throws Exception
+     */
+    @Test
+    public void testShutdownCancelsWaiting() throws Exception
+    {
+        ResponseExecutor executor = new ResponseExecutor(this._threads, 1);
+        Task first = this.task("a1");
+        Future<String> a1 = executor.submit("A", first, null);
+        Future<String> a2 = executor.submit("A", this.task("a2"), null);
+        Task other = this.task("b1");
+        Future<String> b1 = executor.submit("B", other, null);
+        Future<String> b2 = executor.submit("B", this.task("b2"), null);
+        this.awaitStarted("a1", "b1");
+        executor.shutdown();
+        assertTrue(a2.isCancelled());
+        assertTrue(b2.isCancelled());
+        assertEquals(0, executor.getWaitingCount());
+        first.go.countDown();
+        other.go.countDown();
+        assertEquals("a1", a1.get(10, TimeUnit.SECONDS));
+        assertEquals("b1", b1.get(10, TimeUnit.SECONDS));
+        assertTrue(this._threads.awaitTermination(10, TimeUnit.SECONDS));
+        this.awaitStarted("a1", "b1");
+        awaitDone(executor, 2);
+    }
+}
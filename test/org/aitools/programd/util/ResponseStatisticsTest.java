@@ -0,0 +1,127 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.aitools.programd.Bot;
+import org.aitools.programd.Core;
+import org.aitools.programd.ProgrammaticCoreSettings;
+import org.aitools.util.Histogram;
+import org.aitools.util.resource.Filesystem;
+import org.junit.Test;
+
+/**
+ * Tests {@link ResponseStatistics}: that values are kept per bot and per stage, and that the Core records each stage
+ * of a response under the right name.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class ResponseStatisticsTest
+{
+    private static final String TESTBOT_ID = "TestBot";
+
+    /**
+     * Tests that values are kept apart by bot and by stage, and combined across bots on request.
+     */
+    @Test
+    public void testPerBotAndStage()
+    {
+        ResponseStatistics statistics = new ResponseStatistics();
+        statistics.record("one", ResponseStatistics.MATCH, 10);
+        statistics.record("one", ResponseStatistics.MATCH, 20);
+        statistics.record("one", ResponseStatistics.SRAI_DEPTH, 2);
+        statistics.record("two", ResponseStatistics.MATCH, 30);
+        assertSame(statistics.getHistogram("one", ResponseStatistics.MATCH), statistics.getHistogram("one",
+                ResponseStatistics.MATCH));
+        assertEquals(2, statistics.getHistogram("one", ResponseStatistics.MATCH).getCount());
+        assertEquals(1, statistics.getHistogram("two", ResponseStatistics.MATCH).getCount());
+        Histogram combined = statistics.getCombinedHistogram(ResponseStatistics.MATCH);
+        assertEquals(3, combined.getCount());
+        assertEquals(30, combined.getMax());
+        assertEquals(Arrays.asList(ResponseStatistics.MATCH, ResponseStatistics.SRAI_DEPTH), Arrays.asList(statistics
+                .getHistograms("one").keySet().toArray()));
+        assertTrue(statistics.getHistograms("three").isEmpty());
+        String report = statistics.report("one");
+        assertTrue(report, report.startsWith("match: n=2 "));
+        statistics.reset();
+        assertTrue(statistics.getBotIDs().isEmpty());
+    }
+
+    /**
+     * Tests that the stage for a template element is built once, and is the element name after the prefix.
+     */
+    @Test
+    public void testTemplateStage()
+    {
+        assertEquals("template:think", ResponseStatistics.templateStage("think"));
+        assertSame(ResponseStatistics.templateStage("think"), ResponseStatistics.templateStage("think"));
+    }
+
+    /**
+     * Tests that a response records the whole response, each stage of it, each template element evaluated and the
+     * depth of each <code>&lt;srai/&gt;</code>, and that a failed match is counted.
+     * @throws Exception
+     */
+    @Test
+    public void testCoreRecordsStages() throws Exception
+    {
+        Core core = new Core(Filesystem.getWorkingDirectory(), new ProgrammaticCoreSettings());
+        core.addBot(new Bot(TESTBOT_ID, core.getSettings()));
+        File file = File.createTempFile("response-statistics-test", ".aiml");
+        try
+        {
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<aiml version=\"1.0.1\" xmlns=\"http://alicebot.org/2001/AIML-1.0.1\">\n");
+            out.write("<category><pattern>CALL ME *</pattern><template><srai>MY NAME IS <star/></srai></template>"
+                    + "</category>\n");
+            out.write("<category><pattern>MY NAME IS *</pattern>"
+                    + "<template><think><set name=\"name\"><star/></set></think>Hello.</template></category>\n");
+            out.write("</aiml>\n");
+            out.close();
+            core.getGraphmapper().load(file.toURI().toURL(), TESTBOT_ID);
+
+            assertEquals("Hello.", core.getResponse("Call me Ann", "ann", TESTBOT_ID));
+            ResponseStatistics statistics = core.getResponseStatistics();
+            Map<String, Histogram> stages = statistics.getHistograms(TESTBOT_ID);
+            for (String stage : new String[] { ResponseStatistics.RESPONSE, ResponseStatistics.INPUT_SUBSTITUTION,
+                    ResponseStatistics.SENTENCE_SPLIT, ResponseStatistics.CHAT_LOG,
+                    ResponseStatistics.templateStage("srai"), ResponseStatistics.templateStage("think"),
+                    ResponseStatistics.templateStage("set") })
+            {
+                assertTrue(stages.keySet().toString(), stages.containsKey(stage));
+                assertEquals(stage, 1, stages.get(stage).getCount());
+            }
+            // Two matches: the input, and the <srai/> (one level down).
+            assertEquals(2, stages.get(ResponseStatistics.MATCH).getCount());
+            Histogram depth = stages.get(ResponseStatistics.SRAI_DEPTH);
+            assertEquals(1, depth.getCount());
+            assertEquals(1, depth.getMax());
+            assertTrue(stages.get(ResponseStatistics.PREDICATE_WRITE).getCount() > 0);
+            assertFalse(stages.containsKey(ResponseStatistics.NO_MATCH));
+
+            core.getResponse("Nothing matches this", "ann", TESTBOT_ID);
+            assertEquals(1, statistics.getHistogram(TESTBOT_ID, ResponseStatistics.NO_MATCH).getCount());
+        }
+        finally
+        {
+            core.shutdown();
+            file.delete();
+        }
+    }
+}
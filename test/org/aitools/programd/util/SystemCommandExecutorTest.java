@@ -0,0 +1,91 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.programd.util;
+
+import static org.junit.Assert.*;
+
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link SystemCommandExecutor} returns output, and frees its threads from commands that run too long,
+ * even those whose background processes keep the output pipe open. (These tests need a Unix shell.)
+ * 
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class SystemCommandExecutorTest
+{
+    private static final int POOL_SIZE = 2;
+
+    private static final int TIMEOUT = 500;
+
+    private SystemCommandExecutor _executor;
+
+    /**
+     * Creates the executor.
+     */
+    @Before
+    public void setUp()
+    {
+        this._executor = new SystemCommandExecutor(POOL_SIZE, 4, TIMEOUT, Logger.getLogger("programd"));
+    }
+
+    /**
+     * Shuts down the executor.
+     */
+    @After
+    public void tearDown()
+    {
+        this._executor.shutdown();
+    }
+
+    /**
+     * The output of a command is returned, a line at a time.
+     */
+    @Test
+    public void testOutput()
+    {
+        assertEquals("hello\nworld\n", this._executor.execute(new ProcessBuilder("sh", "-c", "echo hello; echo world")));
+        assertEquals(1, this._executor.getCompletedCount());
+    }
+
+    /**
+     * A command that leaves a background process holding its output returns when the command itself exits.
+     */
+    @Test(timeout = 5000)
+    public void testBackgroundProcessHoldingPipe()
+    {
+        assertEquals("done\n", this._executor.execute(new ProcessBuilder("sh", "-c", "sleep 3 & echo done")));
+    }
+
+    /**
+     * Commands that time out while a background process holds their output do not keep their threads: more of them
+     * than there are threads can run one after another, and the pool is idle afterward.
+     * 
+     * @throws InterruptedException
+     */
+    @Test(timeout = 15000)
+    public void testTimedOutCommandsFreeTheirThreads() throws InterruptedException
+    {
+        for (int index = 0; index < POOL_SIZE * 2; index++)
+        {
+            assertEquals("", this._executor.execute(new ProcessBuilder("sh", "-c", "sleep 3 & sleep 3")));
+        }
+        assertEquals(POOL_SIZE * 2, this._executor.getTimedOutCount());
+        for (int wait = 0; wait < 100 && this._executor.getActiveCount() > 0; wait++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(0, this._executor.getActiveCount());
+        assertEquals("ok\n", this._executor.execute(new ProcessBuilder("sh", "-c", "echo ok")));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Histogram}: its buckets at their edges, and its percentiles against those of a sorted array.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class HistogramTest
+{
+    private static final double[] PERCENTILES = { 0, 1, 50, 90, 99, 99.9, 100 };
+
+    /**
+     * Tests that each value below 32 has a bucket of its own, and that 32 starts the first shared one.
+     */
+    @Test
+    public void testExactBuckets()
+    {
+        for (int value = 0; value < 32; value++)
+        {
+            assertEquals(value, Histogram.bucket(value));
+            assertEquals(value, Histogram.top(value));
+        }
+        assertEquals(31, Histogram.bucket(31));
+        assertEquals(32, Histogram.bucket(32));
+        assertEquals(32, Histogram.bucket(33));
+        assertEquals(33, Histogram.bucket(34));
+        assertEquals(33, Histogram.top(32));
+    }
+
+    /**
+     * Tests that the buckets follow one another without gaps or overlaps up to {@link Long#MAX_VALUE}: the value just
+     * above the top of each bucket is in the next.
+     */
+    @Test
+    public void testBucketEdges()
+    {
+        for (int bucket = 0; bucket < Histogram.BUCKETS - 1; bucket++)
+        {
+            long top = Histogram.top(bucket);
+            assertEquals(bucket, Histogram.bucket(top));
+            assertEquals(bucket + 1, Histogram.bucket(top + 1));
+        }
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, Histogram.top(Histogram.BUCKETS - 1));
+    }
+
+    /**
+     * Tests that each power of two (and the values either side of it) falls in a bucket no wider than a sixteenth of
+     * the value.
+     */
+    @Test
+    public void testPowersOfTwo()
+    {
+        for (int exponent = 5; exponent < 63; exponent++)
+        {
+            long power = 1L << exponent;
+            for (long value : new long[] { power - 1, power, power + 1 })
+            {
+                long top = Histogram.top(Histogram.bucket(value));
+                assertTrue(value + " -> " + top, top >= value);
+                assertTrue(value + " -> " + top, top - value <= value / 16);
+            }
+            // A power of two starts a bucket.
+            assertEquals(Histogram.bucket(power - 1) + 1, Histogram.bucket(power));
+        }
+    }
+
+    /**
+     * Tests that each percentile is no less than the true one (from a sorted array) and no more than a sixteenth
+     * above it, for values spread over many powers of two.
+     */
+    @Test
+    public void testPercentilesAgainstSortedArray()
+    {
+        Random random = new Random(42);
+        long[] values = new long[10000];
+        Histogram histogram = new Histogram();
+        for (int index = 0; index < values.length; index++)
+        {
+            values[index] = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            histogram.record(values[index]);
+        }
+        Arrays.sort(values);
+        for (double percentile : PERCENTILES)
+        {
+            long exact = values[Math.max((int) Math.ceil(values.length * percentile / 100), 1) - 1];
+            long reported = histogram.getPercentile(percentile);
+            assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " >> " + exact, reported - exact <= exact / 16);
+        }
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    /**
+     * Tests that small values are reported exactly, that a negative value counts as 0, and that an empty histogram
+     * reports 0.
+     */
+    @Test
+    public void testSmallValues()
+    {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0d, histogram.getMean(), 0d);
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(31);
+        assertEquals(0, histogram.getPercentile(25));
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(7, histogram.getPercentile(75));
+        assertEquals(31, histogram.getPercentile(100));
+        assertEquals(41 / 4d, histogram.getMean(), 0d);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    /**
+     * Tests that adding one histogram to another gives the same result as recording all the values in one.
+     */
+    @Test
+    public void testAdd()
+    {
+        Random random = new Random(7);
+        Histogram first = new Histogram();
+        Histogram second = new Histogram();
+        Histogram all = new Histogram();
+        for (int index = 0; index < 5000; index++)
+        {
+            long value = random.nextInt(1 << 20);
+            (index % 3 == 0 ? first : second).record(value);
+            all.record(value);
+        }
+        second.record(Long.MAX_VALUE);
+        all.record(Long.MAX_VALUE);
+        first.add(second);
+        assertEquals(all.getCount(), first.getCount());
+        assertEquals(Long.MAX_VALUE, first.getMax());
+        assertEquals(all.getMean(), first.getMean(), 0d);
+        for (double percentile : PERCENTILES)
+        {
+            assertEquals(all.getPercentile(percentile), first.getPercentile(percentile));
+        }
+        assertEquals(all.summary(), first.summary());
+    }
+}
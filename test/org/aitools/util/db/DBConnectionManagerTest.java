@@ -0,0 +1,171 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.util.db;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the statement pool that {@link DBConnectionManager} gives each pooled connection.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class DBConnectionManagerTest
+{
+    private static final String SELECT = "SELECT id FROM bot WHERE label = ?";
+
+    private static final String INSERT = "INSERT INTO bot (label) VALUES (?)";
+
+    private static int databases = 0;
+
+    private FakeDriver.Database _database;
+
+    private String _uri;
+
+    /**
+     * Creates a database that answers every query with one row.
+     */
+    @Before
+    public void setUp()
+    {
+        this._database = new FakeDriver.Database()
+        {
+            @Override
+            public List<Object[]> execute(String sql, List<Object> parameters, List<Integer> keys)
+            {
+                if (sql.startsWith("insert"))
+                {
+                    keys.add(Integer.valueOf(1));
+                    return null;
+                }
+                List<Object[]> rows = new ArrayList<Object[]>();
+                rows.add(new Object[] { Integer.valueOf(1) });
+                return rows;
+            }
+        };
+        this._uri = FakeDriver.register("pool" + databases++, this._database);
+    }
+
+    private DBConnectionManager manager(int statementCacheSize)
+    {
+        return new DBConnectionManager(FakeDriver.class.getName(), this._uri, "", "", 0, 4, statementCacheSize);
+    }
+
+    private static void select(Connection connection) throws Exception
+    {
+        PreparedStatement statement = connection.prepareStatement(SELECT);
+        statement.setString(1, "TestBot");
+        ResultSet results = statement.executeQuery();
+        assertTrue(results.next());
+        assertEquals(1, results.getInt(1));
+        results.close();
+        statement.close();
+    }
+
+    /**
+     * Tests that a statement closed on a connection is handed back when the same SQL is prepared on that connection
+     * again, including after the connection has been returned to the pool and borrowed again.
+     * @throws Exception
+     */
+    @Test
+    public void testStatementIsReusedOnSameConnection() throws Exception
+    {
+        DBConnectionManager manager = this.manager(8);
+        Connection connection = manager.getDBConnection();
+        select(connection);
+        select(connection);
+        select(connection);
+        connection.close();
+        connection = manager.getDBConnection();
+        select(connection);
+        connection.close();
+        assertEquals(1, this._database.connections.get());
+        assertEquals(1, this._database.prepared.get());
+    }
+
+    /**
+     * Tests that each connection prepares its own statements.
+     * @throws Exception
+     */
+    @Test
+    public void testEachConnectionHasItsOwnStatements() throws Exception
+    {
+        DBConnectionManager manager = this.manager(8);
+        Connection first = manager.getDBConnection();
+        Connection second = manager.getDBConnection();
+        select(first);
+        select(second);
+        select(first);
+        select(second);
+        first.close();
+        second.close();
+        assertEquals(2, this._database.connections.get());
+        assertEquals(2, this._database.prepared.get());
+        assertEquals(2, manager.getIdleCount());
+        assertEquals(0, manager.getActiveCount());
+    }
+
+    /**
+     * Tests that a statement in use is not handed out again, so that two statements for the same SQL can be open on
+     * one connection at once.
+     * @throws Exception
+     */
+    @Test
+    public void testOpenStatementIsNotShared() throws Exception
+    {
+        DBConnectionManager manager = this.manager(8);
+        Connection connection = manager.getDBConnection();
+        PreparedStatement outer = connection.prepareStatement(SELECT);
+        PreparedStatement inner = connection.prepareStatement(SELECT);
+        assertNotSame(outer, inner);
+        outer.close();
+        inner.close();
+        select(connection);
+        connection.close();
+        assertEquals(2, this._database.prepared.get());
+    }
+
+    /**
+     * Tests that statements asking for generated keys, and all statements when the cache is off, are prepared anew
+     * each time.
+     * @throws Exception
+     */
+    @Test
+    public void testUncachedStatements() throws Exception
+    {
+        DBConnectionManager manager = this.manager(8);
+        Connection connection = manager.getDBConnection();
+        for (int index = 0; index < 2; index++)
+        {
+            PreparedStatement insert = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS);
+            insert.setString(1, "TestBot");
+            insert.execute();
+            insert.close();
+        }
+        connection.close();
+        assertEquals(2, this._database.prepared.get());
+
+        manager = this.manager(0);
+        connection = manager.getDBConnection();
+        select(connection);
+        select(connection);
+        connection.close();
+        assertEquals(4, this._database.prepared.get());
+    }
+}
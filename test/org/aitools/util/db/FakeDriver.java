@@ -0,0 +1,516 @@
+/*
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package org.aitools.util.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver, for tests, that hands every statement to a {@link Database} written in Java. Connections, statements
+ * and result sets are dynamic proxies that implement only what the code under test uses; anything else returns a
+ * default value. Connect with <code>jdbc:fake:<i>name</i></code>, after {@link #register(String, Database)}.
+ *
+ * @author <a href="mailto:noel@aitools.org">Noel Bush</a>
+ */
+public class FakeDriver implements Driver
+{
+    /** The prefix of URLs that this driver accepts. */
+    public static final String PREFIX = "jdbc:fake:";
+
+    /**
+     * What answers the statements. Implementations are called with the SQL lower-cased, with runs of whitespace
+     * collapsed to one space.
+     */
+    public static abstract class Database
+    {
+        /** How many physical connections have been opened. */
+        public final AtomicInteger connections = new AtomicInteger();
+
+        /** How many statements have been prepared on physical connections. */
+        public final AtomicInteger prepared = new AtomicInteger();
+
+        /** How many times a statement (or a batch of them) has been sent. */
+        public final AtomicInteger roundTrips = new AtomicInteger();
+
+        /** How many times a connection has committed. */
+        public final AtomicInteger commits = new AtomicInteger();
+
+        /** How many times a connection has rolled back. */
+        public final AtomicInteger rollbacks = new AtomicInteger();
+
+        /**
+         * Executes a statement.
+         *
+         * @param sql the normalized SQL
+         * @param parameters the parameters, by position (from 0)
+         * @param keys to receive any generated keys
+         * @return the rows of a query, or null for an update
+         * @throws SQLException to simulate a database error
+         */
+        public abstract List<Object[]> execute(String sql, List<Object> parameters, List<Integer> keys)
+                throws SQLException;
+    }
+
+    private static final Map<String, Database> DATABASES = Collections
+            .synchronizedMap(new HashMap<String, Database>());
+
+    static
+    {
+        try
+        {
+            DriverManager.registerDriver(new FakeDriver());
+        }
+        catch (SQLException e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Makes the given database available at <code>jdbc:fake:<i>name</i></code>.
+     *
+     * @param name the name of the database
+     * @param database the database
+     * @return the URL at which to connect to it
+     */
+    public static String register(String name, Database database)
+    {
+        DATABASES.put(name, database);
+        return PREFIX + name;
+    }
+
+    /**
+     * @param sql some SQL
+     * @return the SQL as given to a {@link Database}
+     */
+    static String normalize(String sql)
+    {
+        return sql.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    /**
+     * @see java.sql.Driver#connect(java.lang.String, java.util.Properties)
+     */
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException
+    {
+        if (!this.acceptsURL(url))
+        {
+            return null;
+        }
+        Database database = DATABASES.get(url.substring(PREFIX.length()));
+        if (database == null)
+        {
+            throw new SQLException("No such database: " + url);
+        }
+        database.connections.incrementAndGet();
+        return proxy(Connection.class, new ConnectionHandler(database));
+    }
+
+    /**
+     * @see java.sql.Driver#acceptsURL(java.lang.String)
+     */
+    @Override
+    public boolean acceptsURL(String url)
+    {
+        return url != null && url.startsWith(PREFIX);
+    }
+
+    /**
+     * @see java.sql.Driver#getPropertyInfo(java.lang.String, java.util.Properties)
+     */
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info)
+    {
+        return new DriverPropertyInfo[0];
+    }
+
+    /**
+     * @see java.sql.Driver#getMajorVersion()
+     */
+    @Override
+    public int getMajorVersion()
+    {
+        return 1;
+    }
+
+    /**
+     * @see java.sql.Driver#getMinorVersion()
+     */
+    @Override
+    public int getMinorVersion()
+    {
+        return 0;
+    }
+
+    /**
+     * @see java.sql.Driver#jdbcCompliant()
+     */
+    @Override
+    public boolean jdbcCompliant()
+    {
+        return false;
+    }
+
+    /**
+     * Not part of the Java 6 interface, but required by later ones.
+     *
+     * @return nothing
+     * @throws SQLFeatureNotSupportedException always
+     */
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, InvocationHandler handler)
+    {
+        return (T) Proxy.newProxyInstance(FakeDriver.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * @return the default value for the given return type
+     */
+    static Object defaultValue(Class<?> type)
+    {
+        if (type == boolean.class)
+        {
+            return Boolean.FALSE;
+        }
+        if (type == int.class)
+        {
+            return Integer.valueOf(0);
+        }
+        if (type == long.class)
+        {
+            return Long.valueOf(0);
+        }
+        if (type == short.class)
+        {
+            return Short.valueOf((short) 0);
+        }
+        if (type == float.class || type == double.class)
+        {
+            return type == float.class ? (Object) Float.valueOf(0) : (Object) Double.valueOf(0);
+        }
+        return null;
+    }
+
+    /** A connection. */
+    private static class ConnectionHandler implements InvocationHandler
+    {
+        private Database _database;
+
+        private boolean _autoCommit = true;
+
+        private boolean _closed;
+
+        ConnectionHandler(Database database)
+        {
+            this._database = database;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException
+        {
+            String name = method.getName();
+            if (name.equals("prepareStatement"))
+            {
+                this._database.prepared.incrementAndGet();
+                return FakeDriver.proxy(PreparedStatement.class, new StatementHandler(this._database, proxy,
+                        (String) args[0]));
+            }
+            if (name.equals("createStatement"))
+            {
+                return FakeDriver.proxy(Statement.class, new StatementHandler(this._database, proxy, null));
+            }
+            if (name.equals("setAutoCommit"))
+            {
+                this._autoCommit = ((Boolean) args[0]).booleanValue();
+                return null;
+            }
+            if (name.equals("getAutoCommit"))
+            {
+                return Boolean.valueOf(this._autoCommit);
+            }
+            if (name.equals("commit"))
+            {
+                this._database.commits.incrementAndGet();
+                return null;
+            }
+            if (name.equals("rollback"))
+            {
+                this._database.rollbacks.incrementAndGet();
+                return null;
+            }
+            if (name.equals("close"))
+            {
+                this._closed = true;
+                return null;
+            }
+            if (name.equals("isClosed"))
+            {
+                return Boolean.valueOf(this._closed);
+            }
+            if (name.equals("isValid"))
+            {
+                return Boolean.valueOf(!this._closed);
+            }
+            if (name.equals("hashCode"))
+            {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+            if (name.equals("equals"))
+            {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+            if (name.equals("toString"))
+            {
+                return "FakeConnection@" + System.identityHashCode(proxy);
+            }
+            return defaultValue(method.getReturnType());
+        }
+    }
+
+    /** A statement, prepared (with SQL) or plain. */
+    private static class StatementHandler implements InvocationHandler
+    {
+        private Database _database;
+
+        private Object _connection;
+
+        private String _sql;
+
+        private List<Object> _parameters = new ArrayList<Object>();
+
+        private List<List<Object>> _batch = new ArrayList<List<Object>>();
+
+        private List<String> _sqlBatch = new ArrayList<String>();
+
+        private List<Integer> _keys = new ArrayList<Integer>();
+
+        private List<Object[]> _results;
+
+        StatementHandler(Database database, Object connection, String sql)
+        {
+            this._database = database;
+            this._connection = connection;
+            this._sql = sql == null ? null : normalize(sql);
+        }
+
+        private List<Object[]> run(String sql, List<Object> parameters) throws SQLException
+        {
+            this._keys.clear();
+            synchronized (this._database)
+            {
+                return this._database.execute(sql, parameters, this._keys);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException
+        {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer)
+            {
+                int index = ((Integer) args[0]).intValue() - 1;
+                while (this._parameters.size() <= index)
+                {
+                    this._parameters.add(null);
+                }
+                this._parameters.set(index, name.equals("setNull") ? null : args[1]);
+                return null;
+            }
+            if (name.equals("clearParameters"))
+            {
+                this._parameters.clear();
+                return null;
+            }
+            if (name.equals("execute") || name.equals("executeQuery") || name.equals("executeUpdate"))
+            {
+                String sql = args == null || args.length == 0 ? this._sql : normalize((String) args[0]);
+                this._database.roundTrips.incrementAndGet();
+                this._results = this.run(sql, this._parameters);
+                if (name.equals("executeQuery"))
+                {
+                    return FakeDriver.proxy(ResultSet.class, new ResultSetHandler(this._results));
+                }
+                if (name.equals("executeUpdate"))
+                {
+                    return Integer.valueOf(1);
+                }
+                return Boolean.valueOf(this._results != null);
+            }
+            if (name.equals("getResultSet"))
+            {
+                return this._results == null ? null : FakeDriver.proxy(ResultSet.class, new ResultSetHandler(
+                        this._results));
+            }
+            if (name.equals("getGeneratedKeys"))
+            {
+                List<Object[]> rows = new ArrayList<Object[]>();
+                for (Integer key : this._keys)
+                {
+                    rows.add(new Object[] { key });
+                }
+                return FakeDriver.proxy(ResultSet.class, new ResultSetHandler(rows));
+            }
+            if (name.equals("addBatch"))
+            {
+                if (args != null && args.length == 1)
+                {
+                    this._sqlBatch.add(normalize((String) args[0]));
+                }
+                else
+                {
+                    this._batch.add(new ArrayList<Object>(this._parameters));
+                }
+                return null;
+            }
+            if (name.equals("clearBatch"))
+            {
+                this._batch.clear();
+                this._sqlBatch.clear();
+                return null;
+            }
+            if (name.equals("executeBatch"))
+            {
+                this._database.roundTrips.incrementAndGet();
+                List<Integer> counts = new ArrayList<Integer>();
+                try
+                {
+                    for (List<Object> parameters : this._batch)
+                    {
+                        this.run(this._sql, parameters);
+                        counts.add(Integer.valueOf(1));
+                    }
+                    for (String sql : this._sqlBatch)
+                    {
+                        this.run(sql, Collections.emptyList());
+                        counts.add(Integer.valueOf(1));
+                    }
+                }
+                finally
+                {
+                    this._batch.clear();
+                    this._sqlBatch.clear();
+                }
+                int[] result = new int[counts.size()];
+                for (int index = 0; index < result.length; index++)
+                {
+                    result[index] = counts.get(index).intValue();
+                }
+                return result;
+            }
+            if (name.equals("getUpdateCount"))
+            {
+                return Integer.valueOf(this._results == null ? 1 : -1);
+            }
+            if (name.equals("getConnection"))
+            {
+                return this._connection;
+            }
+            if (name.equals("hashCode"))
+            {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+            if (name.equals("equals"))
+            {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+            if (name.equals("toString"))
+            {
+                return "FakeStatement: " + this._sql;
+            }
+            return defaultValue(method.getReturnType());
+        }
+    }
+
+    /** The rows of a result. */
+    private static class ResultSetHandler implements InvocationHandler
+    {
+        private List<Object[]> _rows;
+
+        private int _row = -1;
+
+        private boolean _wasNull;
+
+        ResultSetHandler(List<Object[]> rows)
+        {
+            this._rows = rows == null ? Collections.<Object[]> emptyList() : rows;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            String name = method.getName();
+            if (name.equals("next"))
+            {
+                this._row++;
+                return Boolean.valueOf(this._row < this._rows.size());
+            }
+            if (name.equals("wasNull"))
+            {
+                return Boolean.valueOf(this._wasNull);
+            }
+            if (name.startsWith("get") && args != null && args.length == 1 && args[0] instanceof Integer)
+            {
+                Object value = this._rows.get(this._row)[((Integer) args[0]).intValue() - 1];
+                this._wasNull = value == null;
+                Class<?> type = method.getReturnType();
+                if (value == null)
+                {
+                    return defaultValue(type);
+                }
+                if (type == int.class)
+                {
+                    return Integer.valueOf(((Number) value).intValue());
+                }
+                if (type == long.class)
+                {
+                    return Long.valueOf(((Number) value).longValue());
+                }
+                if (type == String.class)
+                {
+                    return value.toString();
+                }
+                return value;
+            }
+            if (name.equals("hashCode"))
+            {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            }
+            if (name.equals("equals"))
+            {
+                return Boolean.valueOf(proxy == args[0]);
+            }
+            return defaultValue(method.getReturnType());
+        }
+    }
+}